@@ -0,0 +1,49 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.Key;
+
+/**
+ *基准测试共用的输入。
+ *short是键盘上常见的数字；long是10000位的小数"0.xxxx…"，可以被解析为普通的double，
+ *用来观察每个操作的耗时是否随输入长度增长。
+ */
+final class BenchmarkInputs
+{
+    static final int LONG_DIGITS = 10_000;
+
+    private BenchmarkInputs()
+    {
+    }
+
+    /**
+     *@param size "short"或"long"
+     *@return 对应长度的数字字符串
+     */
+    static String number(String size)
+    {
+        if (size.equals("short"))
+        {
+            return "1234.5678";
+        }
+        StringBuilder sb = new StringBuilder(LONG_DIGITS + 1);
+        sb.append("0.");
+        for (int i = 0; sb.length() <= LONG_DIGITS; i++)
+        {
+            sb.append((char) ('1' + i % 9));
+        }
+        return sb.toString();
+    }
+
+    /**
+     *按字符依次把数字输入到引擎中。
+     */
+    static void type(CalculatorEngine engine, String number)
+    {
+        for (int i = 0; i < number.length(); i++)
+        {
+            char c = number.charAt(i);
+            engine.press(c == '.' ? Key.DECIMAL : Key.digit(c - '0'));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.BigIntegerMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *不限位数精确模式的大整数运算：N位十进制数的乘法、平方、转换为字符串和从字符串解析，
+ *BigIntegerMath与BigInteger自身的实现对照。
+ *BigInteger的解析是O(N²)的，N为1000000时每次要几十秒，完整运行需要几分钟。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BigIntegerBenchmark
+{
+    @Param({"10000", "100000", "1000000"})
+    public int digits;
+
+    private BigInteger first;
+    private BigInteger second;
+    private String text;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        int bits = (int) (digits / 0.30103); //log10(2)
+        first = new BigInteger(bits, random).setBit(bits - 1);
+        second = new BigInteger(bits, random).setBit(bits - 1);
+        text = first.toString();
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerMultiply()
+    {
+        return first.multiply(second);
+    }
+
+    @Benchmark
+    public BigInteger fastMultiply()
+    {
+        return BigIntegerMath.multiply(first, second);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerSquare()
+    {
+        return first.multiply(first);
+    }
+
+    @Benchmark
+    public BigInteger fastSquare()
+    {
+        return BigIntegerMath.multiply(first, first);
+    }
+
+    @Benchmark
+    public String bigIntegerToString()
+    {
+        return first.toString();
+    }
+
+    @Benchmark
+    public String fastToString()
+    {
+        return BigIntegerMath.toString(first);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerParse()
+    {
+        return new BigInteger(text);
+    }
+
+    @Benchmark
+    public BigInteger fastParse()
+    {
+        return BigIntegerMath.parse(text);
+    }
+}
@@ -0,0 +1,66 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *calculate()背后的逻辑："12 × 第二个操作数 ="。
+ *引擎每次调用按"="计算，再按退格恢复到"12 × 第二个操作数"，状态保持不变；
+ *原来的实现直接调用基于字符串的calculate。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculateBenchmark
+{
+    @Param({"short", "long"})
+    public String size;
+
+    @Param({"+", "×", "÷"})
+    public String operator;
+
+    private String secondOperand;
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        secondOperand = BenchmarkInputs.number(size);
+        engine = new CalculatorEngine(Integer.MAX_VALUE);
+        engine.press(Key.DIGIT_1);
+        engine.press(Key.DIGIT_2);
+        engine.press(Key.fromLabel(operator));
+        BenchmarkInputs.type(engine, secondOperand);
+    }
+
+    @Benchmark
+    public String legacyCalculate()
+    {
+        return LegacyCalculator.calculate(12, operator, secondOperand);
+    }
+
+    @Benchmark
+    public double engineCalculate()
+    {
+        engine.press(Key.EQUALS);
+        double result = engine.value();
+        engine.press(Key.BACKSPACE);
+        return result;
+    }
+}
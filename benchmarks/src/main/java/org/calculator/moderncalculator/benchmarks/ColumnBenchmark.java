@@ -0,0 +1,81 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.ColumnCalculator;
+import org.calculator.moderncalculator.Key;
+import org.calculator.moderncalculator.Operator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *对一整列数字计算"× 1.13 = + 7 % ="的吞吐量。
+ *column用ColumnCalculator一次处理整列，engine对照逐个元素在CalculatorEngine上输入按键。
+ *用--add-modules jdk.incubator.vector运行时，ColumnCalculator使用Vector API。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnBenchmark
+{
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private final ColumnCalculator calculator = ColumnCalculator.of(Operator.MULTIPLY, 1.13).thenPercent(Operator.ADD, 7);
+    private final CalculatorEngine engine = new CalculatorEngine();
+    private double[] values;
+    private double[] results;
+    private byte[] errors;
+    private String[] texts;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        values = new double[size];
+        texts = new String[size];
+        for (int i = 0; i < size; i++)
+        {
+            values[i] = Math.round(random.nextDouble() * 1_000_000) / 100.0;
+            texts[i] = Double.toString(values[i]);
+        }
+        results = new double[size];
+        errors = new byte[size];
+    }
+
+    @Benchmark
+    public int column()
+    {
+        return calculator.evaluate(values, results, errors);
+    }
+
+    @Benchmark
+    public double engine()
+    {
+        double sum = 0;
+        for (String text : texts)
+        {
+            engine.press(Key.CLEAR);
+            engine.type(text);
+            engine.type("×1.13=+7");
+            engine.press(Key.PERCENT);
+            engine.press(Key.EQUALS);
+            sum += engine.value();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,72 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.ConversionTable;
+import org.calculator.moderncalculator.UnitConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *一次单位换算的耗时：映射的换算表按单位编号直接读取系数，
+ *对照每次换算都按名称查找并解析文本汇率的做法。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark
+{
+    private static final String RATES = "货币 CNY 1\n货币 USD 7.1\n货币 EUR 7.7\n货币 JPY 0.047\n长度 m 1\n长度 km 1000\n";
+
+    private ConversionTable table;
+    private int from;
+    private int to;
+    private final Map<String, String> textRates = new HashMap<>();
+    private double value = 1234.5;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        Path directory = Files.createTempDirectory("units");
+        Path source = directory.resolve("units.txt");
+        Path file = directory.resolve("units.bin");
+        Files.writeString(source, RATES);
+        UnitConverter.compile(source, file);
+        table = ConversionTable.map(file);
+        from = ConversionTable.id("USD");
+        to = ConversionTable.id("EUR");
+        for (String line : RATES.split("\n"))
+        {
+            String[] fields = line.split(" ");
+            textRates.put(fields[1], fields[2]);
+        }
+    }
+
+    @Benchmark
+    public double textConvert()
+    {
+        return value * Double.parseDouble(textRates.get("USD")) / Double.parseDouble(textRates.get("EUR"));
+    }
+
+    @Benchmark
+    public double tableConvert()
+    {
+        return table.convert(value, from, to);
+    }
+}
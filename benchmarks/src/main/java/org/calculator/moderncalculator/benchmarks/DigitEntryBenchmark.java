@@ -0,0 +1,60 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *handleDigitAction背后的逻辑：在已有输入的末尾追加一位数字。
+ *每次调用追加一位再退格删除一位，输入长度保持不变，因此测到的是"在这个长度上按一次键"的耗时。
+ *位数上限设为不限，以便测试10000位的输入。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigitEntryBenchmark
+{
+    @Param({"short", "long"})
+    public String size;
+
+    private String legacyInput;
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        legacyInput = BenchmarkInputs.number(size);
+        engine = new CalculatorEngine(Integer.MAX_VALUE);
+        BenchmarkInputs.type(engine, legacyInput);
+    }
+
+    @Benchmark
+    public String legacyAppendDigit()
+    {
+        String appended = LegacyCalculator.appendDigit(legacyInput, "7", Integer.MAX_VALUE);
+        return LegacyCalculator.deleteLast(appended);
+    }
+
+    @Benchmark
+    public CalculatorEngine engineAppendDigit()
+    {
+        engine.press(Key.DIGIT_7);
+        engine.press(Key.BACKSPACE);
+        return engine;
+    }
+}
@@ -0,0 +1,78 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *逐个按键输入N位数字，再退格删除一半，检查耗时随N线性增长。
+ *原来基于字符串拼接的实现每输入一位都复制整个数字，总耗时是O(N²)，
+ *因此只在较小的N上运行legacyEntry作为对照。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DigitScalingBenchmark
+{
+    private static final String[] DIGITS = {"1", "2", "3", "4", "5", "6", "7", "8", "9"};
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int digits;
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        engine = new CalculatorEngine(Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int engineEntry()
+    {
+        engine.press(Key.CLEAR);
+        for (int i = 0; i < digits; i++)
+        {
+            engine.press(Key.digit(1 + i % 9));
+        }
+        for (int i = 0; i < digits / 2; i++)
+        {
+            engine.press(Key.BACKSPACE);
+        }
+        return engine.displayText().length();
+    }
+
+    @Benchmark
+    public int legacyEntry()
+    {
+        if (digits > 100000) //O(N²)的实现在一百万位时单次调用需要数分钟
+        {
+            return 0;
+        }
+        String current = "0";
+        for (int i = 0; i < digits; i++)
+        {
+            current = LegacyCalculator.appendDigit(current, DIGITS[i % 9], Integer.MAX_VALUE);
+        }
+        for (int i = 0; i < digits / 2; i++)
+        {
+            current = LegacyCalculator.deleteLast(current);
+        }
+        return current.length();
+    }
+}
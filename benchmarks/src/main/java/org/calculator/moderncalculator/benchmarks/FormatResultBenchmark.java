@@ -0,0 +1,90 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.NumberFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *比较原来的formatResult(每次新建DecimalFormat)和NumberFormatter的结果格式化耗时。
+ *numberFormatter只写入复用的缓冲区，numberFormatterToString再生成显示用的字符串。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatResultBenchmark
+{
+    private static final int VALUE_COUNT = 1024;
+
+    /**
+     *integer：整数结果；fraction：有小数的结果，例如1/3；mixed：两者混合，包括负数和很大的数
+     */
+    @Param({"integer", "fraction", "mixed"})
+    public String values;
+
+    private final double[] inputs = new double[VALUE_COUNT];
+    private final NumberFormatter formatter = new NumberFormatter();
+    private int index;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < VALUE_COUNT; i++)
+        {
+            switch (values)
+            {
+                case "integer":
+                    inputs[i] = random.nextInt(2_000_000) - 1_000_000;
+                    break;
+                case "fraction":
+                    inputs[i] = (random.nextInt(100_000) + 1) / (double) (random.nextInt(999) + 1);
+                    break;
+                default:
+                    inputs[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(24) - 6);
+                    break;
+            }
+        }
+    }
+
+    private double next()
+    {
+        index = (index + 1) & (VALUE_COUNT - 1);
+        return inputs[index];
+    }
+
+    @Benchmark
+    public String legacyFormatResult()
+    {
+        return LegacyCalculator.formatResult(next());
+    }
+
+    @Benchmark
+    public void numberFormatter(Blackhole blackhole)
+    {
+        formatter.format(next());
+        blackhole.consume(formatter.length());
+        blackhole.consume(formatter.charAt(0));
+    }
+
+    @Benchmark
+    public String numberFormatterToString()
+    {
+        return formatter.toString(next());
+    }
+}
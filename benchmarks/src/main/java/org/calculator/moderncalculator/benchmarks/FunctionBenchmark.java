@@ -0,0 +1,114 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CompiledExpression;
+import org.calculator.moderncalculator.ExpressionCompiler;
+import org.calculator.moderncalculator.FunctionRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ *比较通过FunctionRegistry按id调用科学函数与直接调用StrictMath的耗时，
+ *以及在编译后的表达式中调用函数的耗时(批处理模式)。
+ *setUp中同时检查每个输入上的结果与StrictMath相差不超过1 ulp。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark
+{
+    private static final int INPUTS = 1024;
+
+    @Param({"sin", "tan", "exp", "ln", "log"})
+    public String function;
+
+    private final FunctionRegistry registry = FunctionRegistry.standard();
+    private final double[] inputs = new double[INPUTS];
+    private int id;
+    private DoubleUnaryOperator reference;
+    private CompiledExpression expression;
+
+    @Setup
+    public void setUp()
+    {
+        id = registry.id(function);
+        reference = strictMath(function);
+        expression = ExpressionCompiler.compile(function + "(x)");
+        Random random = new Random(42);
+        for (int i = 0; i < INPUTS; i++)
+        {
+            inputs[i] = 0.001 + random.nextDouble() * 100;
+            double expected = reference.applyAsDouble(inputs[i]);
+            double actual = registry.apply(id, inputs[i]);
+            if (Math.abs(actual - expected) > Math.ulp(expected))
+            {
+                throw new IllegalStateException(function + "(" + inputs[i] + ")的误差超过1 ulp: " + actual + " != " + expected);
+            }
+        }
+    }
+
+    private static DoubleUnaryOperator strictMath(String function)
+    {
+        switch (function)
+        {
+            case "sin":
+                return StrictMath::sin;
+            case "tan":
+                return StrictMath::tan;
+            case "exp":
+                return StrictMath::exp;
+            case "ln":
+                return StrictMath::log;
+            default:
+                return StrictMath::log10;
+        }
+    }
+
+    @Benchmark
+    public double registry()
+    {
+        double sum = 0;
+        for (double x : inputs)
+        {
+            sum += registry.apply(id, x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double strictMath()
+    {
+        double sum = 0;
+        for (double x : inputs)
+        {
+            sum += reference.applyAsDouble(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double compiledExpression()
+    {
+        double sum = 0;
+        for (double x : inputs)
+        {
+            sum += expression.evaluate(x);
+        }
+        return sum;
+    }
+}
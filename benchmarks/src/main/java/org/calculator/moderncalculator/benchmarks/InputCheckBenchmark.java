@@ -0,0 +1,66 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *每次按键前都会执行的检查：canParseAsNumber(把当前输入解析为数字)和isDisplayShowingError(显示屏是否为错误信息)。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputCheckBenchmark
+{
+    @Param({"short", "long"})
+    public String size;
+
+    private String displayText;
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        displayText = BenchmarkInputs.number(size);
+        engine = new CalculatorEngine(Integer.MAX_VALUE);
+        BenchmarkInputs.type(engine, displayText);
+    }
+
+    @Benchmark
+    public boolean legacyCanParseAsNumber()
+    {
+        return LegacyCalculator.canParseAsNumber(displayText);
+    }
+
+    @Benchmark
+    public double engineParse()
+    {
+        return engine.value();
+    }
+
+    @Benchmark
+    public boolean legacyIsDisplayShowingError()
+    {
+        return LegacyCalculator.isDisplayShowingError(displayText);
+    }
+
+    @Benchmark
+    public boolean engineIsError()
+    {
+        return engine.isError();
+    }
+}
@@ -0,0 +1,165 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import java.text.DecimalFormat;
+
+/**
+ *LegacyCalculator保存了CalculatorController重构前基于字符串的实现，作为基准测试的对照组。
+ *这里的代码只用于比较性能，请保持与原来的实现一致，不要优化。
+ */
+final class LegacyCalculator
+{
+    private LegacyCalculator()
+    {
+    }
+
+    /**
+     *原来的formatResult：每次调用都新建DecimalFormat。
+     */
+    static String formatResult(double result)
+    {
+        if (Double.isNaN(result))
+        {
+            return "结果未定义";
+        }
+        if (Double.isInfinite(result))
+        {
+            return "溢出";
+        }
+        double epsilon = 1E-10;
+        if (Math.abs(result - Math.round(result)) < epsilon && result != 0)
+        {
+            return String.format("%d", Math.round(result));
+        }
+        else if (Math.abs(result) < epsilon && result != 0)
+        {
+            return "0";
+        }
+        else
+        {
+            DecimalFormat df = new DecimalFormat("#.##########");
+            String formatted = df.format(result);
+            if (formatted.startsWith("-,"))
+            {
+                formatted = "-0." + formatted.substring(2);
+            }
+            else if (formatted.startsWith(","))
+            {
+                formatted = "0." + formatted.substring(1);
+            }
+            if (formatted.equals("-0"))
+            {
+                return "0";
+            }
+            return formatted;
+        }
+    }
+
+    /**
+     *原来handleDigitAction中追加数字的部分。原来的位数上限固定为15，这里作为参数以便测试很长的输入。
+     */
+    static String appendDigit(String currentInputValue, String digit, int maxDigits)
+    {
+        if (currentInputValue.equals("0") && !digit.equals("."))
+        {
+            return digit;
+        }
+        else if (currentInputValue.equals("-0") && !digit.equals("."))
+        {
+            return "-" + digit;
+        }
+        String temp = currentInputValue.startsWith("-") ? currentInputValue.substring(1) : currentInputValue;
+        if (temp.replace(".", "").length() < maxDigits)
+        {
+            return currentInputValue + digit;
+        }
+        return currentInputValue;
+    }
+
+    /**
+     *原来handleBackspaceAction中删除最后一个字符的部分。
+     */
+    static String deleteLast(String currentInputValue)
+    {
+        String result = currentInputValue.substring(0, currentInputValue.length() - 1);
+        if (result.isEmpty() || result.equals("-"))
+        {
+            return "0";
+        }
+        return result;
+    }
+
+    /**
+     *原来的calculate：解析第二个操作数，按操作符字符串switch，拼接历史记录并格式化结果。
+     *@return 新的currentInputValue
+     */
+    static String calculate(double firstOperand, String pendingOperator, String currentInputValue)
+    {
+        double secondOperand = Double.parseDouble(currentInputValue);
+        String historyLog = formatResult(firstOperand) + " " + pendingOperator + " " + currentInputValue + " =";
+        double resultValue;
+        switch (pendingOperator)
+        {
+            case "+":
+                resultValue = firstOperand + secondOperand;
+                break;
+            case "-":
+                resultValue = firstOperand - secondOperand;
+                break;
+            case "×":
+                resultValue = firstOperand * secondOperand;
+                break;
+            case "÷":
+                if (secondOperand == 0)
+                {
+                    return historyLog;
+                }
+                resultValue = firstOperand / secondOperand;
+                break;
+            case "%":
+                if (secondOperand == 0)
+                {
+                    return historyLog;
+                }
+                resultValue = firstOperand % secondOperand;
+                break;
+            default:
+                return currentInputValue;
+        }
+        return formatResult(resultValue);
+    }
+
+    /**
+     *原来的canParseAsNumber。
+     */
+    static boolean canParseAsNumber(String s)
+    {
+        if (s == null || s.isEmpty() || s.equals("-") || s.equals(".") || s.equals("-."))
+        {
+            return false;
+        }
+        try
+        {
+            Double.parseDouble(s);
+            return true;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     *原来的isDisplayShowingError：转为小写后检查八个错误关键词。
+     */
+    static boolean isDisplayShowingError(String displayText)
+    {
+        if (displayText == null)
+        {
+            return false;
+        }
+        String text = displayText.toLowerCase();
+        return text.contains("错误") || text.contains("error") || text.contains("nan") ||
+                text.contains("溢出") || text.contains("未定义") || text.contains("除数不能为零") ||
+                text.contains("无效输入") || text.contains("模数不能为零");
+    }
+}
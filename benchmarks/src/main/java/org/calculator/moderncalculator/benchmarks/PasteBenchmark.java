@@ -0,0 +1,59 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.Key;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *粘贴一个数字：整段交给CalculatorEngine.type()一次处理，与逐个字符模拟按键对比。
+ *每次调用先按"C"清空，再输入整个数字。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasteBenchmark
+{
+    @Param({"short", "long"})
+    public String size;
+
+    private String number;
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        number = BenchmarkInputs.number(size);
+        engine = new CalculatorEngine(Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int typeChunk()
+    {
+        engine.press(Key.CLEAR);
+        engine.type(number);
+        return engine.displayText().length();
+    }
+
+    @Benchmark
+    public int pressEachKey()
+    {
+        engine.press(Key.CLEAR);
+        BenchmarkInputs.type(engine, number);
+        return engine.displayText().length();
+    }
+}
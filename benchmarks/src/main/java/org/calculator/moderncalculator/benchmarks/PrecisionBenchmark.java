@@ -0,0 +1,59 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.Key;
+import org.calculator.moderncalculator.Precision;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *比较双精度和精确模式下一次典型计算"1234.56 运算符 7.89 ="的耗时。
+ *与CalculateBenchmark一样，每次调用按"="计算，再按退格恢复状态。
+ *目标是精确模式的加、减、乘不超过双精度的2倍左右。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrecisionBenchmark
+{
+    @Param({"DOUBLE", "DECIMAL64", "DECIMAL128"})
+    public Precision precision;
+
+    @Param({"+", "×", "÷"})
+    public String operator;
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        engine = new CalculatorEngine();
+        engine.setMathContext(precision.mathContext());
+        BenchmarkInputs.type(engine, "1234.56");
+        engine.press(Key.fromLabel(operator));
+        BenchmarkInputs.type(engine, "7.89");
+    }
+
+    @Benchmark
+    public double calculate()
+    {
+        engine.press(Key.EQUALS);
+        double result = engine.value();
+        engine.press(Key.BACKSPACE);
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.Key;
+import org.calculator.moderncalculator.Precision;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *输入第二个操作数时预览结果的额外开销。在"1234.56 运算符 78"上每次调用按一位数字再退格：
+ *typeDigit是按键路径上实际增加的部分(只检查能否预览)，typeDigitWithPreview在每次按键后都计算预览，
+ *相当于没有延迟时的最坏情况；typeDecimalPointWithPreview的末尾小数点不改变数值，预览直接使用上一次的结果。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreviewBenchmark
+{
+    @Param({"DOUBLE", "DECIMAL128"})
+    public Precision precision;
+
+    @Param({"+", "÷"})
+    public String operator;
+
+    private CalculatorEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        engine = new CalculatorEngine();
+        engine.setMathContext(precision.mathContext());
+        BenchmarkInputs.type(engine, "1234.56");
+        engine.press(Key.fromLabel(operator));
+        BenchmarkInputs.type(engine, "78");
+    }
+
+    @Benchmark
+    public boolean typeDigit()
+    {
+        engine.press(Key.DIGIT_9);
+        boolean preview = engine.canPreview();
+        engine.press(Key.BACKSPACE);
+        return preview && engine.canPreview();
+    }
+
+    @Benchmark
+    public String typeDigitWithPreview()
+    {
+        engine.press(Key.DIGIT_9);
+        String preview = engine.previewText();
+        engine.press(Key.BACKSPACE);
+        return preview + engine.previewText();
+    }
+
+    @Benchmark
+    public String typeDecimalPointWithPreview()
+    {
+        engine.press(Key.DECIMAL);
+        String preview = engine.previewText();
+        engine.press(Key.BACKSPACE);
+        return preview + engine.previewText();
+    }
+}
@@ -0,0 +1,97 @@
+package org.calculator.moderncalculator.benchmarks;
+
+import org.calculator.moderncalculator.CalculatorEngine;
+import org.calculator.moderncalculator.ProgrammerEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *程序员模式每一帧的多进制显示：十六进制、十进制、八进制和按字长分组的二进制。
+ *ProgrammerEngine直接从long写出各进制的字符，对照Long.toXxxString加字符串分组的做法。
+ *一帧的预算是16.7ms(60Hz)，两种做法都远低于预算，比较的是每帧产生的临时对象和耗时。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgrammerBenchmark
+{
+    private static final String PATTERN = "89ABCDEF01234567";
+
+    @Param({"8", "64"})
+    public int wordSize;
+
+    private ProgrammerEngine programmer;
+    private long value;
+    private long mask;
+    private final StringBuilder sb = new StringBuilder(128);
+
+    @Setup
+    public void setUp()
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setProgrammerMode(true);
+        engine.setProgrammerWordSize(wordSize);
+        engine.setProgrammerBase(ProgrammerEngine.HEX);
+        engine.type(PATTERN.substring(0, wordSize / 4)); //最高位为1，十进制显示为负数
+        programmer = engine.programmer();
+        value = programmer.value();
+        mask = wordSize == Long.SIZE ? -1L : (1L << wordSize) - 1;
+    }
+
+    /**
+     *写入复用的StringBuilder，不产生临时字符串。
+     */
+    @Benchmark
+    public int appendAllBases()
+    {
+        sb.setLength(0);
+        programmer.appendTo(sb, ProgrammerEngine.HEX);
+        programmer.appendTo(sb, ProgrammerEngine.DECIMAL);
+        programmer.appendTo(sb, ProgrammerEngine.OCTAL);
+        programmer.appendBinaryTo(sb);
+        return sb.length();
+    }
+
+    /**
+     *界面每帧实际调用的方法，包括创建显示用的字符串。
+     */
+    @Benchmark
+    public int displayTexts()
+    {
+        return programmer.basesText().length() + programmer.binaryText().length();
+    }
+
+    @Benchmark
+    public int stringAllBases()
+    {
+        long pattern = value & mask;
+        String binary = Long.toBinaryString(pattern);
+        binary = "0".repeat(wordSize - binary.length()) + binary;
+        StringBuilder grouped = new StringBuilder();
+        for (int i = 0; i < wordSize; i += 4)
+        {
+            if (i > 0)
+            {
+                grouped.append(' ');
+            }
+            grouped.append(binary, i, i + 4);
+        }
+        String text = "HEX " + Long.toHexString(pattern).toUpperCase() + "   DEC " + Long.toString(value)
+                + "   OCT " + Long.toOctalString(pattern);
+        return text.length() + grouped.toString().length();
+    }
+}
@@ -1,8 +1,12 @@
 module org.calculator.moderncalculator {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management; //CalculatorMetrics启用时注册为MXBean
+    requires jdk.httpserver;  //CalculatorServer
+    requires java.net.http;   //LoadGenerator
 
-    requires org.kordamp.ikonli.javafx;
+    requires static org.kordamp.ikonli.javafx; //目前没有使用图标，启动时不解析这个模块
+    requires static jdk.incubator.vector; //ColumnCalculator在运行时加上--add-modules jdk.incubator.vector时使用Vector API
 
     opens org.calculator.moderncalculator to javafx.fxml;
     exports org.calculator.moderncalculator;
@@ -0,0 +1,110 @@
+package org.calculator.moderncalculator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *BatchLauncher是不启动图形界面的批量表达式计算入口。
+ *表达式来自命令行参数，没有参数时从标准输入逐行读取，每行输出一个结果。
+ *一行可以在"|"后面给出变量的值，例如："price × (1 + rate) | price=100, rate=0.13"，
+ *每个变量都必须给出值，给出表达式中没有的变量也按错误输出。
+ */
+public class BatchLauncher
+{
+    public static void main(String[] args) throws IOException
+    {
+        ExpressionCache cache = new ExpressionCache();
+        NumberFormatter formatter = new NumberFormatter();
+        PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+        if (args.length > 0)
+        {
+            for (String arg : args)
+            {
+                out.println(evaluateLine(cache, formatter, arg));
+            }
+        }
+        else
+        {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                if (!line.isBlank())
+                {
+                    out.println(evaluateLine(cache, formatter, line));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     *计算一行输入并返回要输出的文本。
+     *@param cache 表达式缓存
+     *@param formatter 结果格式化器
+     *@param line 形如"表达式"或"表达式 | 变量=值, ..."的一行
+     *@return 格式化后的结果或错误信息
+     */
+    static String evaluateLine(ExpressionCache cache, NumberFormatter formatter, String line)
+    {
+        int separator = line.indexOf('|');
+        String expression = separator < 0 ? line.trim() : line.substring(0, separator).trim();
+        try
+        {
+            CompiledExpression compiled = cache.get(expression);
+            String[] variables = compiled.variables();
+            double[] values = new double[variables.length];
+            boolean[] assigned = new boolean[variables.length];
+            if (separator >= 0)
+            {
+                for (String assignment : line.substring(separator + 1).split(","))
+                {
+                    int equals = assignment.indexOf('=');
+                    if (equals < 0)
+                    {
+                        return CalculatorError.INVALID_INPUT.message() + ": " + assignment.trim();
+                    }
+                    String name = assignment.substring(0, equals).trim();
+                    int index = compiled.variableIndex(name);
+                    if (index < 0)
+                    {
+                        return "表达式中没有变量: " + name;
+                    }
+                    values[index] = Double.parseDouble(assignment.substring(equals + 1).trim());
+                    assigned[index] = true;
+                }
+            }
+            for (int i = 0; i < variables.length; i++)
+            {
+                if (!assigned[i])
+                {
+                    return "缺少变量的值: " + variables[i];
+                }
+            }
+            return formatResult(formatter, compiled.evaluate(values));
+        }
+        catch (NumberFormatException e)
+        {
+            return CalculatorError.INVALID_NUMBER.message();
+        }
+        catch (IllegalArgumentException | ArithmeticException e)
+        {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     *把计算结果格式化为输出文本，NaN和无穷大输出对应的错误信息。
+     */
+    static String formatResult(NumberFormatter formatter, double value)
+    {
+        if (Double.isNaN(value))
+        {
+            return CalculatorError.UNDEFINED.message();
+        }
+        return formatter.format(value) ? formatter.toString() : CalculatorError.OVERFLOW.message();
+    }
+}
@@ -0,0 +1,435 @@
+package org.calculator.moderncalculator;
+
+import java.math.BigInteger;
+
+/**
+ *BigIntegerMath为不限位数的精确模式提供大整数的快速乘法和十进制转换。
+ *BigInteger.multiply最多使用Toom-Cook 3，百万位的乘法要零点几秒以上；
+ *BigInteger的构造方法把十进制字符串转换为整数是O(n²)的，百万位要几十秒，toString也要好几秒。
+ *
+ *两个操作数都超过FFT_THRESHOLD位时，乘法按每LIMB_BITS位一段拆开，用双精度复数FFT计算卷积，耗时O(n log n)。
+ *段的位数按变换长度选择，保证卷积的每一项都远小于double能精确表示的2^53；
+ *舍入回整数时检查最大误差，误差异常时退回BigInteger.multiply，因此结果总是精确的。
+ *十进制转换使用分治法：按10^(BASE_DIGITS×2^k)把数字分成两半递归处理，乘法使用上面的FFT，
+ *除法使用预先算好倒数的Barrett约减，倒数用牛顿迭代求出，转换的耗时与乘法同阶。10的幂和倒数在全部转换之间共用。
+ */
+public final class BigIntegerMath
+{
+    private static final int FFT_THRESHOLD = 1 << 16;       //两个操作数都超过这么多二进制位时使用FFT乘法
+    private static final int MAX_LIMB_BITS = 16;
+    private static final int MAX_COEFFICIENT_BITS = 48;     //卷积每一项的位数上限，给double的53位留出误差余量
+    private static final double MAX_ROUNDING_ERROR = 0.125;
+    private static final int CONVERSION_THRESHOLD = 1 << 14; //超过这么多二进制位时使用分治的十进制转换
+    private static final int BASE_DIGITS = 512;             //最小的一段十进制数字，直接用BigInteger转换
+    private static final int NEWTON_THRESHOLD = 1 << 17;     //更短的除数直接用BigInteger.divide求倒数
+    private static final int GUARD_BITS = 32;               //牛顿迭代近似值多保留的位数
+
+    private static BigInteger[] powers = new BigInteger[0];      //powers[k] = 10^(BASE_DIGITS×2^k)
+    private static BigInteger[] reciprocals = new BigInteger[0]; //powers[k]的Barrett倒数，使用时才计算
+    private static double[][] twiddles = new double[32][];       //按变换长度的对数缓存的cos和sin表
+
+    private BigIntegerMath()
+    {
+    }
+
+    /**
+     *计算a × b。a和b是同一个数时计算平方。
+     */
+    public static BigInteger multiply(BigInteger a, BigInteger b)
+    {
+        if (a.bitLength() < FFT_THRESHOLD || b.bitLength() < FFT_THRESHOLD)
+        {
+            return a.multiply(b);
+        }
+        BigInteger product = fftMultiply(a.abs(), b.abs(), a == b || a.equals(b));
+        if (product == null) //舍入误差过大，不可能在合理的位数下出现
+        {
+            return a.multiply(b);
+        }
+        return a.signum() == b.signum() ? product : product.negate();
+    }
+
+    /**
+     *@return 两个非负整数的乘积，舍入误差过大时返回 null
+     */
+    private static BigInteger fftMultiply(BigInteger a, BigInteger b, boolean square)
+    {
+        int bitsA = a.bitLength();
+        int bitsB = b.bitLength();
+        int limbBits = MAX_LIMB_BITS;
+        int length;
+        while (true)
+        {
+            int limbs = (bitsA + limbBits - 1) / limbBits + (bitsB + limbBits - 1) / limbBits;
+            length = Integer.highestOneBit(limbs - 1) << 1;
+            if (2 * limbBits + Integer.numberOfTrailingZeros(length) <= MAX_COEFFICIENT_BITS)
+            {
+                break;
+            }
+            limbBits--;
+        }
+        int log = Integer.numberOfTrailingZeros(length);
+        double[] re = new double[length];
+        double[] im = new double[length];
+        toLimbs(a, limbBits, re);
+        double[] table = twiddles(log);
+        if (square)
+        {
+            fft(re, im, log, table);
+            for (int k = 0; k < length; k++)
+            {
+                double zr = re[k];
+                double zi = im[k];
+                re[k] = zr * zr - zi * zi;
+                im[k] = 2 * zr * zi;
+            }
+        }
+        else
+        {
+            toLimbs(b, limbBits, im); //a放在实部、b放在虚部，一次变换同时得到两个频谱
+            fft(re, im, log, table);
+            for (int k = 0; k <= length / 2; k++)
+            {
+                int j = (length - k) & (length - 1);
+                double zr = re[k];
+                double zi = im[k];
+                double cr = re[j];  //conj(Z[j])
+                double ci = -im[j];
+                double ar = (zr + cr) * 0.5; //A[k] = (Z[k] + conj(Z[j])) / 2
+                double ai = (zi + ci) * 0.5;
+                double br = (zi - ci) * 0.5; //B[k] = (Z[k] - conj(Z[j])) / 2i
+                double bi = (cr - zr) * 0.5;
+                double pr = ar * br - ai * bi;
+                double pi = ar * bi + ai * br;
+                re[j] = pr; //实数序列卷积的频谱共轭对称
+                im[j] = -pi;
+                re[k] = pr;
+                im[k] = pi;
+            }
+        }
+        fft(im, re, log, table); //交换实部和虚部得到逆变换，结果的实部在re中
+        return fromLimbs(re, length, limbBits, bitsA + bitsB);
+    }
+
+    /**
+     *把非负整数按limbBits位一段拆开，低位在前写入target。
+     */
+    private static void toLimbs(BigInteger value, int limbBits, double[] target)
+    {
+        byte[] bytes = value.toByteArray(); //大端序
+        long mask = (1L << limbBits) - 1;
+        long accumulator = 0;
+        int bits = 0;
+        int count = 0;
+        for (int i = bytes.length - 1; i >= 0; i--)
+        {
+            accumulator |= (bytes[i] & 0xFFL) << bits;
+            bits += 8;
+            if (bits >= limbBits)
+            {
+                target[count++] = accumulator & mask;
+                accumulator >>>= limbBits;
+                bits -= limbBits;
+            }
+        }
+        if (accumulator != 0)
+        {
+            target[count] = accumulator;
+        }
+    }
+
+    /**
+     *把逆变换的结果舍入为整数并进位，组装成乘积。
+     *@return 乘积，舍入误差超过MAX_ROUNDING_ERROR时返回 null
+     */
+    private static BigInteger fromLimbs(double[] coefficients, int length, int limbBits, int productBits)
+    {
+        byte[] bytes = new byte[(productBits + 7) / 8 + 1];
+        double scale = 1.0 / length;
+        long mask = (1L << limbBits) - 1;
+        long carry = 0;
+        long accumulator = 0;
+        int bits = 0;
+        int position = bytes.length - 1;
+        for (int i = 0; i < length && position >= 0; i++)
+        {
+            double value = coefficients[i] * scale;
+            double rounded = Math.rint(value);
+            if (Math.abs(value - rounded) > MAX_ROUNDING_ERROR)
+            {
+                return null;
+            }
+            carry += (long) rounded;
+            accumulator |= (carry & mask) << bits;
+            carry >>>= limbBits;
+            bits += limbBits;
+            while (bits >= 8 && position >= 0)
+            {
+                bytes[position--] = (byte) accumulator;
+                accumulator >>>= 8;
+                bits -= 8;
+            }
+        }
+        while (position >= 0)
+        {
+            bytes[position--] = (byte) accumulator;
+            accumulator >>>= 8;
+        }
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     *原地计算复数FFT(指数为负)，输入按自然顺序，输出按自然顺序。
+     */
+    private static void fft(double[] re, double[] im, int log, double[] table)
+    {
+        int n = 1 << log;
+        int half = n >>> 1;
+        for (int i = 1, j = 0; i < n; i++) //位逆序重排
+        {
+            int bit = half;
+            while ((j & bit) != 0)
+            {
+                j ^= bit;
+                bit >>>= 1;
+            }
+            j ^= bit;
+            if (i < j)
+            {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int size = 2; size <= n; size <<= 1)
+        {
+            int span = size >>> 1;
+            int step = n / size;
+            for (int start = 0; start < n; start += size)
+            {
+                for (int j = 0, t = 0; j < span; j++, t += step)
+                {
+                    double wr = table[t];
+                    double wi = -table[half + t];
+                    int u = start + j;
+                    int v = u + span;
+                    double xr = re[v] * wr - im[v] * wi;
+                    double xi = re[v] * wi + im[v] * wr;
+                    re[v] = re[u] - xr;
+                    im[v] = im[u] - xi;
+                    re[u] += xr;
+                    im[u] += xi;
+                }
+            }
+        }
+    }
+
+    /**
+     *@return 长度为2^log的变换使用的表，前一半是cos(2πk/n)，后一半是sin(2πk/n)
+     */
+    private static synchronized double[] twiddles(int log)
+    {
+        double[] table = twiddles[log];
+        if (table == null)
+        {
+            int n = 1 << log;
+            int half = n >>> 1;
+            table = new double[n];
+            for (int k = 0; k < half; k++)
+            {
+                double angle = 2 * Math.PI * k / n; //每一项直接计算，递推会累积误差
+                table[k] = Math.cos(angle);
+                table[half + k] = Math.sin(angle);
+            }
+            twiddles[log] = table;
+        }
+        return table;
+    }
+
+    /**
+     *把整数转换为十进制字符串，结果与BigInteger.toString()相同。
+     */
+    public static String toString(BigInteger value)
+    {
+        if (value.bitLength() < CONVERSION_THRESHOLD)
+        {
+            return value.toString();
+        }
+        BigInteger magnitude = value.abs();
+        int level = 0;
+        //powers[level]的平方大于magnitude时，magnitude最多有2×BASE_DIGITS×2^level位
+        while (2 * power(level).bitLength() - 2 < magnitude.bitLength())
+        {
+            level++;
+        }
+        char[] digits = new char[(BASE_DIGITS << (level + 1)) + 1]; //第一个位置留给负号
+        write(magnitude, level, digits, 1);
+        int start = 1;
+        while (digits[start] == '0')
+        {
+            start++;
+        }
+        if (value.signum() < 0)
+        {
+            digits[--start] = '-';
+        }
+        return new String(digits, start, digits.length - start);
+    }
+
+    /**
+     *把value写成正好2×BASE_DIGITS×2^level位的十进制数字，不足时前面补0。value必须小于powers[level]的平方。
+     */
+    private static void write(BigInteger value, int level, char[] digits, int offset)
+    {
+        int width = BASE_DIGITS << (level + 1);
+        if (level == 0 || value.bitLength() < CONVERSION_THRESHOLD)
+        {
+            String text = value.toString();
+            int padding = width - text.length();
+            for (int i = 0; i < padding; i++)
+            {
+                digits[offset + i] = '0';
+            }
+            text.getChars(0, text.length(), digits, offset + padding);
+            return;
+        }
+        BigInteger[] quotientAndRemainder = divide(value, level);
+        write(quotientAndRemainder[0], level - 1, digits, offset);
+        write(quotientAndRemainder[1], level - 1, digits, offset + width / 2);
+    }
+
+    /**
+     *用Barrett约减计算value除以powers[level]的商和余数，value必须小于powers[level]的平方。
+     */
+    private static BigInteger[] divide(BigInteger value, int level)
+    {
+        BigInteger divisor = power(level);
+        int bits = divisor.bitLength();
+        //估计的商比真正的商最多小2
+        BigInteger quotient = multiply(value.shiftRight(bits - 1), reciprocal(level)).shiftRight(bits + 1);
+        BigInteger remainder = value.subtract(multiply(quotient, divisor));
+        while (remainder.compareTo(divisor) >= 0)
+        {
+            remainder = remainder.subtract(divisor);
+            quotient = quotient.add(BigInteger.ONE);
+        }
+        return new BigInteger[] {quotient, remainder};
+    }
+
+    /**
+     *@return 10^(BASE_DIGITS×2^level)
+     */
+    private static synchronized BigInteger power(int level)
+    {
+        if (level >= powers.length)
+        {
+            BigInteger[] larger = new BigInteger[level + 1];
+            System.arraycopy(powers, 0, larger, 0, powers.length);
+            for (int i = powers.length; i <= level; i++)
+            {
+                larger[i] = i == 0 ? BigInteger.TEN.pow(BASE_DIGITS) : multiply(larger[i - 1], larger[i - 1]);
+            }
+            powers = larger;
+            BigInteger[] reciprocalsLarger = new BigInteger[level + 1];
+            System.arraycopy(reciprocals, 0, reciprocalsLarger, 0, reciprocals.length);
+            reciprocals = reciprocalsLarger;
+        }
+        return powers[level];
+    }
+
+    /**
+     *@return floor(2^(2m) / powers[level])，m是powers[level]的二进制位数
+     */
+    private static synchronized BigInteger reciprocal(int level)
+    {
+        BigInteger divisor = power(level);
+        if (reciprocals[level] == null)
+        {
+            reciprocals[level] = reciprocal(divisor);
+        }
+        return reciprocals[level];
+    }
+
+    /**
+     *用牛顿迭代计算floor(2^(2m) / divisor)，m是divisor的二进制位数。
+     *先递归算出divisor高一半位的倒数作为近似值，一次迭代把精度加倍，最后用余数修正到精确值。
+     */
+    private static BigInteger reciprocal(BigInteger divisor)
+    {
+        int bits = divisor.bitLength();
+        BigInteger numerator = BigInteger.ONE.shiftLeft(2 * bits);
+        if (bits < NEWTON_THRESHOLD)
+        {
+            return numerator.divide(divisor);
+        }
+        int shift = bits / 2 - GUARD_BITS;
+        BigInteger estimate = reciprocal(divisor.shiftRight(shift)).shiftLeft(shift);
+        BigInteger error = numerator.subtract(multiply(estimate, divisor));
+        BigInteger result = estimate.add(multiply(estimate, error).shiftRight(2 * bits));
+        BigInteger remainder = numerator.subtract(multiply(result, divisor));
+        while (remainder.signum() < 0)
+        {
+            result = result.subtract(BigInteger.ONE);
+            remainder = remainder.add(divisor);
+        }
+        while (remainder.compareTo(divisor) >= 0)
+        {
+            result = result.add(BigInteger.ONE);
+            remainder = remainder.subtract(divisor);
+        }
+        return result;
+    }
+
+    /**
+     *把十进制字符串转换为整数，结果与new BigInteger(text)相同。
+     *@throws NumberFormatException 不是合法的十进制整数
+     */
+    public static BigInteger parse(String text)
+    {
+        boolean negative = text.startsWith("-");
+        char[] digits = text.toCharArray();
+        int offset = negative || text.startsWith("+") ? 1 : 0;
+        BigInteger value = parse(digits, offset, digits.length - offset);
+        return negative ? value.negate() : value;
+    }
+
+    /**
+     *把只含数字的字符转换为非负整数。
+     *@throws NumberFormatException 没有字符或者有数字以外的字符
+     */
+    static BigInteger parse(char[] digits, int offset, int length)
+    {
+        if (length == 0)
+        {
+            throw new NumberFormatException("空的数字");
+        }
+        for (int i = offset; i < offset + length; i++)
+        {
+            if (digits[i] < '0' || digits[i] > '9')
+            {
+                throw new NumberFormatException("不是数字: " + digits[i]);
+            }
+        }
+        return parseDigits(digits, offset, length);
+    }
+
+    private static BigInteger parseDigits(char[] digits, int offset, int length)
+    {
+        if (length <= 2 * BASE_DIGITS)
+        {
+            return new BigInteger(new String(digits, offset, length));
+        }
+        int level = 0;
+        while ((BASE_DIGITS << (level + 1)) < length)
+        {
+            level++;
+        }
+        int lowLength = BASE_DIGITS << level; //低位正好一段10的幂的位数
+        BigInteger high = parseDigits(digits, offset, length - lowLength);
+        BigInteger low = parseDigits(digits, offset + length - lowLength, lowLength);
+        return multiply(high, power(level)).add(low);
+    }
+}
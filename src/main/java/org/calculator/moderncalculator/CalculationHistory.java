@@ -0,0 +1,143 @@
+package org.calculator.moderncalculator;
+
+/**
+ *CalculationHistory用固定容量的环形缓冲区保存已完成的二元运算，支持多级撤销和重做。
+ *每条记录保存第一个操作数、运算符、第二个操作数和结果，撤销时直接恢复这些值，
+ *不需要再从历史文本中解析。记录对象在创建时一次性分配并循环复用，
+ *超过容量时覆盖最早的记录，因此长时间使用内存也不会增长。
+ */
+final class CalculationHistory
+{
+    /**
+     *一条运算记录，例如"5 + 3 = 8"。
+     */
+    static final class Entry
+    {
+        double first;                                           //第一个操作数(双精度模式)
+        final DecimalValue firstDecimal = new DecimalValue();   //第一个操作数(精确模式)
+        Operator operator;                                      //运算符
+        final InputBuffer operand = new InputBuffer(16);        //按原样保存的第二个操作数
+        boolean operandIsFirst;                                 //连续按等号时第二个操作数就是第一个操作数
+        double result;                                          //结果(双精度模式)
+        final DecimalValue resultDecimal = new DecimalValue();  //结果(精确模式)
+
+        void copyFrom(Entry other)
+        {
+            first = other.first;
+            firstDecimal.set(other.firstDecimal);
+            operator = other.operator;
+            operand.copyFrom(other.operand);
+            operandIsFirst = other.operandIsFirst;
+            result = other.result;
+            resultDecimal.set(other.resultDecimal);
+        }
+    }
+
+    private final Entry[] entries;
+    private int start;    //最早一条记录在数组中的位置
+    private int size;     //保存的记录数，包括可以重做的记录
+    private int position; //当前生效的记录数，position到size之间的记录可以重做
+
+    /**
+     *@param capacity 最多保存的记录数
+     */
+    CalculationHistory(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("历史记录容量必须大于0: " + capacity);
+        }
+        entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            entries[i] = new Entry();
+        }
+    }
+
+    /**
+     *新增一条记录。可以重做的记录会被丢弃；已满时覆盖最早的记录。
+     *@return 需要由调用方填写的记录
+     */
+    Entry record()
+    {
+        size = position;
+        if (size == entries.length)
+        {
+            start = (start + 1) % entries.length;
+            size--;
+        }
+        Entry entry = entries[(start + size) % entries.length];
+        size++;
+        position = size;
+        return entry;
+    }
+
+    /**
+     *撤销最近一条记录。
+     *@return 被撤销的记录，没有可撤销的记录时返回 null
+     */
+    Entry undo()
+    {
+        if (position == 0)
+        {
+            return null;
+        }
+        position--;
+        return entries[(start + position) % entries.length];
+    }
+
+    /**
+     *重做最近撤销的一条记录。
+     *@return 重做的记录，没有可重做的记录时返回 null
+     */
+    Entry redo()
+    {
+        if (position == size)
+        {
+            return null;
+        }
+        Entry entry = entries[(start + position) % entries.length];
+        position++;
+        return entry;
+    }
+
+    boolean canUndo()
+    {
+        return position > 0;
+    }
+
+    boolean canRedo()
+    {
+        return position < size;
+    }
+
+    int capacity()
+    {
+        return entries.length;
+    }
+
+    /**
+     *复制另一个容量相同的历史记录的全部内容，用于保存和恢复引擎状态。
+     */
+    void copyFrom(CalculationHistory other)
+    {
+        for (int i = 0; i < other.size; i++)
+        {
+            int index = (other.start + i) % entries.length;
+            entries[index].copyFrom(other.entries[index]);
+        }
+        start = other.start;
+        size = other.size;
+        position = other.position;
+    }
+
+    /**
+     *删除全部记录，已分配的记录对象保留以便复用。
+     */
+    void clear()
+    {
+        start = 0;
+        size = 0;
+        position = 0;
+    }
+}
@@ -0,0 +1,16 @@
+package org.calculator.moderncalculator;
+
+/**
+ *CalculationListener在CalculatorEngine完成一次二元运算时收到通知，例如用于把运算写入纸带。
+ *回调在调用press()的线程上执行，参数是引擎内部复用的缓冲区，回调返回后内容会改变，需要保存时应复制。
+ */
+public interface CalculationListener
+{
+    /**
+     *@param first 第一个操作数，与历史记录中显示的一致
+     *@param operator 运算符
+     *@param second 第二个操作数
+     *@param result 计算结果
+     */
+    void calculationCompleted(CharSequence first, Operator operator, CharSequence second, CharSequence result);
+}
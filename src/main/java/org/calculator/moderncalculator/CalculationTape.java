@@ -0,0 +1,285 @@
+package org.calculator.moderncalculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *CalculationTape把每一次完成的运算追加到磁盘上的二进制纸带文件中，用于审计。
+ *文件通过内存映射写入，追加一条记录只是内存复制，不会在界面线程上执行磁盘I/O；
+ *后台线程定期调用force()把数据同步到磁盘。
+ *
+ *文件格式：16字节文件头(魔数、版本、数据结束位置)，之后是依次追加的记录。
+ *每条记录：int 记录长度、long 时间戳(毫秒)、byte 运算符序号、
+ *三段"int 长度 + ASCII字符"分别保存第一个操作数、第二个操作数和结果，最后再写一次int 记录长度。
+ *记录末尾的长度使得启动时可以从文件末尾向前只读取最近的记录。
+ */
+public final class CalculationTape implements CalculationListener, Closeable
+{
+    /**
+     *从纸带中读出的一条运算记录。
+     */
+    public record Record(long timestamp, String first, Operator operator, String second, String result)
+    {
+    }
+
+    private static final int MAGIC = 0x43544150; //"CTAP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET = 8;                  //文件头中数据结束位置的偏移
+    private static final int FIXED_RECORD_SIZE = 4 + 8 + 1 + 4 * 3 + 4;
+    private static final int REGION_SIZE = 1 << 20;           //每次映射1MB，写满后映射下一段
+    private static final long MAX_READ_WINDOW = 256L << 20;   //readLast最多向前读取256MB
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;   //后台同步到磁盘的间隔
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final ScheduledExecutorService flusher;
+
+    private volatile MappedByteBuffer region; //当前写入的映射区域
+    private long regionStart;                 //当前映射区域在文件中的起始位置
+    private long end;                         //下一条记录的写入位置
+    private volatile boolean dirty;           //是否有尚未同步到磁盘的数据
+
+    private CalculationTape(FileChannel channel, MappedByteBuffer header, long end) throws IOException
+    {
+        this.channel = channel;
+        this.header = header;
+        this.end = end;
+        this.regionStart = end;
+        this.region = channel.map(FileChannel.MapMode.READ_WRITE, end, REGION_SIZE);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "calculation-tape-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     *打开纸带文件，不存在时创建。
+     *@param file 纸带文件路径
+     *@return 打开的纸带，不再使用时需要close()
+     *@throws IOException 无法读写文件，或者文件不是纸带文件
+     */
+    public static CalculationTape open(Path file) throws IOException
+    {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+        {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            boolean created = channel.size() == 0;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (created)
+            {
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putLong(END_OFFSET, HEADER_SIZE);
+            }
+            else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            {
+                throw new IOException("不是计算纸带文件: " + file);
+            }
+            long end = header.getLong(END_OFFSET);
+            if (end < HEADER_SIZE || end > channel.size())
+            {
+                throw new IOException("纸带文件已损坏: " + file);
+            }
+            return new CalculationTape(channel, header, end);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     *追加一条运算记录。只写入映射内存，由后台线程同步到磁盘。
+     */
+    @Override
+    public synchronized void calculationCompleted(CharSequence first, Operator operator, CharSequence second, CharSequence result)
+    {
+        int size = FIXED_RECORD_SIZE + first.length() + second.length() + result.length();
+        try
+        {
+            ensureRegion(size);
+        }
+        catch (IOException e)
+        {
+            System.err.println("无法写入计算纸带: " + e.getMessage());
+            return;
+        }
+        MappedByteBuffer buffer = region;
+        int index = (int) (end - regionStart);
+        int start = index;
+        index += 4; //记录长度最后写入，读到长度为0说明记录没有写完
+        buffer.putLong(index, System.currentTimeMillis());
+        index += 8;
+        buffer.put(index++, (byte) operator.ordinal());
+        index = putText(buffer, index, first);
+        index = putText(buffer, index, second);
+        index = putText(buffer, index, result);
+        buffer.putInt(index, size);
+        buffer.putInt(start, size);
+        end += size;
+        header.putLong(END_OFFSET, end);
+        dirty = true;
+    }
+
+    private static int putText(MappedByteBuffer buffer, int index, CharSequence text)
+    {
+        int length = text.length();
+        buffer.putInt(index, length);
+        index += 4;
+        for (int i = 0; i < length; i++)
+        {
+            buffer.put(index++, (byte) text.charAt(i)); //数字、小数点和负号都是ASCII字符
+        }
+        return index;
+    }
+
+    /**
+     *确保当前映射区域还能写入size字节，不够时交给后台线程同步旧区域并映射新区域。
+     */
+    private void ensureRegion(int size) throws IOException
+    {
+        if (end + size <= regionStart + region.capacity())
+        {
+            return;
+        }
+        MappedByteBuffer previous = region;
+        flusher.execute(previous::force);
+        region = channel.map(FileChannel.MapMode.READ_WRITE, end, Math.max(REGION_SIZE, size));
+        regionStart = end;
+    }
+
+    /**
+     *读取最近的count条记录，从旧到新排列。
+     *从文件末尾向前按记录长度跳转，只会访问这些记录所在的页，与文件总长度无关。
+     *文件被截断或损坏时，在第一条无效的记录处停止，只返回比它新的记录。
+     *@param count 最多读取的记录数
+     *@return 读取到的记录
+     *@throws IOException 无法读取文件
+     */
+    public synchronized List<Record> readLast(int count) throws IOException
+    {
+        long from = Math.max(HEADER_SIZE, end - MAX_READ_WINDOW);
+        int size = (int) (end - from);
+        if (count <= 0 || size == 0)
+        {
+            return new ArrayList<>();
+        }
+        MappedByteBuffer view = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+        Record[] newest = new Record[count]; //从新到旧
+        int found = 0;
+        int position = size;
+        while (found < count && position >= FIXED_RECORD_SIZE)
+        {
+            int length = view.getInt(position - 4);
+            if (length < FIXED_RECORD_SIZE || length > position)
+            {
+                break; //到达读取窗口的开头，或者记录长度已损坏
+            }
+            position -= length;
+            Record record = readRecord(view, position, length);
+            if (record == null)
+            {
+                break;
+            }
+            newest[found++] = record;
+        }
+        List<Record> records = new ArrayList<>(found);
+        for (int i = found - 1; i >= 0; i--)
+        {
+            records.add(newest[i]);
+        }
+        return records;
+    }
+
+    /**
+     *读取并检查一条记录：开头和末尾的长度相同，运算符序号有效，三段文本都在记录之内并且正好填满记录。
+     *@return 记录，无效时返回 null
+     */
+    private static Record readRecord(ByteBuffer view, int index, int length)
+    {
+        int operator = view.get(index + 12);
+        if (view.getInt(index) != length || operator < 0 || operator >= OPERATORS.length)
+        {
+            return null;
+        }
+        int limit = index + length - 4; //末尾长度的位置
+        String[] texts = new String[3];
+        int position = index + 13;
+        for (int i = 0; i < texts.length; i++)
+        {
+            int textLength = view.getInt(position);
+            position += 4;
+            if (textLength < 0 || textLength > limit - position - 4 * (texts.length - 1 - i))
+            {
+                return null;
+            }
+            byte[] bytes = new byte[textLength];
+            view.get(position, bytes);
+            texts[i] = new String(bytes, StandardCharsets.US_ASCII);
+            position += textLength;
+        }
+        if (position != limit)
+        {
+            return null;
+        }
+        return new Record(view.getLong(index + 4), texts[0], OPERATORS[operator], texts[1], texts[2]);
+    }
+
+    /**
+     *把尚未同步的数据写入磁盘。由后台线程定期调用，也可以手动调用。
+     */
+    public void flush()
+    {
+        if (!dirty)
+        {
+            return;
+        }
+        dirty = false;
+        region.force();
+        header.force();
+    }
+
+    /**
+     *同步剩余数据并关闭文件。
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        flusher.shutdown();
+        try
+        {
+            flusher.awaitTermination(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        dirty = true;
+        flush();
+        channel.close();
+    }
+}
@@ -1,15 +1,40 @@
 package org.calculator.moderncalculator;
 
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Menu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 
-import java.text.DecimalFormat;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
- *CalculatorController类负责处理计算器的所有逻辑。
- *它响应用户通过GUI进行的操作，并更新显示。
+ *CalculatorController类负责把用户通过GUI进行的操作转交给CalculatorEngine，
+ *并根据引擎的状态更新显示。所有计算逻辑都在CalculatorEngine中。
  */
 public class CalculatorController
 {
@@ -19,14 +44,91 @@ public class CalculatorController
     private TextField displayField; //主显示屏，显示当前输入或结果
     @FXML
     private TextField historyDisplayField; //历史记录显示屏，显示计算过程
+    @FXML
+    private ProgressIndicator progressIndicator; //后台运算进行中时显示，点击可以取消
+    @FXML
+    private GridPane keypad; //按键区，换算模式下下移，给换算栏让出位置
+    @FXML
+    private HBox conversionBar; //换算栏，只在换算模式下显示
+    @FXML
+    private ComboBox<String> fromUnitBox; //换算前的单位
+    @FXML
+    private ComboBox<String> toUnitBox;   //换算后的单位，只列出与fromUnitBox同一类别的单位
+    @FXML
+    private GridPane programmerPad; //程序员模式的多进制显示和按键，只在程序员模式下显示
+    @FXML
+    private TextField basesField;   //同时显示十六进制、十进制和八进制
+    @FXML
+    private TextField binaryField;  //按字长显示全部二进制位
 
-    //计算器状态变量
-    private String currentInputValue = "0";   //当前用户输入的数字字符串，默认为 "0"
-    private String historyLog = "";           //存储历史计算表达式的字符串
-    private double firstOperand = 0;          //第一个操作数
-    private String pendingOperator = "";      //等待执行的操作符(+, -, ×, ÷, %)
-    private boolean isAwaitingSecondOperand = false; //标记是否在输入第一个操作数和操作符后，等待输入第二个操作数
-    private boolean resultJustDisplayed = true;   //标记当前显示的是否是上一次计算的结果
+    //计算引擎，保存全部计算状态；可撤销的步数可以用系统属性calculator.historyCapacity设置
+    private final CalculatorEngine engine = new CalculatorEngine(CalculatorEngine.DEFAULT_MAX_DIGITS,
+            Integer.getInteger("calculator.historyCapacity", CalculatorEngine.DEFAULT_HISTORY_CAPACITY));
+    private CalculationTape tape; //运算纸带，无法打开时为 null
+    private final CalculatorMetrics metrics = CalculatorMetrics.create(); //运行指标，没有启用时为 null
+    private KeyRecording recording; //按键录制，没有启用时为 null
+    private boolean memoryLoaded;   //存储器快照在第一次使用存储器键时才读取
+    private boolean memoryUnreadable; //快照读取失败时为true，退出时不覆盖原来的文件
+    private static final int MEMORY_SLOTS = 10; //右键菜单中可以选择的存储槽个数
+    static final double KEYPAD_TOP = 115.0;            //按键区的上边距
+    static final double CONVERSION_BAR_HEIGHT = 35.0;  //换算栏占用的高度
+    static final double PROGRAMMER_PAD_HEIGHT = 145.0; //程序员模式的按键区占用的高度
+    private static final int[] BASES = {ProgrammerEngine.HEX, ProgrammerEngine.DECIMAL, ProgrammerEngine.OCTAL,
+            ProgrammerEngine.BINARY};
+    private static final String[] BASE_NAMES = {"十六进制", "十进制", "八进制", "二进制"};
+    private static final int[] WORD_SIZES = {64, 32, 16, 8};
+    private boolean conversionMode;  //是否显示换算栏
+    private UnitConverter converter; //第一次打开换算模式时加载，没有打开过或无法加载时为 null
+    private int fromUnit = -1;       //选择的单位编号，选择单位时才查找名称，换算时直接使用
+    private int toUnit = -1;
+
+    //精确模式下对很长的操作数运算可能需要数秒，这些按键在引擎的副本上于后台线程执行，
+    //完成后通过Platform.runLater把结果取回界面线程；其他按键仍然直接在界面线程处理
+    private final ExecutorService worker = newWorkerExecutor();
+    private Future<?> running;  //正在后台执行的运算，没有时为 null
+    private long generation;    //每次开始或取消后台运算时加1，用于丢弃已取消的运算结果
+
+    //按键只标记需要重新绘制，由renderer在下一个脉冲统一更新显示，
+    //这样批量输入时每一帧只触发一次布局和CSS计算
+    private long renderedRevision = -1; //最近一次绘制时引擎的版本号
+    private final AnimationTimer renderer = new AnimationTimer()
+    {
+        @Override
+        public void handle(long now)
+        {
+            stop(); //没有新的按键时不再占用脉冲
+            updateDisplays();
+            if (metrics != null)
+            {
+                metrics.displayUpdated(engine.error());
+            }
+        }
+    };
+
+    //输入第二个操作数时历史记录显示屏预览计算结果。预览不在按键的处理中计算，
+    //而是停止输入PREVIEW_DELAY纳秒后由previewer计算一次，连续输入时只保留上一次的预览
+    private static final long PREVIEW_DELAY = 150_000_000L;
+    private long previewDue;        //可以计算预览的时刻，与AnimationTimer的now使用同一个时钟
+    private boolean previewShown;   //历史记录显示屏当前显示的是否是预览
+    private final AnimationTimer previewer = new AnimationTimer()
+    {
+        @Override
+        public void handle(long now)
+        {
+            if (now < previewDue)
+            {
+                return;
+            }
+            stop();
+            if (running != null || !engine.canPreview())
+            {
+                return; //后台运算完成后会重新绘制
+            }
+            String preview = engine.previewText();
+            previewShown = preview != null;
+            setTextIfChanged(historyDisplayField, preview != null ? preview : engine.historyText());
+        }
+    };
 
     /**
      *初始化方法，在FXML加载完成后自动调用。
@@ -35,545 +137,727 @@ public class CalculatorController
     @FXML
     public void initialize()
     {
-        updateDisplays(); //初始化时更新显示内容
+        installContextMenu();
+        progressIndicator.setOnMouseClicked(event -> cancel());
+        openRecording();
+        openTape();
+        if (tape != null || metrics != null)
+        {
+            engine.setCalculationListener(this::calculationCompleted);
+        }
+        updateDisplays(); //初始化时立即更新显示内容
     }
 
     /**
-     *处理数字按钮点击事件。
-     *@param event 点击事件对象，可以从中获取被点击的按钮
+     *不使用FXML时由CalculatorView调用，传入用代码创建的控件并完成初始化。
+     *@param displayField 主显示屏
+     *@param historyDisplayField 历史记录显示屏
+     *@param progressIndicator 后台运算的进度指示器
+     *@param keypad 按键区
+     *@param conversionBar 换算栏
+     *@param fromUnitBox 换算前的单位
+     *@param toUnitBox 换算后的单位
+     *@param programmerPad 程序员模式的按键区
+     *@param basesField 十六进制、十进制和八进制的显示
+     *@param binaryField 二进制的显示
      */
-    @FXML
-    private void handleDigitAction(ActionEvent event)
+    void bind(TextField displayField, TextField historyDisplayField, ProgressIndicator progressIndicator,
+              GridPane keypad, HBox conversionBar, ComboBox<String> fromUnitBox, ComboBox<String> toUnitBox,
+              GridPane programmerPad, TextField basesField, TextField binaryField)
     {
-        //如果显示屏正显示错误信息，则不处理数字输入
-        if (isDisplayShowingError(displayField.getText()))
-        {
-            return;
-        }
-        String digit = ((Button) event.getSource()).getText(); //获取被点击按钮上的数字
+        this.displayField = displayField;
+        this.historyDisplayField = historyDisplayField;
+        this.progressIndicator = progressIndicator;
+        this.keypad = keypad;
+        this.conversionBar = conversionBar;
+        this.fromUnitBox = fromUnitBox;
+        this.toUnitBox = toUnitBox;
+        this.programmerPad = programmerPad;
+        this.basesField = basesField;
+        this.binaryField = binaryField;
+        initialize();
+    }
 
-        //如果刚显示完结果，并且用户开始输入数字，则重置当前输入值为新数字
-        if (resultJustDisplayed)
+    /**
+     *打开运算纸带，把最近的运算恢复到撤销历史中，并记录之后的每一次运算。
+     *纸带默认保存在用户目录下的.calculator/tape.bin，可以用系统属性calculator.tape指定其他路径。
+     *纸带无法打开时计算器照常工作，只是不保存记录。
+     */
+    private void openTape()
+    {
+        String path = System.getProperty("calculator.tape",
+                Path.of(System.getProperty("user.home"), ".calculator", "tape.bin").toString());
+        try
         {
-            currentInputValue = digit;
-            resultJustDisplayed = false; //不再是“刚显示完结果”的状态
-            //如果不是在等待第二个操作数（即开始新的独立计算），则清空历史记录
-            if (!isAwaitingSecondOperand)
+            tape = CalculationTape.open(Path.of(path));
+            if (recording == null) //录制时从空的撤销历史开始，回放才能得到相同的结果
             {
-                historyLog = "";
+                engine.restoreHistory(tape.readLast(engine.historyCapacity()));
             }
         }
-        else //如果不是刚显示完结果，则追加数字
+        catch (IOException e)
         {
-            //处理前导零：如果当前输入是"0"且新数字不是"."，则替换"0"
-            if (currentInputValue.equals("0") && !digit.equals("."))
-            {
-                currentInputValue = digit;
-            }
-            //处理"-0"的情况
-            else if (currentInputValue.equals("-0") && !digit.equals("."))
-            {
-                currentInputValue = "-" + digit;
-            }
-            else {
-                //限制输入长度，防止溢出或显示问题
-                String temp = currentInputValue.startsWith("-") ? currentInputValue.substring(1) : currentInputValue;
-                if (temp.replace(".", "").length() < 15)
-                {
-                    currentInputValue += digit;
-                }
-            }
+            System.err.println("无法打开计算纸带: " + e.getMessage());
         }
-        updateDisplays(); //更新显示
     }
 
     /**
-     *处理操作符按钮 (+, -, ×, ÷, %) 点击事件。
-     *@param event 点击事件对象
+     *设置了系统属性calculator.record时，把这次运行交给引擎的全部输入录制到指定文件，
+     *退出时记录显示屏的内容，之后可以用Launcher --replay回放并检查结果。
      */
-    @FXML
-    private void handleOperatorAction(ActionEvent event)
+    private void openRecording()
     {
-        String newOperator = ((Button) event.getSource()).getText(); //获取操作符
-        //如果显示屏正显示错误信息，则不处理
-        if (isDisplayShowingError(displayField.getText()))
+        String path = System.getProperty("calculator.record");
+        if (path == null)
         {
             return;
         }
-        //如果不是刚显示完结果，并且正在等待第二个操作数 (例如: 5 + 3 - , 按下-时)
-        //且当前输入是有效数字，则先计算之前的结果
-        if (!resultJustDisplayed && isAwaitingSecondOperand)
-        {
-            if (canParseAsNumber(currentInputValue))
-            {
-                calculate(); //计算 5 + 3
-            }
-            //如果当前输入不是有效数字（例如只输入了"-")，则忽略
-            else
-            {
-            }
-        }
         try
         {
-            //防止单独输入"-"后直接按操作符
-            if (currentInputValue.equals("-"))
-            {
-                displayError("无效输入");
-                return;
-            }
-            firstOperand = Double.parseDouble(currentInputValue); //将当前输入转为第一个操作数
+            recording = KeyRecording.open(Path.of(path), engine.historyCapacity());
         }
-        catch (NumberFormatException e)
+        catch (IOException e)
         {
-            displayError("错误: 无效数字"); //如果转换失败，显示错误
-            return;
+            System.err.println("无法打开按键录制文件: " + e.getMessage());
         }
-        pendingOperator = newOperator; //设置等待执行的操作符
-        historyLog = formatResult(firstOperand) + " " + pendingOperator; //更新历史记录，例如"5 +"
-        isAwaitingSecondOperand = true; //设置为等待第二个操作数状态
-        resultJustDisplayed = true;   //准备接收第二个操作数
-        updateDisplays(); //更新显示
     }
 
     /**
-     *处理等号 (=) 按钮点击事件。
-     *@param event 点击事件对象
+     *存储器快照默认保存在用户目录下的.calculator/memory.bin，可以用系统属性calculator.memory指定其他路径。
      */
-    @FXML
-    private void handleEqualsAction(ActionEvent event)
+    private static Path memoryFile()
+    {
+        return Path.of(System.getProperty("calculator.memory",
+                Path.of(System.getProperty("user.home"), ".calculator", "memory.bin").toString()));
+    }
+
+    /**
+     *第一次按存储器键时读取上次退出时保存的存储器，没有用到存储器时启动过程不读这个文件。
+     *录制时从空的存储器开始，回放才能得到相同的结果。
+     */
+    private void loadMemory()
     {
-        //如果显示屏正显示错误信息，则不处理
-        if (isDisplayShowingError(displayField.getText()))
+        memoryLoaded = true;
+        if (recording != null)
         {
             return;
         }
-        //如果没有等待执行的操作符(例如用户只输入了 "5" 然后按 "=")
-        if (pendingOperator.isEmpty())
+        try
         {
-            historyLog = currentInputValue + " ="; //历史记录显示 "5 ="
-            resultJustDisplayed = true; //标记结果已显示
-            updateDisplays();
-            return;
+            engine.memory().load(memoryFile(), engine.mathContext());
         }
-        //防止当前输入为"-"时按等号
-        if (currentInputValue.equals("-"))
+        catch (IOException e)
         {
-            displayError("无效输入");
-            return;
+            memoryUnreadable = true;
+            System.err.println("无法读取存储器，退出时不会保存: " + e.getMessage());
         }
-        calculate(); //执行计算
     }
 
     /**
-     *执行实际的计算过程。
-     *根据pendingOperator对firstOperand和currentInputValue(作为第二个操作数)进行运算。
+     *引擎完成一次二元运算时调用，把运算写入纸带并计数。
      */
-    private void calculate()
+    private void calculationCompleted(CharSequence first, Operator operator, CharSequence second, CharSequence result)
     {
-        //如果没有挂起的操作符，则不执行任何操作
-        if (pendingOperator.isEmpty())
+        if (metrics != null)
         {
-            return;
+            metrics.operationCompleted(operator);
         }
+        if (tape != null)
+        {
+            tape.calculationCompleted(first, operator, second, result);
+        }
+    }
 
-        double secondOperand;
-        String secondOperandStrForHistory = currentInputValue; //用于历史记录的第二个操作数
-
-        try
+    /**
+     *程序退出时调用，把纸带中剩余的数据写入磁盘，启用了运行指标时输出报告。
+     */
+    public void shutdown()
+    {
+        cancel();
+        worker.shutdownNow();
+        if (metrics != null)
         {
-            //特殊情况：如果刚显示完结果并且在等待第二个操作数（例如：5+然后按=，此时会用5作为第二个操作数，即 5+5）
-            if (resultJustDisplayed && isAwaitingSecondOperand)
+            metrics.close();
+        }
+        if (memoryLoaded && !memoryUnreadable && recording == null) //没有用过存储器时快照不会改变
+        {
+            try
             {
-                //如果是连续按等号，firstOperand已经是上次的结果，currentInputValue是上次的第二个操作数
-                //所以secondOperand = firstOperand
-                secondOperand = firstOperand;
-                secondOperandStrForHistory = formatResult(firstOperand); //历史记录也用格式化后的第一个操作数
+                engine.memory().save(memoryFile());
             }
-            else
+            catch (IOException e)
             {
-                //正常情况：解析当前输入值为第二个操作数
-                if (currentInputValue.equals("-")) //防止单独"-"作为操作数
-                {
-                    displayError("无效输入");
-                    return;
-                }
-                secondOperand = Double.parseDouble(currentInputValue);
+                System.err.println("保存存储器失败: " + e.getMessage());
             }
         }
-        catch (NumberFormatException e)
+        if (recording != null)
         {
-            displayError("错误: 无效数字"); //解析失败则显示错误
-            return;
+            try
+            {
+                recording.close(engine.displayText(), engine.historyText());
+            }
+            catch (IOException e)
+            {
+                System.err.println("写入按键录制文件失败: " + e.getMessage());
+            }
+        }
+        if (tape != null)
+        {
+            try
+            {
+                tape.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("关闭计算纸带失败: " + e.getMessage());
+            }
+        }
+        if (converter != null)
+        {
+            try
+            {
+                converter.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("关闭换算表失败: " + e.getMessage());
+            }
         }
+    }
 
-        //更新历史记录，显示完整的计算表达式，例如"5 + 3 ="
-        historyLog = formatResult(firstOperand) + " " + pendingOperator + " " + secondOperandStrForHistory + " =";
-        double resultValue = 0;
-        boolean error = false; //错误标记
+    /**
+     *注册键盘输入：数字和运算符直接输入，Enter为等号，Backspace退格，Esc为C(后台运算进行中时为取消)，Delete为CE；
+     *Ctrl+V粘贴，Ctrl+Z撤销，Ctrl+Y重做(macOS上为Command键)。
+     *@param scene 计算器所在的场景
+     */
+    public void installKeyboard(Scene scene)
+    {
+        scene.getAccelerators().put(KeyCombination.keyCombination("Shortcut+Z"), () -> press(Key.UNDO));
+        scene.getAccelerators().put(KeyCombination.keyCombination("Shortcut+Y"), () -> press(Key.REDO));
+        scene.getAccelerators().put(KeyCombination.keyCombination("Shortcut+V"), this::paste);
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, this::handleKeyPressed);
+        scene.addEventFilter(KeyEvent.KEY_TYPED, this::handleKeyTyped);
+        if (metrics != null)
+        {
+            //每个脉冲中CSS和布局的耗时，没有变化的脉冲不会调用这两个监听器
+            scene.addPreLayoutPulseListener(metrics::pulseStarted);
+            scene.addPostLayoutPulseListener(metrics::pulseFinished);
+        }
+    }
 
-        //根据等待的操作符执行相应的计算
-        switch (pendingOperator)
+    /**
+     *处理没有对应字符的按键。Enter在这里处理并消费掉，否则会触发获得焦点的按钮。
+     */
+    private void handleKeyPressed(KeyEvent event)
+    {
+        Key key;
+        switch (event.getCode())
         {
-            case "+":
-                resultValue = firstOperand + secondOperand;
+            case ENTER:
+                key = Key.EQUALS;
                 break;
-            case "-":
-                resultValue = firstOperand - secondOperand;
+            case BACK_SPACE:
+                key = Key.BACKSPACE;
                 break;
-            case "×":
-                resultValue = firstOperand * secondOperand;
-                break;
-            case "÷":
-                if (secondOperand == 0) //除数不能为零
+            case ESCAPE:
+                if (running != null)
                 {
-                    displayError("除数不能为零");
-                    error = true;
-                }
-                else
-                {
-                    resultValue = firstOperand / secondOperand;
+                    event.consume();
+                    cancel();
+                    return;
                 }
+                key = Key.CLEAR;
                 break;
-            case "%": //求余操作
-                if (secondOperand == 0)
-                {
-                    displayError("模数不能为零");
-                    error = true;
-                }
-                else
-                {
-                    resultValue = firstOperand % secondOperand;
-                }
+            case DELETE:
+                key = Key.CLEAR_ENTRY;
                 break;
             default:
                 return;
         }
+        event.consume();
+        press(key);
+    }
 
-        if (!error) //如果没有发生错误
+    /**
+     *键盘输入的字符和粘贴的文本走同一条输入管道。
+     */
+    private void handleKeyTyped(KeyEvent event)
+    {
+        if (event.isShortcutDown() || event.isAltDown()) //快捷键由accelerators处理
+        {
+            return;
+        }
+        String text = event.getCharacter();
+        if (text.length() == 1 && (engine.isProgrammerMode() ? Key.fromProgrammerChar(text.charAt(0))
+                : Key.fromChar(text.charAt(0))) != null)
         {
-            currentInputValue = formatResult(resultValue); //将计算结果格式化后设为当前输入值
-            firstOperand = resultValue; //将结果保存为下一次计算的第一个操作数
+            event.consume();
+            type(text);
         }
-        resultJustDisplayed = true; //标记结果已显示
-        isAwaitingSecondOperand = false;
-        updateDisplays(); //更新显示
     }
+
     /**
-     *处理 "C" (Clear All) 按钮点击事件。
-     *重置计算器到初始状态。
-     *@param event 点击事件对象
+     *粘贴剪贴板中的数字或表达式，整段文本一次交给引擎处理。
      */
-    @FXML
-    private void handleClearAction(ActionEvent event)
+    private void paste()
     {
-        currentInputValue = "0";      //当前输入重置为 "0"
-        historyLog = "";              //清空历史记录
-        firstOperand = 0;             //第一个操作数重置为 0
-        pendingOperator = "";         //清空等待的操作符
-        isAwaitingSecondOperand = false; //不再等待第二个操作数
-        resultJustDisplayed = true;   //恢复到初始“结果已显示”状态（虽然是0）
-        updateDisplays();             //更新显示
+        String text = Clipboard.getSystemClipboard().getString();
+        if (text != null)
+        {
+            type(text);
+        }
     }
-    /**
-     *处理 "CE" (Clear Entry) 按钮点击事件。
-     *清除当前输入项。
-     *@param event 点击事件对象
-     */
-    @FXML
-    private void handleClearEntryAction(ActionEvent event)
+
+    private void type(CharSequence text)
     {
-        //如果显示屏正显示错误信息，CE的行为等同于 C
-        if (isDisplayShowingError(displayField.getText()))
+        if (running != null)
+        {
+            return; //后台运算进行中时忽略输入，只能取消
+        }
+        if (metrics != null)
         {
-            handleClearAction(event); //调用C的处理逻辑
+            metrics.inputReceived();
+        }
+        if (engine.isExpensive(text))
+        {
+            String copy = text.toString();
+            runInBackground(background -> background.type(copy), () -> recording.text(copy));
             return;
         }
-
-        currentInputValue = "0"; //当前输入重置为 "0"
-        //如果不是在等待第二个操作数
-        //那么清除历史记录和挂起的操作符，因为当前条目被清除了，之前的半成品表达式也应无效。
-        if (!isAwaitingSecondOperand)
+        engine.type(text);
+        if (recording != null)
         {
-            historyLog = "";
-            pendingOperator = "";
+            recording.text(text);
         }
-        //如果正在等待第二个操作数(例如5 +然后按CE)，则historyLog(5 +)应该保留。
-        resultJustDisplayed = true; //将状态设为准备接收新输入
-        updateDisplays(); //更新显示
+        renderer.start();
     }
+
     /**
-     *处理退格 (Backspace) 按钮点击事件。
-     *@param event 点击事件对象
+     *在主显示屏上添加右键菜单，用于选择计算精度(双精度或BigDecimal精确计算)和调用科学函数。
      */
-    @FXML
-    private void handleBackspaceAction(ActionEvent event)
+    private void installContextMenu()
     {
-        if (isDisplayShowingError(displayField.getText()))
-        {
-            return;
-        }
-        //如果刚显示完结果，且不是在等待第二个操作数（例如"5 + 3 = 8"，此时按退格）
-        //并且有挂起的操作符
-        //且历史记录不是以操作符结尾（历史记录是完整的"a op b ="或"a ="）
-        if (resultJustDisplayed && !isAwaitingSecondOperand && !pendingOperator.isEmpty() && !historyLog.endsWith(pendingOperator))
+        ToggleGroup group = new ToggleGroup();
+        ContextMenu menu = new ContextMenu();
+        for (Precision precision : Precision.values())
         {
-            String[] parts = historyLog.split(" "); //按空格分割历史记录
-            //情况1:历史记录是"firstOp op secondOp =" (例如"5 + 3 =")
-            if (parts.length >= 4 && parts[parts.length - 1].equals("="))
+            RadioMenuItem item = new RadioMenuItem(precision.label());
+            item.setToggleGroup(group);
+            item.setSelected(precision.mathContext() == engine.mathContext());
+            item.setOnAction(event ->
             {
-                try
+                cancel();
+                engine.setMathContext(precision.mathContext()); //切换精度会重置计算器
+                if (recording != null)
                 {
-                    //尝试恢复到"="按下之前的状态
-                    firstOperand = Double.parseDouble(parts[0]);
-                    pendingOperator = parts[1];
-                    currentInputValue = parts[2]; //第二个操作数恢复到当前输入
-                    historyLog = formatResult(firstOperand) + " " + pendingOperator + " " + currentInputValue; //恢复历史"5 + 3"
-                    isAwaitingSecondOperand = true; //设置为等待第二个操作数
-                    resultJustDisplayed = false; //不再是“刚显示结果”状态，允许修改currentInputValue
-                    updateDisplays();
-                    return;
-                }
-                catch (Exception e) //解析失败则回退到更简单的状态
-                {
-                    currentInputValue = "0";
-                    resultJustDisplayed = true;
-                    if (!isAwaitingSecondOperand) historyLog = "";
-                    updateDisplays();
-                    return;
+                    recording.precision(precision);
                 }
-            }
-            // 情况2:历史记录是"operand ="(例如"5 =")
-            else if (parts.length == 2 && parts[1].equals("="))
-            {
-                currentInputValue = parts[0]; //操作数恢复到当前输入
-                historyLog = ""; //清空历史
-                pendingOperator = ""; //清空操作符
-                resultJustDisplayed = false; //允许修改currentInputValue
-                updateDisplays();
-                return;
-            }
+                renderer.start();
+            });
+            menu.getItems().add(item);
         }
-        //如果正在等待第二个操作数，并且刚显示完结果（例如按了"5 +"后，显示屏是"5"历史是"5 +"此时按退格）
-        //目的是撤销操作符
-        if (isAwaitingSecondOperand && resultJustDisplayed && historyLog.endsWith(pendingOperator))
+        menu.getItems().add(new SeparatorMenuItem());
+        menu.getItems().add(createFunctionMenu());
+        menu.getItems().add(createMemoryMenu());
+        CheckMenuItem conversion = new CheckMenuItem("单位换算");
+        conversion.setOnAction(event -> conversion.setSelected(setConversionMode(conversion.isSelected())));
+        menu.getItems().add(conversion);
+        menu.getItems().add(new SeparatorMenuItem());
+        CheckMenuItem programmer = new CheckMenuItem("程序员模式");
+        programmer.setOnAction(event -> setProgrammerMode(programmer.isSelected()));
+        menu.getItems().add(programmer);
+        menu.getItems().add(createBaseMenu());
+        menu.getItems().add(createWordSizeMenu());
+        displayField.setContextMenu(menu);
+    }
+
+    /**
+     *选择程序员模式的进制。
+     */
+    private Menu createBaseMenu()
+    {
+        ToggleGroup group = new ToggleGroup();
+        Menu menu = new Menu("进制");
+        for (int i = 0; i < BASES.length; i++)
         {
-            currentInputValue = formatResult(firstOperand); //当前输入恢复为第一个操作数
-            historyLog = ""; //清空历史
-            pendingOperator = ""; //清空操作符
-            isAwaitingSecondOperand = false; //不再等待第二个操作数
-            resultJustDisplayed = false; //允许修改currentInputValue
-            updateDisplays();
-            return;
+            int base = BASES[i];
+            RadioMenuItem item = new RadioMenuItem(BASE_NAMES[i]);
+            item.setToggleGroup(group);
+            item.setSelected(base == engine.programmer().base());
+            item.setOnAction(event -> changeProgrammer(() -> engine.setProgrammerBase(base)));
+            menu.getItems().add(item);
         }
-        //如果不是刚显示完结果（即用户正在输入数字）
-        if (!resultJustDisplayed)
+        return menu;
+    }
+
+    /**
+     *选择程序员模式的字长。
+     */
+    private Menu createWordSizeMenu()
+    {
+        ToggleGroup group = new ToggleGroup();
+        Menu menu = new Menu("字长");
+        for (int wordSize : WORD_SIZES)
         {
-            if (!currentInputValue.isEmpty() && !currentInputValue.equals("0"))
-            {
-                //特殊处理：如果正在等待第二个操作数，历史记录以操作符结尾，且当前输入只有一个非零数字
-                if (isAwaitingSecondOperand && historyLog.endsWith(pendingOperator)
-                        && currentInputValue.length() == 1 && !currentInputValue.equals("0"))
-                {
-                    currentInputValue = "0"; //将当前输入设为"0"而不是空字符串
-                }
-                else
-                {
-                    currentInputValue = currentInputValue.substring(0, currentInputValue.length() - 1); //删除最后一个字符
-                    //如果删除后为空或只剩负号，则设为"0"
-                    if (currentInputValue.isEmpty() || currentInputValue.equals("-"))
-                    {
-                        currentInputValue = "0";
-                    }
-                }
-            }
-            else //如果当前输入是空或"0"，则设为"0"
-            {
-                currentInputValue = "0";
-            }
-            updateDisplays();
-            return;
+            RadioMenuItem item = new RadioMenuItem(wordSize + " 位");
+            item.setToggleGroup(group);
+            item.setSelected(wordSize == engine.programmer().wordSize());
+            item.setOnAction(event -> changeProgrammer(() -> engine.setProgrammerWordSize(wordSize)));
+            menu.getItems().add(item);
         }
-        //其他一般情况或退格到初始状态
-        currentInputValue = "0";
-        if (!isAwaitingSecondOperand) //如果不是在输入第二个操作数，则清空历史
+        return menu;
+    }
+
+    /**
+     *打开或关闭程序员模式，普通模式的计算保留到回到普通模式时继续。
+     */
+    private void setProgrammerMode(boolean enabled)
+    {
+        changeProgrammer(() -> engine.setProgrammerMode(enabled));
+        programmerPad.setVisible(enabled);
+        programmerPad.setManaged(enabled);
+        layoutBars();
+    }
+
+    /**
+     *切换程序员模式、进制或字长，并记录到按键录制中。
+     */
+    private void changeProgrammer(Runnable change)
+    {
+        cancel();
+        change.run();
+        if (recording != null)
         {
-            historyLog = "";
+            ProgrammerEngine programmer = engine.programmer();
+            recording.programmer(engine.isProgrammerMode(), programmer.base(), programmer.wordSize());
         }
-        updateDisplays();
+        renderer.start();
     }
+
     /**
-     *处理小数点 (.) 按钮点击事件。
-     *@param event 点击事件对象
+     *按打开的模式依次排列换算栏、程序员模式的按键区和按键区。
      */
-    @FXML
-    private void handleDecimalAction(ActionEvent event)
+    private void layoutBars()
     {
-        if (isDisplayShowingError(displayField.getText()))
+        double top = KEYPAD_TOP;
+        if (conversionMode)
         {
-            return;
+            top += CONVERSION_BAR_HEIGHT;
         }
-        //如果刚显示完结果，用户按小数点，则开始新的输入 "0."
-        if (resultJustDisplayed)
+        AnchorPane.setTopAnchor(programmerPad, top);
+        if (engine.isProgrammerMode())
         {
-            currentInputValue = "0.";
-            resultJustDisplayed = false; //不再是“刚显示完结果”的状态
-            //如果不是在等待第二个操作数（即开始新的独立计算），则清空历史记录
-            if (!isAwaitingSecondOperand)
-            {
-                historyLog = "";
-            }
+            top += PROGRAMMER_PAD_HEIGHT;
         }
-        //如果当前输入中不包含小数点
-        else if (!currentInputValue.contains("."))
+        AnchorPane.setTopAnchor(keypad, top);
+    }
+
+    /**
+     *打开或关闭换算模式。第一次打开时加载换算表，默认为用户目录下的.calculator/units.bin，
+     *可以用系统属性calculator.units指定其他路径；换算表文件被替换后自动重新加载。
+     *@return 换算模式是否已打开，换算表无法加载时为false
+     */
+    private boolean setConversionMode(boolean enabled)
+    {
+        if (enabled && converter == null)
         {
-            if (currentInputValue.isEmpty()) //如果当前输入为空（理论上不应发生，因为会是"0"）
-            {
-                currentInputValue = "0.";
-            }
-            else if (currentInputValue.equals("-")) //如果当前是"-"
+            try
             {
-                currentInputValue += "0."; //变为 "-0."
+                converter = UnitConverter.open(UnitConverter.defaultFile());
             }
-            else //正常追加小数点
+            catch (IOException e)
             {
-                currentInputValue += ".";
+                System.err.println("无法加载换算表: " + e.getMessage());
+                return false;
             }
+            converter.setReloadListener(() -> Platform.runLater(this::refreshUnits));
+            refreshUnits();
         }
-        updateDisplays(); //更新显示
+        conversionMode = enabled;
+        conversionBar.setVisible(enabled);
+        conversionBar.setManaged(enabled);
+        layoutBars();
+        return enabled;
     }
+
     /**
-     *处理正负号 (+/-) 按钮点击事件。
-     *@param event 点击事件对象
+     *按当前的换算表填写单位列表，表中仍有原来选择的单位时保留选择。换算表重新加载后也会调用。
      */
-    @FXML
-    private void handleSignAction(ActionEvent event)
+    private void refreshUnits()
     {
-        if (isDisplayShowingError(displayField.getText()))
+        ConversionTable table = converter.table();
+        List<String> names = new ArrayList<>(table.size());
+        for (int i = 0; i < table.size(); i++)
         {
-            return;
+            names.add(table.name(table.unitAt(i)));
         }
-        //如果以"-"开头，则去掉"-"
-        if (currentInputValue.startsWith("-"))
+        int selected = table.contains(fromUnit) ? fromUnit : table.size() > 0 ? table.unitAt(0) : -1;
+        fromUnitBox.getItems().setAll(names);
+        fromUnit = selected;
+        fromUnitBox.setValue(selected >= 0 ? table.name(selected) : null);
+        fillToUnits(table);
+    }
+
+    /**
+     *列出可以从fromUnit换算到的单位，原来选择的单位不能换算时选择第一个其他单位。
+     */
+    private void fillToUnits(ConversionTable table)
+    {
+        List<String> names = new ArrayList<>();
+        int selected = table.convertible(fromUnit, toUnit) ? toUnit : -1;
+        for (int i = 0; i < table.size(); i++)
         {
-            currentInputValue = currentInputValue.substring(1);
+            int unit = table.unitAt(i);
+            if (table.convertible(fromUnit, unit))
+            {
+                names.add(table.name(unit));
+                if (selected < 0 || selected == fromUnit)
+                {
+                    selected = unit;
+                }
+            }
         }
-        //否则，在前面加上 "-"
-        else
+        toUnitBox.getItems().setAll(names);
+        toUnit = selected;
+        toUnitBox.setValue(selected >= 0 ? table.name(selected) : null);
+    }
+
+    /**
+     *选择了换算前的单位。
+     */
+    void fromUnitSelected()
+    {
+        String name = fromUnitBox.getValue();
+        if (converter == null || name == null || ConversionTable.id(name) == fromUnit)
         {
-            currentInputValue = "-" + currentInputValue;
+            return; //清空列表或者由程序设置时
         }
-        //如果是结果显示后按正负号，且不是等待第二个操作数，意味着改变的是刚算出来的结果
-        //这个结果会作为下一次运算的firstOperand
-        if (resultJustDisplayed && !isAwaitingSecondOperand)
+        fromUnit = ConversionTable.id(name);
+        fillToUnits(converter.table());
+    }
+
+    /**
+     *选择了换算后的单位。
+     */
+    void toUnitSelected()
+    {
+        String name = toUnitBox.getValue();
+        if (name != null)
         {
-            try
-            {
-                firstOperand = Double.parseDouble(currentInputValue);
-            }
-            catch (NumberFormatException ignored)
-            {
-                displayError("错误: 无效数字");
-                return;
-            }
+            toUnit = ConversionTable.id(name);
         }
-        updateDisplays(); //更新显示
     }
+
     /**
-     *处理百分号 (%) 按钮点击事件。
-     *行为依赖于上下文
-     *1.如果是"A + B %"，则B%计算为A * (B/100)并作为第二个操作数与A相加。
-     *2.如果是"A * B %"或"A / B %"，则B%计算为B/100并作为第二个操作数与A相乘/除。
-     *3.如果只是"A %"，则计算A/100。
-     *@param event 点击事件对象
+     *交换换算前后的单位。
      */
-    @FXML
-    private void handlePercentageAction(ActionEvent event)
+    void swapUnits()
     {
-        //错误或无效输入检查
-        if (isDisplayShowingError(displayField.getText()) || currentInputValue.isEmpty() || currentInputValue.equals("-"))
+        if (converter == null || toUnit < 0)
         {
             return;
         }
-        double valueInCurrentInput;
-        try
+        int unit = fromUnit;
+        fromUnit = toUnit;
+        toUnit = unit;
+        ConversionTable table = converter.table();
+        fromUnitBox.setValue(table.name(fromUnit));
+        fillToUnits(table);
+    }
+
+    /**
+     *把当前输入从选择的单位换算到另一个单位。
+     */
+    void convert()
+    {
+        if (running != null || converter == null)
         {
-            valueInCurrentInput = Double.parseDouble(currentInputValue); //解析当前输入
+            return;
         }
-        catch (NumberFormatException e)
+        ConversionTable table = converter.table(); //换算过程中换算表被替换也继续使用这个表
+        if (!table.convertible(fromUnit, toUnit))
         {
-            displayError("错误");
+            refreshUnits(); //重新加载后的表中没有选择的单位
             return;
         }
-        //如果有挂起的操作符并且正在等待第二个操作数(例如:X + Y%)
-        if (!pendingOperator.isEmpty() && isAwaitingSecondOperand)
+        if (metrics != null)
         {
-            double percentageResultValue;
-            String originalSecondOperandForHistory = currentInputValue; //保存原始Y，用于历史记录
-            //根据操作符类型决定百分比的计算方式
-            if (pendingOperator.equals("+") || pendingOperator.equals("-"))
-            {
-                //对于加减法，百分比是相对于第一个操作数的(例如 100 + 10% = 100 + 100*0.1 = 110)
-                percentageResultValue = firstOperand * (valueInCurrentInput / 100.0);
-            }
-            else if (pendingOperator.equals("×") || pendingOperator.equals("÷"))
-            {
-                //对于乘除法，百分比是操作数本身除以100 (例如 100 * 10% = 100 * 0.1 = 10)
-                percentageResultValue = valueInCurrentInput / 100.0;
-            }
-            else //其他操作符（例如 %），行为可能未定义或同乘除
-            {
-                percentageResultValue = valueInCurrentInput / 100.0; //默认为自身百分比
-            }
-            //更新历史记录 (例如:"100 + 10%")
-            historyLog = formatResult(firstOperand) + " " + pendingOperator + " " + originalSecondOperandForHistory + "%";
-            currentInputValue = formatResult(percentageResultValue); //将百分比计算结果设为当前输入
+            metrics.inputReceived();
         }
-        else //如果没有挂起的操作符 (例如:Y%)
+        engine.applyConversion(table, fromUnit, toUnit);
+        if (recording != null)
         {
-            historyLog = currentInputValue + "%"; //历史记录 "Y%"
-            currentInputValue = formatResult(valueInCurrentInput / 100.0); //计算 Y/100
-            historyLog += " ="; //历史记录"Y% ="
-            resultJustDisplayed = true; //标记结果已显示
+            recording.conversion(table, fromUnit, toUnit);
         }
-        updateDisplays(); //更新显示
+        renderer.start();
     }
+
     /**
-     *处理倒数 (1/x) 按钮点击事件。
-     *@param event 点击事件对象
+     *为每个单参数科学函数创建一个菜单项，菜单项直接保存函数的id。
      */
-    @FXML
-    private void handleReciprocalAction(ActionEvent event)
+    private Menu createFunctionMenu()
     {
-        //错误或无效输入检查
-        if (isDisplayShowingError(displayField.getText()) || currentInputValue.isEmpty() || currentInputValue.equals("-"))
-        {
-            return;
-        }
-        try
+        FunctionRegistry functions = FunctionRegistry.standard();
+        Menu menu = new Menu("函数");
+        for (int id = 0; id < functions.size(); id++)
         {
-            double value = Double.parseDouble(currentInputValue);
-            if (value == 0) //除数不能为零
+            if (functions.arity(id) == 1)
             {
-                displayError("除数不能为零");
+                int function = id;
+                MenuItem item = new MenuItem(functions.name(id));
+                item.setOnAction(event -> applyFunction(function));
+                menu.getItems().add(item);
             }
-            else
+        }
+        return menu;
+    }
+
+    /**
+     *选择存储器键使用的存储槽，M0为默认的槽位。
+     */
+    private Menu createMemoryMenu()
+    {
+        ToggleGroup group = new ToggleGroup();
+        Menu menu = new Menu("存储槽");
+        for (int slot = 0; slot < MEMORY_SLOTS; slot++)
+        {
+            int selected = slot;
+            RadioMenuItem item = new RadioMenuItem("M" + slot);
+            item.setToggleGroup(group);
+            item.setSelected(slot == engine.memorySlot());
+            item.setOnAction(event ->
             {
-                historyLog = "1/(" + formatResult(value) + ")"; //更新历史记录"1/(value)"
-                value = 1.0 / value; //计算倒数
-                currentInputValue = formatResult(value); //将结果设为当前输入
-                historyLog += " ="; //更新历史记录"1/(value) ="
-                firstOperand = value; //将结果保存为第一个操作数
-                resultJustDisplayed = true; //标记结果已显示
-                pendingOperator = ""; //清空操作符
-                isAwaitingSecondOperand = false;
-                updateDisplays(); //更新显示
-            }
+                engine.selectMemorySlot(selected);
+                if (recording != null)
+                {
+                    recording.memorySlot(selected);
+                }
+            });
+            menu.getItems().add(item);
+        }
+        return menu;
+    }
+
+    private void applyFunction(int id)
+    {
+        if (running != null)
+        {
+            return; //后台运算进行中时忽略按键，只能取消
         }
-        catch (NumberFormatException e)
+        if (metrics != null)
         {
-            displayError("错误");
+            metrics.inputReceived();
         }
+        engine.applyFunction(id);
+        if (recording != null)
+        {
+            recording.function(id);
+        }
+        renderer.start();
+    }
+
+    /**
+     *处理数字按钮点击事件。
+     *@param event 点击事件对象，可以从中获取被点击的按钮
+     */
+    @FXML
+    private void handleDigitAction(ActionEvent event)
+    {
+        pressButton(event);
+    }
+
+    /**
+     *处理操作符按钮 (+, -, ×, ÷) 点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleOperatorAction(ActionEvent event)
+    {
+        pressButton(event);
+    }
+
+    /**
+     *处理等号 (=) 按钮点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleEqualsAction(ActionEvent event)
+    {
+        press(Key.EQUALS);
     }
+
+    /**
+     *处理 "C" (Clear All) 按钮点击事件。
+     *重置计算器到初始状态。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleClearAction(ActionEvent event)
+    {
+        press(Key.CLEAR);
+    }
+
+    /**
+     *处理 "CE" (Clear Entry) 按钮点击事件。
+     *清除当前输入项。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleClearEntryAction(ActionEvent event)
+    {
+        press(Key.CLEAR_ENTRY);
+    }
+
+    /**
+     *处理退格 (Backspace) 按钮点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleBackspaceAction(ActionEvent event)
+    {
+        press(Key.BACKSPACE);
+    }
+
+    /**
+     *处理小数点 (.) 按钮点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleDecimalAction(ActionEvent event)
+    {
+        press(Key.DECIMAL);
+    }
+
+    /**
+     *处理正负号 (+/-) 按钮点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleSignAction(ActionEvent event)
+    {
+        press(Key.NEGATE);
+    }
+
+    /**
+     *处理百分号 (%) 按钮点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handlePercentageAction(ActionEvent event)
+    {
+        press(Key.PERCENT);
+    }
+
+    /**
+     *处理倒数 (1/x) 按钮点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleReciprocalAction(ActionEvent event)
+    {
+        press(Key.RECIPROCAL);
+    }
+
     /**
      *处理一元运算按钮点击事件 (例如 x², √x)。
      *@param event 点击事件对象
@@ -581,180 +865,260 @@ public class CalculatorController
     @FXML
     private void handleUnaryOperationAction(ActionEvent event)
     {
-        if (isDisplayShowingError(displayField.getText()) || currentInputValue.isEmpty() || currentInputValue.equals("-"))
+        pressButton(event);
+    }
+
+    /**
+     *处理存储器按钮 (MC, MR, M+, M-) 点击事件。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleMemoryAction(ActionEvent event)
+    {
+        pressButton(event);
+    }
+
+    /**
+     *处理程序员模式的按钮 (A-F、AND、OR、XOR、NOT、<<、>>) 点击事件。
+     *十六进制的C与清除键的文本相同，单个字符的按钮按Key.fromProgrammerChar查找。
+     *@param event 点击事件对象
+     */
+    @FXML
+    private void handleProgrammerAction(ActionEvent event)
+    {
+        String text = ((Button) event.getSource()).getText();
+        Key key = text.length() == 1 ? Key.fromProgrammerChar(text.charAt(0)) : Key.fromLabel(text);
+        if (key != null)
         {
-            return;
+            press(key);
         }
-        String operationSymbol = ((Button) event.getSource()).getText(); //获取操作符号(x², ²√x)
-        String historyOpName; //用于历史记录的操作名
-        //根据按钮文本确定历史记录中的操作名
-        if (operationSymbol.equals("x²"))
+    }
+
+    /**
+     *处理换算按钮点击事件。
+     *@param event 事件对象
+     */
+    @FXML
+    private void handleConvertAction(ActionEvent event)
+    {
+        convert();
+    }
+
+    /**
+     *处理交换单位按钮点击事件。
+     *@param event 事件对象
+     */
+    @FXML
+    private void handleSwapUnitsAction(ActionEvent event)
+    {
+        swapUnits();
+    }
+
+    /**
+     *处理选择换算前单位的事件。
+     *@param event 事件对象
+     */
+    @FXML
+    private void handleFromUnitAction(ActionEvent event)
+    {
+        fromUnitSelected();
+    }
+
+    /**
+     *处理选择换算后单位的事件。
+     *@param event 事件对象
+     */
+    @FXML
+    private void handleToUnitAction(ActionEvent event)
+    {
+        toUnitSelected();
+    }
+
+    /**
+     *根据被点击按钮上的文本找到对应的按键并交给引擎处理。
+     *@param event 点击事件对象
+     */
+    private void pressButton(ActionEvent event)
+    {
+        Key key = Key.fromLabel(((Button) event.getSource()).getText());
+        if (key != null) //未知按钮则忽略
         {
-            historyOpName = "sqr"; //平方
+            press(key);
         }
-        else if (operationSymbol.equals("²√x"))
+    }
+
+    /**
+     *处理一次按键。按钮、键盘和CalculatorView创建的按钮最终都调用这里。
+     *@param key 按下的键
+     */
+    void press(Key key)
+    {
+        if (running != null)
         {
-            historyOpName = "sqrt"; //平方根
+            return; //后台运算进行中时忽略按键，只能取消
         }
-        else
+        if (metrics != null)
         {
-            return; //未知一元操作
+            metrics.inputReceived();
         }
-        double value;
-        try
+        if (key.isMemory() && !memoryLoaded)
         {
-            value = Double.parseDouble(currentInputValue);
+            loadMemory();
         }
-        catch (NumberFormatException e)
+        if (engine.isExpensive(key))
         {
-            displayError("错误");
+            runInBackground(background -> background.press(key), () -> recording.key(key));
             return;
         }
-        historyLog = historyOpName + "(" + formatResult(value) + ")"; //更新历史记录，例如"sqr(5)"
-        double resultValue = 0;
-        boolean error = false; //错误标记
-        //根据操作符号执行计算
-        switch (operationSymbol)
-        {
-            case "x²":
-                resultValue = value * value; //计算平方
-                break;
-            case "²√x":
-                if (value < 0) //负数不能开平方根
-                {
-                    displayError("无效输入");
-                    error = true;
-                }
-                else
-                {
-                    resultValue = Math.sqrt(value); //计算平方根
-                }
-                break;
-        }
-        if (!error)
+        engine.press(key);
+        if (recording != null)
         {
-            currentInputValue = formatResult(resultValue); //将结果设为当前输入
-            historyLog += " ="; //更新历史记录，例如"sqr(5) ="
-            firstOperand = resultValue; //将结果保存为第一个操作数
-            resultJustDisplayed = true; //标记结果已显示
-            pendingOperator = ""; //清空操作符
-            isAwaitingSecondOperand = false;
-            updateDisplays();
+            recording.key(key);
         }
+        renderer.start(); //已经在等待下一个脉冲时不会重复注册
     }
+
     /**
-     *更新主显示屏和历史记录显示屏的内容。
-     *这个方法会在每次计算器状态改变后被调用，以刷新UI。
+     *在引擎的副本上于后台线程执行耗时的按键，期间显示进度指示器。
+     *副本产生的运算记录先保存下来，等结果取回界面线程后再写入纸带和计数，已取消的运算不会留下记录。
+     *@param action 对副本执行的按键
+     *@param record 结果取回后把这次按键写入录制，没有录制时不调用
      */
-    private void updateDisplays()
+    private void runInBackground(Consumer<CalculatorEngine> action, Runnable record)
     {
-        String mainText = currentInputValue;
-        displayField.setText(mainText); //设置主显示屏文本
-        String historyText = historyLog;
-        historyDisplayField.setText(historyText); //设置历史记录显示屏文本
+        CalculatorEngine background = engine.snapshot();
+        List<String[]> completed = new ArrayList<>();
+        List<Operator> operators = new ArrayList<>();
+        background.setCalculationListener((first, operator, second, result) ->
+        {
+            //引擎会复用这些缓冲区，需要复制出来
+            completed.add(new String[]{first.toString(), second.toString(), result.toString()});
+            operators.add(operator);
+        });
+        long task = ++generation;
+        progressIndicator.setVisible(true);
+        running = worker.submit(() ->
+        {
+            boolean success = true;
+            try
+            {
+                action.accept(background);
+            }
+            catch (RuntimeException | OutOfMemoryError e)
+            {
+                success = false;
+                System.err.println("后台运算失败: " + e);
+            }
+            boolean restore = success;
+            Platform.runLater(() -> finish(task, restore ? background : null, completed, operators, record));
+        });
     }
+
     /**
-     *格式化计算结果以便显示。
-     *例如，移除不必要的小数点后的零 (5.0 -> 5)。
-     *处理 NaN 和 Infinity。
-     *@param result 要格式化的数字
-     *@return 格式化后的字符串
+     *在界面线程上取回后台运算的结果。运算已被取消或失败时只隐藏进度指示器。
      */
-    private String formatResult(double result)
+    private void finish(long task, CalculatorEngine background, List<String[]> completed, List<Operator> operators,
+                        Runnable record)
     {
-        //处理特殊数字情况
-        if (Double.isNaN(result))
+        if (task != generation)
         {
-            return "结果未定义";
+            return; //已被取消，或者已经开始了新的运算
         }
-        if (Double.isInfinite(result))
+        running = null;
+        progressIndicator.setVisible(false);
+        if (background == null)
         {
-            return "溢出"; //Infinity
+            return;
         }
-
-        double epsilon = 1E-10; //一个很小的数，用于比较浮点数是否接近整数
-        //如果数字非常接近一个整数(例如 4.9999999999 或 5.0000000001)
-        if (Math.abs(result - Math.round(result)) < epsilon && result != 0)
+        engine.restore(background);
+        if (recording != null)
         {
-            return String.format("%d", Math.round(result)); //返回整数形式
+            record.run();
         }
-        //如果数字非常接近0但不完全是0(例如 0.00000000001)
-        else if (Math.abs(result) < epsilon && result !=0)
+        for (int i = 0; i < completed.size(); i++)
         {
-            return "0"; //统一显示为"0"
+            String[] values = completed.get(i);
+            calculationCompleted(values[0], operators.get(i), values[1], values[2]);
         }
-        else //其他情况，保留小数
+        renderer.start();
+    }
+
+    /**
+     *取消正在进行的后台运算，计算器回到按键之前的状态。
+     *BigDecimal的运算不响应中断，后台线程会继续算完，但结果会被丢弃。
+     */
+    private void cancel()
+    {
+        if (running != null)
         {
-            //使用DecimalFormat格式化，最多保留10位小数，并去除末尾的0
-            DecimalFormat df = new DecimalFormat("#.##########");
-            String formatted = df.format(result);
-            //DecimalFormat对于(-1, 0)之间的小数可能格式化为"-,xxxx"或",xxxx"
-            //需要修正为"-0.xxxx"或"0.xxxx"
-            if (formatted.startsWith("-,")) //例如-0.5会被格式化为-,5
-            {
-                formatted = "-0." + formatted.substring(2); //改为-0.5
-            }
-            else if (formatted.startsWith(",")) //例如0.5会被格式化为,5
-            {
-                formatted = "0." + formatted.substring(1); //改为0.5
-            }
-            //处理-0的情况
-            if (formatted.equals("-0"))
-            {
-                return "0";
-            }
-            return formatted;
+            running.cancel(true);
+            running = null;
+            generation++;
+            progressIndicator.setVisible(false);
         }
     }
+
     /**
-     *检查字符串是否可以被解析为有效的数字。
-     *@param s 要检查的字符串
-     *@return 如果可以解析为数字则返回 true，否则 false
+     *创建执行后台运算的线程池。JDK支持虚拟线程时每个运算使用一个虚拟线程，
+     *否则使用守护线程，保证退出程序时不会被未完成的运算阻塞。
      */
-    private boolean canParseAsNumber(String s)
+    private static ExecutorService newWorkerExecutor()
     {
-        if (s == null || s.isEmpty() || s.equals("-") || s.equals(".") || s.equals("-.")) {
-            return false;
-        }
         try
         {
-            Double.parseDouble(s);
-            return true;
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
         }
-        catch (NumberFormatException e)
+        catch (ReflectiveOperationException e)
         {
-            return false;
+            return Executors.newCachedThreadPool(runnable ->
+            {
+                Thread thread = new Thread(runnable, "calculator-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
     }
+
     /**
-     *在主显示屏上显示错误信息，并重置计算器状态（部分）。
-     *@param message 要显示的错误信息
+     *更新主显示屏和历史记录显示屏的内容。
+     *引擎状态没有变化时直接返回；文本与当前显示相同时不调用setText，避免无意义的布局。
      */
-    private void displayError(String message)
+    private void updateDisplays()
     {
-        displayField.setText(message);   //在主显示屏显示错误
-        historyLog = "";                 //清空历史记录
-        currentInputValue = "0";         //当前输入重置为 "0"
-        firstOperand = 0;                //重置第一个操作数
-        pendingOperator = "";            //清空等待的操作符
-        isAwaitingSecondOperand = false;  //不再等待第二个操作数
-        resultJustDisplayed = true;     //标记为“结果已显示”状态，以便下次输入数字时能覆盖错误信息
+        long revision = engine.revision();
+        if (revision == renderedRevision)
+        {
+            return;
+        }
+        renderedRevision = revision;
+        setTextIfChanged(displayField, engine.displayText()); //设置主显示屏文本
+        if (engine.isProgrammerMode())
+        {
+            ProgrammerEngine programmer = engine.programmer();
+            setTextIfChanged(basesField, programmer.basesText());
+            setTextIfChanged(binaryField, programmer.binaryText());
+        }
+        if (engine.canPreview())
+        {
+            //已经显示预览时保留到新的预览算出为止，避免在"5 +"和预览之间闪烁
+            if (!previewShown)
+            {
+                setTextIfChanged(historyDisplayField, engine.historyText());
+            }
+            previewDue = System.nanoTime() + PREVIEW_DELAY;
+            previewer.start();
+            return;
+        }
+        previewer.stop();
+        previewShown = false;
+        setTextIfChanged(historyDisplayField, engine.historyText()); //设置历史记录显示屏文本
     }
-    /**
-     *检查显示屏当前是否正在显示错误信息。
-     *@param displayText 显示屏的文本内容
-     *@return 如果是错误信息则返回 true，否则 false
-     */
-    private boolean isDisplayShowingError(String displayText)
+
+    private static void setTextIfChanged(TextField field, String text)
     {
-        if (displayText == null)
+        if (!text.equals(field.getText()))
         {
-            return false;
+            field.setText(text);
         }
-        String text = displayText.toLowerCase(); //转为小写以便不区分大小写比较
-        //检查是否包含常见的错误关键词
-        return text.contains("错误") || text.contains("error") || text.contains("nan") ||
-                text.contains("溢出") || text.contains("未定义") || text.contains("除数不能为零") ||
-                text.contains("无效输入") || text.contains("模数不能为零");
     }
-}
\ No newline at end of file
+}
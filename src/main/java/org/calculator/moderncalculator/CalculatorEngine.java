@@ -0,0 +1,1733 @@
+package org.calculator.moderncalculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+/**
+ *CalculatorEngine类是计算器的无界面计算引擎。
+ *它接收按键序列并维护计算状态，不依赖JavaFX，可以在批处理任务中直接回放大量按键记录。
+ *输入数字保存在可复用的InputBuffer中，历史记录以结构化字段保存，
+ *只有在调用displayText()或historyText()时才生成字符串。
+ *默认使用double计算；通过setMathContext可以切换到BigDecimal精确计算模式。
+ */
+public class CalculatorEngine
+{
+    //与原来界面上的限制一致：最多输入15位数字
+    public static final int DEFAULT_MAX_DIGITS = 15;
+    //默认最多保存的运算记录数，超过后覆盖最早的记录
+    public static final int DEFAULT_HISTORY_CAPACITY = 100;
+    //精确模式下操作数超过这个位数时，一次运算可能需要数十毫秒以上，界面应放到后台线程计算
+    public static final int EXPENSIVE_DIGITS = 2000;
+
+    //历史记录的形式
+    private enum HistoryKind
+    {
+        NONE,        //""
+        PENDING,     //"5 +"
+        BINARY,      //"5 + 3 ="
+        RESTORED,    //"5 + 3"，退格撤销等号后
+        EQUALS,      //"5 ="
+        PERCENT_OF,  //"100 + 10%"
+        PERCENT,     //"10% ="
+        SQUARE,      //"sqr(5) ="
+        SQUARE_ROOT, //"sqrt(5) ="
+        FUNCTION,    //"sin(5) ="
+        CONVERSION,  //"5 km → mi ="
+        RECIPROCAL   //"1/(5) ="
+    }
+
+    private final int inputLimit; //双精度模式下允许输入的最多数字位数
+    private int maxDigits;        //当前允许输入的最多数字位数
+    private MathContext mathContext = null; //精确模式使用的MathContext，null表示使用double计算
+    private final NumberFormatter formatter = new NumberFormatter(); //复用的结果格式化器
+    private final FunctionRegistry functions = FunctionRegistry.standard(); //科学函数
+    private final CalculationHistory history; //已完成的二元运算，用于多级撤销和重做
+    private CalculationListener listener;     //运算完成时通知的监听器，没有时为 null
+    private long revision;                    //状态每改变一次加1，界面据此判断是否需要重新绘制
+    private final InputBuffer listenerFirst = new InputBuffer(32); //传给监听器的第一个操作数
+    private final ResultCache cache = ResultCache.shared(); //精确模式的结果缓存，未启用时为 null
+    private final MemoryRegisters memory = new MemoryRegisters();  //存储器，清除和切换精度时都保留
+    private int memorySlot;                                         //MC、MR、M+、M-使用的存储槽
+    private final ProgrammerEngine programmer = new ProgrammerEngine(); //程序员模式的状态，切换模式时保留
+    private boolean programmerMode;                                 //按键是否交给programmer处理
+    private final DecimalValue memoryDecimal = new DecimalValue(); //精确模式下M+、M-的中间结果
+
+    //计算器状态变量
+    private final InputBuffer input = new InputBuffer(32); //当前用户输入的数字，默认为 "0"
+    private double firstOperand = 0;                        //第一个操作数
+    private Operator pendingOperator = null;                //等待执行的操作符，没有时为 null
+    private boolean isAwaitingSecondOperand = false;        //是否在等待输入第二个操作数
+    private boolean resultJustDisplayed = true;             //当前显示的是否是上一次计算的结果
+    private CalculatorError error = null;                   //当前错误状态，没有错误时为 null
+    private boolean memoryEntry = false;                    //MR、M+、M-之后显示的数仍是有效输入，但下一个数字开始新的输入
+
+    //当前输入解析后的值，双精度模式使用operandValue，精确模式使用operandDecimal
+    private double operandValue;
+    private final DecimalValue operandDecimal = new DecimalValue();
+    //精确模式下的第一个操作数和运算结果，与firstOperand对应
+    private final DecimalValue firstDecimal = new DecimalValue();
+    private final DecimalValue resultDecimal = new DecimalValue();
+
+    //历史记录，按字段保存，显示时再拼接
+    private HistoryKind historyKind = HistoryKind.NONE;
+    private double historyFirst;                                      //历史记录中的第一个操作数或一元运算的操作数
+    private Operator historyOperator;                                 //历史记录中的操作符
+    private final InputBuffer historyOperand = new InputBuffer(32);   //历史记录中按原样显示的操作数
+    private boolean historyOperandIsFirst;                            //连续按等号时第二个操作数就是第一个操作数
+    private int historyFunction;                                      //历史记录中科学函数的id
+    private final DecimalValue historyFirstDecimal = new DecimalValue(); //精确模式下的historyFirst
+    private final InputBuffer historyScratch = new InputBuffer(32);     //拼接精确模式历史记录时使用
+    private String historyFromUnit;                                     //历史记录中换算前的单位
+    private String historyToUnit;                                       //历史记录中换算后的单位
+    private final DecimalValue conversionNumerator = new DecimalValue();   //精确模式下换算结果的分子
+    private final DecimalValue conversionDenominator = new DecimalValue(); //精确模式下换算结果的分母
+
+    //输入第二个操作数时的预览，只在previewText中使用；运算符和两个操作数都没有变化时直接返回上一次的文本
+    private long previewRevision = -1;                                  //previewText对应的版本号
+    private String previewText;                                         //上一次的预览，没有时为 null
+    private Operator previewOperator;
+    private double previewFirst;
+    private double previewOperand;
+    private MathContext previewMathContext;
+    private final DecimalValue previewFirstDecimal = new DecimalValue();
+    private final DecimalValue previewOperandDecimal = new DecimalValue();
+    private final DecimalValue previewScratch = new DecimalValue();    //新解析的操作数
+    private final DecimalValue previewResult = new DecimalValue();
+    private final InputBuffer previewBuffer = new InputBuffer(32);     //格式化预览结果时使用
+
+    public CalculatorEngine()
+    {
+        this(DEFAULT_MAX_DIGITS);
+    }
+
+    /**
+     *@param maxDigits 允许输入的最多数字位数
+     */
+    public CalculatorEngine(int maxDigits)
+    {
+        this(maxDigits, DEFAULT_HISTORY_CAPACITY);
+    }
+
+    /**
+     *@param maxDigits 允许输入的最多数字位数
+     *@param historyCapacity 最多保存的运算记录数，决定可以撤销多少步
+     */
+    public CalculatorEngine(int maxDigits, int historyCapacity)
+    {
+        this.inputLimit = maxDigits;
+        this.maxDigits = maxDigits;
+        this.history = new CalculationHistory(historyCapacity);
+    }
+
+    /**
+     *打开或关闭程序员模式。打开后按键、文本和显示都转交ProgrammerEngine，
+     *普通模式的状态保持不变，关闭后继续原来的计算。
+     */
+    public void setProgrammerMode(boolean enabled)
+    {
+        revision++;
+        programmerMode = enabled;
+    }
+
+    /**
+     *@return 是否处于程序员模式
+     */
+    public boolean isProgrammerMode()
+    {
+        return programmerMode;
+    }
+
+    /**
+     *@return 程序员模式的引擎，用于读取进制、字长和各进制的文本
+     */
+    public ProgrammerEngine programmer()
+    {
+        return programmer;
+    }
+
+    /**
+     *切换程序员模式的进制。
+     *@param base ProgrammerEngine.HEX、DECIMAL、OCTAL或BINARY
+     */
+    public void setProgrammerBase(int base)
+    {
+        revision++;
+        programmer.setBase(base);
+    }
+
+    /**
+     *切换程序员模式的字长，已有的数截断到新的字长。
+     *@param wordSize 8、16、32或64
+     */
+    public void setProgrammerWordSize(int wordSize)
+    {
+        revision++;
+        programmer.setWordSize(wordSize);
+    }
+
+    /**
+     *切换计算精度。已有的double中间结果无法无损转换为精确值，因此切换后计算器会被重置。
+     *精确模式下允许输入的位数随精度放宽，例如DECIMAL128可以输入34位数字。
+     *@param mathContext BigDecimal运算使用的MathContext，null表示使用double计算
+     */
+    public void setMathContext(MathContext mathContext)
+    {
+        this.mathContext = mathContext;
+        if (mathContext == null)
+        {
+            maxDigits = inputLimit;
+        }
+        else if (mathContext.getPrecision() == 0)
+        {
+            maxDigits = Integer.MAX_VALUE;
+        }
+        else
+        {
+            maxDigits = Math.max(inputLimit, mathContext.getPrecision());
+        }
+        history.clear(); //旧记录中的操作数属于另一种精度
+        memory.convert(mathContext);
+        clear();
+        revision++;
+    }
+
+    /**
+     *选择MC、MR、M+、M-使用的存储槽，默认为0。每个槽位独立保存一个数。
+     *@param slot 槽位编号，可以是任意整数
+     */
+    public void selectMemorySlot(int slot)
+    {
+        memorySlot = slot;
+        revision++;
+    }
+
+    /**
+     *@return 当前的存储槽编号
+     */
+    public int memorySlot()
+    {
+        return memorySlot;
+    }
+
+    /**
+     *@return 当前的存储槽中是否保存了数
+     */
+    public boolean hasMemory()
+    {
+        return memory.find(memorySlot) >= 0;
+    }
+
+    /**
+     *@return 全部存储槽，界面用它保存和恢复快照
+     */
+    MemoryRegisters memory()
+    {
+        return memory;
+    }
+
+    /**
+     *设置运算完成时通知的监听器，例如运算纸带。
+     *@param listener 监听器，null表示不再通知
+     */
+    public void setCalculationListener(CalculationListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     *把纸带中保存的运算恢复到历史记录中，之后可以用撤销逐条回到这些运算。
+     *超过历史记录容量时只保留最近的记录，无法解析的记录被跳过。
+     *@param records 从旧到新排列的运算记录
+     */
+    public void restoreHistory(List<CalculationTape.Record> records)
+    {
+        DecimalValue first = new DecimalValue();
+        DecimalValue result = new DecimalValue();
+        for (CalculationTape.Record record : records)
+        {
+            setText(historyScratch, record.first());
+            double firstValue = historyScratch.toDouble();
+            boolean valid = historyScratch.toDecimal(first);
+            setText(historyScratch, record.result());
+            double resultValue = historyScratch.toDouble();
+            valid &= historyScratch.toDecimal(result);
+            if (!valid || Double.isNaN(firstValue) || Double.isNaN(resultValue))
+            {
+                continue;
+            }
+            CalculationHistory.Entry entry = history.record();
+            entry.first = firstValue;
+            entry.firstDecimal.set(first);
+            entry.operator = record.operator();
+            entry.operandIsFirst = false;
+            setText(entry.operand, record.second());
+            entry.result = resultValue;
+            entry.resultDecimal.set(result);
+        }
+    }
+
+    private static void setText(InputBuffer target, String text)
+    {
+        target.set(text.toCharArray(), text.length());
+    }
+
+    /**
+     *@return 精确模式使用的MathContext，双精度模式返回 null
+     */
+    public MathContext mathContext()
+    {
+        return mathContext;
+    }
+
+    /**
+     *处理一次按键。
+     *@param key 按下的键
+     */
+    public void press(Key key)
+    {
+        revision++;
+        if (programmerMode)
+        {
+            programmer.press(key);
+            return;
+        }
+        if (memoryEntry && !key.isMemory() && !key.isDigit() && key != Key.DECIMAL)
+        {
+            memoryEntry = false; //其他按键照常处理显示的数
+        }
+        switch (key)
+        {
+            case DIGIT_0:
+            case DIGIT_1:
+            case DIGIT_2:
+            case DIGIT_3:
+            case DIGIT_4:
+            case DIGIT_5:
+            case DIGIT_6:
+            case DIGIT_7:
+            case DIGIT_8:
+            case DIGIT_9:
+                digit(key.digitChar());
+                break;
+            case DECIMAL:
+                decimal();
+                break;
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+                operator(key.operator());
+                break;
+            case EQUALS:
+                equals();
+                break;
+            case CLEAR:
+                clear();
+                break;
+            case CLEAR_ENTRY:
+                clearEntry();
+                break;
+            case BACKSPACE:
+                backspace();
+                break;
+            case NEGATE:
+                negate();
+                break;
+            case PERCENT:
+                percentage();
+                break;
+            case RECIPROCAL:
+                reciprocal();
+                break;
+            case SQUARE:
+            case SQUARE_ROOT:
+                unary(key);
+                break;
+            case UNDO:
+                undo();
+                break;
+            case REDO:
+                redo();
+                break;
+            case MEMORY_CLEAR:
+                memory.remove(memorySlot);
+                break;
+            case MEMORY_RECALL:
+                memoryRecall();
+                break;
+            case MEMORY_ADD:
+            case MEMORY_SUBTRACT:
+                memoryAdd(key == Key.MEMORY_SUBTRACT);
+                break;
+        }
+    }
+
+    /**
+     *一次处理一段文本，例如粘贴的数字或表达式，或者键盘输入的字符。
+     *整段文本只扫描一遍：连续的数字作为一个整体追加到输入中，而不是逐个模拟数字键；
+     *运算符等其他字符按对应的按键处理，与依次按键相同，没有先乘除后加减。紧跟在运算符后面或位于开头的"-5"被当作负数。
+     *空白和正确分组的千位分隔符(例如"1,234,567")被忽略。文本中有按键以外的字符(括号、字母、"1e3"、"1,5"等)时
+     *整段文本都不处理，直接显示INVALID_INPUT，不会把它当作另一个数计算。
+     *@param text 要处理的文本
+     */
+    public void type(CharSequence text)
+    {
+        revision++;
+        if (programmerMode)
+        {
+            programmer.type(text);
+            return;
+        }
+        if (!isKeyText(text))
+        {
+            displayError(CalculatorError.INVALID_INPUT);
+            return;
+        }
+        int length = text.length();
+        boolean expectOperand = true; //开头或运算符之后，此时的"-"表示负数
+        int i = 0;
+        while (i < length)
+        {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                int end = i + 1;
+                while (end < length && isDigitChar(text.charAt(end)))
+                {
+                    end++;
+                }
+                digits(text, i, end);
+                i = end;
+                expectOperand = false;
+                continue;
+            }
+            if (c == '-' && expectOperand && i + 1 < length && isNumberStart(text.charAt(i + 1)))
+            {
+                int end = i + 1;
+                while (end < length && (isDigitChar(text.charAt(end)) || text.charAt(end) == '.'))
+                {
+                    end++;
+                }
+                type(text.subSequence(i + 1, end)); //先输入数字，再取反
+                press(Key.NEGATE);
+                i = end;
+                expectOperand = false;
+                continue;
+            }
+            Key key = Key.fromChar(c);
+            if (key != null)
+            {
+                press(key);
+                expectOperand = key.operator() != null;
+            }
+            i++;
+        }
+    }
+
+    /**
+     *对当前输入调用一个单参数科学函数，例如FunctionRegistry.SIN，效果与x²等一元运算键相同。
+     *科学函数总是按double计算，精确模式下结果再按当前精度转换为十进制。
+     *@param id 函数在FunctionRegistry.standard()中的id
+     *@throws IllegalArgumentException id对应的不是单参数函数时抛出
+     */
+    public void applyFunction(int id)
+    {
+        revision++;
+        if (functions.arity(id) != 1)
+        {
+            throw new IllegalArgumentException(functions.name(id) + "需要两个参数");
+        }
+        if (programmerMode || error != null || input.isEmpty() || input.isMinusOnly())
+        {
+            return;
+        }
+        if (!readOperand())
+        {
+            displayError(CalculatorError.GENERIC);
+            return;
+        }
+        historyKind = HistoryKind.FUNCTION; //"sin(5) ="
+        historyFunction = id;
+        historyFirst = operandValue;
+        historyFirstDecimal.set(operandDecimal);
+        if (mathContext == null)
+        {
+            finishUnary(functions.apply(id, operandValue));
+            return;
+        }
+        double resultValue = functions.apply(id, operandDecimal.toDouble());
+        if (Double.isNaN(resultValue) || Double.isInfinite(resultValue))
+        {
+            finishUnary(resultValue); //进入错误状态
+            return;
+        }
+        resultDecimal.set(resultValue, mathContext);
+        finishDecimalUnary(DecimalValue.OK);
+    }
+
+    /**
+     *把当前输入从一个单位换算为另一个单位，效果与x²等一元运算键相同。
+     *双精度模式下由换算表直接计算；精确模式下按系数和偏移的原文计算，
+     *结果 = ((值 + 原偏移) × 原分子 × 新分母 - 新偏移 × 原分母 × 新分子) ÷ (原分母 × 新分子)，
+     *分子和分母都精确计算，只有最后的除法按当前精度舍入，例如100°C换算为°F得到的是精确的212。
+     *@param table 换算表，换算过程中只使用这一个表
+     *@param from 换算前的单位编号
+     *@param to 换算后的单位编号
+     *@throws IllegalArgumentException 两个单位不在表中或者不属于同一类别时抛出
+     */
+    public void applyConversion(ConversionTable table, int from, int to)
+    {
+        revision++;
+        if (!table.convertible(from, to))
+        {
+            throw new IllegalArgumentException("不能换算的单位: " + from + ", " + to);
+        }
+        if (programmerMode || error != null || input.isEmpty() || input.isMinusOnly())
+        {
+            return;
+        }
+        if (!readOperand())
+        {
+            displayError(CalculatorError.GENERIC);
+            return;
+        }
+        historyKind = HistoryKind.CONVERSION; //"5 km → mi ="
+        historyFromUnit = table.name(from);
+        historyToUnit = table.name(to);
+        historyFirst = operandValue;
+        historyFirstDecimal.set(operandDecimal);
+        if (mathContext == null)
+        {
+            finishUnary(table.convert(operandValue, from, to));
+            return;
+        }
+        BigDecimal denominator = table.denominator(from).multiply(table.numerator(to));
+        BigDecimal numerator = operandDecimal.toBigDecimal().add(table.exactOffset(from))
+                .multiply(table.numerator(from)).multiply(table.denominator(to))
+                .subtract(table.exactOffset(to).multiply(denominator));
+        conversionNumerator.set(numerator);
+        conversionDenominator.set(denominator);
+        finishDecimalUnary(DecimalValue.apply(Operator.DIVIDE, conversionNumerator, conversionDenominator,
+                resultDecimal, mathContext));
+    }
+
+    /**
+     *判断一次按键是否可能耗时较长，界面据此决定是否放到后台线程计算。
+     *双精度运算和输入数字总是很快；只有精确模式下操作数很长时，运算才可能明显阻塞界面。
+     *@param key 将要按下的键
+     *@return 是否应该在后台线程中处理
+     */
+    public boolean isExpensive(Key key)
+    {
+        if (mathContext == null || error != null || programmerMode)
+        {
+            return false;
+        }
+        switch (key)
+        {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+            case EQUALS:
+            case PERCENT:
+            case RECIPROCAL:
+            case SQUARE:
+            case SQUARE_ROOT:
+                return hasLargeOperand();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     *判断处理一段文本是否可能耗时较长，规则与isExpensive(Key)相同。
+     *@param text 将要处理的文本
+     *@return 是否应该在后台线程中处理
+     */
+    public boolean isExpensive(CharSequence text)
+    {
+        return mathContext != null && !programmerMode && (text.length() > EXPENSIVE_DIGITS || hasLargeOperand());
+    }
+
+    private boolean hasLargeOperand()
+    {
+        return input.digitCount() > EXPENSIVE_DIGITS || firstDecimal.estimatedDigits() > EXPENSIVE_DIGITS;
+    }
+
+    /**
+     *复制当前的全部计算状态，包括撤销历史，但不包括监听器和存储器。
+     *后台执行的按键不会使用存储器，restore时存储器保持不变。
+     *界面在后台线程中对副本执行耗时的按键，完成后再用restore取回结果，引擎本身始终只被界面线程访问。
+     *@return 状态相同的新引擎
+     */
+    public CalculatorEngine snapshot()
+    {
+        CalculatorEngine copy = new CalculatorEngine(inputLimit, history.capacity());
+        copy.copyStateFrom(this);
+        return copy;
+    }
+
+    /**
+     *用snapshot得到的副本的状态替换当前状态，监听器保持不变。
+     *@param other 由snapshot创建的引擎
+     */
+    public void restore(CalculatorEngine other)
+    {
+        copyStateFrom(other);
+        revision++;
+    }
+
+    private void copyStateFrom(CalculatorEngine other)
+    {
+        maxDigits = other.maxDigits;
+        memorySlot = other.memorySlot;
+        programmer.copyFrom(other.programmer);
+        programmerMode = other.programmerMode;
+        mathContext = other.mathContext;
+        history.copyFrom(other.history);
+        input.copyFrom(other.input);
+        firstOperand = other.firstOperand;
+        pendingOperator = other.pendingOperator;
+        isAwaitingSecondOperand = other.isAwaitingSecondOperand;
+        resultJustDisplayed = other.resultJustDisplayed;
+        error = other.error;
+        memoryEntry = other.memoryEntry;
+        operandValue = other.operandValue;
+        operandDecimal.set(other.operandDecimal);
+        firstDecimal.set(other.firstDecimal);
+        resultDecimal.set(other.resultDecimal);
+        historyKind = other.historyKind;
+        historyFirst = other.historyFirst;
+        historyOperator = other.historyOperator;
+        historyOperand.copyFrom(other.historyOperand);
+        historyOperandIsFirst = other.historyOperandIsFirst;
+        historyFunction = other.historyFunction;
+        historyFromUnit = other.historyFromUnit;
+        historyToUnit = other.historyToUnit;
+        historyFirstDecimal.set(other.historyFirstDecimal);
+    }
+
+    /**
+     *@return 文本是否只含有按键字符、空白和正确分组的千位分隔符
+     */
+    private static boolean isKeyText(CharSequence text)
+    {
+        int length = text.length();
+        for (int i = 0; i < length; i++)
+        {
+            char c = text.charAt(i);
+            if (c == ',')
+            {
+                if (!isThousandsSeparator(text, i))
+                {
+                    return false;
+                }
+            }
+            else if (!Character.isWhitespace(c) && Key.fromChar(c) == null)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *@return 位置index处的","是否是整数部分的千位分隔符：前面一组是1-3位数字(前面还有分隔符时是3位)，
+     *后面正好是3位数字
+     */
+    private static boolean isThousandsSeparator(CharSequence text, int index)
+    {
+        int end = index + 1;
+        while (end < text.length() && isDigitChar(text.charAt(end)))
+        {
+            end++;
+        }
+        if (end - index - 1 != 3)
+        {
+            return false;
+        }
+        int start = index;
+        while (start > 0 && isDigitChar(text.charAt(start - 1)))
+        {
+            start--;
+        }
+        int group = index - start;
+        if (start > 0 && text.charAt(start - 1) == ',')
+        {
+            return group == 3;
+        }
+        return group >= 1 && group <= 3 && (start == 0 || text.charAt(start - 1) != '.');
+    }
+
+    private static boolean isDigitChar(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNumberStart(char c)
+    {
+        return isDigitChar(c) || c == '.';
+    }
+
+    /**
+     *输入一串连续的数字，效果与逐个按数字键相同。
+     *第一个数字和前导零决定是否开始新的输入，按单个按键处理；其余数字一次性追加，并受最多位数的限制。
+     */
+    private void digits(CharSequence text, int start, int end)
+    {
+        int i = start;
+        while (i < end && (i == start || input.isZero() || input.isNegativeZero()))
+        {
+            digit(text.charAt(i++));
+        }
+        if (i == end || error != null)
+        {
+            return;
+        }
+        int room = maxDigits - input.digitCount();
+        if (room > 0)
+        {
+            input.append(text, i, i + Math.min(room, end - i));
+        }
+    }
+
+    /**
+     *输入一个数字。
+     *@param digit '0'到'9'之间的字符
+     */
+    private void digit(char digit)
+    {
+        //如果正显示错误信息，则不处理数字输入
+        if (error != null)
+        {
+            return;
+        }
+        //如果刚显示完结果或存储器中的数，则重置当前输入值为新数字
+        if (resultJustDisplayed || memoryEntry)
+        {
+            input.set(digit);
+            resultJustDisplayed = false;
+            memoryEntry = false;
+            //如果不是在等待第二个操作数（即开始新的独立计算），则清空历史记录
+            if (!isAwaitingSecondOperand)
+            {
+                historyKind = HistoryKind.NONE;
+            }
+        }
+        //处理前导零：如果当前输入是"0"，则替换"0"
+        else if (input.isZero())
+        {
+            input.set(digit);
+        }
+        //处理"-0"的情况
+        else if (input.isNegativeZero())
+        {
+            input.deleteLast();
+            input.append(digit);
+        }
+        //限制输入长度，防止溢出或显示问题
+        else if (input.digitCount() < maxDigits)
+        {
+            input.append(digit);
+        }
+    }
+
+    /**
+     *输入一个二元运算符。
+     */
+    private void operator(Operator newOperator)
+    {
+        if (error != null)
+        {
+            return;
+        }
+        //如果正在输入第二个操作数(例如: 5 + 3 - , 按下-时)，则先计算之前的结果
+        if (!resultJustDisplayed && isAwaitingSecondOperand && input.isNumber())
+        {
+            calculate();
+            if (error != null)
+            {
+                return;
+            }
+        }
+        //防止单独输入"-"后直接按操作符
+        if (input.isMinusOnly())
+        {
+            displayError(CalculatorError.INVALID_INPUT);
+            return;
+        }
+        if (!readOperand())
+        {
+            displayError(CalculatorError.INVALID_NUMBER);
+            return;
+        }
+        firstFromOperand();
+        pendingOperator = newOperator;
+        historyKind = HistoryKind.PENDING; //例如"5 +"
+        rememberHistoryFirst();
+        historyOperator = pendingOperator;
+        isAwaitingSecondOperand = true;
+        resultJustDisplayed = true;
+    }
+
+    /**
+     *处理等号。
+     */
+    private void equals()
+    {
+        if (error != null)
+        {
+            return;
+        }
+        //如果没有等待执行的操作符(例如用户只输入了 "5" 然后按 "=")
+        if (pendingOperator == null)
+        {
+            historyKind = HistoryKind.EQUALS; //历史记录显示 "5 ="
+            historyOperand.copyFrom(input);
+            resultJustDisplayed = true;
+            return;
+        }
+        if (input.isMinusOnly())
+        {
+            displayError(CalculatorError.INVALID_INPUT);
+            return;
+        }
+        calculate();
+    }
+
+    /**
+     *根据pendingOperator对firstOperand和当前输入(作为第二个操作数)进行运算。
+     */
+    private void calculate()
+    {
+        if (pendingOperator == null)
+        {
+            return;
+        }
+        //连续按等号时(例如：5+然后按=)，用第一个操作数作为第二个操作数，即 5+5
+        if (resultJustDisplayed && isAwaitingSecondOperand)
+        {
+            operandValue = firstOperand;
+            operandDecimal.set(firstDecimal);
+            historyOperandIsFirst = true;
+        }
+        else
+        {
+            if (input.isMinusOnly())
+            {
+                displayError(CalculatorError.INVALID_INPUT);
+                return;
+            }
+            if (!readOperand())
+            {
+                displayError(CalculatorError.INVALID_NUMBER);
+                return;
+            }
+            historyOperandIsFirst = false;
+            historyOperand.copyFrom(input);
+        }
+        //历史记录显示完整的计算表达式，例如"5 + 3 ="
+        historyKind = HistoryKind.BINARY;
+        rememberHistoryFirst();
+        historyOperator = pendingOperator;
+
+        if (isOperandZero())
+        {
+            if (pendingOperator == Operator.DIVIDE)
+            {
+                displayError(CalculatorError.DIVIDE_BY_ZERO);
+                return;
+            }
+            if (pendingOperator == Operator.MODULO)
+            {
+                displayError(CalculatorError.MODULO_BY_ZERO);
+                return;
+            }
+        }
+        resultJustDisplayed = true;
+        isAwaitingSecondOperand = false;
+        if (mathContext != null)
+        {
+            int status = pendingOperator == Operator.DIVIDE
+                    ? evaluateDecimal(ResultCache.DIVIDE, firstDecimal, operandDecimal, resultDecimal)
+                    : DecimalValue.apply(pendingOperator, firstDecimal, operandDecimal, resultDecimal, mathContext);
+            if (showDecimalResult(status))
+            {
+                firstDecimal.set(resultDecimal); //将结果保存为下一次计算的第一个操作数
+                recordCalculation();
+            }
+            return;
+        }
+        double resultValue = pendingOperator.apply(firstOperand, operandValue);
+        if (showResult(resultValue))
+        {
+            firstOperand = resultValue; //将结果保存为下一次计算的第一个操作数
+            recordCalculation();
+        }
+    }
+
+    /**
+     *精确模式下计算平方、平方根、倒数或除法。启用了结果缓存时先查缓存。
+     *@param right 除法的除数，一元运算时为 null
+     *@param result 保存结果，通常是resultDecimal
+     */
+    private int evaluateDecimal(int operation, DecimalValue left, DecimalValue right, DecimalValue result)
+    {
+        if (cache != null)
+        {
+            return cache.apply(operation, left, right, result, mathContext);
+        }
+        return ResultCache.compute(operation, left, right, result, mathContext);
+    }
+
+    /**
+     *把刚完成的运算保存到历史记录中。
+     */
+    private void recordCalculation()
+    {
+        CalculationHistory.Entry entry = history.record();
+        entry.first = historyFirst;
+        entry.firstDecimal.set(historyFirstDecimal);
+        entry.operator = historyOperator;
+        entry.operandIsFirst = historyOperandIsFirst;
+        entry.operand.copyFrom(historyOperand);
+        entry.result = firstOperand;
+        entry.resultDecimal.set(firstDecimal);
+        if (listener != null)
+        {
+            writeHistoryFirst(listenerFirst);
+            listener.calculationCompleted(listenerFirst, historyOperator,
+                    historyOperandIsFirst ? listenerFirst : historyOperand, input);
+        }
+    }
+
+    /**
+     *撤销最近一次二元运算，恢复到按等号之前的状态，例如"5 + 3 = 8"恢复为"5 + 3"。
+     *可以连续撤销，最多撤销到历史记录中最早的一条。
+     */
+    private void undo()
+    {
+        CalculationHistory.Entry entry = history.undo();
+        if (entry == null)
+        {
+            return;
+        }
+        error = null;
+        restoreCalculation(entry);
+        if (entry.operandIsFirst)
+        {
+            writeHistoryFirst(input); //"5 + = "恢复为"5 + 5"
+            historyOperand.copyFrom(input);
+            historyOperandIsFirst = false;
+        }
+        else
+        {
+            input.copyFrom(entry.operand); //第二个操作数恢复到当前输入
+        }
+        historyKind = HistoryKind.RESTORED; //恢复历史"5 + 3"
+        isAwaitingSecondOperand = true;
+        resultJustDisplayed = false;
+    }
+
+    /**
+     *重做最近撤销的一次运算，重新显示它的结果。
+     */
+    private void redo()
+    {
+        CalculationHistory.Entry entry = history.redo();
+        if (entry == null)
+        {
+            return;
+        }
+        error = null;
+        restoreCalculation(entry);
+        firstOperand = entry.result;
+        firstDecimal.set(entry.resultDecimal);
+        if (mathContext != null)
+        {
+            entry.resultDecimal.writeTo(input);
+        }
+        else
+        {
+            formatInto(input, entry.result);
+        }
+        historyKind = HistoryKind.BINARY; //"5 + 3 ="
+        isAwaitingSecondOperand = false;
+        resultJustDisplayed = true;
+    }
+
+    /**
+     *从运算记录恢复操作数、运算符和历史记录字段。
+     */
+    private void restoreCalculation(CalculationHistory.Entry entry)
+    {
+        firstOperand = entry.first;
+        firstDecimal.set(entry.firstDecimal);
+        pendingOperator = entry.operator;
+        historyFirst = entry.first;
+        historyFirstDecimal.set(entry.firstDecimal);
+        historyOperator = entry.operator;
+        historyOperandIsFirst = entry.operandIsFirst;
+        historyOperand.copyFrom(entry.operand);
+    }
+
+    /**
+     *"C"：重置计算器到初始状态。
+     */
+    private void clear()
+    {
+        input.setZero();
+        historyKind = HistoryKind.NONE;
+        firstOperand = 0;
+        firstDecimal.setZero();
+        pendingOperator = null;
+        isAwaitingSecondOperand = false;
+        resultJustDisplayed = true;
+        memoryEntry = false;
+        error = null;
+    }
+
+    /**
+     *"CE"：清除当前输入项。
+     */
+    private void clearEntry()
+    {
+        //如果正显示错误信息，CE的行为等同于 C
+        if (error != null)
+        {
+            clear();
+            return;
+        }
+        input.setZero();
+        //如果不是在等待第二个操作数，之前的半成品表达式也应无效
+        if (!isAwaitingSecondOperand)
+        {
+            historyKind = HistoryKind.NONE;
+            pendingOperator = null;
+        }
+        resultJustDisplayed = true;
+    }
+
+    /**
+     *退格。
+     */
+    private void backspace()
+    {
+        if (error != null)
+        {
+            return;
+        }
+        //刚显示完"5 + 3 = 8"这样的结果时按退格，恢复到按等号之前的状态
+        if (resultJustDisplayed && !isAwaitingSecondOperand && pendingOperator != null)
+        {
+            if (historyKind == HistoryKind.BINARY)
+            {
+                undo(); //显示的结果就是最近一条运算记录
+                return;
+            }
+            //历史记录是"operand ="或"operand% ="，恢复该操作数
+            if (historyKind == HistoryKind.EQUALS || historyKind == HistoryKind.PERCENT)
+            {
+                input.copyFrom(historyOperand);
+                historyKind = HistoryKind.NONE;
+                pendingOperator = null;
+                resultJustDisplayed = false;
+                return;
+            }
+        }
+        //按了"5 +"后按退格，撤销操作符
+        if (isAwaitingSecondOperand && resultJustDisplayed && historyKind == HistoryKind.PENDING)
+        {
+            //当前输入恢复为第一个操作数
+            if (mathContext != null)
+            {
+                firstDecimal.writeTo(input);
+            }
+            else
+            {
+                formatInto(input, firstOperand);
+            }
+            historyKind = HistoryKind.NONE;
+            pendingOperator = null;
+            isAwaitingSecondOperand = false;
+            resultJustDisplayed = false;
+            return;
+        }
+        //用户正在输入数字，删除最后一个字符
+        if (!resultJustDisplayed)
+        {
+            input.deleteLast();
+            //如果删除后为空或只剩负号，则设为"0"
+            if (input.isEmpty() || input.isMinusOnly())
+            {
+                input.setZero();
+            }
+            return;
+        }
+        //其他一般情况或退格到初始状态
+        input.setZero();
+        if (!isAwaitingSecondOperand)
+        {
+            historyKind = HistoryKind.NONE;
+        }
+    }
+
+    /**
+     *小数点。
+     */
+    private void decimal()
+    {
+        if (error != null)
+        {
+            return;
+        }
+        //如果刚显示完结果，用户按小数点，则开始新的输入 "0."
+        if (resultJustDisplayed || memoryEntry)
+        {
+            input.set('0');
+            input.append('.');
+            resultJustDisplayed = false;
+            memoryEntry = false;
+            if (!isAwaitingSecondOperand)
+            {
+                historyKind = HistoryKind.NONE;
+            }
+        }
+        else if (!input.containsDecimalPoint())
+        {
+            if (input.isEmpty() || input.isMinusOnly()) //变为"0."或"-0."
+            {
+                input.append('0');
+            }
+            input.append('.');
+        }
+    }
+
+    /**
+     *正负号。
+     */
+    private void negate()
+    {
+        if (error != null)
+        {
+            return;
+        }
+        input.negate();
+        //如果改变的是刚算出来的结果，这个结果会作为下一次运算的firstOperand
+        if (resultJustDisplayed && !isAwaitingSecondOperand)
+        {
+            if (!readOperand())
+            {
+                displayError(CalculatorError.INVALID_NUMBER);
+                return;
+            }
+            firstFromOperand();
+        }
+    }
+
+    /**
+     *百分号。
+     *1.如果是"A + B %"，则B%计算为A * (B/100)并作为第二个操作数。
+     *2.如果是"A * B %"或"A / B %"，则B%计算为B/100。
+     *3.如果只是"A %"，则计算A/100。
+     */
+    private void percentage()
+    {
+        if (error != null || input.isEmpty() || input.isMinusOnly())
+        {
+            return;
+        }
+        if (!readOperand())
+        {
+            displayError(CalculatorError.GENERIC);
+            return;
+        }
+        historyOperand.copyFrom(input);
+        historyOperandIsFirst = false;
+        boolean relative = pendingOperator != null && isAwaitingSecondOperand;
+        if (relative)
+        {
+            historyKind = HistoryKind.PERCENT_OF; //例如"100 + 10%"
+            rememberHistoryFirst();
+            historyOperator = pendingOperator;
+        }
+        else
+        {
+            historyKind = HistoryKind.PERCENT; //例如"10% ="
+            resultJustDisplayed = true;
+        }
+        //对于加减法，百分比是相对于第一个操作数的(例如 100 + 10% = 100 + 100*0.1 = 110)
+        boolean ofFirst = relative && (pendingOperator == Operator.ADD || pendingOperator == Operator.SUBTRACT);
+        if (mathContext != null)
+        {
+            if (ofFirst)
+            {
+                DecimalValue.apply(Operator.MULTIPLY, firstDecimal, operandDecimal, resultDecimal, mathContext);
+            }
+            else
+            {
+                resultDecimal.set(operandDecimal);
+            }
+            resultDecimal.percent(mathContext);
+            showDecimalResult(DecimalValue.OK);
+        }
+        else
+        {
+            showResult(ofFirst ? firstOperand * (operandValue / 100.0) : operandValue / 100.0);
+        }
+    }
+
+    /**
+     *倒数 (1/x)。
+     */
+    private void reciprocal()
+    {
+        if (error != null || input.isEmpty() || input.isMinusOnly())
+        {
+            return;
+        }
+        if (!readOperand())
+        {
+            displayError(CalculatorError.GENERIC);
+            return;
+        }
+        if (isOperandZero())
+        {
+            displayError(CalculatorError.DIVIDE_BY_ZERO);
+            return;
+        }
+        historyKind = HistoryKind.RECIPROCAL; //"1/(value) ="
+        historyFirst = operandValue;
+        historyFirstDecimal.set(operandDecimal);
+        if (mathContext != null)
+        {
+            finishDecimalUnary(evaluateDecimal(ResultCache.RECIPROCAL, operandDecimal, null, resultDecimal));
+        }
+        else
+        {
+            finishUnary(1.0 / operandValue);
+        }
+    }
+
+    /**
+     *MR：把当前存储槽中的数作为新的输入，之后可以直接按运算符或等号，按数字则开始新的输入。
+     *存储槽为空时不做任何事。
+     */
+    private void memoryRecall()
+    {
+        if (error != null)
+        {
+            return;
+        }
+        int index = memory.find(memorySlot);
+        if (index < 0)
+        {
+            return;
+        }
+        if (resultJustDisplayed)
+        {
+            resultJustDisplayed = false;
+            if (!isAwaitingSecondOperand)
+            {
+                historyKind = HistoryKind.NONE;
+            }
+        }
+        if (mathContext != null)
+        {
+            memory.decimalAt(index).writeTo(input);
+        }
+        else
+        {
+            formatInto(input, memory.value(index));
+        }
+        memoryEntry = true;
+    }
+
+    /**
+     *M+和M-：把当前显示的数加到当前存储槽中或从中减去，存储槽为空时从0开始。
+     *显示内容和计算状态都不变，因此可以在一串运算的中途累加；之后按数字开始新的输入。
+     *@param subtract 是否是M-
+     */
+    private void memoryAdd(boolean subtract)
+    {
+        if (error != null || input.isEmpty() || input.isMinusOnly())
+        {
+            return;
+        }
+        if (!readOperand())
+        {
+            displayError(CalculatorError.INVALID_NUMBER);
+            return;
+        }
+        int index = memory.insert(memorySlot);
+        if (mathContext != null)
+        {
+            DecimalValue stored = memory.decimalAt(index);
+            DecimalValue.apply(subtract ? Operator.SUBTRACT : Operator.ADD, stored, operandDecimal, memoryDecimal, mathContext);
+            stored.set(memoryDecimal);
+        }
+        else
+        {
+            double sum = subtract ? memory.value(index) - operandValue : memory.value(index) + operandValue;
+            if (Double.isInfinite(sum))
+            {
+                error = CalculatorError.OVERFLOW; //存储槽保留原来的值
+                return;
+            }
+            memory.setValue(index, sum);
+        }
+        memoryEntry = !resultJustDisplayed;
+    }
+
+    /**
+     *一元运算 (x², √x)。
+     */
+    private void unary(Key key)
+    {
+        if (error != null || input.isEmpty() || input.isMinusOnly())
+        {
+            return;
+        }
+        if (!readOperand())
+        {
+            displayError(CalculatorError.GENERIC);
+            return;
+        }
+        boolean square = key == Key.SQUARE;
+        if (!square && (mathContext != null ? operandDecimal.signum() < 0 : operandValue < 0)) //负数不能开平方根
+        {
+            displayError(CalculatorError.INVALID_INPUT);
+            return;
+        }
+        historyKind = square ? HistoryKind.SQUARE : HistoryKind.SQUARE_ROOT; //"sqr(5) ="或"sqrt(5) ="
+        historyFirst = operandValue;
+        historyFirstDecimal.set(operandDecimal);
+        if (mathContext != null)
+        {
+            finishDecimalUnary(evaluateDecimal(square ? ResultCache.SQUARE : ResultCache.SQUARE_ROOT, operandDecimal, null,
+                    resultDecimal));
+        }
+        else
+        {
+            finishUnary(square ? operandValue * operandValue : Math.sqrt(operandValue));
+        }
+    }
+
+    private void finishUnary(double resultValue)
+    {
+        firstOperand = resultValue;
+        resultJustDisplayed = true;
+        pendingOperator = null;
+        isAwaitingSecondOperand = false;
+        showResult(resultValue);
+    }
+
+    /**
+     *精确模式下的finishUnary，结果已经在resultDecimal中。
+     *@param status DecimalValue运算返回的结果状态
+     */
+    private void finishDecimalUnary(int status)
+    {
+        resultJustDisplayed = true;
+        pendingOperator = null;
+        isAwaitingSecondOperand = false;
+        if (showDecimalResult(status))
+        {
+            firstDecimal.set(resultDecimal);
+        }
+    }
+
+    /**
+     *把当前输入解析为操作数：双精度模式保存到operandValue，精确模式保存到operandDecimal。
+     *@return 是否解析成功
+     */
+    private boolean readOperand()
+    {
+        if (mathContext != null)
+        {
+            return input.toDecimal(operandDecimal);
+        }
+        operandValue = input.toDouble();
+        return !Double.isNaN(operandValue);
+    }
+
+    private boolean isOperandZero()
+    {
+        return mathContext != null ? operandDecimal.isZero() : operandValue == 0;
+    }
+
+    /**
+     *把刚解析的操作数作为第一个操作数。
+     */
+    private void firstFromOperand()
+    {
+        firstOperand = operandValue;
+        firstDecimal.set(operandDecimal);
+    }
+
+    private void rememberHistoryFirst()
+    {
+        historyFirst = firstOperand;
+        historyFirstDecimal.set(firstDecimal);
+    }
+
+    /**
+     *把计算结果格式化后写入当前输入。
+     *结果为NaN或无穷大时进入错误状态，但保留历史记录，以便看到是哪一步出错。
+     *@return 结果是否有效
+     */
+    private boolean showResult(double value)
+    {
+        if (Double.isNaN(value))
+        {
+            error = CalculatorError.UNDEFINED;
+            return false;
+        }
+        if (Double.isInfinite(value))
+        {
+            error = CalculatorError.OVERFLOW;
+            return false;
+        }
+        formatInto(input, value);
+        return true;
+    }
+
+    /**
+     *把精确模式的计算结果(resultDecimal)写入当前输入。
+     *@param status DecimalValue运算返回的结果状态
+     *@return 结果是否有效
+     */
+    private boolean showDecimalResult(int status)
+    {
+        if (status == DecimalValue.INEXACT)
+        {
+            error = CalculatorError.INEXACT;
+            return false;
+        }
+        if (resultDecimal.exceedsLimits(mathContext))
+        {
+            error = CalculatorError.OVERFLOW;
+            return false;
+        }
+        resultDecimal.writeTo(input);
+        return true;
+    }
+
+    private void formatInto(InputBuffer target, double value)
+    {
+        formatter.format(value);
+        target.set(formatter.buffer(), formatter.length());
+    }
+
+    private void writeHistoryFirst(InputBuffer target)
+    {
+        if (mathContext != null)
+        {
+            historyFirstDecimal.writeTo(target);
+        }
+        else
+        {
+            formatInto(target, historyFirst);
+        }
+    }
+
+    private void appendHistoryFirst(StringBuilder sb)
+    {
+        if (mathContext != null)
+        {
+            historyFirstDecimal.writeTo(historyScratch);
+            historyScratch.appendTo(sb);
+        }
+        else
+        {
+            formatter.format(historyFirst);
+            formatter.appendTo(sb);
+        }
+    }
+
+    /**
+     *进入错误状态，并重置计算器状态（部分）。
+     */
+    private void displayError(CalculatorError newError)
+    {
+        error = newError;
+        historyKind = HistoryKind.NONE;
+        input.setZero();
+        firstOperand = 0;
+        firstDecimal.setZero();
+        pendingOperator = null;
+        isAwaitingSecondOperand = false;
+        resultJustDisplayed = true; //标记为“结果已显示”状态
+    }
+
+    /**
+     *@return 状态版本号，每次按键或切换精度后都会增加
+     */
+    public long revision()
+    {
+        return revision;
+    }
+
+    /**
+     *@return 历史记录最多保存的运算数
+     */
+    public int historyCapacity()
+    {
+        return history.capacity();
+    }
+
+    /**
+     *@return 是否有可以撤销的运算
+     */
+    public boolean canUndo()
+    {
+        return history.canUndo();
+    }
+
+    /**
+     *@return 是否有可以重做的运算
+     */
+    public boolean canRedo()
+    {
+        return history.canRedo();
+    }
+
+    /**
+     *@return 是否处于错误状态
+     */
+    public boolean isError()
+    {
+        return error != null;
+    }
+
+    /**
+     *@return 当前错误状态，没有错误时返回 null
+     */
+    public CalculatorError error()
+    {
+        return programmerMode ? programmer.error() : error;
+    }
+
+    /**
+     *@return 当前错误信息，没有错误时返回 null
+     */
+    public String errorMessage()
+    {
+        CalculatorError current = error();
+        return current != null ? current.message() : null;
+    }
+
+    /**
+     *@return 当前输入对应的数值，出错时返回 NaN
+     */
+    public double value()
+    {
+        if (programmerMode)
+        {
+            return programmer.error() != null ? Double.NaN : programmer.value();
+        }
+        return error != null ? Double.NaN : input.toDouble();
+    }
+
+    /**
+     *@return 主显示屏应显示的文本
+     */
+    public String displayText()
+    {
+        if (programmerMode)
+        {
+            return programmer.displayText();
+        }
+        return error != null ? error.message() : input.toString();
+    }
+
+    /**
+     *@return 是否正在输入第二个操作数，此时历史记录显示屏可以显示previewText()
+     */
+    public boolean canPreview()
+    {
+        return !programmerMode && error == null && pendingOperator != null && isAwaitingSecondOperand
+                && !resultJustDisplayed
+                && historyKind == HistoryKind.PENDING;
+    }
+
+    /**
+     *输入第二个操作数时的预览，例如"5 + 3 = 8"，不改变引擎的状态。
+     *状态没有变化时直接返回上一次的结果；输入只有负号或末尾是小数点时数值没有变化，也返回上一次的结果。
+     *除数为零、结果无效或操作数很长(计算可能需要数秒)时不预览。
+     *@return 预览文本，不能预览时为 null
+     */
+    public String previewText()
+    {
+        if (!canPreview() || mathContext != null && hasLargeOperand())
+        {
+            previewRevision = -1;
+            previewText = null;
+            return null;
+        }
+        if (previewRevision == revision)
+        {
+            return previewText;
+        }
+        previewRevision = revision;
+        if (!input.isNumber())
+        {
+            return previewText;
+        }
+        if (mathContext != null)
+        {
+            if (!input.toDecimal(previewScratch))
+            {
+                return previewText = null;
+            }
+            if (previewText != null && previewOperator == pendingOperator && mathContext.equals(previewMathContext)
+                    && previewFirstDecimal.sameAs(firstDecimal) && previewOperandDecimal.sameAs(previewScratch))
+            {
+                return previewText;
+            }
+            previewMathContext = mathContext;
+            previewFirstDecimal.set(firstDecimal);
+            previewOperandDecimal.set(previewScratch);
+        }
+        else
+        {
+            double operand = input.toDouble();
+            if (Double.isNaN(operand))
+            {
+                return previewText = null;
+            }
+            if (previewText != null && previewOperator == pendingOperator && previewMathContext == null
+                    && Double.doubleToLongBits(previewFirst) == Double.doubleToLongBits(firstOperand)
+                    && Double.doubleToLongBits(previewOperand) == Double.doubleToLongBits(operand))
+            {
+                return previewText;
+            }
+            previewMathContext = null;
+            previewFirst = firstOperand;
+            previewOperand = operand;
+        }
+        previewOperator = pendingOperator;
+        return previewText = evaluatePreview();
+    }
+
+    /**
+     *计算预览的结果并拼接文本。
+     *@return 预览文本，结果无效时为 null
+     */
+    private String evaluatePreview()
+    {
+        boolean zero = previewMathContext != null ? previewOperandDecimal.isZero() : previewOperand == 0;
+        if (zero && (previewOperator == Operator.DIVIDE || previewOperator == Operator.MODULO))
+        {
+            return null;
+        }
+        if (previewMathContext != null)
+        {
+            int status = previewOperator == Operator.DIVIDE
+                    ? evaluateDecimal(ResultCache.DIVIDE, previewFirstDecimal, previewOperandDecimal, previewResult)
+                    : DecimalValue.apply(previewOperator, previewFirstDecimal, previewOperandDecimal, previewResult,
+                    previewMathContext);
+            if (status == DecimalValue.INEXACT || previewResult.exceedsLimits(previewMathContext))
+            {
+                return null;
+            }
+            previewResult.writeTo(previewBuffer);
+        }
+        else
+        {
+            double value = previewOperator.apply(previewFirst, previewOperand);
+            if (Double.isNaN(value) || Double.isInfinite(value))
+            {
+                return null;
+            }
+            formatInto(previewBuffer, value);
+        }
+        StringBuilder sb = new StringBuilder(historyText());
+        sb.append(' ');
+        input.appendTo(sb);
+        sb.append(" = ");
+        previewBuffer.appendTo(sb);
+        return sb.toString();
+    }
+
+    /**
+     *@return 历史记录显示屏应显示的文本
+     */
+    public String historyText()
+    {
+        if (programmerMode)
+        {
+            return programmer.historyText();
+        }
+        StringBuilder sb = new StringBuilder();
+        switch (historyKind)
+        {
+            case NONE:
+                break;
+            case PENDING:
+                appendHistoryFirst(sb);
+                sb.append(' ').append(historyOperator.symbol());
+                break;
+            case BINARY:
+            case RESTORED:
+                appendHistoryFirst(sb);
+                sb.append(' ').append(historyOperator.symbol()).append(' ');
+                if (historyOperandIsFirst)
+                {
+                    appendHistoryFirst(sb);
+                }
+                else
+                {
+                    historyOperand.appendTo(sb);
+                }
+                if (historyKind == HistoryKind.BINARY)
+                {
+                    sb.append(" =");
+                }
+                break;
+            case EQUALS:
+                historyOperand.appendTo(sb);
+                sb.append(" =");
+                break;
+            case PERCENT_OF:
+                appendHistoryFirst(sb);
+                sb.append(' ').append(historyOperator.symbol()).append(' ');
+                historyOperand.appendTo(sb);
+                sb.append('%');
+                break;
+            case PERCENT:
+                historyOperand.appendTo(sb);
+                sb.append("% =");
+                break;
+            case SQUARE:
+                sb.append("sqr(");
+                appendHistoryFirst(sb);
+                sb.append(") =");
+                break;
+            case SQUARE_ROOT:
+                sb.append("sqrt(");
+                appendHistoryFirst(sb);
+                sb.append(") =");
+                break;
+            case RECIPROCAL:
+                sb.append("1/(");
+                appendHistoryFirst(sb);
+                sb.append(") =");
+                break;
+            case FUNCTION:
+                sb.append(functions.name(historyFunction)).append('(');
+                appendHistoryFirst(sb);
+                sb.append(") =");
+                break;
+            case CONVERSION:
+                appendHistoryFirst(sb);
+                sb.append(' ').append(historyFromUnit).append(" → ").append(historyToUnit).append(" =");
+                break;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package org.calculator.moderncalculator;
+
+/**
+ *CalculatorError枚举列出计算器可能进入的错误状态。
+ *引擎只保存枚举值，错误信息在显示时才通过message()取得，
+ *因此判断是否出错不需要检查显示的文本，错误信息也不会被当作数字解析。
+ */
+public enum CalculatorError
+{
+    INVALID_INPUT("无效输入"),
+    INVALID_NUMBER("错误: 无效数字"),
+    DIVIDE_BY_ZERO("除数不能为零"),
+    MODULO_BY_ZERO("模数不能为零"),
+    GENERIC("错误"),
+    UNDEFINED("结果未定义"),
+    OVERFLOW("溢出"),
+    INEXACT("结果无法精确表示");
+
+    private final String message;
+
+    CalculatorError(String message)
+    {
+        this.message = message;
+    }
+
+    /**
+     *@return 显示给用户的错误信息
+     */
+    public String message()
+    {
+        return message;
+    }
+}
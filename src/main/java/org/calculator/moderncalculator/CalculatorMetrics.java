@@ -0,0 +1,309 @@
+package org.calculator.moderncalculator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *CalculatorMetrics统计界面的运行指标：按键延迟、每种运算的次数、每种错误的次数和界面脉冲的布局耗时。
+ *用系统属性calculator.metrics=true启用，启用后注册为JMX的MXBean，程序退出时输出文本报告
+ *(calculator.metrics.dump指定文件，否则输出到标准错误)。
+ *未启用时create()返回 null，CalculatorController中只多一次空值判断，这个类和JMX都不会被加载。
+ *记录方法都在界面线程上调用，JMX的读取在其他线程进行。
+ */
+public final class CalculatorMetrics implements CalculatorMetricsMXBean
+{
+    private static final String OBJECT_NAME = "org.calculator.moderncalculator:type=CalculatorMetrics";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final LatencyHistogram keyLatency = new LatencyHistogram();
+    private final LatencyHistogram pulseLayout = new LatencyHistogram();
+    private final AtomicLongArray operations = new AtomicLongArray(Operator.values().length);
+    private final AtomicLongArray errors = new AtomicLongArray(CalculatorError.values().length);
+
+    //还没有显示出来的按键的开始时间。按键之后的显示在下一个脉冲统一更新，同一帧中可能有多个按键
+    private final long[] pendingKeys = new long[64];
+    private int pendingCount;
+    private CalculatorError shownError;  //上一次显示的错误，用于只在错误出现时计数一次
+    private long pulseStarted;
+    private ObjectName name;             //注册到JMX的名称，注册失败时为 null
+
+    private CalculatorMetrics()
+    {
+    }
+
+    /**
+     *@return 启用时返回新的实例并注册到JMX，未启用时返回 null
+     */
+    static CalculatorMetrics create()
+    {
+        if (!Boolean.getBoolean("calculator.metrics"))
+        {
+            return null;
+        }
+        CalculatorMetrics metrics = new CalculatorMetrics();
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name))
+            {
+                server.registerMBean(metrics, name);
+                metrics.name = name;
+            }
+        }
+        catch (JMException e)
+        {
+            System.err.println("无法注册JMX指标: " + e.getMessage()); //仍然可以输出文本报告
+        }
+        return metrics;
+    }
+
+    /**
+     *开始处理一次按键(按钮、键盘、粘贴或菜单)时调用。
+     */
+    void inputReceived()
+    {
+        if (pendingCount < pendingKeys.length)
+        {
+            pendingKeys[pendingCount++] = System.nanoTime();
+        }
+    }
+
+    /**
+     *显示屏更新之后调用，记录这一帧中每个按键的延迟；显示了新的错误时按错误类型计数。
+     *@param error 当前显示的错误，没有错误时为 null
+     */
+    void displayUpdated(CalculatorError error)
+    {
+        long now = System.nanoTime();
+        for (int i = 0; i < pendingCount; i++)
+        {
+            keyLatency.record(now - pendingKeys[i]);
+        }
+        pendingCount = 0;
+        if (error != null && error != shownError)
+        {
+            errors.incrementAndGet(error.ordinal());
+        }
+        shownError = error;
+    }
+
+    /**
+     *完成一次二元运算时调用。
+     */
+    void operationCompleted(Operator operator)
+    {
+        operations.incrementAndGet(operator.ordinal());
+    }
+
+    /**
+     *场景在一个脉冲中开始CSS和布局之前调用。
+     */
+    void pulseStarted()
+    {
+        pulseStarted = System.nanoTime();
+    }
+
+    /**
+     *场景在一个脉冲中完成布局之后调用。
+     */
+    void pulseFinished()
+    {
+        if (pulseStarted != 0)
+        {
+            pulseLayout.record(System.nanoTime() - pulseStarted);
+            pulseStarted = 0;
+        }
+    }
+
+    /**
+     *程序退出时输出文本报告并从JMX注销。
+     */
+    void close()
+    {
+        String report = dump();
+        String path = System.getProperty("calculator.metrics.dump");
+        if (path == null)
+        {
+            System.err.print(report);
+        }
+        else
+        {
+            try
+            {
+                Files.writeString(Path.of(path), report, StandardCharsets.UTF_8);
+            }
+            catch (IOException e)
+            {
+                System.err.println("无法写入指标报告: " + e.getMessage());
+            }
+        }
+        if (name != null)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            catch (JMException e)
+            {
+                //程序正在退出，忽略
+            }
+        }
+    }
+
+    @Override
+    public long getKeyCount()
+    {
+        return keyLatency.count();
+    }
+
+    @Override
+    public double getKeyLatencyMedianMillis()
+    {
+        return keyLatency.percentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getKeyLatency99Millis()
+    {
+        return keyLatency.percentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getKeyLatencyMaxMillis()
+    {
+        return keyLatency.max() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getPulseCount()
+    {
+        return pulseLayout.count();
+    }
+
+    @Override
+    public double getPulseLayout99Millis()
+    {
+        return pulseLayout.percentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getPulseLayoutMaxMillis()
+    {
+        return pulseLayout.max() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts()
+    {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Operator operator : Operator.values())
+        {
+            counts.put(operator.symbol(), operations.get(operator.ordinal()));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts()
+    {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (CalculatorError error : CalculatorError.values())
+        {
+            counts.put(error.message(), errors.get(error.ordinal()));
+        }
+        return counts;
+    }
+
+    @Override
+    public long getResultCacheHits()
+    {
+        ResultCache cache = ResultCache.shared();
+        return cache != null ? cache.hits() : 0;
+    }
+
+    @Override
+    public long getResultCacheMisses()
+    {
+        ResultCache cache = ResultCache.shared();
+        return cache != null ? cache.misses() : 0;
+    }
+
+    @Override
+    public int getResultCacheSize()
+    {
+        ResultCache cache = ResultCache.shared();
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Override
+    public String dump()
+    {
+        StringBuilder report = new StringBuilder();
+        appendHistogram(report, "按键延迟", keyLatency);
+        appendHistogram(report, "脉冲布局", pulseLayout);
+        appendCounts(report, "运算次数", getOperationCounts());
+        appendCounts(report, "错误次数", getErrorCounts());
+        ResultCache cache = ResultCache.shared();
+        if (cache != null)
+        {
+            long hits = cache.hits();
+            long lookups = hits + cache.misses();
+            report.append(String.format(Locale.ROOT, "结果缓存: 命中 %d, 未命中 %d, 命中率 %.1f%%, 淘汰 %d, 条目 %d%n",
+                    hits, lookups - hits, lookups == 0 ? 0.0 : hits * 100.0 / lookups, cache.evictions(), cache.size()));
+        }
+        return report.toString();
+    }
+
+    private static void appendHistogram(StringBuilder report, String title, LatencyHistogram histogram)
+    {
+        report.append(String.format(Locale.ROOT,
+                "%s(ms): 次数 %d, 平均 %.3f, p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, 最大 %.3f%n",
+                title, histogram.count(), histogram.mean() / NANOS_PER_MILLI,
+                histogram.percentile(50) / NANOS_PER_MILLI, histogram.percentile(90) / NANOS_PER_MILLI,
+                histogram.percentile(99) / NANOS_PER_MILLI, histogram.percentile(99.9) / NANOS_PER_MILLI,
+                histogram.max() / NANOS_PER_MILLI));
+    }
+
+    private static void appendCounts(StringBuilder report, String title, Map<String, Long> counts)
+    {
+        report.append(title).append(": ");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : counts.entrySet())
+        {
+            report.append(separator).append(entry.getKey()).append('=').append(entry.getValue());
+            separator = ", ";
+        }
+        report.append(System.lineSeparator());
+    }
+
+    @Override
+    public void reset()
+    {
+        keyLatency.reset();
+        pulseLayout.reset();
+        ResultCache cache = ResultCache.shared();
+        if (cache != null)
+        {
+            cache.resetStatistics();
+        }
+        for (int i = 0; i < operations.length(); i++)
+        {
+            operations.set(i, 0);
+        }
+        for (int i = 0; i < errors.length(); i++)
+        {
+            errors.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.calculator.moderncalculator;
+
+import java.util.Map;
+
+/**
+ *CalculatorMetricsMXBean是计算器运行指标的JMX接口，可以用JConsole或VisualVM查看。
+ *耗时的单位都是毫秒，百分位数的相对误差不超过约1.6%。
+ */
+public interface CalculatorMetricsMXBean
+{
+    /**
+     *@return 记录了延迟的按键次数
+     */
+    long getKeyCount();
+
+    /**
+     *@return 按键从事件处理开始到显示屏更新之间耗时的中位数
+     */
+    double getKeyLatencyMedianMillis();
+
+    /**
+     *@return 按键延迟的99百分位数
+     */
+    double getKeyLatency99Millis();
+
+    /**
+     *@return 按键延迟的最大值
+     */
+    double getKeyLatencyMaxMillis();
+
+    /**
+     *@return 记录的界面脉冲次数
+     */
+    long getPulseCount();
+
+    /**
+     *@return 每个脉冲中CSS和布局耗时的99百分位数
+     */
+    double getPulseLayout99Millis();
+
+    /**
+     *@return 每个脉冲中CSS和布局耗时的最大值
+     */
+    double getPulseLayoutMaxMillis();
+
+    /**
+     *@return 每种运算符完成的运算次数，键为运算符的符号
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     *@return 每种错误显示的次数，键为错误信息
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     *@return 精确模式的结果缓存命中的次数，未启用缓存(calculator.memo)时为0
+     */
+    long getResultCacheHits();
+
+    /**
+     *@return 结果缓存未命中而重新计算的次数
+     */
+    long getResultCacheMisses();
+
+    /**
+     *@return 结果缓存中当前保存的结果个数
+     */
+    int getResultCacheSize();
+
+    /**
+     *@return 全部指标的文本报告
+     */
+    String dump();
+
+    /**
+     *清除全部指标，重新开始统计。
+     */
+    void reset();
+}
@@ -0,0 +1,472 @@
+package org.calculator.moderncalculator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *CalculatorServer把计算器引擎作为本机的HTTP服务运行，每个客户端会话有自己的CalculatorEngine，
+ *保存当前输入、第一个操作数、待计算的运算符和各种状态，与界面上的一个窗口相同。
+ *
+ *协议(路径/calc，请求和响应都是UTF-8文本)：
+ *POST /calc 请求体是以空白分隔的输入，每一项是按键上的符号(例如"+"、"x²"、"CE")、Key的名称(例如SQUARE)，
+ *或者按粘贴处理的文本(例如"12.5")。不带session参数时创建新的会话，响应头X-Calculator-Session返回会话编号；
+ *之后用 POST /calc?session=编号 继续输入。可选的precision参数(Precision的名称)切换精度。
+ *响应体是主显示屏和历史记录显示屏的文本，各占一行。DELETE /calc?session=编号 结束会话。
+ *
+ *会话保存在ConcurrentHashMap中，查找不加锁；同一会话的请求由会话自己的锁依次处理，不同会话之间互不等待。
+ *每个请求在一个虚拟线程上处理(JDK不支持时使用线程池)。空闲超过期限的会话由后台线程定期删除。
+ *会话只在持有它的锁时删除并标记为removed，请求拿到锁后看到这个标记就按会话不存在处理，
+ *因此不会有请求在已经删除的会话上执行。会话数的上限用计数器预留，并发创建会话时也不会超过。
+ */
+public final class CalculatorServer implements Closeable
+{
+    static final String PATH = "/calc";
+    static final String SESSION_HEADER = "X-Calculator-Session";
+    static final int DEFAULT_PORT = 8085;
+    static final int DEFAULT_HISTORY_CAPACITY = 10; //每个会话的撤销历史，100条时一个会话约占34KB，10条时约5KB
+    static final int DEFAULT_MAX_SESSIONS = 100_000;
+    static final long DEFAULT_IDLE_SECONDS = 300;
+    private static final int MAX_IDLE_CONNECTIONS = 10_000; //保持连接的客户端连接数上限
+
+    private static final Key[] KEYS = Key.values();
+
+    /**
+     *一个客户端会话。
+     */
+    private static final class Session
+    {
+        final CalculatorEngine engine;
+        final ReentrantLock lock = new ReentrantLock(); //不用synchronized，虚拟线程等待时不占用载体线程
+        volatile long lastUsed = System.nanoTime();
+        boolean removed; //持有lock时读写，已从sessions中删除
+
+        Session(int historyCapacity)
+        {
+            engine = new CalculatorEngine(CalculatorEngine.DEFAULT_MAX_DIGITS, historyCapacity);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService sweeper;
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCount = new AtomicInteger(); //已预留的会话数，不超过maxSessions
+    private final int historyCapacity;
+    private final int maxSessions;
+    private final long idleNanos;
+
+    private CalculatorServer(HttpServer server, int historyCapacity, int maxSessions, long idleSeconds)
+    {
+        this.server = server;
+        this.historyCapacity = historyCapacity;
+        this.maxSessions = maxSessions;
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        handlers = newHandlerExecutor();
+        server.setExecutor(handlers);
+        server.createContext(PATH, this::handle);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "calculator-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleSeconds / 4);
+        sweeper.scheduleWithFixedDelay(this::evictIdleSessions, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     *在本机回环地址上启动服务。
+     *@param port 端口，0表示由系统选择
+     *@param historyCapacity 每个会话的撤销历史容量
+     *@param maxSessions 同时存在的会话数上限，达到上限时新建会话返回503
+     *@param idleSeconds 会话空闲超过这么多秒后被删除
+     *@return 已启动的服务，不再使用时需要close()
+     *@throws IOException 无法监听端口
+     */
+    public static CalculatorServer start(int port, int historyCapacity, int maxSessions, long idleSeconds) throws IOException
+    {
+        //JDK内置HttpServer的设置在第一次创建服务时读取。响应头和响应体分两次写出，不关闭Nagle算法时
+        //每个请求都要等待客户端延迟的ACK；空闲连接默认最多保留200个，并发客户端更多时多出的连接会被重置
+        setDefault("sun.net.httpserver.nodelay", "true");
+        setDefault("sun.net.httpserver.maxIdleConnections", Integer.toString(MAX_IDLE_CONNECTIONS));
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        CalculatorServer calculatorServer = new CalculatorServer(server, historyCapacity, maxSessions, idleSeconds);
+        server.start();
+        return calculatorServer;
+    }
+
+    private static void setDefault(String property, String value)
+    {
+        if (System.getProperty(property) == null)
+        {
+            System.setProperty(property, value);
+        }
+    }
+
+    /**
+     *@return 实际监听的端口
+     */
+    public int port()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     *@return 当前的会话数
+     */
+    public int sessionCount()
+    {
+        return sessionCount.get();
+    }
+
+    /**
+     *创建处理请求的线程池。JDK支持虚拟线程时每个请求使用一个虚拟线程。
+     */
+    static ExecutorService newHandlerExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool(runnable ->
+            {
+                Thread thread = new Thread(runnable, "calculator-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try (exchange)
+        {
+            String method = exchange.getRequestMethod();
+            String id = parameter(exchange, "session");
+            if (method.equals("DELETE"))
+            {
+                Long key = parseId(id);
+                Session session = key != null ? sessions.get(key) : null;
+                boolean deleted = false;
+                if (session != null)
+                {
+                    session.lock.lock();
+                    try
+                    {
+                        deleted = remove(key, session);
+                    }
+                    finally
+                    {
+                        session.lock.unlock();
+                    }
+                }
+                send(exchange, deleted ? 200 : 404, "", null);
+                return;
+            }
+            if (!method.equals("POST"))
+            {
+                send(exchange, 405, "只支持POST和DELETE\n", null);
+                return;
+            }
+            Precision precision = null;
+            String precisionName = parameter(exchange, "precision");
+            if (precisionName != null)
+            {
+                try
+                {
+                    precision = Precision.valueOf(precisionName);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    send(exchange, 400, "未知的精度: " + precisionName + "\n", null);
+                    return;
+                }
+            }
+            String input = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Long key;
+            Session session;
+            if (id == null)
+            {
+                if (!reserveSession())
+                {
+                    send(exchange, 503, "会话数已达到上限\n", null);
+                    return;
+                }
+                session = new Session(historyCapacity);
+                session.lock.lock(); //加入sessions之前加锁，后台线程不会删除还没有处理第一个请求的会话
+                do
+                {
+                    key = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+                }
+                while (sessions.putIfAbsent(key, session) != null);
+            }
+            else
+            {
+                key = parseId(id);
+                session = key != null ? sessions.get(key) : null;
+                if (session != null)
+                {
+                    session.lock.lock();
+                    if (session.removed) //查找之后、加锁之前被删除
+                    {
+                        session.lock.unlock();
+                        session = null;
+                    }
+                }
+                if (session == null)
+                {
+                    send(exchange, 404, "会话不存在或已过期: " + id + "\n", null);
+                    return;
+                }
+            }
+            String response;
+            try
+            {
+                if (precision != null)
+                {
+                    session.engine.setMathContext(precision.mathContext());
+                }
+                apply(session.engine, input);
+                response = session.engine.displayText() + "\n" + session.engine.historyText() + "\n";
+                session.lastUsed = System.nanoTime();
+            }
+            finally
+            {
+                session.lock.unlock();
+            }
+            send(exchange, 200, response, key);
+        }
+    }
+
+    /**
+     *把一个请求的输入交给引擎。load generator用同样的方法计算期望的结果。
+     *@param input 以空白分隔的按键符号、按键名称或者文本
+     */
+    static void apply(CalculatorEngine engine, String input)
+    {
+        int length = input.length();
+        int i = 0;
+        while (i < length)
+        {
+            while (i < length && Character.isWhitespace(input.charAt(i)))
+            {
+                i++;
+            }
+            int end = i;
+            while (end < length && !Character.isWhitespace(input.charAt(end)))
+            {
+                end++;
+            }
+            if (end > i)
+            {
+                String token = input.substring(i, end);
+                Key key = key(token);
+                if (key != null)
+                {
+                    engine.press(key);
+                }
+                else
+                {
+                    engine.type(token);
+                }
+            }
+            i = end;
+        }
+    }
+
+    /**
+     *@return 符号或名称对应的按键，都不是时返回 null
+     */
+    private static Key key(String token)
+    {
+        Key key = Key.fromLabel(token);
+        if (key != null)
+        {
+            return key;
+        }
+        for (Key candidate : KEYS)
+        {
+            if (candidate.name().equals(token))
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String parameter(HttpExchange exchange, String name)
+    {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+        {
+            return null;
+        }
+        for (String pair : query.split("&"))
+        {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name))
+            {
+                return pair.substring(equals + 1);
+            }
+        }
+        return null;
+    }
+
+    private static Long parseId(String id)
+    {
+        if (id == null)
+        {
+            return null;
+        }
+        try
+        {
+            return Long.parseLong(id);
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body, Long session) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if (session != null)
+        {
+            exchange.getResponseHeaders().set(SESSION_HEADER, session.toString());
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0)
+        {
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     *预留一个会话，会话数已达到上限时返回false。
+     */
+    private boolean reserveSession()
+    {
+        int count;
+        do
+        {
+            count = sessionCount.get();
+            if (count >= maxSessions)
+            {
+                return false;
+            }
+        }
+        while (!sessionCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     *删除会话并释放它预留的数量，调用时必须持有session.lock。
+     *@return 会话已经被删除时返回false
+     */
+    private boolean remove(Long key, Session session)
+    {
+        if (session.removed)
+        {
+            return false;
+        }
+        session.removed = true;
+        sessions.remove(key, session);
+        sessionCount.decrementAndGet();
+        return true;
+    }
+
+    /**
+     *删除空闲超过期限的会话。正在处理请求的会话不会被删除。
+     */
+    private void evictIdleSessions()
+    {
+        for (Map.Entry<Long, Session> entry : sessions.entrySet())
+        {
+            Session session = entry.getValue();
+            if (System.nanoTime() - session.lastUsed > idleNanos && session.lock.tryLock())
+            {
+                try
+                {
+                    if (System.nanoTime() - session.lastUsed > idleNanos) //加锁之前可能刚处理完一个请求
+                    {
+                        remove(entry.getKey(), session);
+                    }
+                }
+                finally
+                {
+                    session.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     *停止服务，丢弃全部会话。
+     */
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        sweeper.shutdownNow();
+        handlers.shutdownNow();
+        sessions.clear();
+        sessionCount.set(0);
+    }
+
+    /**
+     *命令行入口：--serve [--port 端口] [--idle 秒] [--history 条数] [--max-sessions 个数]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = DEFAULT_PORT;
+        int history = DEFAULT_HISTORY_CAPACITY;
+        int maxSessions = DEFAULT_MAX_SESSIONS;
+        long idle = DEFAULT_IDLE_SECONDS;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            switch (args[i])
+            {
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--idle":
+                    idle = Long.parseLong(args[i + 1]);
+                    break;
+                case "--history":
+                    history = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--max-sessions":
+                    maxSessions = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("用法: --serve [--port 端口] [--idle 秒] [--history 条数] [--max-sessions 个数]");
+                    System.exit(2);
+            }
+        }
+        CalculatorServer server = start(port, history, maxSessions, idle);
+        System.err.println("计算器服务已启动: http://127.0.0.1:" + server.port() + PATH);
+    }
+}
@@ -0,0 +1,220 @@
+package org.calculator.moderncalculator;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Parent;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.RowConstraints;
+import javafx.scene.text.Font;
+
+import java.util.Objects;
+
+/**
+ *CalculatorView用代码创建与calculator-view.fxml相同的界面。
+ *FXMLLoader需要解析XML，并通过反射创建每个控件、调用每个setter，启动时要额外加载和初始化不少类；
+ *直接用代码创建界面可以缩短从启动到显示第一帧的时间。修改界面时需要同时修改这两处。
+ */
+final class CalculatorView
+{
+    //按钮布局，与FXML中GridPane的行列一致
+    private static final Key[][] LAYOUT = {
+            {Key.MEMORY_CLEAR, Key.MEMORY_RECALL, Key.MEMORY_ADD, Key.MEMORY_SUBTRACT},
+            {Key.PERCENT, Key.CLEAR_ENTRY, Key.CLEAR, Key.BACKSPACE},
+            {Key.RECIPROCAL, Key.SQUARE, Key.SQUARE_ROOT, Key.DIVIDE},
+            {Key.DIGIT_7, Key.DIGIT_8, Key.DIGIT_9, Key.MULTIPLY},
+            {Key.DIGIT_4, Key.DIGIT_5, Key.DIGIT_6, Key.SUBTRACT},
+            {Key.DIGIT_1, Key.DIGIT_2, Key.DIGIT_3, Key.ADD},
+            {Key.NEGATE, Key.DIGIT_0, Key.DECIMAL, Key.EQUALS}
+    };
+
+    //程序员模式的按钮布局，与FXML中programmerPad的第2、3行一致
+    private static final Key[][] PROGRAMMER_LAYOUT = {
+            {Key.DIGIT_A, Key.DIGIT_B, Key.DIGIT_C, Key.DIGIT_D, Key.DIGIT_E, Key.DIGIT_F},
+            {Key.AND, Key.OR, Key.XOR, Key.NOT, Key.SHIFT_LEFT, Key.SHIFT_RIGHT}
+    };
+
+    private CalculatorView()
+    {
+    }
+
+    /**
+     *创建界面，并把显示屏等控件交给控制器。
+     *@param controller 处理按键的控制器
+     *@return 界面的根节点
+     */
+    static Parent build(CalculatorController controller)
+    {
+        TextField historyDisplayField = new TextField();
+        historyDisplayField.setAlignment(Pos.CENTER_RIGHT);
+        historyDisplayField.setEditable(false);
+        historyDisplayField.setPrefHeight(30.0);
+        historyDisplayField.setStyle("-fx-font-size: 14px; -fx-text-fill: #A9A9A9;");
+        historyDisplayField.getStyleClass().add("history-display-field");
+        anchor(historyDisplayField, 10.0, 5.0);
+
+        TextField displayField = new TextField("0");
+        displayField.setAlignment(Pos.CENTER_RIGHT);
+        displayField.setEditable(false);
+        displayField.setPrefHeight(70.0);
+        displayField.setFont(new Font(35.0));
+        displayField.getStyleClass().add("display-field");
+        anchor(displayField, 10.0, 40.0);
+
+        ProgressIndicator progressIndicator = new ProgressIndicator();
+        progressIndicator.setPrefSize(24.0, 24.0);
+        progressIndicator.setVisible(false);
+        AnchorPane.setLeftAnchor(progressIndicator, 18.0);
+        AnchorPane.setTopAnchor(progressIndicator, 63.0);
+
+        ComboBox<String> fromUnitBox = new ComboBox<>();
+        ComboBox<String> toUnitBox = new ComboBox<>();
+        HBox conversionBar = createConversionBar(controller, fromUnitBox, toUnitBox);
+        anchor(conversionBar, 10.0, CalculatorController.KEYPAD_TOP);
+
+        TextField basesField = new TextField();
+        TextField binaryField = new TextField();
+        GridPane programmerPad = createProgrammerPad(controller, basesField, binaryField);
+        anchor(programmerPad, 0.0, CalculatorController.KEYPAD_TOP);
+
+        GridPane buttons = createButtons(controller);
+        anchor(buttons, 0.0, CalculatorController.KEYPAD_TOP);
+        AnchorPane.setBottomAnchor(buttons, 0.0);
+
+        AnchorPane pane = new AnchorPane(historyDisplayField, displayField, progressIndicator, conversionBar,
+                programmerPad, buttons);
+        pane.setMinSize(0.0, 0.0);
+        pane.setPrefSize(178.0, 398.0);
+
+        SplitPane root = new SplitPane(pane);
+        root.setMinSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        root.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        root.setPrefSize(400.0, 500.0);
+        root.getStyleClass().add("root-pane");
+        root.getStylesheets().add(Objects.requireNonNull(CalculatorView.class.getResource("style.css")).toExternalForm());
+
+        controller.bind(displayField, historyDisplayField, progressIndicator, buttons, conversionBar, fromUnitBox,
+                toUnitBox, programmerPad, basesField, binaryField);
+        return root;
+    }
+
+    /**
+     *创建换算栏：换算前的单位、交换、换算后的单位和换算按钮，只在换算模式下显示。
+     */
+    private static HBox createConversionBar(CalculatorController controller, ComboBox<String> fromUnitBox,
+                                            ComboBox<String> toUnitBox)
+    {
+        fromUnitBox.setMaxWidth(Double.MAX_VALUE);
+        fromUnitBox.setOnAction(event -> controller.fromUnitSelected());
+        toUnitBox.setMaxWidth(Double.MAX_VALUE);
+        toUnitBox.setOnAction(event -> controller.toUnitSelected());
+        Button swap = new Button("⇄");
+        swap.setMnemonicParsing(false);
+        swap.setOnAction(event -> controller.swapUnits());
+        Button convert = new Button("换算");
+        convert.setMnemonicParsing(false);
+        convert.setOnAction(event -> controller.convert());
+        HBox.setHgrow(fromUnitBox, Priority.ALWAYS);
+        HBox.setHgrow(toUnitBox, Priority.ALWAYS);
+        HBox bar = new HBox(5.0, fromUnitBox, swap, toUnitBox, convert);
+        bar.setAlignment(Pos.CENTER);
+        bar.setPrefHeight(30.0);
+        bar.setVisible(false);
+        bar.setManaged(false);
+        return bar;
+    }
+
+    /**
+     *创建程序员模式的按键区：多进制显示、二进制显示、A-F和位运算按钮，只在程序员模式下显示。
+     */
+    private static GridPane createProgrammerPad(CalculatorController controller, TextField basesField,
+                                                TextField binaryField)
+    {
+        GridPane grid = new GridPane();
+        grid.setHgap(5.0);
+        grid.setVgap(5.0);
+        grid.setPadding(new Insets(5.0));
+        for (int column = 0; column < PROGRAMMER_LAYOUT[0].length; column++)
+        {
+            ColumnConstraints constraints = new ColumnConstraints();
+            constraints.setHgrow(Priority.SOMETIMES);
+            constraints.setMinWidth(10.0);
+            constraints.setPrefWidth(100.0);
+            grid.getColumnConstraints().add(constraints);
+        }
+        basesField.setEditable(false);
+        basesField.setStyle("-fx-font-size: 12px;");
+        binaryField.setEditable(false);
+        binaryField.setStyle("-fx-font-family: monospace; -fx-font-size: 11px;");
+        grid.add(basesField, 0, 0, PROGRAMMER_LAYOUT[0].length, 1);
+        grid.add(binaryField, 0, 1, PROGRAMMER_LAYOUT[0].length, 1);
+        for (int row = 0; row < PROGRAMMER_LAYOUT.length; row++)
+        {
+            for (int column = 0; column < PROGRAMMER_LAYOUT[row].length; column++)
+            {
+                Key key = PROGRAMMER_LAYOUT[row][column];
+                Button button = new Button(key.label());
+                button.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+                button.setMnemonicParsing(false);
+                button.setOnAction(event -> controller.press(key));
+                grid.add(button, column, row + 2);
+            }
+        }
+        grid.setVisible(false);
+        grid.setManaged(false);
+        return grid;
+    }
+
+    private static GridPane createButtons(CalculatorController controller)
+    {
+        GridPane grid = new GridPane();
+        grid.setHgap(5.0);
+        grid.setVgap(5.0);
+        grid.setPadding(new Insets(5.0));
+        for (int column = 0; column < LAYOUT[0].length; column++)
+        {
+            ColumnConstraints constraints = new ColumnConstraints();
+            constraints.setHgrow(Priority.SOMETIMES);
+            constraints.setMinWidth(10.0);
+            constraints.setPrefWidth(100.0);
+            grid.getColumnConstraints().add(constraints);
+        }
+        for (int row = 0; row < LAYOUT.length; row++)
+        {
+            RowConstraints constraints = new RowConstraints();
+            constraints.setVgrow(Priority.SOMETIMES);
+            constraints.setMinHeight(10.0);
+            constraints.setPrefHeight(30.0);
+            grid.getRowConstraints().add(constraints);
+            for (int column = 0; column < LAYOUT[row].length; column++)
+            {
+                Key key = LAYOUT[row][column];
+                Button button = new Button(key.label());
+                button.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+                button.setMnemonicParsing(false);
+                button.setOnAction(event -> controller.press(key)); //不需要再根据按钮文本查找按键
+                grid.add(button, column, row);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     *设置左右两侧相同的边距和顶部边距。
+     */
+    private static void anchor(Region node, double side, double top)
+    {
+        AnchorPane.setLeftAnchor(node, side);
+        AnchorPane.setRightAnchor(node, side);
+        AnchorPane.setTopAnchor(node, top);
+    }
+}
@@ -0,0 +1,435 @@
+package org.calculator.moderncalculator;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ *ColumnCalculator对一整列数字执行同一串计算器运算，例如对CSV中的每个价格计算"× 1.13 %"。
+ *只有一步运算时，每个元素的结果格式化后与在计算器上输入"元素 运算符 操作数 ="显示的结果相同，
+ *包括百分号的规则(加减时相对于第一个操作数，乘除时除以100)和除数、模数为零的错误。
+ *计算器按下%后先显示百分比的值，按等号时用显示的数(舍入到10位小数)计算，这里的百分比操作数也同样舍入；
+ *加减百分比的操作数与元素有关，这样的计算逐个元素进行，不使用向量化的循环。
+ *有多步运算时按double依次计算，相当于一个连续的double表达式：计算器在每一步之后把显示的结果
+ *(按NumberFormatter舍入到10位小数)作为下一步的操作数，这里不对中间结果舍入，最后几位可能与计算器不同，
+ *例如"1 ÷ 3 = × 3 ="在计算器上显示0.9999999999，这里的结果是1。
+ *结果和错误标记分别写入两个平行的基本类型数组，错误标记为0表示没有错误，
+ *否则可以用error(byte)转换为CalculatorError。
+ *
+ *计算按块进行：每一步运算都在一个块上执行一个简单的循环，JIT可以把这些循环向量化；
+ *运行时加上--add-modules jdk.incubator.vector时改用Vector API。
+ *元素较多时用ForkJoinPool把数组拆分到多个线程上计算。出错的元素很少，单独逐个重新计算以确定错误类型。
+ *实例不可变，可以在多个线程中同时使用。
+ */
+public final class ColumnCalculator
+{
+    public static final byte OK = 0; //没有错误的错误标记
+
+    //每个块的元素个数，块内的数据可以留在一级缓存中
+    static final int BLOCK = 1024;
+    //元素少于这个数时不拆分到多个线程
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    private static final CalculatorError[] ERRORS = CalculatorError.values();
+
+    //每一步运算，下标相同的元素属于同一步
+    final Operator[] operators;
+    final double[] constants;    //第二个操作数，百分比已经除以100并按显示舍入
+    private final boolean[] relative; //加减百分比：第二个操作数是当前值乘以百分比，按显示舍入
+    private final double[] operands; //原始的第二个操作数，用于逐个计算时的错误检查
+    private final boolean[] percents;
+    private final boolean hasZeroDivisor; //有除数或模数为零的步骤时每个元素都会出错
+    private final boolean hasModulo;      //Vector API没有浮点取模，有取模时使用普通循环
+    private final boolean hasRelative;    //有加减百分比的步骤时逐个元素计算
+
+    private ColumnCalculator(Operator[] operators, double[] operands, boolean[] percents)
+    {
+        this.operators = operators;
+        this.operands = operands;
+        this.percents = percents;
+        int steps = operators.length;
+        constants = new double[steps];
+        relative = new boolean[steps];
+        boolean zeroDivisor = false;
+        boolean modulo = false;
+        boolean anyRelative = false;
+        NumberFormatter formatter = new NumberFormatter();
+        for (int i = 0; i < steps; i++)
+        {
+            boolean additive = operators[i] == Operator.ADD || operators[i] == Operator.SUBTRACT;
+            constants[i] = percents[i] ? displayed(operands[i] / 100.0, formatter) : operands[i];
+            relative[i] = percents[i] && additive;
+            zeroDivisor |= constants[i] == 0 && (operators[i] == Operator.DIVIDE || operators[i] == Operator.MODULO);
+            modulo |= operators[i] == Operator.MODULO;
+            anyRelative |= relative[i];
+        }
+        hasZeroDivisor = zeroDivisor;
+        hasModulo = modulo;
+        hasRelative = anyRelative;
+    }
+
+    /**
+     *创建只有一步运算的计算，对应计算器上的"元素 运算符 操作数 ="。
+     */
+    public static ColumnCalculator of(Operator operator, double operand)
+    {
+        return new ColumnCalculator(new Operator[0], new double[0], new boolean[0]).then(operator, operand);
+    }
+
+    /**
+     *创建只有一步百分比运算的计算，对应计算器上的"元素 运算符 操作数 % ="。
+     */
+    public static ColumnCalculator ofPercent(Operator operator, double percent)
+    {
+        return new ColumnCalculator(new Operator[0], new double[0], new boolean[0]).thenPercent(operator, percent);
+    }
+
+    /**
+     *在上一步的结果上继续运算，类似计算器上接着输入"运算符 操作数 ="，但上一步的结果不舍入。
+     *@return 新的计算，当前实例不变
+     */
+    public ColumnCalculator then(Operator operator, double operand)
+    {
+        return append(operator, operand, false);
+    }
+
+    /**
+     *在上一步的结果上继续百分比运算，类似计算器上接着输入"运算符 操作数 % ="，但上一步的结果不舍入。
+     *@return 新的计算，当前实例不变
+     */
+    public ColumnCalculator thenPercent(Operator operator, double percent)
+    {
+        return append(operator, percent, true);
+    }
+
+    private ColumnCalculator append(Operator operator, double operand, boolean percent)
+    {
+        int steps = operators.length;
+        Operator[] newOperators = Arrays.copyOf(operators, steps + 1);
+        double[] newOperands = Arrays.copyOf(operands, steps + 1);
+        boolean[] newPercents = Arrays.copyOf(percents, steps + 1);
+        newOperators[steps] = operator;
+        newOperands[steps] = operand;
+        newPercents[steps] = percent;
+        return new ColumnCalculator(newOperators, newOperands, newPercents);
+    }
+
+    /**
+     *@param flag evaluate写入的错误标记
+     *@return 对应的错误，没有错误时返回 null
+     */
+    public static CalculatorError error(byte flag)
+    {
+        return flag == OK ? null : ERRORS[flag - 1];
+    }
+
+    /**
+     *@return 计算器显示value之后再读回的数，即按NumberFormatter舍入到10位小数；非有限值原样返回
+     */
+    private static double displayed(double value, NumberFormatter formatter)
+    {
+        return formatter.format(value) ? Double.parseDouble(formatter.toString()) : value;
+    }
+
+    private static byte flag(CalculatorError error)
+    {
+        return (byte) (error.ordinal() + 1);
+    }
+
+    /**
+     *对values中的每个元素执行计算。出错的元素结果为NaN。
+     *@param values 输入，不会被修改
+     *@param results 保存结果，长度不小于values，不能与values是同一个数组
+     *@param errors 保存错误标记，长度不小于values
+     *@return 出错的元素个数
+     */
+    public int evaluate(double[] values, double[] results, byte[] errors)
+    {
+        checkArguments(values.length, results.length, errors.length);
+        if (values == results)
+        {
+            throw new IllegalArgumentException("结果数组不能与输入数组相同");
+        }
+        if (values.length < PARALLEL_THRESHOLD)
+        {
+            return evaluateRange(values, results, errors, 0, values.length);
+        }
+        return ForkJoinPool.commonPool().invoke(new ArrayTask(values, results, errors, 0, values.length,
+                splitSize(values.length)));
+    }
+
+    /**
+     *对堆外缓冲区(例如内存映射的文件)中的每个元素执行计算，从各缓冲区的position开始，处理values中剩余的全部元素。
+     *缓冲区的position不会改变。
+     *@param values 输入
+     *@param results 保存结果，剩余空间不小于values的剩余元素数
+     *@param errors 保存错误标记，剩余空间不小于values的剩余元素数
+     *@return 出错的元素个数
+     */
+    public int evaluate(DoubleBuffer values, DoubleBuffer results, ByteBuffer errors)
+    {
+        int length = values.remaining();
+        checkArguments(length, results.remaining(), errors.remaining());
+        if (length < PARALLEL_THRESHOLD)
+        {
+            return evaluateBuffer(values, results, errors, 0, length);
+        }
+        return ForkJoinPool.commonPool().invoke(new BufferTask(values, results, errors, 0, length, splitSize(length)));
+    }
+
+    private static void checkArguments(int length, int resultLength, int errorLength)
+    {
+        if (resultLength < length || errorLength < length)
+        {
+            throw new IllegalArgumentException("结果或错误标记的空间不足: 需要 " + length);
+        }
+    }
+
+    /**
+     *每个线程分到几块，块大小为BLOCK的整数倍。
+     */
+    private static int splitSize(int length)
+    {
+        int parts = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int size = Math.max(PARALLEL_THRESHOLD / 2, length / parts);
+        return (size + BLOCK - 1) / BLOCK * BLOCK;
+    }
+
+    /**
+     *计算values中从from到to(不含)的元素。
+     *@return 出错的元素个数
+     */
+    int evaluateRange(double[] values, double[] results, byte[] errors, int from, int to)
+    {
+        Arrays.fill(errors, from, to, OK);
+        if (hasZeroDivisor || hasRelative)
+        {
+            return evaluateEach(values, results, errors, from, to);
+        }
+        int failed = 0;
+        for (int start = from; start < to; start += BLOCK)
+        {
+            int end = Math.min(to, start + BLOCK);
+            if (VECTOR_API && !hasModulo)
+            {
+                VectorColumnKernel.evaluate(this, values, results, start, end);
+            }
+            else
+            {
+                evaluateBlock(values, results, start, end);
+            }
+            //非有限值会一直传递到最后，只需检查最终结果
+            for (int i = start; i < end; i++)
+            {
+                if (!Double.isFinite(results[i]))
+                {
+                    results[i] = evaluateOne(values[i], errors, i, null);
+                    failed++;
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     *每一步运算都是一个对整块数据的简单循环，JIT可以直接向量化。
+     */
+    private void evaluateBlock(double[] values, double[] results, int start, int end)
+    {
+        System.arraycopy(values, start, results, start, end - start);
+        for (int step = 0; step < operators.length; step++)
+        {
+            double c = constants[step];
+            switch (operators[step])
+            {
+                case ADD:
+                    for (int i = start; i < end; i++)
+                    {
+                        results[i] = results[i] + c;
+                    }
+                    break;
+                case SUBTRACT:
+                    for (int i = start; i < end; i++)
+                    {
+                        results[i] = results[i] - c;
+                    }
+                    break;
+                case MULTIPLY:
+                    for (int i = start; i < end; i++)
+                    {
+                        results[i] = results[i] * c;
+                    }
+                    break;
+                case DIVIDE:
+                    for (int i = start; i < end; i++)
+                    {
+                        results[i] = results[i] / c;
+                    }
+                    break;
+                case MODULO:
+                    for (int i = start; i < end; i++)
+                    {
+                        results[i] = results[i] % c;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private int evaluateEach(double[] values, double[] results, byte[] errors, int from, int to)
+    {
+        NumberFormatter formatter = new NumberFormatter(); //每次调用一个，不在线程之间共用
+        int failed = 0;
+        for (int i = from; i < to; i++)
+        {
+            results[i] = evaluateOne(values[i], errors, i, formatter);
+            if (errors[i] != OK)
+            {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     *按计算器的规则逐步计算一个元素，在第一个出错的步骤停止，与CalculatorEngine的错误类型一致。
+     *@param formatter 舍入加减百分比的操作数，没有这样的步骤时可以为 null
+     *@return 结果，出错时为NaN
+     */
+    private double evaluateOne(double value, byte[] errors, int index, NumberFormatter formatter)
+    {
+        if (!Double.isFinite(value))
+        {
+            errors[index] = flag(CalculatorError.INVALID_NUMBER);
+            return Double.NaN;
+        }
+        double x = value;
+        for (int step = 0; step < operators.length; step++)
+        {
+            Operator operator = operators[step];
+            double operand = relative[step] ? displayed(x * (operands[step] / 100.0), formatter) : constants[step];
+            CalculatorError error = check(operand);
+            if (error == null && operand == 0 && (operator == Operator.DIVIDE || operator == Operator.MODULO))
+            {
+                error = operator == Operator.DIVIDE ? CalculatorError.DIVIDE_BY_ZERO : CalculatorError.MODULO_BY_ZERO;
+            }
+            if (error == null)
+            {
+                x = operator.apply(x, operand);
+                error = check(x);
+            }
+            if (error != null)
+            {
+                errors[index] = flag(error);
+                return Double.NaN;
+            }
+        }
+        return x;
+    }
+
+    private static CalculatorError check(double value)
+    {
+        if (Double.isNaN(value))
+        {
+            return CalculatorError.UNDEFINED;
+        }
+        return Double.isInfinite(value) ? CalculatorError.OVERFLOW : null;
+    }
+
+    /**
+     *从缓冲区中按块复制到数组中计算，再把结果写回缓冲区。
+     */
+    private int evaluateBuffer(DoubleBuffer values, DoubleBuffer results, ByteBuffer errors, int from, int to)
+    {
+        double[] input = new double[BLOCK];
+        double[] output = new double[BLOCK];
+        byte[] flags = new byte[BLOCK];
+        int failed = 0;
+        for (int start = from; start < to; start += BLOCK)
+        {
+            int count = Math.min(BLOCK, to - start);
+            values.duplicate().position(values.position() + start).get(input, 0, count);
+            failed += evaluateRange(input, output, flags, 0, count);
+            results.duplicate().position(results.position() + start).put(output, 0, count);
+            errors.duplicate().position(errors.position() + start).put(flags, 0, count);
+        }
+        return failed;
+    }
+
+    /**
+     *把数组拆分到ForkJoinPool的多个线程上计算。
+     */
+    private final class ArrayTask extends RecursiveTask<Integer>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] values;
+        private final double[] results;
+        private final byte[] errors;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        ArrayTask(double[] values, double[] results, byte[] errors, int from, int to, int leafSize)
+        {
+            this.values = values;
+            this.results = results;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Integer compute()
+        {
+            if (to - from <= leafSize)
+            {
+                return evaluateRange(values, results, errors, from, to);
+            }
+            int middle = (from + (to - from) / 2 + BLOCK - 1) / BLOCK * BLOCK;
+            ArrayTask right = new ArrayTask(values, results, errors, middle, to, leafSize);
+            right.fork();
+            int failed = new ArrayTask(values, results, errors, from, middle, leafSize).compute();
+            return failed + right.join();
+        }
+    }
+
+    private final class BufferTask extends RecursiveTask<Integer>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final DoubleBuffer values;
+        private final DoubleBuffer results;
+        private final ByteBuffer errors;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        BufferTask(DoubleBuffer values, DoubleBuffer results, ByteBuffer errors, int from, int to, int leafSize)
+        {
+            this.values = values;
+            this.results = results;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Integer compute()
+        {
+            if (to - from <= leafSize)
+            {
+                return evaluateBuffer(values, results, errors, from, to);
+            }
+            int middle = (from + (to - from) / 2 + BLOCK - 1) / BLOCK * BLOCK;
+            BufferTask right = new BufferTask(values, results, errors, middle, to, leafSize);
+            right.fork();
+            int failed = new BufferTask(values, results, errors, from, middle, leafSize).compute();
+            return failed + right.join();
+        }
+    }
+}
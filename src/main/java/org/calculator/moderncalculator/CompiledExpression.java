@@ -0,0 +1,156 @@
+package org.calculator.moderncalculator;
+
+import java.util.Arrays;
+
+/**
+ *CompiledExpression是编译后的中缀表达式。
+ *表达式被编译为后缀形式的指令数组，求值时只在一个double栈上执行指令，
+ *不再解析字符串，也不再按操作符字符串进行switch比较；函数调用按编译时确定的id直接取出实现。
+ *同一个实例可以在多个线程中用不同的变量值重复求值。
+ */
+public final class CompiledExpression
+{
+    //指令的低8位是操作码，高位是常量或变量的下标
+    static final int PUSH_CONSTANT = 0;
+    static final int PUSH_VARIABLE = 1;
+    static final int ADD = 2;
+    static final int SUBTRACT = 3;
+    static final int MULTIPLY = 4;
+    static final int DIVIDE = 5;
+    static final int MODULO = 6;
+    static final int NEGATE = 7;
+    static final int CALL_UNARY = 8;   //高位是函数id
+    static final int CALL_BINARY = 9;
+
+    //每个线程复用的求值栈
+    private static final ThreadLocal<double[]> STACK = ThreadLocal.withInitial(() -> new double[16]);
+
+    private final String text;
+    private final int[] code;
+    private final double[] constants;
+    private final String[] variables;
+    private final int maxStackDepth;
+    private final FunctionRegistry.Function[] functions; //编译时注册表中的函数
+
+    CompiledExpression(String text, int[] code, double[] constants, String[] variables, int maxStackDepth,
+                       FunctionRegistry.Function[] functions)
+    {
+        this.text = text;
+        this.code = code;
+        this.constants = constants;
+        this.variables = variables;
+        this.maxStackDepth = maxStackDepth;
+        this.functions = functions;
+    }
+
+    /**
+     *@return 编译前的表达式文本
+     */
+    public String text()
+    {
+        return text;
+    }
+
+    /**
+     *@return 表达式中的变量名，顺序与evaluate的参数顺序一致
+     */
+    public String[] variables()
+    {
+        return variables.clone();
+    }
+
+    /**
+     *@param name 变量名
+     *@return 变量在参数中的下标，不存在时返回 -1
+     */
+    public int variableIndex(String name)
+    {
+        for (int i = 0; i < variables.length; i++)
+        {
+            if (variables[i].equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *对表达式求值。
+     *@param values 变量的值，顺序与variables()一致
+     *@return 计算结果
+     *@throws ArithmeticException 除数或模数为零时抛出
+     *@throws IllegalArgumentException 变量的值不够时抛出
+     */
+    public double evaluate(double... values)
+    {
+        if (values.length < variables.length)
+        {
+            throw new IllegalArgumentException("缺少变量的值: " + variables[values.length]);
+        }
+        double[] stack = STACK.get();
+        if (stack.length < maxStackDepth)
+        {
+            stack = new double[maxStackDepth];
+            STACK.set(stack);
+        }
+        int top = -1;
+        for (int instruction : code)
+        {
+            switch (instruction & 0xFF)
+            {
+                case PUSH_CONSTANT:
+                    stack[++top] = constants[instruction >>> 8];
+                    break;
+                case PUSH_VARIABLE:
+                    stack[++top] = values[instruction >>> 8];
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] += stack[top + 1];
+                    break;
+                case SUBTRACT:
+                    top--;
+                    stack[top] -= stack[top + 1];
+                    break;
+                case MULTIPLY:
+                    top--;
+                    stack[top] *= stack[top + 1];
+                    break;
+                case DIVIDE:
+                    top--;
+                    if (stack[top + 1] == 0)
+                    {
+                        throw new ArithmeticException(CalculatorError.DIVIDE_BY_ZERO.message());
+                    }
+                    stack[top] /= stack[top + 1];
+                    break;
+                case MODULO:
+                    top--;
+                    if (stack[top + 1] == 0)
+                    {
+                        throw new ArithmeticException(CalculatorError.MODULO_BY_ZERO.message());
+                    }
+                    stack[top] %= stack[top + 1];
+                    break;
+                case NEGATE:
+                    stack[top] = -stack[top];
+                    break;
+                case CALL_UNARY:
+                    stack[top] = functions[instruction >>> 8].unary.applyAsDouble(stack[top]);
+                    break;
+                case CALL_BINARY:
+                    top--;
+                    stack[top] = functions[instruction >>> 8].binary.applyAsDouble(stack[top], stack[top + 1]);
+                    break;
+            }
+        }
+        return stack[0];
+    }
+
+    @Override
+    public String toString()
+    {
+        return text + " " + Arrays.toString(variables);
+    }
+}
@@ -0,0 +1,427 @@
+package org.calculator.moderncalculator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *ConversionTable是一份单位换算表，直接映射二进制文件，数值不复制到堆中。
+ *每个单位属于一个类别(长度、温度、货币等)，有系数和偏移：基准单位的值 = (值 + 偏移) × 系数。
+ *例如米的系数为1，千米为1000；摄氏度的系数为1、偏移为273.15，华氏度的系数为5/9、偏移为459.67(基准单位为开尔文)；
+ *货币的系数是1个单位折合多少基准货币，更新汇率只需要替换文件。
+ *系数可以写成两个十进制数的分数，文件中同时保存系数和偏移的原文，精确模式按原文计算，不经过double的舍入。
+ *
+ *单位名称只在加载时解码一次，并登记为全局唯一的单位编号，同一个名称在重新加载后的表中仍是同一个编号。
+ *换算时按编号在数组中找到单位的序号，再从映射区读出两个单位的系数和偏移，是O(1)的，不解析字符串，也不查散列表。
+ *
+ *文件格式(大端)：int 魔数、byte 版本、3字节保留、int 类别数、int 单位数；
+ *之后每个类别是int 名称偏移、int 名称长度，每个单位是double 系数、double 偏移、int 类别、int 名称偏移、int 名称长度、
+ *int 原文偏移、int 原文长度、int 保留，原文是"系数 偏移"，例如"5/9 459.67"；
+ *最后是全部名称和原文的UTF-8字节，名称偏移和原文偏移从这里开始计算。
+ */
+public final class ConversionTable
+{
+    private static final int MAGIC = 0x554E4954; //"UNIT"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int CATEGORY_SIZE = 8;
+    private static final int UNIT_SIZE = 40;
+
+    //全部换算表共用的单位编号，只增不减
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final ByteBuffer data;
+    private final int unitsOffset;     //第一个单位记录在data中的位置
+    private final String[] categories; //类别名称
+    private final String[] names;      //单位名称，按文件中的顺序
+    private final int[] ids;           //单位编号，按文件中的顺序
+    private final int[] records;       //下标为单位编号，值为单位在文件中的序号，不在表中时为 -1
+    private final String[] factorTexts; //系数的原文，按文件中的顺序
+    private final String[] offsetTexts; //偏移的原文
+    private final BigDecimal[] numerators;   //精确的系数 = numerators / denominators
+    private final BigDecimal[] denominators;
+    private final BigDecimal[] offsets;      //精确的偏移
+
+    private ConversionTable(ByteBuffer data, int unitsOffset, String[] categories, String[] names, int[] ids,
+                            int[] records, String[] factorTexts, String[] offsetTexts)
+    {
+        this.data = data;
+        this.unitsOffset = unitsOffset;
+        this.categories = categories;
+        this.names = names;
+        this.ids = ids;
+        this.records = records;
+        this.factorTexts = factorTexts;
+        this.offsetTexts = offsetTexts;
+        numerators = new BigDecimal[ids.length];
+        denominators = new BigDecimal[ids.length];
+        offsets = new BigDecimal[ids.length];
+        for (int i = 0; i < ids.length; i++)
+        {
+            BigDecimal[] factor = parseFactor(factorTexts[i]);
+            numerators[i] = factor[0];
+            denominators[i] = factor[1];
+            offsets[i] = new BigDecimal(offsetTexts[i]);
+        }
+    }
+
+    /**
+     *只读映射一个换算表文件。映射建立后文件可以被替换(先写临时文件再改名)，已映射的内容不受影响；
+     *不能直接改写正在使用的文件。
+     *@param file 换算表文件
+     *@return 换算表
+     *@throws IOException 无法读取文件，或者文件格式错误
+     */
+    public static ConversionTable map(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("换算表文件过大: " + file);
+            }
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+        }
+    }
+
+    /**
+     *读取内存中的换算表，格式与文件相同。
+     *@param source 出错时在异常信息中显示的来源
+     */
+    static ConversionTable wrap(ByteBuffer data, String source) throws IOException
+    {
+        int limit = data.limit();
+        if (limit < HEADER_SIZE || data.getInt(0) != MAGIC)
+        {
+            throw new IOException("不是换算表文件: " + source);
+        }
+        if (data.get(4) != VERSION)
+        {
+            throw new IOException("换算表文件的版本不同，需要用 --units 重新编译: " + source);
+        }
+        int categoryCount = data.getInt(8);
+        int unitCount = data.getInt(12);
+        long unitsOffset = HEADER_SIZE + (long) categoryCount * CATEGORY_SIZE;
+        long namesOffset = unitsOffset + (long) unitCount * UNIT_SIZE;
+        if (categoryCount < 0 || unitCount < 0 || namesOffset > limit)
+        {
+            throw new IOException("换算表文件已损坏: " + source);
+        }
+        String[] categories = new String[categoryCount];
+        for (int i = 0; i < categoryCount; i++)
+        {
+            int record = HEADER_SIZE + i * CATEGORY_SIZE;
+            categories[i] = decode(data, (int) namesOffset, data.getInt(record), data.getInt(record + 4), source);
+        }
+        String[] names = new String[unitCount];
+        int[] ids = new int[unitCount];
+        String[] factorTexts = new String[unitCount];
+        String[] offsetTexts = new String[unitCount];
+        for (int i = 0; i < unitCount; i++)
+        {
+            int record = (int) unitsOffset + i * UNIT_SIZE;
+            double factor = data.getDouble(record);
+            int category = data.getInt(record + 16);
+            if (!Double.isFinite(factor) || factor == 0 || !Double.isFinite(data.getDouble(record + 8))
+                    || category < 0 || category >= categoryCount)
+            {
+                throw new IOException("换算表文件已损坏: " + source);
+            }
+            names[i] = decode(data, (int) namesOffset, data.getInt(record + 20), data.getInt(record + 24), source);
+            String exact = decode(data, (int) namesOffset, data.getInt(record + 28), data.getInt(record + 32), source);
+            int space = exact.indexOf(' ');
+            if (space < 0 || !isExact(exact.substring(0, space), exact.substring(space + 1)))
+            {
+                throw new IOException("换算表中单位" + names[i] + "的系数或偏移已损坏，" + source);
+            }
+            factorTexts[i] = exact.substring(0, space);
+            offsetTexts[i] = exact.substring(space + 1);
+            ids[i] = intern(names[i]);
+        }
+        int[] records = new int[unitCount == 0 ? 0 : Arrays.stream(ids).max().getAsInt() + 1];
+        Arrays.fill(records, -1);
+        for (int i = 0; i < unitCount; i++)
+        {
+            if (records[ids[i]] >= 0)
+            {
+                throw new IOException("换算表中的单位重复: " + names[i] + "，" + source);
+            }
+            records[ids[i]] = i;
+        }
+        return new ConversionTable(data, (int) unitsOffset, categories, names, ids, records, factorTexts,
+                offsetTexts);
+    }
+
+    /**
+     *解析系数的原文，可以是十进制数或者两个十进制数的分数，例如"1000"、"5/9"、"1852/3600"。
+     *@return 分子和分母
+     *@throws NumberFormatException 不是数字或分数
+     */
+    static BigDecimal[] parseFactor(String text)
+    {
+        int slash = text.indexOf('/');
+        if (slash < 0)
+        {
+            return new BigDecimal[]{new BigDecimal(text), BigDecimal.ONE};
+        }
+        return new BigDecimal[]{new BigDecimal(text.substring(0, slash)), new BigDecimal(text.substring(slash + 1))};
+    }
+
+    /**
+     *@return 系数和偏移的原文是否有效：都是数字，系数的分子和分母都不为零，转换为double后是有限值
+     */
+    static boolean isExact(String factor, String offset)
+    {
+        try
+        {
+            BigDecimal[] parts = parseFactor(factor);
+            return parts[0].signum() != 0 && parts[1].signum() != 0
+                    && Double.isFinite(toDouble(parts)) && Double.isFinite(new BigDecimal(offset).doubleValue());
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    private static double toDouble(BigDecimal[] factor)
+    {
+        return factor[0].divide(factor[1], MathContext.DECIMAL128).doubleValue();
+    }
+
+    private static String decode(ByteBuffer data, int namesOffset, int offset, int length, String source)
+            throws IOException
+    {
+        if (offset < 0 || length <= 0 || (long) namesOffset + offset + length > data.limit())
+        {
+            throw new IOException("换算表文件已损坏: " + source);
+        }
+        byte[] bytes = new byte[length];
+        data.get(namesOffset + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     *把换算表编码为文件格式。各数组的下标对应同一个单位。
+     *@param categories 类别名称
+     *@param unitCategories 每个单位所属类别在categories中的下标
+     *@param names 单位名称
+     *@param factors 系数的原文，十进制数或分数，需要先用isExact检查
+     *@param offsets 偏移的原文
+     *@return 可以直接写入文件的缓冲区
+     */
+    static ByteBuffer encode(String[] categories, int[] unitCategories, String[] names, String[] factors,
+                             String[] offsets)
+    {
+        byte[][] categoryBytes = new byte[categories.length][];
+        byte[][] nameBytes = new byte[names.length][];
+        byte[][] exactBytes = new byte[names.length][];
+        int textSize = 0;
+        for (int i = 0; i < categories.length; i++)
+        {
+            categoryBytes[i] = categories[i].getBytes(StandardCharsets.UTF_8);
+            textSize += categoryBytes[i].length;
+        }
+        for (int i = 0; i < names.length; i++)
+        {
+            nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            exactBytes[i] = (factors[i] + " " + offsets[i]).getBytes(StandardCharsets.UTF_8);
+            textSize += nameBytes[i].length + exactBytes[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + categories.length * CATEGORY_SIZE
+                + names.length * UNIT_SIZE + textSize);
+        buffer.putInt(MAGIC).put((byte) VERSION).put((byte) 0).putShort((short) 0);
+        buffer.putInt(categories.length).putInt(names.length);
+        int text = 0;
+        for (byte[] bytes : categoryBytes)
+        {
+            buffer.putInt(text).putInt(bytes.length);
+            text += bytes.length;
+        }
+        for (int i = 0; i < names.length; i++)
+        {
+            buffer.putDouble(toDouble(parseFactor(factors[i]))).putDouble(Double.parseDouble(offsets[i]));
+            buffer.putInt(unitCategories[i]);
+            buffer.putInt(text).putInt(nameBytes[i].length);
+            buffer.putInt(text + nameBytes[i].length).putInt(exactBytes[i].length).putInt(0);
+            text += nameBytes[i].length + exactBytes[i].length;
+        }
+        for (byte[] bytes : categoryBytes)
+        {
+            buffer.put(bytes);
+        }
+        for (int i = 0; i < names.length; i++)
+        {
+            buffer.put(nameBytes[i]).put(exactBytes[i]);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     *登记一个单位名称。
+     *@return 名称的单位编号，已经登记过时返回原来的编号
+     */
+    static int intern(String name)
+    {
+        return IDS.computeIfAbsent(name, key -> NEXT_ID.getAndIncrement());
+    }
+
+    /**
+     *@return 名称的单位编号，没有任何换算表包含这个单位时返回 -1
+     */
+    public static int id(String name)
+    {
+        Integer id = IDS.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     *@return 表中的单位个数
+     */
+    public int size()
+    {
+        return ids.length;
+    }
+
+    /**
+     *@param index 单位在表中的序号，相同类别的单位在文件中相邻
+     *@return 单位编号
+     */
+    public int unitAt(int index)
+    {
+        return ids[index];
+    }
+
+    /**
+     *@return 单位在表中的序号，不在表中时返回 -1
+     */
+    private int record(int unit)
+    {
+        return unit >= 0 && unit < records.length ? records[unit] : -1;
+    }
+
+    /**
+     *@return 表中是否有这个单位
+     */
+    public boolean contains(int unit)
+    {
+        return record(unit) >= 0;
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     */
+    public String name(int unit)
+    {
+        return names[records[unit]];
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 类别名称
+     */
+    public String category(int unit)
+    {
+        return categories[data.getInt(unitsOffset + records[unit] * UNIT_SIZE + 16)];
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 最接近系数的double
+     */
+    double factor(int unit)
+    {
+        return data.getDouble(unitsOffset + records[unit] * UNIT_SIZE);
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 最接近偏移的double
+     */
+    double offset(int unit)
+    {
+        return data.getDouble(unitsOffset + records[unit] * UNIT_SIZE + 8);
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 系数的原文，例如"5/9"
+     */
+    String factorText(int unit)
+    {
+        return factorTexts[records[unit]];
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 偏移的原文
+     */
+    String offsetText(int unit)
+    {
+        return offsetTexts[records[unit]];
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 精确系数的分子
+     */
+    BigDecimal numerator(int unit)
+    {
+        return numerators[records[unit]];
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 精确系数的分母
+     */
+    BigDecimal denominator(int unit)
+    {
+        return denominators[records[unit]];
+    }
+
+    /**
+     *@param unit 表中的单位编号
+     *@return 精确的偏移
+     */
+    BigDecimal exactOffset(int unit)
+    {
+        return offsets[records[unit]];
+    }
+
+    /**
+     *@return 两个单位是否都在表中并且属于同一类别
+     */
+    public boolean convertible(int from, int to)
+    {
+        int a = record(from);
+        int b = record(to);
+        return a >= 0 && b >= 0
+                && data.getInt(unitsOffset + a * UNIT_SIZE + 16) == data.getInt(unitsOffset + b * UNIT_SIZE + 16);
+    }
+
+    /**
+     *按double换算。
+     *@return 换算结果，两个单位不能互相换算时返回NaN
+     */
+    public double convert(double value, int from, int to)
+    {
+        if (!convertible(from, to))
+        {
+            return Double.NaN;
+        }
+        if (from == to)
+        {
+            return value;
+        }
+        return (value + offset(from)) * factor(from) / factor(to) - offset(to);
+    }
+}
@@ -0,0 +1,668 @@
+package org.calculator.moderncalculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ *DecimalValue是精确模式使用的可变十进制数。
+ *数值较小时以"long型未缩放值 + 小数位数"保存，加、减、乘、求余都直接用long计算；
+ *超出long范围或需要按MathContext舍入时才转为BigDecimal。
+ */
+final class DecimalValue
+{
+    //运算结果
+    static final int OK = 0;
+    static final int INEXACT = 1; //在不限精度模式下结果是无限小数，无法精确表示
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+    private static final int LONG_DIGITS = 18; //18位以内的十进制整数一定能放进long
+    //结果不使用科学计数法，需要限制显示的长度。按MathContext舍入时限制指数(与decimal128的最大指数相同)，
+    //不限位数时限制不用科学计数法写出的字符数，两个百万位的数相乘仍在范围内
+    static final int MAX_EXPONENT = 6144;
+    static final int MAX_PLAIN_LENGTH = 4_000_000;
+    private static final double LOG10_2 = 0.30102999566398120;
+
+    private long unscaled;  //big为 null 时有效
+    private int scale;      //小数位数，数值 = unscaled × 10^-scale
+    private BigDecimal big; //不能用long表示时使用
+
+    private final char[] digits = new char[19]; //格式化时临时保存各位数字
+
+    void setZero()
+    {
+        unscaled = 0;
+        scale = 0;
+        big = null;
+    }
+
+    void set(DecimalValue other)
+    {
+        unscaled = other.unscaled;
+        scale = other.scale;
+        big = other.big;
+    }
+
+    /**
+     *@return 与other的内部表示是否相同，相同时格式化的结果也相同
+     */
+    boolean sameAs(DecimalValue other)
+    {
+        if (big != null || other.big != null)
+        {
+            return big != null && big.equals(other.big);
+        }
+        return unscaled == other.unscaled && scale == other.scale;
+    }
+
+    /**
+     *直接恢复保存的内部表示，供ResultCache使用。
+     *@param big 不为 null 时忽略unscaled和scale
+     */
+    void setParts(long unscaled, int scale, BigDecimal big)
+    {
+        this.unscaled = unscaled;
+        this.scale = scale;
+        this.big = big;
+    }
+
+    /**
+     *@return long形式的未缩放值，bigValue()不为 null 时无意义
+     */
+    long unscaledValue()
+    {
+        return unscaled;
+    }
+
+    /**
+     *@return long形式的小数位数，bigValue()不为 null 时无意义
+     */
+    int scale()
+    {
+        return scale;
+    }
+
+    /**
+     *@return 不能用long表示时的值，long形式时为 null
+     */
+    BigDecimal bigValue()
+    {
+        return big;
+    }
+
+    private void set(long unscaled, int scale)
+    {
+        this.unscaled = unscaled;
+        this.scale = scale;
+        this.big = null;
+    }
+
+    /**
+     *保存BigDecimal，如果它能放进long则转回long形式，以便后续运算走快速路径。
+     */
+    void set(BigDecimal value)
+    {
+        //scale为负时要补上-scale个0，补0后的位数也不能超过18位。
+        //先比较二进制位数：很长的数计算precision()要先求出10的同样次幂
+        if (value.unscaledValue().bitLength() < Long.SIZE
+                && value.precision() - Math.min(value.scale(), 0) <= LONG_DIGITS)
+        {
+            long u = value.unscaledValue().longValue();
+            int s = value.scale();
+            if (s < 0)
+            {
+                u *= POWERS_OF_TEN[-s];
+                s = 0;
+            }
+            set(u, s);
+        }
+        else
+        {
+            big = value;
+        }
+    }
+
+    /**
+     *保存double的值。使用能还原该double的最短十进制表示，例如0.1保存为0.1而不是它二进制值的精确展开。
+     *@param value 有限的double值
+     *@param mathContext 结果按它舍入
+     */
+    void set(double value, MathContext mathContext)
+    {
+        set(BigDecimal.valueOf(value));
+        round(mathContext);
+    }
+
+    BigDecimal toBigDecimal()
+    {
+        return big != null ? big : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    double toDouble()
+    {
+        return big != null ? big.doubleValue() : toBigDecimal().doubleValue();
+    }
+
+    /**
+     *@return 有效数字位数的估计值，用于判断运算是否耗时，不需要精确
+     */
+    int estimatedDigits()
+    {
+        if (big == null)
+        {
+            return LONG_DIGITS + 1;
+        }
+        return (int) (big.unscaledValue().bitLength() * 0.30103) + 1; //log10(2)
+    }
+
+    int signum()
+    {
+        return big != null ? big.signum() : Long.signum(unscaled);
+    }
+
+    boolean isZero()
+    {
+        return signum() == 0;
+    }
+
+    void negate()
+    {
+        if (big != null)
+        {
+            big = big.negate();
+        }
+        else
+        {
+            unscaled = -unscaled; //unscaled不会是Long.MIN_VALUE，见fitsInLong
+        }
+    }
+
+    /**
+     *解析输入缓冲区中的文本。
+     *@param negative 是否有负号
+     *@param chars 不含负号的数字和小数点
+     *@param length 字符个数
+     *@return 是否解析成功
+     */
+    boolean parse(boolean negative, char[] chars, int length)
+    {
+        long u = 0;
+        int significantDigits = 0;
+        int s = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        for (int i = 0; i < length; i++)
+        {
+            char c = chars[i];
+            if (c == '.')
+            {
+                if (seenPoint)
+                {
+                    return false;
+                }
+                seenPoint = true;
+                continue;
+            }
+            if (c < '0' || c > '9')
+            {
+                return false;
+            }
+            seenDigit = true;
+            if (seenPoint)
+            {
+                s++;
+            }
+            if (u == 0 && c == '0') //跳过前导零
+            {
+                continue;
+            }
+            if (++significantDigits > LONG_DIGITS)
+            {
+                return parseBig(negative, chars, length);
+            }
+            u = u * 10 + (c - '0');
+        }
+        if (!seenDigit)
+        {
+            return false;
+        }
+        set(negative ? -u : u, s);
+        return true;
+    }
+
+    /**
+     *解析超过18位有效数字的文本。数字部分用BigIntegerMath分治转换，百万位的粘贴也不需要O(n²)的时间。
+     */
+    private boolean parseBig(boolean negative, char[] chars, int length)
+    {
+        char[] digitChars = new char[length];
+        int count = 0;
+        int s = 0;
+        boolean seenPoint = false;
+        for (int i = 0; i < length; i++)
+        {
+            char c = chars[i];
+            if (c == '.')
+            {
+                if (seenPoint)
+                {
+                    return false;
+                }
+                seenPoint = true;
+            }
+            else if (c < '0' || c > '9')
+            {
+                return false;
+            }
+            else
+            {
+                digitChars[count++] = c;
+                if (seenPoint)
+                {
+                    s++;
+                }
+            }
+        }
+        BigInteger value = BigIntegerMath.parse(digitChars, 0, count);
+        big = new BigDecimal(negative ? value.negate() : value, s);
+        return true;
+    }
+
+    /**
+     *计算 left operator right，结果按mathContext舍入后保存到result中。
+     *除数或模数为零的检查由调用方负责。
+     *@return OK，或者不限精度时除法结果是无限小数时返回INEXACT
+     */
+    static int apply(Operator operator, DecimalValue left, DecimalValue right, DecimalValue result, MathContext mathContext)
+    {
+        boolean longForm = left.big == null && right.big == null;
+        switch (operator)
+        {
+            case ADD:
+            case SUBTRACT:
+                if (longForm && addLong(left, right, operator == Operator.SUBTRACT, result))
+                {
+                    result.round(mathContext);
+                    return OK;
+                }
+                BigDecimal sum = operator == Operator.ADD
+                        ? left.toBigDecimal().add(right.toBigDecimal(), mathContext)
+                        : left.toBigDecimal().subtract(right.toBigDecimal(), mathContext);
+                result.set(sum);
+                return OK;
+            case MULTIPLY:
+                if (longForm && multiplyLong(left, right, result))
+                {
+                    result.round(mathContext);
+                    return OK;
+                }
+                if (mathContext.getPrecision() == 0) //不限精度：未缩放值直接相乘，很长时使用FFT乘法
+                {
+                    BigDecimal a = left.toBigDecimal();
+                    BigDecimal b = right.toBigDecimal();
+                    result.set(new BigDecimal(BigIntegerMath.multiply(a.unscaledValue(), b.unscaledValue()),
+                            Math.addExact(a.scale(), b.scale())));
+                    return OK;
+                }
+                result.set(left.toBigDecimal().multiply(right.toBigDecimal(), mathContext));
+                return OK;
+            case DIVIDE:
+                try
+                {
+                    result.set(left.toBigDecimal().divide(right.toBigDecimal(), mathContext));
+                    return OK;
+                }
+                catch (ArithmeticException e) //不限精度时的无限小数
+                {
+                    return INEXACT;
+                }
+            default:
+                if (longForm && remainderLong(left, right, result))
+                {
+                    result.round(mathContext);
+                    return OK;
+                }
+                //余数的绝对值小于除数，总是能精确计算；带MathContext的remainder在商的位数超过精度时会抛出异常
+                result.set(left.toBigDecimal().remainder(right.toBigDecimal()));
+                result.round(mathContext);
+                return OK;
+        }
+    }
+
+    /**
+     *计算1/value，value不能为零。
+     *@return OK，或者不限精度时结果是无限小数时返回INEXACT
+     */
+    static int reciprocal(DecimalValue value, DecimalValue result, MathContext mathContext)
+    {
+        try
+        {
+            result.set(BigDecimal.ONE.divide(value.toBigDecimal(), mathContext));
+            return OK;
+        }
+        catch (ArithmeticException e)
+        {
+            return INEXACT;
+        }
+    }
+
+    /**
+     *计算value的平方根，value不能为负。
+     *@return OK，或者不限精度时结果无法精确表示时返回INEXACT
+     */
+    static int sqrt(DecimalValue value, DecimalValue result, MathContext mathContext)
+    {
+        try
+        {
+            result.set(value.toBigDecimal().sqrt(mathContext));
+            return OK;
+        }
+        catch (ArithmeticException e)
+        {
+            return INEXACT;
+        }
+    }
+
+    /**
+     *除以100，用于百分比。只改变小数位数，结果是精确的。
+     */
+    void percent(MathContext mathContext)
+    {
+        if (big != null)
+        {
+            set(big.movePointLeft(2));
+        }
+        else
+        {
+            scale += 2;
+        }
+        round(mathContext);
+    }
+
+    /**
+     *把结果舍入到mathContext的精度。long形式且位数没有超过精度时什么也不做。
+     */
+    private void round(MathContext mathContext)
+    {
+        int precision = mathContext.getPrecision();
+        if (precision == 0)
+        {
+            return;
+        }
+        if (big != null)
+        {
+            if (big.precision() > precision)
+            {
+                set(big.round(mathContext));
+            }
+        }
+        else if (digitCount(unscaled) > precision)
+        {
+            set(BigDecimal.valueOf(unscaled, scale).round(mathContext));
+        }
+    }
+
+    private static boolean addLong(DecimalValue left, DecimalValue right, boolean subtract, DecimalValue result)
+    {
+        long a = left.unscaled;
+        long b = subtract ? -right.unscaled : right.unscaled;
+        int s = Math.max(left.scale, right.scale);
+        a = scaleUp(a, s - left.scale);
+        b = scaleUp(b, s - right.scale);
+        if (a == Long.MIN_VALUE || b == Long.MIN_VALUE)
+        {
+            return false;
+        }
+        long sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0 || !fitsInLong(sum)) //溢出
+        {
+            return false;
+        }
+        result.set(sum, s);
+        return true;
+    }
+
+    private static boolean multiplyLong(DecimalValue left, DecimalValue right, DecimalValue result)
+    {
+        long a = left.unscaled;
+        long b = right.unscaled;
+        long high = Math.multiplyHigh(a, b);
+        long product = a * b;
+        if ((high != 0 || product < 0) && (high != -1 || product >= 0)) //结果超过64位
+        {
+            return false;
+        }
+        if (!fitsInLong(product))
+        {
+            return false;
+        }
+        long s = (long) left.scale + right.scale;
+        if (s != (int) s)
+        {
+            return false;
+        }
+        result.set(product, (int) s);
+        return true;
+    }
+
+    private static boolean remainderLong(DecimalValue left, DecimalValue right, DecimalValue result)
+    {
+        int s = Math.max(left.scale, right.scale);
+        long a = scaleUp(left.unscaled, s - left.scale);
+        long b = scaleUp(right.unscaled, s - right.scale);
+        if (a == Long.MIN_VALUE || b == Long.MIN_VALUE)
+        {
+            return false;
+        }
+        result.set(a % b, s);
+        return true;
+    }
+
+    /**
+     *@return value × 10^places，溢出时返回Long.MIN_VALUE
+     */
+    private static long scaleUp(long value, int places)
+    {
+        if (places == 0)
+        {
+            return value;
+        }
+        if (places >= POWERS_OF_TEN.length)
+        {
+            return Long.MIN_VALUE;
+        }
+        long factor = POWERS_OF_TEN[places];
+        long high = Math.multiplyHigh(value, factor);
+        long product = value * factor;
+        if ((high != 0 || product < 0) && (high != -1 || product >= 0))
+        {
+            return Long.MIN_VALUE;
+        }
+        return product;
+    }
+
+    /**
+     *检查结果是否超出显示范围。按MathContext舍入时检查调整后的指数(最高位数字的指数)，
+     *不限位数时检查不用科学计数法写出的长度。
+     *@return 超出范围时返回true
+     */
+    boolean exceedsLimits(MathContext mc)
+    {
+        long digits;
+        int s;
+        if (big == null)
+        {
+            if (unscaled == 0)
+            {
+                return false;
+            }
+            digits = digitCount(unscaled);
+            s = scale;
+        }
+        else
+        {
+            if (big.signum() == 0)
+            {
+                return false;
+            }
+            s = big.scale();
+            //不限位数时按二进制位数估计位数，不计算precision()：它要先求出同样位数的10的幂
+            digits = mc.getPrecision() > 0 ? big.precision()
+                    : (long) (big.unscaledValue().bitLength() * LOG10_2) + 1;
+        }
+        if (mc.getPrecision() > 0)
+        {
+            return Math.abs(digits - s - 1) > MAX_EXPONENT;
+        }
+        long length = s > 0 ? Math.max(digits, s + 1L) + 2 : digits - s + 1;
+        return length > MAX_PLAIN_LENGTH;
+    }
+
+    private static boolean fitsInLong(long value)
+    {
+        return value != Long.MIN_VALUE; //保证取反不会溢出
+    }
+
+    private static int digitCount(long value)
+    {
+        long abs = Math.abs(value);
+        int count = 1;
+        while (count < POWERS_OF_TEN.length && abs >= POWERS_OF_TEN[count])
+        {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     *把数值写入输入缓冲区，去掉小数末尾的0，不使用科学计数法。
+     */
+    void writeTo(InputBuffer target)
+    {
+        if (big != null)
+        {
+            writeBigTo(target);
+            return;
+        }
+        long u = unscaled;
+        int s = scale;
+        while (s > 0 && u % 10 == 0)
+        {
+            u /= 10;
+            s--;
+        }
+        target.clear();
+        if (u == 0)
+        {
+            target.append('0');
+            return;
+        }
+        if (u < 0)
+        {
+            target.append('-');
+            u = -u;
+        }
+        int count = 0;
+        while (u != 0)
+        {
+            digits[count++] = (char) ('0' + u % 10);
+            u /= 10;
+        }
+        if (s <= 0)
+        {
+            while (count > 0)
+            {
+                target.append(digits[--count]);
+            }
+            for (int i = 0; i < -s; i++)
+            {
+                target.append('0');
+            }
+        }
+        else if (s >= count)
+        {
+            target.append('0');
+            target.append('.');
+            for (int i = count; i < s; i++)
+            {
+                target.append('0');
+            }
+            while (count > 0)
+            {
+                target.append(digits[--count]);
+            }
+        }
+        else
+        {
+            while (count > s)
+            {
+                target.append(digits[--count]);
+            }
+            target.append('.');
+            while (count > 0)
+            {
+                target.append(digits[--count]);
+            }
+        }
+    }
+
+    /**
+     *写入BigDecimal形式的值。数字用BigIntegerMath分治转换，末尾的0在字符串上去掉，
+     *不使用stripTrailingZeros：它每去掉一个0都要做一次整数除法。
+     */
+    private void writeBigTo(InputBuffer target)
+    {
+        target.clear();
+        if (big.signum() == 0)
+        {
+            target.append('0');
+            return;
+        }
+        if (big.signum() < 0)
+        {
+            target.append('-');
+        }
+        String text = BigIntegerMath.toString(big.unscaledValue().abs());
+        int s = big.scale();
+        if (s <= 0)
+        {
+            target.append(text, 0, text.length());
+            for (int i = 0; i < -s; i++)
+            {
+                target.append('0');
+            }
+            return;
+        }
+        int end = text.length();
+        while (s > 0 && text.charAt(end - 1) == '0')
+        {
+            end--;
+            s--;
+        }
+        int point = end - s; //小数点前的位数
+        if (point <= 0)
+        {
+            target.append('0');
+            target.append('.');
+            for (int i = point; i < 0; i++)
+            {
+                target.append('0');
+            }
+            target.append(text, 0, end);
+        }
+        else
+        {
+            target.append(text, 0, point);
+            if (s > 0)
+            {
+                target.append('.');
+                target.append(text, point, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.calculator.moderncalculator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *ExpressionCache是按表达式文本缓存CompiledExpression的有界LRU缓存。
+ *批量任务反复计算同一批公式时，每个公式只编译一次。
+ *可以被多个线程共享；编译在锁外进行，同一个表达式偶尔被并发编译两次也不影响结果。
+ */
+public class ExpressionCache
+{
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+    private final LinkedHashMap<String, CompiledExpression> entries;
+    private long hits;
+    private long misses;
+
+    public ExpressionCache()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     *@param capacity 最多缓存的表达式个数
+     */
+    public ExpressionCache(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        //accessOrder为true时按访问顺序排列，最久未使用的在最前面
+        this.entries = new LinkedHashMap<>(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest)
+            {
+                return size() > ExpressionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     *获取表达式的编译结果，不在缓存中时先编译。
+     *@param text 表达式文本
+     *@return 编译结果
+     *@throws IllegalArgumentException 表达式无效时抛出
+     */
+    public CompiledExpression get(String text)
+    {
+        synchronized (entries)
+        {
+            CompiledExpression cached = entries.get(text);
+            if (cached != null)
+            {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        CompiledExpression compiled = ExpressionCompiler.compile(text);
+        synchronized (entries)
+        {
+            entries.put(text, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     *编译(或从缓存中取出)表达式并求值。
+     *@param text 表达式文本
+     *@param values 变量的值
+     *@return 计算结果
+     */
+    public double evaluate(String text, double... values)
+    {
+        return get(text).evaluate(values);
+    }
+
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    public int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    public long hits()
+    {
+        synchronized (entries)
+        {
+            return hits;
+        }
+    }
+
+    public long misses()
+    {
+        synchronized (entries)
+        {
+            return misses;
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package org.calculator.moderncalculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *ExpressionCompiler把中缀表达式(例如"12 × (3 + 4) ÷ 7")编译为CompiledExpression。
+ *支持数字、变量名、括号、一元正负号以及计算器的+ - × ÷ %运算(也接受 * 和 /)，
+ *×、÷、%的优先级高于+、-，同级运算从左到右。两个操作数都是常量的运算在编译时直接算出。
+ *函数调用(例如"sin(x)"、"nCr(n, 2)")在编译时按名称查找FunctionRegistry，指令中只保存函数的id。
+ */
+public final class ExpressionCompiler
+{
+    //操作符栈中使用的标记
+    private static final int LEFT_PARENTHESIS = -1;
+    private static final int UNARY_MINUS = -2;
+    private static final int FUNCTION_BASE = -3; //函数调用的标记是FUNCTION_BASE - id
+
+    private final String text;
+    private final FunctionRegistry registry;
+    private int position;
+
+    private int[] code = new int[16];
+    private int codeLength;
+    private final List<Double> constants = new ArrayList<>();
+    private final List<String> variables = new ArrayList<>();
+    //每个栈位置的值是否是编译期常量，用于常量折叠
+    private boolean[] constantOnStack = new boolean[16];
+    private int stackDepth;
+    private int maxStackDepth;
+
+    private ExpressionCompiler(String text, FunctionRegistry registry)
+    {
+        this.text = text;
+        this.registry = registry;
+    }
+
+    /**
+     *编译表达式。
+     *@param text 表达式文本
+     *@return 编译结果
+     *@throws IllegalArgumentException 表达式无效时抛出
+     */
+    public static CompiledExpression compile(String text)
+    {
+        return compile(text, FunctionRegistry.standard());
+    }
+
+    /**
+     *使用指定的函数注册表编译表达式。
+     *@param text 表达式文本
+     *@param registry 表达式中可以调用的函数
+     *@return 编译结果
+     *@throws IllegalArgumentException 表达式无效时抛出
+     */
+    public static CompiledExpression compile(String text, FunctionRegistry registry)
+    {
+        return new ExpressionCompiler(text, registry).compile();
+    }
+
+    private CompiledExpression compile()
+    {
+        FunctionRegistry.Function[] functions = registry.snapshot();
+        int[] operators = new int[16]; //操作符栈，保存Operator的ordinal或上面的标记
+        int[] arguments = new int[16]; //与operators对应，函数调用的左括号处记录已经读到的参数个数
+        int operatorCount = 0;
+        boolean expectOperand = true;
+        while (true)
+        {
+            skipWhitespace();
+            if (position >= text.length())
+            {
+                break;
+            }
+            char c = text.charAt(position);
+            if (expectOperand)
+            {
+                if (c == '(')
+                {
+                    operators = push(operators, operatorCount++, LEFT_PARENTHESIS);
+                    position++;
+                }
+                else if (c == '-')
+                {
+                    operators = push(operators, operatorCount++, UNARY_MINUS);
+                    position++;
+                }
+                else if (c == '+')
+                {
+                    position++;
+                }
+                else if ((c >= '0' && c <= '9') || c == '.')
+                {
+                    emitConstant(readNumber());
+                    expectOperand = false;
+                }
+                else if (Character.isLetter(c) || c == '_')
+                {
+                    String name = readIdentifier();
+                    skipWhitespace();
+                    if (position < text.length() && text.charAt(position) == '(')
+                    {
+                        int id = registry.id(name);
+                        if (id < 0 || id >= functions.length)
+                        {
+                            throw error("未知函数 " + name);
+                        }
+                        operators = push(operators, operatorCount++, FUNCTION_BASE - id);
+                        arguments = push(arguments, operatorCount, 1);
+                        operators = push(operators, operatorCount++, LEFT_PARENTHESIS);
+                        position++;
+                    }
+                    else
+                    {
+                        emitVariable(name);
+                        expectOperand = false;
+                    }
+                }
+                else
+                {
+                    throw error("此处应为数字");
+                }
+            }
+            else if (c == ')')
+            {
+                while (operatorCount > 0 && operators[operatorCount - 1] != LEFT_PARENTHESIS)
+                {
+                    emitOperator(operators[--operatorCount]);
+                }
+                if (operatorCount == 0)
+                {
+                    throw error("多余的右括号");
+                }
+                operatorCount--; //弹出左括号
+                position++;
+                if (operatorCount > 0 && operators[operatorCount - 1] <= FUNCTION_BASE)
+                {
+                    int id = FUNCTION_BASE - operators[--operatorCount];
+                    if (arguments[operatorCount + 1] != functions[id].arity())
+                    {
+                        throw error(functions[id].name + "需要" + functions[id].arity() + "个参数");
+                    }
+                    emitFunction(functions, id);
+                }
+            }
+            else if (c == ',')
+            {
+                while (operatorCount > 0 && operators[operatorCount - 1] != LEFT_PARENTHESIS)
+                {
+                    emitOperator(operators[--operatorCount]);
+                }
+                if (operatorCount < 2 || operators[operatorCount - 2] > FUNCTION_BASE)
+                {
+                    throw error("逗号只能用于分隔函数参数");
+                }
+                arguments[operatorCount - 1]++;
+                position++;
+                expectOperand = true;
+            }
+            else
+            {
+                Operator operator = readOperator(c);
+                if (operator == null)
+                {
+                    throw error("此处应为运算符");
+                }
+                //弹出优先级不低于当前运算符的运算(左结合)
+                while (operatorCount > 0 && operators[operatorCount - 1] != LEFT_PARENTHESIS
+                        && precedence(operators[operatorCount - 1]) >= precedence(operator.ordinal()))
+                {
+                    emitOperator(operators[--operatorCount]);
+                }
+                operators = push(operators, operatorCount++, operator.ordinal());
+                position++;
+                expectOperand = true;
+            }
+        }
+        if (expectOperand)
+        {
+            throw error(codeLength == 0 && operatorCount == 0 ? "表达式为空" : "表达式不完整");
+        }
+        while (operatorCount > 0)
+        {
+            int operator = operators[--operatorCount];
+            if (operator == LEFT_PARENTHESIS)
+            {
+                throw error("缺少右括号");
+            }
+            emitOperator(operator);
+        }
+        double[] constantValues = new double[constants.size()];
+        for (int i = 0; i < constantValues.length; i++)
+        {
+            constantValues[i] = constants.get(i);
+        }
+        return new CompiledExpression(text, Arrays.copyOf(code, codeLength), constantValues,
+                variables.toArray(new String[0]), maxStackDepth, functions);
+    }
+
+    private static int precedence(int operator)
+    {
+        if (operator == UNARY_MINUS)
+        {
+            return 3;
+        }
+        return operator == Operator.ADD.ordinal() || operator == Operator.SUBTRACT.ordinal() ? 1 : 2;
+    }
+
+    private static Operator readOperator(char c)
+    {
+        switch (c)
+        {
+            case '+':
+                return Operator.ADD;
+            case '-':
+                return Operator.SUBTRACT;
+            case '×':
+            case '*':
+                return Operator.MULTIPLY;
+            case '÷':
+            case '/':
+                return Operator.DIVIDE;
+            case '%':
+                return Operator.MODULO;
+            default:
+                return null;
+        }
+    }
+
+    private double readNumber()
+    {
+        int start = position;
+        boolean seenPoint = false;
+        while (position < text.length())
+        {
+            char c = text.charAt(position);
+            if (c == '.' && !seenPoint)
+            {
+                seenPoint = true;
+            }
+            else if (c < '0' || c > '9')
+            {
+                break;
+            }
+            position++;
+        }
+        String number = text.substring(start, position);
+        if (number.equals("."))
+        {
+            throw error("无效数字");
+        }
+        return Double.parseDouble(number);
+    }
+
+    private String readIdentifier()
+    {
+        int start = position;
+        while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_'))
+        {
+            position++;
+        }
+        return text.substring(start, position);
+    }
+
+    private void skipWhitespace()
+    {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+        {
+            position++;
+        }
+    }
+
+    private void emitConstant(double value)
+    {
+        constants.add(value);
+        emit(((constants.size() - 1) << 8) | CompiledExpression.PUSH_CONSTANT);
+        pushValue(true);
+    }
+
+    private void emitVariable(String name)
+    {
+        int index = variables.indexOf(name);
+        if (index < 0)
+        {
+            index = variables.size();
+            variables.add(name);
+        }
+        emit((index << 8) | CompiledExpression.PUSH_VARIABLE);
+        pushValue(false);
+    }
+
+    private void emitOperator(int operator)
+    {
+        if (operator == UNARY_MINUS)
+        {
+            if (constantOnStack[stackDepth - 1])
+            {
+                //常量取反直接折叠
+                int index = code[codeLength - 1] >>> 8;
+                constants.set(index, -constants.get(index));
+            }
+            else
+            {
+                emit(CompiledExpression.NEGATE);
+            }
+            return;
+        }
+        Operator binary = Operator.values()[operator];
+        boolean foldable = constantOnStack[stackDepth - 1] && constantOnStack[stackDepth - 2];
+        if (foldable)
+        {
+            double right = constants.get(code[codeLength - 1] >>> 8);
+            double left = constants.get(code[codeLength - 2] >>> 8);
+            //除数为零留到求值时再报错
+            if (right != 0 || (binary != Operator.DIVIDE && binary != Operator.MODULO))
+            {
+                codeLength -= 2;
+                stackDepth -= 2;
+                emitConstant(binary.apply(left, right));
+                return;
+            }
+        }
+        switch (binary)
+        {
+            case ADD:
+                emit(CompiledExpression.ADD);
+                break;
+            case SUBTRACT:
+                emit(CompiledExpression.SUBTRACT);
+                break;
+            case MULTIPLY:
+                emit(CompiledExpression.MULTIPLY);
+                break;
+            case DIVIDE:
+                emit(CompiledExpression.DIVIDE);
+                break;
+            case MODULO:
+                emit(CompiledExpression.MODULO);
+                break;
+        }
+        stackDepth--;
+        constantOnStack[stackDepth - 1] = false;
+    }
+
+    private void emitFunction(FunctionRegistry.Function[] functions, int id)
+    {
+        FunctionRegistry.Function function = functions[id];
+        int arity = function.arity();
+        boolean foldable = constantOnStack[stackDepth - 1] && (arity == 1 || constantOnStack[stackDepth - 2]);
+        if (foldable)
+        {
+            double result;
+            if (arity == 1)
+            {
+                result = function.unary.applyAsDouble(constants.get(code[codeLength - 1] >>> 8));
+            }
+            else
+            {
+                result = function.binary.applyAsDouble(constants.get(code[codeLength - 2] >>> 8),
+                        constants.get(code[codeLength - 1] >>> 8));
+            }
+            codeLength -= arity;
+            stackDepth -= arity;
+            emitConstant(result);
+            return;
+        }
+        emit((id << 8) | (arity == 1 ? CompiledExpression.CALL_UNARY : CompiledExpression.CALL_BINARY));
+        stackDepth -= arity - 1;
+        constantOnStack[stackDepth - 1] = false;
+    }
+
+    private void emit(int instruction)
+    {
+        code = push(code, codeLength++, instruction);
+    }
+
+    private void pushValue(boolean constant)
+    {
+        if (stackDepth == constantOnStack.length)
+        {
+            constantOnStack = Arrays.copyOf(constantOnStack, stackDepth * 2);
+        }
+        constantOnStack[stackDepth++] = constant;
+        maxStackDepth = Math.max(maxStackDepth, stackDepth);
+    }
+
+    private static int[] push(int[] array, int index, int value)
+    {
+        if (index >= array.length) //arguments按左括号的位置写入，可能比operators先越界
+        {
+            array = Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+        }
+        array[index] = value;
+        return array;
+    }
+
+    private IllegalArgumentException error(String message)
+    {
+        return new IllegalArgumentException("无效表达式: " + message + " (位置 " + (position + 1) + "): " + text);
+    }
+}
@@ -0,0 +1,464 @@
+package org.calculator.moderncalculator;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *FilePipeline是处理大文件的批量计算模式，通过 Launcher --file 启动。
+ *输入文件每行是一个表达式(格式与BatchLauncher相同)，或者是"操作数,运算符,操作数"形式的CSV行，
+ *输出文件的每一行是对应输入行的结果，空行原样保留，因此输出与输入逐行对应。
+ *
+ *文件按约1 MiB的块(在换行处切分)流过 读取 → 解析和计算 → 写出 三个阶段：
+ *读取线程通过FileChannel顺序读取，超过1 GiB的文件改用内存映射，块直接引用映射的内存而不复制；
+ *多个计算线程并行处理不同的块；写出线程按原来的顺序写出结果。
+ *阶段之间是有界队列，同时在处理中的块数也有上限，所以内存占用与文件大小无关。
+ */
+public final class FilePipeline
+{
+    static final int CHUNK_SIZE = 1 << 20;
+    private static final long MAP_THRESHOLD = 1L << 30;  //不小于这个大小的文件使用内存映射
+    private static final int MAP_WINDOW = 1 << 28;        //每次映射256 MiB
+    private static final Chunk END = new Chunk(-1, null);  //通知下一阶段输入已经结束
+
+    private final int workers;
+    private final Semaphore inFlight;                //限制同时在处理中的块数
+    private final BlockingQueue<Chunk> input;        //读取 → 计算
+    private final BlockingQueue<Chunk> output;       //计算 → 写出
+    private final AtomicLong lines = new AtomicLong();
+
+    /**
+     *一段以换行结尾的输入，计算后保存对应的输出。
+     */
+    private static final class Chunk
+    {
+        final long sequence;
+        final ByteBuffer data;
+        byte[] result;
+
+        Chunk(long sequence, ByteBuffer data)
+        {
+            this.sequence = sequence;
+            this.data = data;
+        }
+    }
+
+    /**
+     *@param workers 计算线程数
+     */
+    public FilePipeline(int workers)
+    {
+        if (workers < 1)
+        {
+            throw new IllegalArgumentException("计算线程数必须大于0: " + workers);
+        }
+        this.workers = workers;
+        this.inFlight = new Semaphore(workers * 4);
+        this.input = new ArrayBlockingQueue<>(workers * 2);
+        this.output = new ArrayBlockingQueue<>(workers * 2);
+    }
+
+    /**
+     *命令行入口：&lt;输入文件&gt; [输出文件] [--threads 线程数]，没有输出文件或为"-"时输出到标准输出。
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        Path source = null;
+        String target = "-";
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+            {
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if (source == null)
+            {
+                source = Path.of(args[i]);
+            }
+            else
+            {
+                target = args[i];
+            }
+        }
+        if (source == null)
+        {
+            System.err.println("用法: --file <输入文件> [输出文件] [--threads 线程数]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        long count;
+        if (target.equals("-"))
+        {
+            WritableByteChannel out = Channels.newChannel(new FileOutputStream(java.io.FileDescriptor.out));
+            count = new FilePipeline(threads).run(source, out);
+        }
+        else
+        {
+            try (FileChannel out = FileChannel.open(Path.of(target), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+            {
+                count = new FilePipeline(threads).run(source, out);
+            }
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.err.println("共计算 " + count + " 行，用时 " + millis + " ms，" + count * 1000 / millis + " 行/秒");
+    }
+
+    /**
+     *计算整个文件。一个FilePipeline实例只能运行一次。
+     *@param source 输入文件
+     *@param target 输出通道，不会被关闭
+     *@return 处理的行数
+     *@throws IOException 读写失败时抛出
+     */
+    public long run(Path source, WritableByteChannel target) throws IOException, InterruptedException
+    {
+        ExecutorService threads = Executors.newFixedThreadPool(workers + 2, runnable ->
+        {
+            Thread thread = new Thread(runnable, "file-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorCompletionService<Void> stages = new ExecutorCompletionService<>(threads);
+        try
+        {
+            stages.submit(() ->
+            {
+                read(source);
+                return null;
+            });
+            for (int i = 0; i < workers; i++)
+            {
+                stages.submit(() ->
+                {
+                    evaluate();
+                    return null;
+                });
+            }
+            stages.submit(() ->
+            {
+                write(target);
+                return null;
+            });
+            //任何一个阶段失败都立即停止其他阶段，否则它们可能永远等在队列上
+            for (int i = 0; i < workers + 2; i++)
+            {
+                stages.take().get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException("计算文件失败: " + cause, cause);
+        }
+        finally
+        {
+            threads.shutdownNow();
+        }
+        return lines.get();
+    }
+
+    private void read(Path source) throws IOException, InterruptedException
+    {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD)
+            {
+                readMapped(channel, size);
+            }
+            else
+            {
+                readStreaming(channel);
+            }
+        }
+        for (int i = 0; i < workers; i++)
+        {
+            input.put(END);
+        }
+    }
+
+    /**
+     *顺序读取文件，每次在最后一个换行处切出一块，剩余部分留到下一次。
+     */
+    private void readStreaming(FileChannel channel) throws IOException, InterruptedException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        long sequence = 0;
+        boolean eof = false;
+        while (!eof)
+        {
+            eof = channel.read(buffer) < 0;
+            if (buffer.hasRemaining() && !eof)
+            {
+                continue;
+            }
+            int end = eof ? buffer.position() : lastLineEnd(buffer, 0, buffer.position());
+            if (end == 0)
+            {
+                if (eof)
+                {
+                    break;
+                }
+                //一行比缓冲区还长，扩大缓冲区
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+                continue;
+            }
+            byte[] data = new byte[end];
+            buffer.flip();
+            buffer.get(data);
+            buffer.compact();
+            submit(new Chunk(sequence++, ByteBuffer.wrap(data)));
+        }
+    }
+
+    /**
+     *按窗口映射文件，块直接引用映射的内存。窗口在最后一个完整的行之后结束，下一个窗口从那里开始。
+     */
+    private void readMapped(FileChannel channel, long size) throws IOException, InterruptedException
+    {
+        long sequence = 0;
+        long position = 0;
+        while (position < size)
+        {
+            int length = (int) Math.min(MAP_WINDOW, size - position);
+            boolean last = position + length == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int from = 0;
+            while (from < length)
+            {
+                int end = Math.min(from + CHUNK_SIZE, length);
+                if (end < length || !last)
+                {
+                    end = lastLineEnd(window, from, end);
+                }
+                if (end == from)
+                {
+                    //这一行比一块长，把整行作为一块
+                    end = firstLineEnd(window, from + CHUNK_SIZE, length);
+                    if (end < 0 && last)
+                    {
+                        end = length;
+                    }
+                    else if (end < 0)
+                    {
+                        break; //剩余部分不够一行，从这里重新映射
+                    }
+                }
+                submit(new Chunk(sequence++, window.slice(from, end - from)));
+                from = end;
+            }
+            if (from == 0)
+            {
+                throw new IOException("行太长: 位置 " + position);
+            }
+            position += from;
+        }
+    }
+
+    /**
+     *@return [from, to)中最后一个换行符之后的位置，没有换行符时返回from
+     */
+    private static int lastLineEnd(ByteBuffer buffer, int from, int to)
+    {
+        for (int i = to - 1; i >= from; i--)
+        {
+            if (buffer.get(i) == '\n')
+            {
+                return i + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     *@return [from, to)中第一个换行符之后的位置，没有换行符时返回-1
+     */
+    private static int firstLineEnd(ByteBuffer buffer, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (buffer.get(i) == '\n')
+            {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void submit(Chunk chunk) throws InterruptedException
+    {
+        inFlight.acquire();
+        input.put(chunk);
+    }
+
+    /**
+     *计算线程：逐行计算块中的内容。每个线程有自己的表达式缓存和格式化器，线程之间不需要同步。
+     */
+    private void evaluate() throws InterruptedException
+    {
+        ExpressionCache cache = new ExpressionCache();
+        NumberFormatter formatter = new NumberFormatter();
+        StringBuilder result = new StringBuilder();
+        byte[] line = new byte[256];
+        while (true)
+        {
+            Chunk chunk = input.take();
+            if (chunk == END)
+            {
+                output.put(END);
+                return;
+            }
+            ByteBuffer data = chunk.data;
+            int limit = data.limit();
+            int start = 0;
+            long count = 0;
+            result.setLength(0);
+            while (start < limit)
+            {
+                int end = start;
+                while (end < limit && data.get(end) != '\n')
+                {
+                    end++;
+                }
+                int length = end - start;
+                if (length > 0 && data.get(end - 1) == '\r')
+                {
+                    length--;
+                }
+                if (length > line.length)
+                {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                data.get(start, line, 0, length);
+                result.append(evaluateLine(cache, formatter, new String(line, 0, length, StandardCharsets.UTF_8)));
+                result.append('\n');
+                count++;
+                start = end + 1;
+            }
+            lines.addAndGet(count);
+            chunk.result = result.toString().getBytes(StandardCharsets.UTF_8);
+            output.put(chunk);
+        }
+    }
+
+    /**
+     *计算一行：形如"操作数,运算符,操作数"的CSV行按计算器的二元运算计算，其他内容按表达式计算。
+     */
+    static String evaluateLine(ExpressionCache cache, NumberFormatter formatter, String line)
+    {
+        String text = line.trim();
+        if (text.isEmpty())
+        {
+            return "";
+        }
+        int first = text.indexOf(',');
+        int second = first < 0 ? -1 : text.indexOf(',', first + 1);
+        if (second > 0 && text.indexOf(',', second + 1) < 0)
+        {
+            Operator operator = parseOperator(text.substring(first + 1, second).trim());
+            if (operator != null)
+            {
+                return evaluateRow(formatter, text.substring(0, first).trim(), operator, text.substring(second + 1).trim());
+            }
+        }
+        return BatchLauncher.evaluateLine(cache, formatter, text);
+    }
+
+    private static Operator parseOperator(String symbol)
+    {
+        Operator operator = Operator.fromSymbol(symbol);
+        if (operator == null && symbol.length() == 1)
+        {
+            Key key = Key.fromChar(symbol.charAt(0));
+            operator = key == null ? null : key.operator();
+        }
+        if (operator == null && symbol.equals("mod"))
+        {
+            operator = Operator.MODULO;
+        }
+        return operator;
+    }
+
+    /**
+     *与calculate()相同的规则计算一次二元运算，错误输出对应的错误信息。
+     */
+    private static String evaluateRow(NumberFormatter formatter, String left, Operator operator, String right)
+    {
+        double a;
+        double b;
+        try
+        {
+            a = Double.parseDouble(left);
+            b = Double.parseDouble(right);
+        }
+        catch (NumberFormatException e)
+        {
+            return CalculatorError.INVALID_NUMBER.message();
+        }
+        if (b == 0 && operator == Operator.DIVIDE)
+        {
+            return CalculatorError.DIVIDE_BY_ZERO.message();
+        }
+        if (b == 0 && operator == Operator.MODULO)
+        {
+            return CalculatorError.MODULO_BY_ZERO.message();
+        }
+        return BatchLauncher.formatResult(formatter, operator.apply(a, b));
+    }
+
+    /**
+     *写出线程：按块的序号顺序写出结果。先完成的块暂存在pending中，数量不超过inFlight的上限。
+     */
+    private void write(WritableByteChannel target) throws IOException, InterruptedException
+    {
+        Map<Long, Chunk> pending = new HashMap<>();
+        long next = 0;
+        int finished = 0;
+        while (finished < workers)
+        {
+            Chunk chunk = output.take();
+            if (chunk == END)
+            {
+                finished++;
+                continue;
+            }
+            pending.put(chunk.sequence, chunk);
+            while ((chunk = pending.remove(next)) != null)
+            {
+                ByteBuffer buffer = ByteBuffer.wrap(chunk.result);
+                while (buffer.hasRemaining())
+                {
+                    target.write(buffer);
+                }
+                next++;
+                inFlight.release();
+            }
+        }
+    }
+}
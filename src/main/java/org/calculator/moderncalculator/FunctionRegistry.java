@@ -0,0 +1,208 @@
+package org.calculator.moderncalculator;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ *FunctionRegistry保存计算器可以使用的科学函数。
+ *每个函数注册时得到一个整数id，调用时按id直接取数组中的实现，不再比较函数名；
+ *函数名只在注册和编译表达式时使用一次。标准函数的id是固定的常量，也可以注册自定义函数。
+ *注册采用写时复制，读取不需要加锁，可以在批处理的多个线程中同时调用。
+ */
+public final class FunctionRegistry
+{
+    //标准函数的id，顺序与standard()中的注册顺序一致
+    public static final int SIN = 0;
+    public static final int COS = 1;
+    public static final int TAN = 2;
+    public static final int ASIN = 3;
+    public static final int ACOS = 4;
+    public static final int ATAN = 5;
+    public static final int SINH = 6;
+    public static final int COSH = 7;
+    public static final int TANH = 8;
+    public static final int EXP = 9;
+    public static final int LN = 10;
+    public static final int LOG10 = 11;
+    public static final int CBRT = 12;
+    public static final int FACTORIAL = 13;
+    public static final int GAMMA = 14;
+    public static final int LN_GAMMA = 15;
+    public static final int POW = 16;
+    public static final int NCR = 17;
+    public static final int NPR = 18;
+
+    private static final FunctionRegistry STANDARD = createStandard();
+
+    private volatile Function[] functions = new Function[0];
+
+    /**
+     *一个已注册的函数，unary和binary中只有一个不为 null。
+     */
+    static final class Function
+    {
+        final String name;
+        final DoubleUnaryOperator unary;
+        final DoubleBinaryOperator binary;
+
+        Function(String name, DoubleUnaryOperator unary, DoubleBinaryOperator binary)
+        {
+            this.name = name;
+            this.unary = unary;
+            this.binary = binary;
+        }
+
+        int arity()
+        {
+            return unary != null ? 1 : 2;
+        }
+    }
+
+    /**
+     *@return 包含标准函数的共享注册表，计算引擎和表达式编译器默认使用它
+     */
+    public static FunctionRegistry standard()
+    {
+        return STANDARD;
+    }
+
+    private static FunctionRegistry createStandard()
+    {
+        FunctionRegistry registry = new FunctionRegistry();
+        registry.register("sin", Math::sin);
+        registry.register("cos", Math::cos);
+        registry.register("tan", Math::tan);
+        registry.register("asin", Math::asin);
+        registry.register("acos", Math::acos);
+        registry.register("atan", Math::atan);
+        registry.register("sinh", Math::sinh);
+        registry.register("cosh", Math::cosh);
+        registry.register("tanh", Math::tanh);
+        registry.register("exp", Math::exp);
+        registry.register("ln", Math::log);
+        registry.register("log", Math::log10);
+        registry.register("cbrt", Math::cbrt);
+        registry.register("fact", SpecialFunctions::factorial);
+        registry.register("gamma", SpecialFunctions::gamma);
+        registry.register("lngamma", SpecialFunctions::lnGamma);
+        registry.register("pow", Math::pow);
+        registry.register("nCr", SpecialFunctions::binomial);
+        registry.register("nPr", SpecialFunctions::permutations);
+        return registry;
+    }
+
+    /**
+     *注册一个单参数函数。
+     *@param name 函数名，在表达式中使用，例如"sin"
+     *@param function 函数的实现
+     *@return 函数的id
+     *@throws IllegalArgumentException 函数名已被使用时抛出
+     */
+    public int register(String name, DoubleUnaryOperator function)
+    {
+        return add(new Function(name, function, null));
+    }
+
+    /**
+     *注册一个双参数函数。
+     *@param name 函数名，例如"pow"
+     *@param function 函数的实现
+     *@return 函数的id
+     *@throws IllegalArgumentException 函数名已被使用时抛出
+     */
+    public int register(String name, DoubleBinaryOperator function)
+    {
+        return add(new Function(name, null, function));
+    }
+
+    private synchronized int add(Function function)
+    {
+        if (id(function.name) >= 0)
+        {
+            throw new IllegalArgumentException("函数已存在: " + function.name);
+        }
+        Function[] larger = Arrays.copyOf(functions, functions.length + 1);
+        larger[functions.length] = function;
+        functions = larger;
+        return functions.length - 1;
+    }
+
+    /**
+     *按名称查找函数，只应在编译表达式等准备阶段调用。
+     *@param name 函数名，区分大小写
+     *@return 函数的id，不存在时返回 -1
+     */
+    public int id(String name)
+    {
+        Function[] current = functions;
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i].name.equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *@return 已注册的函数个数，id从0到size() - 1
+     */
+    public int size()
+    {
+        return functions.length;
+    }
+
+    /**
+     *@return 函数名
+     */
+    public String name(int id)
+    {
+        return functions[id].name;
+    }
+
+    /**
+     *@return 函数的参数个数，1或2
+     */
+    public int arity(int id)
+    {
+        return functions[id].arity();
+    }
+
+    /**
+     *调用单参数函数。
+     *@throws IllegalArgumentException id对应的不是单参数函数时抛出
+     */
+    public double apply(int id, double x)
+    {
+        DoubleUnaryOperator function = functions[id].unary;
+        if (function == null)
+        {
+            throw new IllegalArgumentException(name(id) + "需要两个参数");
+        }
+        return function.applyAsDouble(x);
+    }
+
+    /**
+     *调用双参数函数。
+     *@throws IllegalArgumentException id对应的不是双参数函数时抛出
+     */
+    public double apply(int id, double x, double y)
+    {
+        DoubleBinaryOperator function = functions[id].binary;
+        if (function == null)
+        {
+            throw new IllegalArgumentException(name(id) + "只需要一个参数");
+        }
+        return function.applyAsDouble(x, y);
+    }
+
+    /**
+     *@return 当前全部函数的快照。已注册的函数不会改变，编译后的表达式可以一直使用这个数组
+     */
+    Function[] snapshot()
+    {
+        return functions;
+    }
+}
@@ -0,0 +1,356 @@
+package org.calculator.moderncalculator;
+
+/**
+ *InputBuffer是一个可复用的字符缓冲区，用来保存正在输入的数字。
+ *它代替原来不可变的currentInputValue字符串，追加、删除和取反都直接修改数组，
+ *只有在需要显示时才生成字符串。
+ *负号单独保存，数组中只有数字和小数点，因此取反是O(1)的；
+ *数字个数和小数点位置随修改增量维护，输入每一位数字的开销与已输入的长度无关。
+ *它实现了CharSequence，监听器可以直接读取内容而不需要复制。
+ */
+final class InputBuffer implements CharSequence
+{
+    //10的0到22次方都能被double精确表示，用于快速解析
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    //有效数字不超过15位时，尾数小于2^53，可以用一次除法得到正确舍入的结果
+    private static final int FAST_PATH_DIGITS = 15;
+
+    private char[] chars;       //不含负号的数字和小数点
+    private int size;           //chars中有效字符的个数
+    private boolean negative;   //是否以"-"开头
+    private int digitCount;     //数字的个数
+    private int pointIndex;     //小数点在chars中的位置，没有小数点时为-1
+    private String text;        //缓存的字符串，内容改变时清空
+
+    InputBuffer(int capacity)
+    {
+        chars = new char[Math.max(capacity, 4)];
+        setZero();
+    }
+
+    /**
+     *把内容重置为"0"。
+     */
+    void setZero()
+    {
+        clear();
+        chars[0] = '0';
+        size = 1;
+        digitCount = 1;
+    }
+
+    /**
+     *清空内容，之后通常会逐个追加字符。
+     */
+    void clear()
+    {
+        size = 0;
+        negative = false;
+        digitCount = 0;
+        pointIndex = -1;
+        text = null;
+    }
+
+    /**
+     *把内容设置为单个字符，例如新输入的数字。
+     */
+    void set(char c)
+    {
+        clear();
+        append(c);
+    }
+
+    /**
+     *用给定字符数组的前count个字符替换当前内容。
+     */
+    void set(char[] source, int count)
+    {
+        clear();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+        {
+            append(source[i]);
+        }
+    }
+
+    /**
+     *复制另一个缓冲区的内容。
+     */
+    void copyFrom(InputBuffer other)
+    {
+        ensureCapacity(other.size);
+        System.arraycopy(other.chars, 0, chars, 0, other.size);
+        size = other.size;
+        negative = other.negative;
+        digitCount = other.digitCount;
+        pointIndex = other.pointIndex;
+        text = other.text; //字符串不可变，可以共用
+    }
+
+    /**
+     *在末尾追加一个字符。空缓冲区中追加的"-"作为负号。
+     */
+    void append(char c)
+    {
+        text = null;
+        if (c == '-' && size == 0 && !negative)
+        {
+            negative = true;
+            return;
+        }
+        ensureCapacity(size + 1);
+        if (c == '.')
+        {
+            pointIndex = size;
+        }
+        else
+        {
+            digitCount++;
+        }
+        chars[size++] = c;
+    }
+
+    /**
+     *在末尾一次追加text中从start到end(不含)的字符，用于粘贴大段数字。
+     */
+    void append(CharSequence text, int start, int end)
+    {
+        ensureCapacity(size + end - start);
+        for (int i = start; i < end; i++)
+        {
+            append(text.charAt(i));
+        }
+    }
+
+    /**
+     *删除最后一个字符。只剩负号时删除负号。
+     */
+    void deleteLast()
+    {
+        text = null;
+        if (size > 0)
+        {
+            if (chars[--size] == '.')
+            {
+                pointIndex = -1;
+            }
+            else
+            {
+                digitCount--;
+            }
+        }
+        else
+        {
+            negative = false;
+        }
+    }
+
+    /**
+     *切换正负号：以"-"开头则去掉"-"，否则在前面加上"-"。
+     */
+    void negate()
+    {
+        text = null;
+        negative = !negative;
+    }
+
+    @Override
+    public int length()
+    {
+        return negative ? size + 1 : size;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= length())
+        {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (negative)
+        {
+            return index == 0 ? '-' : chars[index - 1];
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0 && !negative;
+    }
+
+    boolean startsWithMinus()
+    {
+        return negative;
+    }
+
+    /**
+     *@return 内容是否恰好为"0"
+     */
+    boolean isZero()
+    {
+        return !negative && size == 1 && chars[0] == '0';
+    }
+
+    /**
+     *@return 内容是否恰好为"-0"
+     */
+    boolean isNegativeZero()
+    {
+        return negative && size == 1 && chars[0] == '0';
+    }
+
+    /**
+     *@return 内容是否只有一个负号
+     */
+    boolean isMinusOnly()
+    {
+        return negative && size == 0;
+    }
+
+    boolean containsDecimalPoint()
+    {
+        return pointIndex >= 0;
+    }
+
+    /**
+     *@return 不计负号和小数点的数字个数
+     */
+    int digitCount()
+    {
+        return digitCount;
+    }
+
+    /**
+     *检查内容是否可以被解析为有效的数字，对应原来的canParseAsNumber。
+     *缓冲区只会包含数字、小数点和开头的负号，因此只要至少有一个数字就是有效的。
+     */
+    boolean isNumber()
+    {
+        return digitCount > 0;
+    }
+
+    /**
+     *把内容解析为double。
+     *有效数字不超过15位时直接在数组上计算，不创建字符串；更长的数字回退到Double.parseDouble。
+     *@return 解析结果，无法解析时返回 NaN
+     */
+    double toDouble()
+    {
+        long mantissa = 0;
+        int significantDigits = 0;
+        int scale = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        for (int i = 0; i < size; i++)
+        {
+            char c = chars[i];
+            if (c == '.')
+            {
+                if (seenPoint)
+                {
+                    return Double.NaN;
+                }
+                seenPoint = true;
+                continue;
+            }
+            if (c < '0' || c > '9')
+            {
+                return Double.NaN;
+            }
+            seenDigit = true;
+            if (seenPoint)
+            {
+                scale++;
+            }
+            if (mantissa == 0 && c == '0') //跳过前导零
+            {
+                continue;
+            }
+            if (++significantDigits > FAST_PATH_DIGITS)
+            {
+                return parseSlow();
+            }
+            mantissa = mantissa * 10 + (c - '0');
+        }
+        if (!seenDigit)
+        {
+            return Double.NaN;
+        }
+        if (scale >= POWERS_OF_TEN.length)
+        {
+            return parseSlow();
+        }
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     *把内容解析为精确的十进制数，用于精确模式。
+     *@param target 保存结果
+     *@return 是否解析成功
+     */
+    boolean toDecimal(DecimalValue target)
+    {
+        return target.parse(negative, chars, size);
+    }
+
+    private double parseSlow()
+    {
+        try
+        {
+            return Double.parseDouble(toString());
+        }
+        catch (NumberFormatException e)
+        {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     *把内容追加到StringBuilder中，用于拼接历史记录。
+     */
+    void appendTo(StringBuilder sb)
+    {
+        if (negative)
+        {
+            sb.append('-');
+        }
+        sb.append(chars, 0, size);
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > chars.length)
+        {
+            char[] larger = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, larger, 0, size);
+            chars = larger;
+        }
+    }
+
+    /**
+     *生成显示用的字符串。内容没有改变时返回上一次生成的字符串。
+     */
+    @Override
+    public String toString()
+    {
+        if (text == null)
+        {
+            StringBuilder sb = new StringBuilder(length());
+            appendTo(sb);
+            text = sb.toString();
+        }
+        return text;
+    }
+}
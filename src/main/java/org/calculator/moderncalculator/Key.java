@@ -0,0 +1,234 @@
+package org.calculator.moderncalculator;
+
+/**
+ *Key枚举表示计算器上的一次按键。
+ *CalculatorEngine只接收Key，不依赖按钮文本或JavaFX事件，
+ *因此可以在没有图形界面的情况下批量回放按键序列。
+ */
+public enum Key
+{
+    DIGIT_0("0"),
+    DIGIT_1("1"),
+    DIGIT_2("2"),
+    DIGIT_3("3"),
+    DIGIT_4("4"),
+    DIGIT_5("5"),
+    DIGIT_6("6"),
+    DIGIT_7("7"),
+    DIGIT_8("8"),
+    DIGIT_9("9"),
+    DECIMAL("."),
+    ADD("+", Operator.ADD),
+    SUBTRACT("-", Operator.SUBTRACT),
+    MULTIPLY("×", Operator.MULTIPLY),
+    DIVIDE("÷", Operator.DIVIDE),
+    MODULO("mod", Operator.MODULO),
+    EQUALS("="),
+    CLEAR("C"),
+    CLEAR_ENTRY("CE"),
+    BACKSPACE("⌫"),
+    NEGATE("+/-"),
+    PERCENT("%"),
+    RECIPROCAL("1/x"),
+    SQUARE("x²"),
+    SQUARE_ROOT("²√x"),
+    UNDO("↶"),
+    REDO("↷"),
+    MEMORY_CLEAR("MC"),
+    MEMORY_RECALL("MR"),
+    MEMORY_ADD("M+"),
+    MEMORY_SUBTRACT("M-"),
+    //程序员模式的按键。放在最后，已有按键的序号(录制文件中使用)保持不变；
+    //C与清除键的文本相同，fromLabel("C")返回CLEAR，十六进制的C需要用名称DIGIT_C
+    DIGIT_A("A"),
+    DIGIT_B("B"),
+    DIGIT_C("C"),
+    DIGIT_D("D"),
+    DIGIT_E("E"),
+    DIGIT_F("F"),
+    AND("AND"),
+    OR("OR"),
+    XOR("XOR"),
+    NOT("NOT"),
+    SHIFT_LEFT("<<"),
+    SHIFT_RIGHT(">>");
+
+    private static final Key[] DIGITS = {DIGIT_0, DIGIT_1, DIGIT_2, DIGIT_3, DIGIT_4, DIGIT_5, DIGIT_6, DIGIT_7, DIGIT_8, DIGIT_9};
+    private static final Key[] HEX_DIGITS = {DIGIT_A, DIGIT_B, DIGIT_C, DIGIT_D, DIGIT_E, DIGIT_F};
+
+    private final String label;       //按钮上显示的文本
+    private final Operator operator;  //二元运算键对应的运算符，其他键为 null
+
+    Key(String label)
+    {
+        this(label, null);
+    }
+
+    Key(String label, Operator operator)
+    {
+        this.label = label;
+        this.operator = operator;
+    }
+
+    /**
+     *@return 按钮上显示的文本
+     */
+    public String label()
+    {
+        return label;
+    }
+
+    /**
+     *@return 二元运算键对应的运算符，其他键返回 null
+     */
+    public Operator operator()
+    {
+        return operator;
+    }
+
+    /**
+     *@return 是否是数字键 0-9
+     */
+    public boolean isDigit()
+    {
+        return ordinal() <= DIGIT_9.ordinal();
+    }
+
+    /**
+     *@return 是否是存储器键 MC、MR、M+、M-
+     */
+    public boolean isMemory()
+    {
+        return ordinal() >= MEMORY_CLEAR.ordinal() && ordinal() <= MEMORY_SUBTRACT.ordinal();
+    }
+
+    /**
+     *@return 数字键 0-9 和 A-F 表示的数值，其他键返回 -1
+     */
+    public int digitValue()
+    {
+        if (isDigit())
+        {
+            return ordinal();
+        }
+        if (ordinal() >= DIGIT_A.ordinal() && ordinal() <= DIGIT_F.ordinal())
+        {
+            return 10 + ordinal() - DIGIT_A.ordinal();
+        }
+        return -1;
+    }
+
+    /**
+     *@param digit 0-15 之间的数字
+     *@return 对应的数字键，10-15为A-F
+     */
+    public static Key hexDigit(int digit)
+    {
+        return digit < 10 ? DIGITS[digit] : HEX_DIGITS[digit - 10];
+    }
+
+    /**
+     *@return 数字键对应的字符，例如DIGIT_5返回'5'
+     */
+    public char digitChar()
+    {
+        return (char) ('0' + ordinal());
+    }
+
+    /**
+     *@param digit 0-9 之间的数字
+     *@return 对应的数字键
+     */
+    public static Key digit(int digit)
+    {
+        return DIGITS[digit];
+    }
+
+    /**
+     *根据键盘或粘贴文本中的字符查找按键。
+     *除了按钮上的符号，还接受键盘上常用的"*"、"/"和"x"。
+     *@param c 字符
+     *@return 对应的按键，不是计算器按键时返回 null
+     */
+    public static Key fromChar(char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return DIGITS[c - '0'];
+        }
+        switch (c)
+        {
+            case '.':
+                return DECIMAL;
+            case '+':
+                return ADD;
+            case '-':
+                return SUBTRACT;
+            case '*':
+            case 'x':
+            case '×':
+                return MULTIPLY;
+            case '/':
+            case '÷':
+                return DIVIDE;
+            case '%':
+                return PERCENT;
+            case '=':
+                return EQUALS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     *程序员模式下根据字符查找按键：A-F(不区分大小写)为十六进制数字，
+     *"&"、"|"、"^"、"~"、"<"、">"为位运算，其他字符与fromChar相同。
+     *@param c 字符
+     *@return 对应的按键，不是计算器按键时返回 null
+     */
+    public static Key fromProgrammerChar(char c)
+    {
+        if (c >= 'a' && c <= 'f')
+        {
+            return HEX_DIGITS[c - 'a'];
+        }
+        if (c >= 'A' && c <= 'F')
+        {
+            return HEX_DIGITS[c - 'A'];
+        }
+        switch (c)
+        {
+            case '&':
+                return AND;
+            case '|':
+                return OR;
+            case '^':
+                return XOR;
+            case '~':
+                return NOT;
+            case '<':
+                return SHIFT_LEFT;
+            case '>':
+                return SHIFT_RIGHT;
+            default:
+                return fromChar(c);
+        }
+    }
+
+    /**
+     *根据按钮文本查找按键，用于把FXML中的按钮映射为按键。
+     *@param label 按钮文本
+     *@return 对应的按键，找不到时返回 null
+     */
+    public static Key fromLabel(String label)
+    {
+        for (Key key : values())
+        {
+            if (key.label.equals(label))
+            {
+                return key;
+            }
+        }
+        return null;
+    }
+}
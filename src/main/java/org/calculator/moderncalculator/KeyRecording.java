@@ -0,0 +1,472 @@
+package org.calculator.moderncalculator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *KeyRecording把界面交给引擎的每一次输入录制到二进制文件中，并可以在没有界面的情况下全速回放。
+ *每个会话结束时同时记录显示屏和历史记录显示屏上的文本，回放时与重新计算得到的文本比较，
+ *因此录制文件既是回归测试的黄金输出，也可以用来测量引擎处理真实输入的吞吐量。
+ *
+ *文件由依次追加的会话组成，多个录制文件直接拼接也是合法的录制文件。每个会话：
+ *int 魔数、byte 版本、int 撤销历史容量，之后是输入事件，最后是END和结束时的两段显示文本。
+ *每个输入事件以一个字节开头：小于KEY_LIMIT时就是Key的序号，其他值见下面的常量。
+ *整数使用变长编码，文本为"变长长度 + UTF-8字节"。一次按键只占一个字节。
+ *会话在内存中累积，结束时一次写入文件，程序异常退出时文件中不会留下不完整的会话。
+ */
+public final class KeyRecording implements Closeable
+{
+    /**
+     *一个会话回放的结果。
+     */
+    public record Session(long events, String expectedDisplay, String expectedHistory, String display, String history)
+    {
+        /**
+         *@return 回放结果与录制时的显示是否一致
+         */
+        public boolean matches()
+        {
+            return expectedDisplay.equals(display) && expectedHistory.equals(history);
+        }
+    }
+
+    private static final int MAGIC = 0x4B455953; //"KEYS"
+    private static final int VERSION = 2; //2: 换算事件记录系数和偏移的原文
+    private static final int KEY_LIMIT = 0xF0;   //Key的序号必须小于它
+    private static final int TEXT = 0xF0;        //之后是键入或粘贴的文本
+    private static final int FUNCTION = 0xF1;    //之后是函数id
+    private static final int PRECISION = 0xF2;   //之后是Precision的序号
+    private static final int MEMORY_SLOT = 0xF3; //之后是存储槽编号
+    private static final int CONVERSION = 0xF4;  //之后是类别和两个单位的名称，再是两个单位系数和偏移的原文
+    private static final int PROGRAMMER = 0xF5;  //之后是是否为程序员模式、进制和字长各一个字节
+    private static final int END = 0xFF;         //会话结束，之后是显示屏和历史记录显示屏的文本
+    private static final int INITIAL_BUFFER_SIZE = 1 << 12;
+    private static final int MAX_HISTORY_CAPACITY = 100_000; //回放时引擎按容量预先分配撤销历史，过大的值说明文件已损坏
+
+    private static final Key[] KEYS = Key.values();
+    private static final Precision[] PRECISIONS = Precision.values();
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private KeyRecording(FileChannel channel, int historyCapacity)
+    {
+        this.channel = channel;
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putInt(historyCapacity);
+    }
+
+    /**
+     *开始录制一个新的会话，追加到文件末尾，文件不存在时创建。
+     *@param file 录制文件路径
+     *@param historyCapacity 引擎的撤销历史容量，回放时使用相同的容量
+     *@return 录制器，会话结束时调用close(String, String)写入文件
+     *@throws IOException 无法打开文件
+     */
+    public static KeyRecording open(Path file, int historyCapacity) throws IOException
+    {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+        {
+            Files.createDirectories(parent);
+        }
+        return new KeyRecording(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND), historyCapacity);
+    }
+
+    /**
+     *记录一次按键。
+     */
+    public void key(Key key)
+    {
+        ensure(1);
+        buffer.put((byte) key.ordinal());
+    }
+
+    /**
+     *记录一段键入或粘贴的文本。
+     */
+    public void text(CharSequence text)
+    {
+        ensure(1);
+        buffer.put((byte) TEXT);
+        putString(text.toString());
+    }
+
+    /**
+     *记录一次科学函数调用。
+     *@param id 函数在FunctionRegistry.standard()中的id
+     */
+    public void function(int id)
+    {
+        ensure(6);
+        buffer.put((byte) FUNCTION);
+        putVarint(id);
+    }
+
+    /**
+     *记录一次精度切换。
+     */
+    public void precision(Precision precision)
+    {
+        ensure(2);
+        buffer.put((byte) PRECISION);
+        buffer.put((byte) precision.ordinal());
+    }
+
+    /**
+     *记录一次存储槽切换。
+     */
+    public void memorySlot(int slot)
+    {
+        ensure(6);
+        buffer.put((byte) MEMORY_SLOT);
+        putVarint(slot);
+    }
+
+    /**
+     *记录程序员模式的打开、关闭或者进制、字长的切换。
+     */
+    public void programmer(boolean enabled, int base, int wordSize)
+    {
+        ensure(4);
+        buffer.put((byte) PROGRAMMER);
+        buffer.put((byte) (enabled ? 1 : 0));
+        buffer.put((byte) base);
+        buffer.put((byte) wordSize);
+    }
+
+    /**
+     *记录一次单位换算。同时记录换算时使用的系数和偏移，换算表之后更新也不影响回放。
+     *@param table 换算时使用的换算表
+     */
+    public void conversion(ConversionTable table, int from, int to)
+    {
+        ensure(33);
+        buffer.put((byte) CONVERSION);
+        putString(table.category(from));
+        putString(table.name(from));
+        putString(table.name(to));
+        putString(table.factorText(from));
+        putString(table.offsetText(from));
+        putString(table.factorText(to));
+        putString(table.offsetText(to));
+    }
+
+    /**
+     *结束会话：记录当前的显示作为回放时的黄金输出，然后把整个会话追加到文件并关闭文件。
+     *@param display 主显示屏的文本
+     *@param history 历史记录显示屏的文本
+     */
+    public void close(String display, String history) throws IOException
+    {
+        try
+        {
+            ensure(1);
+            buffer.put((byte) END);
+            putString(display);
+            putString(history);
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     *放弃这个会话，不写入任何数据。
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private void putString(String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ensure(5 + bytes.length);
+        putVarint(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void putVarint(int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     *缓冲区剩余空间不足size字节时扩大一倍。一次按键只占一个字节，即使很长的会话也只需要几MB。
+     */
+    private void ensure(int size)
+    {
+        if (buffer.remaining() < size)
+        {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    /**
+     *回放录制文件中的全部完整会话。每个会话使用一个新的引擎，依次执行与界面相同的引擎调用。
+     *文件在最后一个会话中间被截断时返回之前的全部完整会话。
+     *@param file 录制文件
+     *@return 每个会话的回放结果
+     *@throws IOException 无法读取文件，或者文件格式错误
+     */
+    public static List<Session> replay(Path file) throws IOException
+    {
+        List<Session> sessions = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("录制文件超过2GB，请分成多个文件: " + file);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (data.hasRemaining())
+            {
+                Session session = replaySession(data, file);
+                if (session == null)
+                {
+                    break; //被截断的会话之后没有数据
+                }
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     *@return 回放结果，文件在会话中间被截断时返回 null
+     *@throws IOException 不是录制文件，或者事件的内容无效
+     */
+    private static Session replaySession(ByteBuffer data, Path file) throws IOException
+    {
+        if (data.remaining() < 9 && data.position() > 0)
+        {
+            return null; //后一个会话的文件头被截断
+        }
+        if (data.remaining() < 9 || data.getInt() != MAGIC || data.get() != VERSION)
+        {
+            throw new IOException("不是按键录制文件或文件已损坏: " + file);
+        }
+        int historyCapacity = data.getInt();
+        if (historyCapacity < 1 || historyCapacity > MAX_HISTORY_CAPACITY)
+        {
+            throw new IOException("录制文件已损坏，撤销历史容量为 " + historyCapacity + ": " + file);
+        }
+        CalculatorEngine engine = new CalculatorEngine(CalculatorEngine.DEFAULT_MAX_DIGITS, historyCapacity);
+        try
+        {
+            return replayEvents(engine, data, file);
+        }
+        catch (BufferUnderflowException e)
+        {
+            return null;
+        }
+        catch (IllegalArgumentException e) //引擎拒绝的进制、字长、函数等
+        {
+            throw new IOException("录制文件中的事件无效: " + e.getMessage() + "，" + file, e);
+        }
+    }
+
+    /**
+     *依次执行会话中的事件，直到END。
+     *@return 回放结果，没有读到END时返回 null
+     */
+    private static Session replayEvents(CalculatorEngine engine, ByteBuffer data, Path file) throws IOException
+    {
+        long events = 0;
+        while (data.hasRemaining())
+        {
+            int code = data.get() & 0xFF;
+            if (code < KEY_LIMIT)
+            {
+                if (code >= KEYS.length)
+                {
+                    throw new IOException("录制文件中的按键无效: " + code + "，" + file);
+                }
+                engine.press(KEYS[code]);
+            }
+            else if (code == TEXT)
+            {
+                engine.type(getString(data, file));
+            }
+            else if (code == FUNCTION)
+            {
+                int id = getVarint(data, file);
+                if (id >= FunctionRegistry.standard().size())
+                {
+                    throw new IOException("录制文件中的函数无效: " + id + "，" + file);
+                }
+                engine.applyFunction(id);
+            }
+            else if (code == PRECISION)
+            {
+                int precision = data.get();
+                if (precision < 0 || precision >= PRECISIONS.length)
+                {
+                    throw new IOException("录制文件中的精度无效: " + precision + "，" + file);
+                }
+                engine.setMathContext(PRECISIONS[precision].mathContext());
+            }
+            else if (code == MEMORY_SLOT)
+            {
+                engine.selectMemorySlot(getVarint(data, file));
+            }
+            else if (code == PROGRAMMER)
+            {
+                engine.setProgrammerMode(data.get() != 0);
+                engine.setProgrammerBase(data.get());
+                engine.setProgrammerWordSize(data.get());
+            }
+            else if (code == CONVERSION)
+            {
+                replayConversion(engine, data, file);
+            }
+            else if (code == END)
+            {
+                String display = getString(data, file);
+                String history = getString(data, file);
+                return new Session(events, display, history, engine.displayText(), engine.historyText());
+            }
+            else
+            {
+                throw new IOException("未知的录制事件 " + code + ": " + file);
+            }
+            events++;
+        }
+        return null;
+    }
+
+    /**
+     *用录制的系数和偏移创建只包含这两个单位的换算表，再执行换算。
+     */
+    private static void replayConversion(CalculatorEngine engine, ByteBuffer data, Path file) throws IOException
+    {
+        String[] categories = {getString(data, file)};
+        String from = getString(data, file);
+        String to = getString(data, file);
+        String fromFactor = getString(data, file);
+        String fromOffset = getString(data, file);
+        String toFactor = getString(data, file);
+        String toOffset = getString(data, file);
+        if (!ConversionTable.isExact(fromFactor, fromOffset) || !ConversionTable.isExact(toFactor, toOffset))
+        {
+            throw new IOException("录制的换算系数已损坏: " + file);
+        }
+        ByteBuffer table = from.equals(to)
+                ? ConversionTable.encode(categories, new int[]{0}, new String[]{from}, new String[]{fromFactor},
+                new String[]{fromOffset})
+                : ConversionTable.encode(categories, new int[]{0, 0}, new String[]{from, to},
+                new String[]{fromFactor, toFactor}, new String[]{fromOffset, toOffset});
+        engine.applyConversion(ConversionTable.wrap(table, file.toString()), ConversionTable.id(from),
+                ConversionTable.id(to));
+    }
+
+    /**
+     *读取变长编码的整数，与putVarint相同，按32位无符号数编码。
+     *@throws BufferUnderflowException 文件在整数中间结束
+     *@throws IOException 超过5个字节或者超出32位
+     */
+    private static int getVarint(ByteBuffer data, Path file) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7)
+        {
+            byte b = data.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                if (shift == 28 && b > 0x0F)
+                {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("录制文件已损坏，整数超出范围: " + file);
+    }
+
+    /**
+     *@throws BufferUnderflowException 文本比文件剩余的部分长，即文件在文本中间结束
+     */
+    private static String getString(ByteBuffer data, Path file) throws IOException
+    {
+        int length = getVarint(data, file);
+        if (length < 0)
+        {
+            throw new IOException("录制文件已损坏，文本长度为 " + length + ": " + file);
+        }
+        if (length > data.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     *命令行入口：回放一个或多个录制文件，输出不一致的会话和吞吐量；有不一致时退出码为1。
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println("用法: --replay <录制文件>...");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        long sessions = 0;
+        long events = 0;
+        long mismatches = 0;
+        for (String arg : args)
+        {
+            List<Session> results = replay(Path.of(arg));
+            for (int i = 0; i < results.size(); i++)
+            {
+                Session session = results.get(i);
+                events += session.events();
+                if (!session.matches())
+                {
+                    mismatches++;
+                    System.out.println(arg + " 会话 " + (i + 1) + ": 期望 [" + session.expectedDisplay() + "] ["
+                            + session.expectedHistory() + "]，实际 [" + session.display() + "] [" + session.history() + "]");
+                }
+            }
+            sessions += results.size();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.err.println("回放 " + sessions + " 个会话、" + events + " 个事件，用时 " + millis + " ms，"
+                + events * 1000 / millis + " 事件/秒，不一致 " + mismatches + " 个");
+        if (mismatches > 0)
+        {
+            System.exit(1);
+        }
+    }
+}
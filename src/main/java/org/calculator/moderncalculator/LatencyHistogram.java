@@ -0,0 +1,129 @@
+package org.calculator.moderncalculator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *LatencyHistogram按HdrHistogram的方式统计以纳秒为单位的耗时。
+ *小于128的值各占一格，更大的值每个2的幂区间平分为64格，因此任何值的相对误差都不超过1/64(约1.6%)，
+ *而格数只与最大值的位数有关：记录到2^40纳秒(约18分钟)只需要两千多个计数器。
+ *记录只是一次数组下标计算和一次原子加法，不分配对象；读取可以在其他线程(例如JMX)进行，得到的是近似一致的快照。
+ */
+final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;                  //每个2的幂区间分为2^6格
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;          //更大的值记在最后一格
+    private static final int MAX_EXPONENT = 39 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT + 2) * SUB_BUCKETS);
+    private final AtomicLong total = new AtomicLong();  //全部记录值的和，用于计算平均值
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     *记录一个值，负值按0记录。
+     *@param nanos 耗时，单位为纳秒
+     */
+    void record(long nanos)
+    {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        total.addAndGet(value);
+        if (value > max.get())
+        {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    private static int index(long value)
+    {
+        if (value < 2 * SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        //value >> exponent落在[64, 128)中，前两个区间已经被上面的直接下标占用
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (exponent << SUB_BUCKET_BITS) + (int) (value >>> exponent);
+    }
+
+    /**
+     *@return 格子中最大的值，报告百分位数时使用上界，不会低估耗时
+     */
+    private static long highestValue(int index)
+    {
+        if (index < 2 * SUB_BUCKETS)
+        {
+            return index;
+        }
+        int exponent = (index >>> SUB_BUCKET_BITS) - 1;
+        long sub = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((sub + 1) << exponent) - 1;
+    }
+
+    /**
+     *@return 记录的次数
+     */
+    long count()
+    {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     *@return 平均值(纳秒)，没有记录时为0
+     */
+    double mean()
+    {
+        long count = count();
+        return count == 0 ? 0 : (double) total.get() / count;
+    }
+
+    /**
+     *@return 记录过的最大值(纳秒)
+     */
+    long max()
+    {
+        return max.get();
+    }
+
+    /**
+     *@param percentile 百分位，0到100之间
+     *@return 不小于该比例记录值的最小格子上界(纳秒)，没有记录时为0
+     */
+    long percentile(double percentile)
+    {
+        long count = count();
+        if (count == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            seen += counts.get(i);
+            if (seen >= rank)
+            {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     *清除全部记录。与record同时执行时可能留下少量计数。
+     */
+    void reset()
+    {
+        for (int i = 0; i < counts.length(); i++)
+        {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+}
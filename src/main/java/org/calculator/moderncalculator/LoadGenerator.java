@@ -0,0 +1,194 @@
+package org.calculator.moderncalculator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *LoadGenerator是CalculatorServer的本机压力测试：先创建大量会话并让它们同时保持打开，
+ *再按轮次让每个会话各发送一个随机的计算请求。每个会话在本地有一个同样输入的CalculatorEngine，
+ *服务返回的显示与本地计算的结果逐一比较，因此既测量吞吐量和延迟，也验证会话之间的状态没有互相干扰。
+ *不指定--url时在同一个进程中启动服务。有不一致或失败的请求时退出码为1。
+ */
+public final class LoadGenerator
+{
+    private static final String[] OPERATORS = {"+", "-", "×", "÷", "mod"};
+    private static final String[] UNARY = {"x²", "²√x", "1/x", "+/-", "%"};
+
+    /**
+     *一个模拟的客户端。
+     */
+    private static final class Client
+    {
+        final CalculatorEngine expected = new CalculatorEngine(CalculatorEngine.DEFAULT_MAX_DIGITS,
+                CalculatorServer.DEFAULT_HISTORY_CAPACITY);
+        String session; //服务分配的会话编号，第一次请求之前为 null
+    }
+
+    private final HttpClient http;
+    private final URI uri;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private LoadGenerator(HttpClient http, URI uri)
+    {
+        this.http = http;
+        this.uri = uri;
+    }
+
+    /**
+     *@return 一个会话的随机输入，例如"37 × 12 ="或"5 x²"
+     */
+    private static String randomInput(Random random)
+    {
+        if (random.nextInt(4) == 0)
+        {
+            return random.nextInt(1000) + " " + UNARY[random.nextInt(UNARY.length)];
+        }
+        return random.nextInt(10_000) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " "
+                + random.nextInt(1, 1000) + " =";
+    }
+
+    /**
+     *发送一个请求并与本地引擎比较。
+     */
+    private void request(Client client)
+    {
+        String input = randomInput(ThreadLocalRandom.current());
+        URI target = client.session == null ? uri : URI.create(uri + "?session=" + client.session);
+        HttpRequest request = HttpRequest.newBuilder(target)
+                .POST(HttpRequest.BodyPublishers.ofString(input))
+                .build();
+        long start = System.nanoTime();
+        try
+        {
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            latency.record(System.nanoTime() - start);
+            if (response.statusCode() != 200)
+            {
+                failures.incrementAndGet();
+                return;
+            }
+            if (client.session == null)
+            {
+                client.session = response.headers().firstValue(CalculatorServer.SESSION_HEADER).orElse(null);
+            }
+            CalculatorServer.apply(client.expected, input);
+            String expected = client.expected.displayText() + "\n" + client.expected.historyText() + "\n";
+            if (!expected.equals(response.body()))
+            {
+                mismatches.incrementAndGet();
+            }
+        }
+        catch (IOException e)
+        {
+            failures.incrementAndGet();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     *让每个客户端各发送一个请求，最多concurrency个请求同时进行。
+     */
+    private void round(Client[] clients, int concurrency, ExecutorService executor) throws Exception
+    {
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] workers = new Future<?>[concurrency];
+        for (int i = 0; i < concurrency; i++)
+        {
+            workers[i] = executor.submit(() ->
+            {
+                for (int index = next.getAndIncrement(); index < clients.length; index = next.getAndIncrement())
+                {
+                    request(clients[index]);
+                }
+            });
+        }
+        for (Future<?> worker : workers)
+        {
+            worker.get();
+        }
+    }
+
+    /**
+     *命令行入口：--load [--url 地址] [--sessions 个数] [--rounds 轮数] [--concurrency 并发数]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String url = null;
+        int sessions = 20_000;
+        int rounds = 5;
+        int concurrency = 256;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            switch (args[i])
+            {
+                case "--url":
+                    url = args[i + 1];
+                    break;
+                case "--sessions":
+                    sessions = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("用法: --load [--url 地址] [--sessions 个数] [--rounds 轮数] [--concurrency 并发数]");
+                    System.exit(2);
+            }
+        }
+        CalculatorServer server = null;
+        if (url == null)
+        {
+            server = CalculatorServer.start(0, CalculatorServer.DEFAULT_HISTORY_CAPACITY,
+                    Math.max(sessions, CalculatorServer.DEFAULT_MAX_SESSIONS), CalculatorServer.DEFAULT_IDLE_SECONDS);
+            url = "http://127.0.0.1:" + server.port() + CalculatorServer.PATH;
+        }
+        ExecutorService executor = CalculatorServer.newHandlerExecutor();
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+        LoadGenerator generator = new LoadGenerator(http, URI.create(url));
+        Client[] clients = new Client[sessions];
+        for (int i = 0; i < sessions; i++)
+        {
+            clients[i] = new Client();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++)
+        {
+            generator.round(clients, concurrency, executor);
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        long requests = generator.latency.count();
+        System.err.println(String.format(Locale.ROOT,
+                "%d 个会话 × %d 轮，%d 个请求，用时 %d ms，%d 请求/秒；延迟(ms) p50 %.3f, p99 %.3f, 最大 %.3f；不一致 %d，失败 %d",
+                sessions, rounds, requests, millis, requests * 1000 / millis,
+                generator.latency.percentile(50) / 1e6, generator.latency.percentile(99) / 1e6,
+                generator.latency.max() / 1e6, generator.mismatches.get(), generator.failures.get()));
+        if (server != null)
+        {
+            System.err.println("服务端会话数: " + server.sessionCount());
+            server.close();
+        }
+        executor.shutdownNow();
+        if (generator.mismatches.get() > 0 || generator.failures.get() > 0)
+        {
+            System.exit(1);
+        }
+    }
+}
@@ -1,28 +1,84 @@
 package org.calculator.moderncalculator;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Objects;
 
 public class Main extends Application {
 
+    private CalculatorController controller;
+
     @Override
     public void start(Stage primaryStage) throws IOException {
-        Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("calculator-view.fxml")));
+        Parent root;
+        if (Boolean.getBoolean("calculator.fxml")) {
+            //从FXML加载界面，便于用Scene Builder修改布局
+            FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(getClass().getResource("calculator-view.fxml")));
+            root = loader.load();
+            controller = loader.getController();
+        } else {
+            //默认用代码创建界面，启动更快
+            controller = new CalculatorController();
+            root = CalculatorView.build(controller);
+        }
         Scene scene = new Scene(root);
+        controller.installKeyboard(scene);
         primaryStage.setTitle("JavaFX课程设计作业--计算器");
         primaryStage.setScene(scene);
         primaryStage.setResizable(false);
         primaryStage.show();
+        reportFirstFrame();
+    }
+
+    /**
+     *第一帧绘制完成后报告从进程启动到现在的时间。
+     *calculator.startupLog为true时总是输出；设置了calculator.startupBudget(毫秒)时，超过预算会输出警告。
+     *calculator.exitAfterFirstFrame为true时在第一帧之后退出，用于测量冷启动时间和生成CDS归档。
+     */
+    private static void reportFirstFrame() {
+        new AnimationTimer() {
+            private int pulses;
+
+            @Override
+            public void handle(long now) {
+                if (++pulses < 2) {
+                    return; //第一个脉冲在绘制之前执行，到第二个脉冲时第一帧已经绘制完成
+                }
+                stop();
+                Instant started = ProcessHandle.current().info().startInstant().orElse(null);
+                if (started != null) {
+                    long millis = Duration.between(started, Instant.now()).toMillis();
+                    long budget = Long.getLong("calculator.startupBudget", 0);
+                    if (budget > 0 && millis > budget) {
+                        System.err.println("启动耗时 " + millis + " ms，超过预算 " + budget + " ms");
+                    } else if (Boolean.getBoolean("calculator.startupLog")) {
+                        System.err.println("启动耗时 " + millis + " ms");
+                    }
+                }
+                if (Boolean.getBoolean("calculator.exitAfterFirstFrame")) {
+                    Platform.exit();
+                }
+            }
+        }.start();
+    }
+
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
     }
 
     public static void main(String[] args) {
         launch(args);
     }
 }
-
@@ -0,0 +1,348 @@
+package org.calculator.moderncalculator;
+
+import java.io.IOException;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *MemoryRegisters保存计算器的存储器(M+、M-、MR、MC)，每个存储槽用一个整数编号。
+ *槽位保存在开放寻址的散列表中，编号、double值和精确值分别放在平行的基本类型数组里，
+ *查找和修改都是O(1)，不会把double装箱成Double，除了扩容也不分配对象。
+ *双精度模式下使用values，精确模式下使用decimals；切换精度时由convert()把全部槽位转换到新的表示。
+ *
+ *快照文件格式：int 魔数、byte 版本、byte 表示(0为double，1为精确值)、int 槽位数，
+ *之后每个槽位是int 编号加上8字节的double或者"int 长度 + ASCII字符"的精确值。
+ */
+final class MemoryRegisters
+{
+    private static final int MAGIC = 0x4D454D52; //"MEMR"
+    private static final int VERSION = 1;
+    private static final int INITIAL_CAPACITY = 16; //必须是2的幂
+
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private DecimalValue[] decimals = new DecimalValue[INITIAL_CAPACITY]; //精确模式下第一次使用时创建，之后一直复用
+    private int size;
+    private boolean decimal; //当前使用decimals还是values
+    private final InputBuffer text = new InputBuffer(32); //读写快照时转换精确值
+
+    /**
+     *@return 保存了值的槽位个数
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     *查找槽位。
+     *@return 槽位在数组中的下标，不存在时返回 -1
+     */
+    int find(int slot)
+    {
+        int mask = slots.length - 1;
+        for (int i = hash(slot) & mask; used[i]; i = (i + 1) & mask)
+        {
+            if (slots[i] == slot)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *查找槽位，不存在时创建一个值为0的槽位。
+     *@return 槽位在数组中的下标，在下一次insert或remove之前有效
+     */
+    int insert(int slot)
+    {
+        int index = find(slot);
+        if (index >= 0)
+        {
+            return index;
+        }
+        if ((size + 1) * 2 > slots.length) //装载因子不超过一半，探测序列保持很短
+        {
+            resize(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        index = hash(slot) & mask;
+        while (used[index])
+        {
+            index = (index + 1) & mask;
+        }
+        used[index] = true;
+        slots[index] = slot;
+        values[index] = 0;
+        if (decimal)
+        {
+            decimalAt(index).setZero();
+        }
+        size++;
+        return index;
+    }
+
+    double value(int index)
+    {
+        return values[index];
+    }
+
+    void setValue(int index, double value)
+    {
+        values[index] = value;
+    }
+
+    /**
+     *@return 下标处的精确值，可以直接修改
+     */
+    DecimalValue decimalAt(int index)
+    {
+        DecimalValue value = decimals[index];
+        if (value == null)
+        {
+            value = new DecimalValue();
+            decimals[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     *删除槽位。删除后把同一探测序列中后面的元素前移，不需要墓碑标记。
+     */
+    void remove(int slot)
+    {
+        int index = find(slot);
+        if (index < 0)
+        {
+            return;
+        }
+        int mask = slots.length - 1;
+        int hole = index;
+        for (int i = (hole + 1) & mask; used[i]; i = (i + 1) & mask)
+        {
+            int home = hash(slots[i]) & mask;
+            //home不在(hole, i]之间时，元素可以移到空出的位置
+            if (((i - home) & mask) >= ((i - hole) & mask))
+            {
+                move(i, hole);
+                hole = i;
+            }
+        }
+        used[hole] = false;
+        size--;
+    }
+
+    private void move(int from, int to)
+    {
+        slots[to] = slots[from];
+        values[to] = values[from];
+        DecimalValue swap = decimals[to]; //交换引用，两个位置的对象都继续复用
+        decimals[to] = decimals[from];
+        decimals[from] = swap;
+        used[to] = true;
+    }
+
+    /**
+     *清除全部槽位。
+     */
+    void clear()
+    {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     *切换到新的精度：进入精确模式时把double转换为十进制，回到双精度模式时把精确值转换为double。
+     *@param mathContext 新的精度，null表示双精度模式
+     */
+    void convert(MathContext mathContext)
+    {
+        boolean target = mathContext != null;
+        for (int i = 0; i < slots.length; i++)
+        {
+            if (!used[i])
+            {
+                continue;
+            }
+            if (target && !decimal)
+            {
+                decimalAt(i).set(values[i], mathContext);
+            }
+            else if (!target && decimal)
+            {
+                values[i] = decimalAt(i).toDouble();
+            }
+        }
+        decimal = target;
+    }
+
+    private void resize(int capacity)
+    {
+        int[] oldSlots = slots;
+        boolean[] oldUsed = used;
+        double[] oldValues = values;
+        DecimalValue[] oldDecimals = decimals;
+        slots = new int[capacity];
+        used = new boolean[capacity];
+        values = new double[capacity];
+        decimals = new DecimalValue[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldSlots.length; i++)
+        {
+            if (oldUsed[i])
+            {
+                int index = hash(oldSlots[i]) & mask;
+                while (used[index])
+                {
+                    index = (index + 1) & mask;
+                }
+                used[index] = true;
+                slots[index] = oldSlots[i];
+                values[index] = oldValues[i];
+                decimals[index] = oldDecimals[i];
+            }
+        }
+    }
+
+    private static int hash(int slot)
+    {
+        int h = slot * 0x9E3779B9; //斐波那契散列，连续的编号分散到不同的位置
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     *把全部槽位写入快照文件。先写临时文件再替换，写入中断时原来的快照仍然完整。
+     *@param file 快照文件
+     *@throws IOException 无法写入文件
+     */
+    void save(Path file) throws IOException
+    {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+        {
+            Files.createDirectories(parent);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        buffer.putInt(MAGIC).put((byte) VERSION).put((byte) (decimal ? 1 : 0)).putInt(size);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            write(channel, buffer.flip());
+            for (int i = 0; i < slots.length; i++)
+            {
+                if (!used[i])
+                {
+                    continue;
+                }
+                if (decimal)
+                {
+                    decimalAt(i).writeTo(text);
+                    byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+                    buffer = ByteBuffer.allocate(8 + bytes.length).putInt(slots[i]).putInt(bytes.length).put(bytes);
+                }
+                else
+                {
+                    buffer = ByteBuffer.allocate(12).putInt(slots[i]).putDouble(values[i]);
+                }
+                write(channel, buffer.flip());
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     *从快照文件恢复槽位，替换当前的全部内容，再转换到当前的精度。文件不存在时只清空，文件损坏时清空后抛出异常。
+     *@param file 快照文件
+     *@param mathContext 当前的精度，null表示双精度模式
+     *@throws IOException 无法读取文件，或者文件格式错误
+     */
+    void load(Path file, MathContext mathContext) throws IOException
+    {
+        boolean previous = decimal;
+        clear();
+        try
+        {
+            if (Files.exists(file))
+            {
+                read(ByteBuffer.wrap(Files.readAllBytes(file)), file);
+            }
+        }
+        catch (IOException e)
+        {
+            clear();
+            decimal = previous; //read()可能已经按损坏的文件切换了表示
+            throw e;
+        }
+        finally
+        {
+            convert(mathContext); //失败时也要让表示与当前精度一致，之后的M+才写入正确的数组
+        }
+    }
+
+    /**
+     *读取快照的内容。每个长度和槽位数都先与剩余的字节数比较，损坏的文件只会抛出IOException。
+     */
+    private void read(ByteBuffer data, Path file) throws IOException
+    {
+        if (data.remaining() < 10 || data.getInt() != MAGIC || data.get() != VERSION)
+        {
+            throw new IOException("不是存储器快照文件: " + file);
+        }
+        byte representation = data.get();
+        int count = data.getInt();
+        int minimumSize = representation == 0 ? 12 : 8; //每个槽位至少占用的字节数
+        if (representation < 0 || representation > 1 || count < 0 || count > data.remaining() / minimumSize)
+        {
+            throw new IOException("存储器快照文件已损坏: " + file);
+        }
+        decimal = representation == 1;
+        for (int i = 0; i < count; i++)
+        {
+            int index = insert(data.getInt());
+            if (decimal)
+            {
+                int length = data.getInt();
+                if (length <= 0 || length > data.remaining())
+                {
+                    throw new IOException("存储器快照文件已损坏: " + file);
+                }
+                char[] chars = new char[length];
+                for (int j = 0; j < length; j++)
+                {
+                    chars[j] = (char) data.get();
+                }
+                text.set(chars, length);
+                if (!text.toDecimal(decimalAt(index)))
+                {
+                    throw new IOException("存储器快照文件已损坏: " + file);
+                }
+            }
+            else
+            {
+                values[index] = data.getDouble();
+            }
+        }
+        if (data.hasRemaining())
+        {
+            throw new IOException("存储器快照文件已损坏: " + file);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package org.calculator.moderncalculator;
+
+/**
+ *NumberFormatter把计算结果格式化到一个可复用的字符缓冲区中，代替原来每次都新建DecimalFormat的formatResult。
+ *显示规则与原来相同：
+ *1.非常接近整数的数字(误差小于1E-10)显示为整数；
+ *2.非常接近0的数字显示为"0"；
+ *3.其他数字输出能还原为原值的最短小数，超过10位小数时四舍六入五成双到10位，并去除末尾的0。
+ *小数点总是"."，不受默认区域设置影响。格式化常见大小的数字时不创建任何对象。
+ *一个实例不是线程安全的，每个线程或每个引擎各用一个。
+ */
+public final class NumberFormatter
+{
+    private static final double EPSILON = 1E-10;        //用于比较浮点数是否接近整数
+    private static final int FRACTION_DIGITS = 10;      //最多保留的小数位数
+    private static final double TWO_POW_63 = 0x1p63;
+    private static final long HALF = Long.MIN_VALUE;    //0.5的128位定点表示的高64位
+    //double的最大值有309位整数，再加上负号、小数点和10位小数
+    private static final int MAX_LENGTH = 1 + 309 + 1 + FRACTION_DIGITS;
+
+    private final char[] buffer = new char[MAX_LENGTH];
+    private final char[] digits = new char[20]; //临时保存long的各位数字
+    //appendFixed使用的128位定点数，[0]为高64位，[1]为低64位
+    private final long[] remainder = new long[2];
+    private final long[] marginHigh = new long[2];
+    private final long[] marginLow = new long[2];
+    private int length;
+
+    /**
+     *格式化一个数字。
+     *@param value 要格式化的数字
+     *@return 格式化成功返回 true；value为NaN或无穷大时返回 false，缓冲区为空
+     */
+    public boolean format(double value)
+    {
+        length = 0;
+        if (Double.isNaN(value) || Double.isInfinite(value))
+        {
+            return false;
+        }
+        double abs = Math.abs(value);
+        if (abs >= TWO_POW_63)
+        {
+            //超出long范围的double都是整数，按原来DecimalFormat的方式输出最短数字后补零
+            if (value < 0)
+            {
+                buffer[length++] = '-';
+            }
+            appendLargeInteger(abs);
+            return true;
+        }
+        //非常接近0(例如 0.00000000001)或者就是0时，统一显示为"0"
+        if (abs < EPSILON)
+        {
+            buffer[length++] = '0';
+            return true;
+        }
+        long rounded = Math.round(abs);
+        //如果数字非常接近一个整数(例如 4.9999999999 或 5.0000000001)，返回整数形式
+        if (Math.abs(abs - rounded) < EPSILON)
+        {
+            if (value < 0)
+            {
+                buffer[length++] = '-';
+            }
+            appendLong(rounded);
+            return true;
+        }
+        if (value < 0)
+        {
+            buffer[length++] = '-';
+        }
+        appendFixed(abs);
+        return true;
+    }
+
+    /**
+     *@return 上一次格式化结果的长度
+     */
+    public int length()
+    {
+        return length;
+    }
+
+    /**
+     *@return 上一次格式化结果中指定位置的字符
+     */
+    public char charAt(int index)
+    {
+        return buffer[index];
+    }
+
+    /**
+     *把上一次格式化的结果追加到StringBuilder中。
+     */
+    public void appendTo(StringBuilder sb)
+    {
+        sb.append(buffer, 0, length);
+    }
+
+    char[] buffer()
+    {
+        return buffer;
+    }
+
+    /**
+     *格式化一个数字并返回字符串，只在需要显示时使用。
+     *@return 格式化结果，value为NaN或无穷大时返回 null
+     */
+    public String toString(double value)
+    {
+        return format(value) ? toString() : null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     *输出0 < abs < 2^52的非整数，最多保留10位小数。
+     *abs = m × 2^-shift，整数部分是m >>> shift；小数部分和相邻double之间距离的一半都放大成128位定点数，
+     *逐位乘10生成数字，一旦已生成的数字足以唯一确定abs就停止，得到最短的能还原为abs的小数。
+     *如果10位小数还不够，则按剩余部分与0.5的精确比较进行四舍六入五成双。
+     */
+    private void appendFixed(double abs)
+    {
+        long bits = Double.doubleToRawLongBits(abs);
+        int exponent = (int) (bits >>> 52) & 0x7FF;
+        long mantissa = (bits & 0xFFFFFFFFFFFFFL) | (1L << 52); //abs >= 1E-10，不会是非规格化数
+        int shift = 1075 - exponent; //非整数时 1 <= shift <= 86
+        long integerPart = shift >= 64 ? 0 : mantissa >>> shift;
+        long fraction = shift >= 64 ? mantissa : mantissa & ((1L << shift) - 1);
+        setFixed(remainder, fraction, 128 - shift);
+        //与上下相邻double距离的一半；m为2的幂时下面的距离只有上面的一半
+        setFixed(marginHigh, 1, 127 - shift);
+        if (mantissa == 1L << 52 && exponent > 1)
+        {
+            setFixed(marginLow, 1, 126 - shift);
+        }
+        else
+        {
+            setFixed(marginLow, 1, 127 - shift);
+        }
+        //尾数为偶数时，恰好落在中点的小数也会被解析回abs
+        boolean inclusive = (mantissa & 1) == 0;
+        int fractionStart = length + 21; //先把小数写在整数部分可能占用的位置之后
+        int fractionLength = 0;
+        boolean roundUp = false;
+        boolean done = false;
+        while (!done && fractionLength < FRACTION_DIGITS)
+        {
+            int digit = multiplyBy10(remainder);
+            multiplyMarginBy10(marginHigh);
+            multiplyMarginBy10(marginLow);
+            buffer[fractionStart + fractionLength++] = (char) ('0' + digit);
+            boolean low = compare(remainder, marginLow) < (inclusive ? 1 : 0);
+            boolean high = sumReachesOne(remainder, marginHigh, inclusive);
+            if (low || high)
+            {
+                done = true;
+                if (high && low)
+                {
+                    int half = compareWithHalf(remainder);
+                    roundUp = half > 0 || (half == 0 && (digit & 1) == 1);
+                }
+                else
+                {
+                    roundUp = high;
+                }
+            }
+        }
+        if (!done)
+        {
+            //10位小数之后的部分与0.5精确比较
+            int half = compareWithHalf(remainder);
+            roundUp = half > 0 || (half == 0 && ((buffer[fractionStart + fractionLength - 1] - '0') & 1) == 1);
+        }
+        if (roundUp)
+        {
+            int i = fractionLength - 1;
+            while (i >= 0 && buffer[fractionStart + i] == '9')
+            {
+                buffer[fractionStart + i] = '0';
+                i--;
+            }
+            if (i >= 0)
+            {
+                buffer[fractionStart + i]++;
+            }
+            else
+            {
+                integerPart++;
+            }
+        }
+        while (fractionLength > 0 && buffer[fractionStart + fractionLength - 1] == '0')
+        {
+            fractionLength--;
+        }
+        appendLong(integerPart);
+        if (fractionLength > 0)
+        {
+            buffer[length++] = '.';
+            System.arraycopy(buffer, fractionStart, buffer, length, fractionLength);
+            length += fractionLength;
+        }
+    }
+
+    /**
+     *把value × 2^exponent写成128位定点数(单位为2^-128)，要求结果小于2^128。
+     */
+    private static void setFixed(long[] target, long value, int exponent)
+    {
+        if (exponent >= 64)
+        {
+            target[0] = value << (exponent - 64);
+            target[1] = 0;
+        }
+        else
+        {
+            target[0] = exponent == 0 ? 0 : value >>> (64 - exponent);
+            target[1] = value << exponent;
+        }
+    }
+
+    /**
+     *128位定点数乘以10，返回溢出到整数部分的数字(0-9)。
+     */
+    private static int multiplyBy10(long[] value)
+    {
+        long high = value[0];
+        long low = value[1];
+        long lowCarry = Math.multiplyHigh(low, 10) + ((low >> 63) & 10);
+        long newHigh = high * 10 + lowCarry;
+        long overflow = Math.multiplyHigh(high, 10) + ((high >> 63) & 10)
+                + (Long.compareUnsigned(newHigh, lowCarry) < 0 ? 1 : 0);
+        value[0] = newHigh;
+        value[1] = low * 10;
+        return (int) overflow;
+    }
+
+    /**
+     *距离的一半乘以10。结果达到1以后已经足以结束数字生成，这时把它饱和为最大的128位数。
+     */
+    private static void multiplyMarginBy10(long[] margin)
+    {
+        if (margin[0] == -1L && margin[1] == -1L)
+        {
+            return;
+        }
+        if (multiplyBy10(margin) != 0)
+        {
+            margin[0] = -1L;
+            margin[1] = -1L;
+        }
+    }
+
+    private static int compare(long[] a, long[] b)
+    {
+        int result = Long.compareUnsigned(a[0], b[0]);
+        return result != 0 ? result : Long.compareUnsigned(a[1], b[1]);
+    }
+
+    /**
+     *@return a + b是否达到(inclusive为true时)或超过1
+     */
+    private static boolean sumReachesOne(long[] a, long[] b, boolean inclusive)
+    {
+        long low = a[1] + b[1];
+        long carry = Long.compareUnsigned(low, a[1]) < 0 ? 1 : 0;
+        long high = a[0] + b[0];
+        boolean overflow = Long.compareUnsigned(high, a[0]) < 0;
+        long highWithCarry = high + carry;
+        overflow |= Long.compareUnsigned(highWithCarry, high) < 0;
+        if (overflow)
+        {
+            return inclusive || highWithCarry != 0 || low != 0;
+        }
+        return false;
+    }
+
+    private static int compareWithHalf(long[] value)
+    {
+        int result = Long.compareUnsigned(value[0], HALF);
+        return result != 0 ? result : (value[1] != 0 ? 1 : 0);
+    }
+
+    private void appendLong(long value)
+    {
+        int count = 0;
+        do
+        {
+            digits[count++] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        while (value != 0);
+        while (count > 0)
+        {
+            buffer[length++] = digits[--count];
+        }
+    }
+
+    /**
+     *输出不小于2^63的整数：Double.toString给出的最短有效数字，后面补零。
+     *这种数字很少出现，这里允许创建临时字符串。
+     */
+    private void appendLargeInteger(double abs)
+    {
+        String text = Double.toString(abs); //例如"1.2345E25"
+        int exponentIndex = text.indexOf('E');
+        int exponent = Integer.parseInt(text.substring(exponentIndex + 1));
+        int written = 0;
+        for (int i = 0; i < exponentIndex; i++)
+        {
+            char c = text.charAt(i);
+            if (c != '.' && written <= exponent)
+            {
+                buffer[length++] = c;
+                written++;
+            }
+        }
+        while (written <= exponent)
+        {
+            buffer[length++] = '0';
+            written++;
+        }
+    }
+}
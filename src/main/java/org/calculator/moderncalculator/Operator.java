@@ -0,0 +1,70 @@
+package org.calculator.moderncalculator;
+
+/**
+ *Operator枚举表示计算器支持的二元运算符(+, -, ×, ÷, %)。
+ *用枚举代替原来的操作符字符串，计算时不再需要按字符串进行switch比较。
+ */
+public enum Operator
+{
+    ADD("+"),
+    SUBTRACT("-"),
+    MULTIPLY("×"),
+    DIVIDE("÷"),
+    MODULO("%");
+
+    private final String symbol; //按钮和历史记录上显示的符号
+
+    Operator(String symbol)
+    {
+        this.symbol = symbol;
+    }
+
+    /**
+     *@return 运算符在界面上显示的符号
+     */
+    public String symbol()
+    {
+        return symbol;
+    }
+
+    /**
+     *对两个操作数执行运算。
+     *除数或模数为零的检查由调用方负责。
+     *@param left 第一个操作数
+     *@param right 第二个操作数
+     *@return 运算结果
+     */
+    public double apply(double left, double right)
+    {
+        switch (this)
+        {
+            case ADD:
+                return left + right;
+            case SUBTRACT:
+                return left - right;
+            case MULTIPLY:
+                return left * right;
+            case DIVIDE:
+                return left / right;
+            default:
+                return left % right;
+        }
+    }
+
+    /**
+     *根据符号查找运算符。
+     *@param symbol 运算符符号
+     *@return 对应的运算符，找不到时返回 null
+     */
+    public static Operator fromSymbol(String symbol)
+    {
+        for (Operator operator : values())
+        {
+            if (operator.symbol.equals(symbol))
+            {
+                return operator;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+package org.calculator.moderncalculator;
+
+import java.math.MathContext;
+
+/**
+ *Precision枚举列出界面上可以选择的计算精度。
+ *DOUBLE使用原来的double计算；其他选项使用BigDecimal按对应的MathContext精确计算，
+ *例如0.1 + 0.2的结果是精确的0.3，而不是依靠显示时的舍入掩盖误差。
+ */
+public enum Precision
+{
+    DOUBLE("双精度浮点", null),
+    DECIMAL64("精确 (16位有效数字)", MathContext.DECIMAL64),
+    DECIMAL128("精确 (34位有效数字)", MathContext.DECIMAL128),
+    UNLIMITED("精确 (不限位数)", MathContext.UNLIMITED);
+
+    private final String label;
+    private final MathContext mathContext;
+
+    Precision(String label, MathContext mathContext)
+    {
+        this.label = label;
+        this.mathContext = mathContext;
+    }
+
+    /**
+     *@return 菜单上显示的名称
+     */
+    public String label()
+    {
+        return label;
+    }
+
+    /**
+     *@return 对应的MathContext，DOUBLE返回 null
+     */
+    public MathContext mathContext()
+    {
+        return mathContext;
+    }
+}
@@ -0,0 +1,576 @@
+package org.calculator.moderncalculator;
+
+/**
+ *ProgrammerEngine是程序员模式的计算引擎：十六进制、十进制、八进制和二进制输入，8/16/32/64位字长，
+ *加、减、乘、除、求余以及AND、OR、XOR、NOT和移位运算。
+ *全部状态都是long和int，数值按字长做符号扩展后保存，每次运算后截断到字长；
+ *十进制显示为有符号数，其他进制显示字长内的补码位模式，与常见的程序员计算器相同。
+ *
+ *转换为各进制的文本时直接写入char数组，不经过Long.toString等字符串转换：
+ *2的幂进制的每一位就是固定的几个二进制位，按位数循环移位查表，循环中没有依赖数值的分支；
+ *十进制与Long.toString的做法相同，每次除以100并查表写出两位数字。
+ *由CalculatorEngine在程序员模式下转交按键，状态的修改都经过CalculatorEngine，以便更新版本号。
+ */
+public final class ProgrammerEngine
+{
+    public static final int HEX = 16;
+    public static final int DECIMAL = 10;
+    public static final int OCTAL = 8;
+    public static final int BINARY = 2;
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] DIGIT_TENS = new char[100]; //0-99的十位数字
+    private static final char[] DIGIT_ONES = new char[100]; //0-99的个位数字
+
+    static
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            DIGIT_TENS[i] = (char) ('0' + i / 10);
+            DIGIT_ONES[i] = (char) ('0' + i % 10);
+        }
+    }
+
+    private enum HistoryKind
+    {
+        NONE,    //""
+        PENDING, //"FF AND"
+        BINARY,  //"FF AND F0 ="
+        UNARY    //"NOT(FF) ="，有待计算的运算时为"FF AND NOT(F0)"
+    }
+
+    private int base = DECIMAL;
+    private int wordSize = Long.SIZE;
+    private long mask = -1L;       //字长内的位，64位时为全1
+    private long value;            //显示的数：正在输入的数或者上一次的结果，按字长符号扩展
+    private boolean entering;      //value是否是正在输入的数，下一个数字追加到末尾
+    private boolean operandReady;  //按下运算键之后是否已经输入了数字或者执行了一元运算，下一个运算键要先算出待计算的运算
+    private long first;            //第一个操作数
+    private Key pending;           //等待执行的运算键，没有时为 null
+    private Key lastOperator;      //连续按等号时重复的运算，没有时为 null
+    private long lastOperand;      //连续按等号时重复的第二个操作数
+    private CalculatorError error; //当前错误状态，没有错误时为 null
+
+    //历史记录，按字段保存，显示时再按当前进制转换
+    private HistoryKind historyKind = HistoryKind.NONE;
+    private long historyFirst;
+    private Key historyOperator;
+    private long historyOperand;
+
+    private final char[] buffer = new char[Long.SIZE + Long.SIZE / 4]; //最长是64位二进制加上分组的空格
+
+    /**
+     *@return 当前进制
+     */
+    public int base()
+    {
+        return base;
+    }
+
+    /**
+     *切换进制，数值不变，正在输入的数结束输入。
+     *@param base HEX、DECIMAL、OCTAL或BINARY
+     */
+    void setBase(int base)
+    {
+        if (base != HEX && base != DECIMAL && base != OCTAL && base != BINARY)
+        {
+            throw new IllegalArgumentException("不支持的进制: " + base);
+        }
+        this.base = base;
+        entering = false;
+    }
+
+    /**
+     *@return 字长，8、16、32或64
+     */
+    public int wordSize()
+    {
+        return wordSize;
+    }
+
+    /**
+     *切换字长，全部数值截断到新的字长。
+     *@param wordSize 8、16、32或64
+     */
+    void setWordSize(int wordSize)
+    {
+        if (wordSize != Byte.SIZE && wordSize != Short.SIZE && wordSize != Integer.SIZE && wordSize != Long.SIZE)
+        {
+            throw new IllegalArgumentException("不支持的字长: " + wordSize);
+        }
+        this.wordSize = wordSize;
+        mask = -1L >>> (Long.SIZE - wordSize);
+        value = normalize(value);
+        first = normalize(first);
+        lastOperand = normalize(lastOperand);
+        historyFirst = normalize(historyFirst);
+        historyOperand = normalize(historyOperand);
+        entering = false;
+    }
+
+    /**
+     *@return 当前的数，按字长符号扩展
+     */
+    public long value()
+    {
+        return value;
+    }
+
+    /**
+     *@return 当前错误状态，没有错误时返回 null
+     */
+    public CalculatorError error()
+    {
+        return error;
+    }
+
+    /**
+     *把数截断到字长并做符号扩展，例如8位时0xFF变为-1。
+     */
+    private long normalize(long v)
+    {
+        int unused = Long.SIZE - wordSize;
+        return v << unused >> unused;
+    }
+
+    void copyFrom(ProgrammerEngine other)
+    {
+        base = other.base;
+        wordSize = other.wordSize;
+        mask = other.mask;
+        value = other.value;
+        entering = other.entering;
+        operandReady = other.operandReady;
+        first = other.first;
+        pending = other.pending;
+        lastOperator = other.lastOperator;
+        lastOperand = other.lastOperand;
+        error = other.error;
+        historyKind = other.historyKind;
+        historyFirst = other.historyFirst;
+        historyOperator = other.historyOperator;
+        historyOperand = other.historyOperand;
+    }
+
+    /**
+     *处理一次按键。小数点、平方根、存储器等在程序员模式下没有意义的键被忽略。
+     */
+    void press(Key key)
+    {
+        int digit = key.digitValue();
+        if (error != null)
+        {
+            if (digit < 0 && key != Key.CLEAR && key != Key.CLEAR_ENTRY && key != Key.BACKSPACE)
+            {
+                return; //出错后只能输入新的数或者清除
+            }
+            clear();
+        }
+        if (digit >= 0)
+        {
+            digit(digit);
+            return;
+        }
+        switch (key)
+        {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case MODULO:
+            case AND:
+            case OR:
+            case XOR:
+            case SHIFT_LEFT:
+            case SHIFT_RIGHT:
+                operator(key);
+                break;
+            case EQUALS:
+                equals();
+                break;
+            case CLEAR:
+                clear();
+                break;
+            case CLEAR_ENTRY:
+                value = 0;
+                entering = false;
+                break;
+            case BACKSPACE:
+                backspace();
+                break;
+            case NEGATE:
+            case NOT:
+            case SQUARE:
+                unary(key);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     *一次处理一段文本。A-F和位运算符号按Key.fromProgrammerChar识别，空白被忽略。
+     *文本中有按键以外的字符时整段文本都不处理，直接进入INVALID_INPUT错误状态。
+     */
+    void type(CharSequence text)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c) && Key.fromProgrammerChar(c) == null)
+            {
+                error = CalculatorError.INVALID_INPUT;
+                pending = null;
+                return;
+            }
+        }
+        for (int i = 0; i < text.length(); i++)
+        {
+            Key key = Key.fromProgrammerChar(text.charAt(i));
+            if (key != null)
+            {
+                press(key);
+            }
+        }
+    }
+
+    /**
+     *在正在输入的数后面追加一位。当前进制中不存在的数字和超出字长的输入被忽略。
+     */
+    private void digit(int digit)
+    {
+        if (digit >= base)
+        {
+            return;
+        }
+        if (!entering)
+        {
+            if (pending == null)
+            {
+                historyKind = HistoryKind.NONE; //开始新的计算
+            }
+            value = 0;
+            entering = true;
+            operandReady = true;
+        }
+        if (base == DECIMAL)
+        {
+            //十进制输入的是非负数，不超过字长内最大的正数
+            if (value > ((mask >>> 1) - digit) / DECIMAL)
+            {
+                return;
+            }
+            value = value * DECIMAL + digit;
+            return;
+        }
+        long pattern = value & mask;
+        if (Long.compareUnsigned(pattern, Long.divideUnsigned(mask - digit, base)) > 0)
+        {
+            return;
+        }
+        value = normalize(pattern * base + digit);
+    }
+
+    private void backspace()
+    {
+        if (!entering)
+        {
+            return;
+        }
+        value = base == DECIMAL ? value / DECIMAL : normalize((value & mask) >>> Integer.numberOfTrailingZeros(base));
+    }
+
+    private void operator(Key key)
+    {
+        if (pending != null && operandReady)
+        {
+            value = apply(first, pending, value); //连续运算，例如"5 + 3 AND"和"5 + 3 x² +"先算出结果
+            if (error != null)
+            {
+                return;
+            }
+        }
+        first = value;
+        pending = key;
+        entering = false;
+        operandReady = false;
+        historyKind = HistoryKind.PENDING;
+        historyFirst = first;
+        historyOperator = key;
+    }
+
+    private void equals()
+    {
+        long left;
+        if (pending != null)
+        {
+            left = first;
+            lastOperator = pending;
+            lastOperand = value; //"5 + ="时第二个操作数就是5
+            pending = null;
+        }
+        else if (lastOperator != null)
+        {
+            left = value; //连续按等号时重复上一次的运算
+        }
+        else
+        {
+            entering = false;
+            return;
+        }
+        historyKind = HistoryKind.BINARY;
+        historyFirst = left;
+        historyOperator = lastOperator;
+        historyOperand = lastOperand;
+        value = apply(left, lastOperator, lastOperand);
+        entering = false;
+    }
+
+    private void unary(Key key)
+    {
+        historyKind = HistoryKind.UNARY;
+        historyOperator = key;
+        historyOperand = value;
+        if (pending != null)
+        {
+            historyFirst = first;
+        }
+        switch (key)
+        {
+            case NOT:
+                value = normalize(~value);
+                break;
+            case NEGATE:
+                value = normalize(-value);
+                break;
+            default:
+                value = normalize(value * value);
+                break;
+        }
+        entering = false;
+        operandReady = true;
+    }
+
+    private void clear()
+    {
+        value = 0;
+        entering = false;
+        operandReady = false;
+        first = 0;
+        pending = null;
+        lastOperator = null;
+        error = null;
+        historyKind = HistoryKind.NONE;
+    }
+
+    /**
+     *计算一次二元运算，结果截断到字长。除数为零时进入错误状态。
+     */
+    private long apply(long left, Key operator, long right)
+    {
+        long result;
+        switch (operator)
+        {
+            case ADD:
+                result = left + right;
+                break;
+            case SUBTRACT:
+                result = left - right;
+                break;
+            case MULTIPLY:
+                result = left * right;
+                break;
+            case DIVIDE:
+            case MODULO:
+                if (right == 0)
+                {
+                    error = operator == Key.DIVIDE ? CalculatorError.DIVIDE_BY_ZERO : CalculatorError.MODULO_BY_ZERO;
+                    pending = null;
+                    return 0;
+                }
+                result = operator == Key.DIVIDE ? left / right : left % right;
+                break;
+            case AND:
+                result = left & right;
+                break;
+            case OR:
+                result = left | right;
+                break;
+            case XOR:
+                result = left ^ right;
+                break;
+            case SHIFT_LEFT:
+                result = shift(right) >= wordSize ? 0 : left << shift(right);
+                break;
+            default:
+                result = left >> Math.min(shift(right), Long.SIZE - 1); //算术右移，负数补1
+                break;
+        }
+        return normalize(result);
+    }
+
+    /**
+     *@return 移位的位数，负数或者超过64时按64处理
+     */
+    private static int shift(long amount)
+    {
+        return amount < 0 || amount > Long.SIZE ? Long.SIZE : (int) amount;
+    }
+
+    /**
+     *把一个数按指定进制写到buffer的末尾。2的幂进制写出字长内的位模式，十进制写出有符号数。
+     *@return 第一个字符在buffer中的位置
+     */
+    private int format(long v, int radix)
+    {
+        int end = buffer.length;
+        if (radix == DECIMAL)
+        {
+            //与Long.getChars相同，用负数计算，Long.MIN_VALUE取反也不会溢出
+            boolean negative = v < 0;
+            long q = negative ? v : -v;
+            int position = end;
+            while (q <= -100)
+            {
+                long quotient = q / 100;
+                int r = (int) (quotient * 100 - q);
+                q = quotient;
+                buffer[--position] = DIGIT_ONES[r];
+                buffer[--position] = DIGIT_TENS[r];
+            }
+            int r = (int) -q;
+            buffer[--position] = DIGIT_ONES[r];
+            if (r >= 10)
+            {
+                buffer[--position] = DIGIT_TENS[r];
+            }
+            if (negative)
+            {
+                buffer[--position] = '-';
+            }
+            return position;
+        }
+        int bits = Integer.numberOfTrailingZeros(radix);
+        int digitMask = radix - 1;
+        long pattern = v & mask;
+        int count = Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(pattern) + bits - 1) / bits);
+        for (int i = 0; i < count; i++)
+        {
+            buffer[end - 1 - i] = DIGITS[(int) (pattern >>> (i * bits)) & digitMask];
+        }
+        return end - count;
+    }
+
+    /**
+     *把当前的数按指定进制追加到sb中，例如十六进制的"FF"。
+     *@param radix HEX、DECIMAL、OCTAL或BINARY
+     */
+    public void appendTo(StringBuilder sb, int radix)
+    {
+        appendTo(sb, value, radix);
+    }
+
+    private void appendTo(StringBuilder sb, long v, int radix)
+    {
+        int start = format(v, radix);
+        sb.append(buffer, start, buffer.length - start);
+    }
+
+    /**
+     *把当前的数按字长写出全部二进制位，每4位之间用空格分隔，例如8位的"1111 0000"。
+     */
+    public void appendBinaryTo(StringBuilder sb)
+    {
+        long pattern = value & mask;
+        int end = buffer.length;
+        for (int i = 0; i < wordSize; i++)
+        {
+            buffer[end - 1 - i - (i >> 2)] = DIGITS[(int) (pattern >>> i) & 1];
+        }
+        for (int group = 1; group < wordSize / 4; group++)
+        {
+            buffer[end - 5 * group] = ' ';
+        }
+        int length = wordSize + wordSize / 4 - 1;
+        sb.append(buffer, end - length, length);
+    }
+
+    /**
+     *@return 主显示屏的文本：当前进制的数，出错时为错误信息
+     */
+    public String displayText()
+    {
+        if (error != null)
+        {
+            return error.message();
+        }
+        StringBuilder sb = new StringBuilder(Long.SIZE);
+        appendTo(sb, base);
+        return sb.toString();
+    }
+
+    /**
+     *@return 同时显示十六进制、十进制和八进制的文本，例如"HEX FF   DEC 255   OCT 377"
+     */
+    public String basesText()
+    {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("HEX ");
+        appendTo(sb, HEX);
+        sb.append("   DEC ");
+        appendTo(sb, DECIMAL);
+        sb.append("   OCT ");
+        appendTo(sb, OCTAL);
+        return sb.toString();
+    }
+
+    /**
+     *@return 字长内全部二进制位的文本
+     */
+    public String binaryText()
+    {
+        StringBuilder sb = new StringBuilder(Long.SIZE + Long.SIZE / 4);
+        appendBinaryTo(sb);
+        return sb.toString();
+    }
+
+    /**
+     *@return 历史记录显示屏的文本，按当前进制显示
+     */
+    public String historyText()
+    {
+        StringBuilder sb = new StringBuilder();
+        switch (historyKind)
+        {
+            case NONE:
+                break;
+            case PENDING:
+                appendTo(sb, historyFirst, base);
+                sb.append(' ').append(historyOperator.label());
+                break;
+            case BINARY:
+                appendTo(sb, historyFirst, base);
+                sb.append(' ').append(historyOperator.label()).append(' ');
+                appendTo(sb, historyOperand, base);
+                sb.append(" =");
+                break;
+            case UNARY:
+                if (pending != null)
+                {
+                    appendTo(sb, historyFirst, base);
+                    sb.append(' ').append(pending.label()).append(' ');
+                }
+                sb.append(historyOperator == Key.SQUARE ? "sqr" : historyOperator == Key.NEGATE ? "negate"
+                        : historyOperator.label()).append('(');
+                appendTo(sb, historyOperand, base);
+                sb.append(')');
+                if (pending == null)
+                {
+                    sb.append(" =");
+                }
+                break;
+        }
+        return sb.toString();
+    }
+}
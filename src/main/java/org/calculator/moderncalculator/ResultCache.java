@@ -0,0 +1,290 @@
+package org.calculator.moderncalculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *ResultCache缓存精确模式下耗时运算的结果：平方、平方根、倒数和除法。
+ *高精度(例如1000位)的平方根和除法每次要几十微秒到几毫秒，用户和回放、后台计算反复求同样的值时可以直接取回结果。
+ *用系统属性calculator.memo=true启用，calculator.memo.size指定最多缓存的结果个数(默认4096)，
+ *calculator.memo.maxAgeSeconds指定结果的最长保存时间(默认600秒)。未启用时shared()返回 null。
+ *
+ *键由运算、精度、舍入方式和操作数的内部表示组成：long形式的操作数直接比较未缩放值和小数位数，
+ *BigDecimal形式的操作数比较散列值后再用equals确认。缓存分为16段，每段一把锁，不同的键通常落在不同的段上；
+ *每段是组相联的：一个键只在连续的WAYS个位置中查找，查找和插入都不分配对象，满了就替换其中最旧的结果。
+ *双精度模式的运算比查一次缓存还快，不经过缓存。
+ */
+final class ResultCache
+{
+    //运算
+    static final int SQUARE = 0;
+    static final int SQUARE_ROOT = 1;
+    static final int RECIPROCAL = 2;
+    static final int DIVIDE = 3;
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int WAYS = 8; //一个键可能保存的位置数
+
+    private static final ResultCache SHARED = Boolean.getBoolean("calculator.memo")
+            ? new ResultCache(Integer.getInteger("calculator.memo.size", 4096),
+                    Long.getLong("calculator.memo.maxAgeSeconds", 600) * 1_000_000_000L)
+            : null;
+
+    /**
+     *一段缓存，所有数组的下标一一对应，修改时锁住这个对象。
+     */
+    private static final class Stripe
+    {
+        final boolean[] used;
+        final long[] info;          //运算、舍入方式和精度
+        final long[] left;          //long形式时为未缩放值，BigDecimal形式时不使用
+        final int[] leftScale;
+        final BigDecimal[] leftBig;
+        final long[] right;         //一元运算时为0
+        final int[] rightScale;
+        final BigDecimal[] rightBig;
+        final long[] unscaled;      //结果
+        final int[] scale;
+        final BigDecimal[] big;
+        final byte[] status;
+        final long[] stored;        //保存结果时的System.nanoTime()
+
+        Stripe(int capacity)
+        {
+            used = new boolean[capacity];
+            info = new long[capacity];
+            left = new long[capacity];
+            leftScale = new int[capacity];
+            leftBig = new BigDecimal[capacity];
+            right = new long[capacity];
+            rightScale = new int[capacity];
+            rightBig = new BigDecimal[capacity];
+            unscaled = new long[capacity];
+            scale = new int[capacity];
+            big = new BigDecimal[capacity];
+            status = new byte[capacity];
+            stored = new long[capacity];
+        }
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final int mask;          //段内下标的掩码
+    private final long maxAgeNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     *@param size 最多缓存的结果个数，向上取整为每段2的幂个位置
+     *@param maxAgeNanos 结果的最长保存时间，超过后视为不存在
+     */
+    ResultCache(int size, long maxAgeNanos)
+    {
+        int capacity = Math.max(WAYS, Integer.highestOneBit(Math.max(1, (size + STRIPES - 1) / STRIPES - 1)) << 1);
+        for (int i = 0; i < STRIPES; i++)
+        {
+            stripes[i] = new Stripe(capacity);
+        }
+        mask = capacity - 1;
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     *@return 由系统属性启用的共享缓存，未启用时返回 null
+     */
+    static ResultCache shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     *计算operation，结果保存到result中。缓存中有相同的运算时直接取回结果，否则计算后保存。
+     *除数为零、负数开平方根等检查由调用方负责。
+     *@param right 除法的除数，一元运算时为 null
+     *@return 与DecimalValue中对应方法相同的OK或INEXACT
+     */
+    int apply(int operation, DecimalValue left, DecimalValue right, DecimalValue result, MathContext mathContext)
+    {
+        long info = operation | (long) mathContext.getRoundingMode().ordinal() << 8
+                | (long) mathContext.getPrecision() << 16;
+        long hash = info * 0x9E3779B97F4A7C15L + bits(left);
+        if (right != null)
+        {
+            hash = hash * 0x9E3779B97F4A7C15L + bits(right);
+        }
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 32;
+        Stripe stripe = stripes[(int) (hash >>> 64 - STRIPE_BITS)];
+        int start = (int) hash & mask;
+        long now = System.nanoTime();
+        synchronized (stripe)
+        {
+            for (int way = 0; way < WAYS; way++)
+            {
+                int i = (start + way) & mask;
+                if (stripe.used[i] && stripe.info[i] == info && matches(stripe, i, left, right))
+                {
+                    if (now - stripe.stored[i] > maxAgeNanos)
+                    {
+                        break; //过期的结果在保存新结果时被替换
+                    }
+                    result.setParts(stripe.unscaled[i], stripe.scale[i], stripe.big[i]);
+                    hits.increment();
+                    return stripe.status[i];
+                }
+            }
+        }
+        misses.increment();
+        int status = compute(operation, left, right, result, mathContext); //计算可能很慢，不持有锁
+        synchronized (stripe)
+        {
+            int victim = -1;
+            for (int way = 0; way < WAYS; way++)
+            {
+                int i = (start + way) & mask;
+                if (!stripe.used[i] || stripe.info[i] == info && matches(stripe, i, left, right))
+                {
+                    victim = i; //空位置，或者同一个键(过期或者被其他线程同时算出)
+                    break;
+                }
+                if (victim < 0 || stripe.stored[i] - stripe.stored[victim] < 0)
+                {
+                    victim = i;
+                }
+            }
+            if (stripe.used[victim] && !(stripe.info[victim] == info && matches(stripe, victim, left, right)))
+            {
+                evictions.increment();
+            }
+            store(stripe, victim, info, left, right, result, status, System.nanoTime());
+        }
+        return status;
+    }
+
+    /**
+     *不经过缓存直接计算。
+     */
+    static int compute(int operation, DecimalValue left, DecimalValue right, DecimalValue result, MathContext mathContext)
+    {
+        switch (operation)
+        {
+            case SQUARE:
+                return DecimalValue.apply(Operator.MULTIPLY, left, left, result, mathContext);
+            case SQUARE_ROOT:
+                return DecimalValue.sqrt(left, result, mathContext);
+            case RECIPROCAL:
+                return DecimalValue.reciprocal(left, result, mathContext);
+            default:
+                return DecimalValue.apply(Operator.DIVIDE, left, right, result, mathContext);
+        }
+    }
+
+    /**
+     *@return 操作数参与散列的值。BigDecimal的散列值需要遍历全部位，但与高精度运算本身相比可以忽略
+     */
+    private static long bits(DecimalValue value)
+    {
+        BigDecimal big = value.bigValue();
+        if (big != null)
+        {
+            return big.hashCode();
+        }
+        return value.unscaledValue() * 31 + value.scale();
+    }
+
+    private static boolean matches(Stripe stripe, int i, DecimalValue left, DecimalValue right)
+    {
+        if (!same(left, stripe.left[i], stripe.leftScale[i], stripe.leftBig[i]))
+        {
+            return false;
+        }
+        return right == null || same(right, stripe.right[i], stripe.rightScale[i], stripe.rightBig[i]);
+    }
+
+    private static boolean same(DecimalValue value, long unscaled, int scale, BigDecimal big)
+    {
+        BigDecimal valueBig = value.bigValue();
+        if (valueBig != null || big != null)
+        {
+            return valueBig != null && big != null && (valueBig == big || valueBig.equals(big));
+        }
+        return value.unscaledValue() == unscaled && value.scale() == scale;
+    }
+
+    private static void store(Stripe stripe, int i, long info, DecimalValue left, DecimalValue right,
+            DecimalValue result, int status, long now)
+    {
+        stripe.used[i] = true;
+        stripe.info[i] = info;
+        stripe.left[i] = left.unscaledValue();
+        stripe.leftScale[i] = left.scale();
+        stripe.leftBig[i] = left.bigValue();
+        stripe.right[i] = right != null ? right.unscaledValue() : 0;
+        stripe.rightScale[i] = right != null ? right.scale() : 0;
+        stripe.rightBig[i] = right != null ? right.bigValue() : null;
+        stripe.unscaled[i] = result.unscaledValue();
+        stripe.scale[i] = result.scale();
+        stripe.big[i] = result.bigValue();
+        stripe.status[i] = (byte) status;
+        stripe.stored[i] = now;
+    }
+
+    /**
+     *@return 取回缓存结果的次数
+     */
+    long hits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     *@return 缓存中没有而重新计算的次数
+     */
+    long misses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     *@return 为保存新结果而替换掉其他结果的次数
+     */
+    long evictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     *@return 当前缓存的结果个数，包括已过期但还没有被替换的结果
+     */
+    int size()
+    {
+        int size = 0;
+        for (Stripe stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                for (boolean used : stripe.used)
+                {
+                    if (used)
+                    {
+                        size++;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     *清除命中、未命中和淘汰的统计，缓存的结果保留。
+     */
+    void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+}
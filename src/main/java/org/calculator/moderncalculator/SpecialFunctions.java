@@ -0,0 +1,260 @@
+package org.calculator.moderncalculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ *SpecialFunctions提供Math中没有的函数：阶乘、Gamma函数、组合数和排列数。
+ *三角、指数和对数函数直接使用Math，它们由JVM实现为intrinsic，规范保证误差不超过1 ulp。
+ *整数参数的阶乘、组合数和排列数先精确计算再舍入一次，结果是正确舍入的；
+ *非整数参数的Gamma函数使用Lanczos近似，相对误差约为1e-15(数个ulp)。
+ *这里的函数都是无状态的静态方法，可以在批处理的多个线程中同时调用。
+ */
+final class SpecialFunctions
+{
+    //0!到170!，171!已经超出double的范围。每一项都由精确的BigInteger正确舍入得到，误差不超过0.5 ulp
+    private static final double[] FACTORIALS = new double[171];
+    //Lanczos近似的参数(g = 607/128, 15项)，在double范围内相对误差约为1e-15
+    private static final double LANCZOS_G = 607.0 / 128.0;
+    private static final double[] LANCZOS = {
+            0.99999999999999709182,
+            57.156235665862923517,
+            -59.597960355475491248,
+            14.136097974741747174,
+            -0.49191381609762019978,
+            .33994649984811888699e-4,
+            .46523628927048575665e-4,
+            -.98374475304879564677e-4,
+            .15808870322491248884e-3,
+            -.21026444172410488319e-3,
+            .21743961811521264320e-3,
+            -.16431810653676389022e-3,
+            .84418223983852743293e-4,
+            -.26190838401581408670e-4,
+            .36899182659531622704e-5
+    };
+    private static final double SQRT_2_PI = 2.5066282746310002;
+    private static final double HALF_LOG_2_PI = 0.9189385332046728;
+    //结果的自然对数超过这个值时一定超出double的范围，留出1作为lnGamma误差的余量
+    private static final double OVERFLOW_LOG = Math.log(Double.MAX_VALUE) + 1;
+    private static final double LONG_LIMIT = 0x1p63; //不小于它的整数不能转换为long
+
+    static
+    {
+        BigInteger factorial = BigInteger.ONE;
+        FACTORIALS[0] = 1;
+        for (int i = 1; i < FACTORIALS.length; i++)
+        {
+            factorial = factorial.multiply(BigInteger.valueOf(i));
+            FACTORIALS[i] = factorial.doubleValue();
+        }
+    }
+
+    private SpecialFunctions()
+    {
+    }
+
+    /**
+     *阶乘。非负整数查表得到；非整数按Gamma(x + 1)计算，与科学计算器的约定一致。
+     *@return x!，负整数返回NaN，太大时返回正无穷
+     */
+    static double factorial(double x)
+    {
+        if (x == Math.rint(x) && x >= 0)
+        {
+            return x < FACTORIALS.length ? FACTORIALS[(int) x] : Double.POSITIVE_INFINITY;
+        }
+        return gamma(x + 1);
+    }
+
+    /**
+     *Gamma函数。正整数查阶乘表，其他值用Lanczos近似，x < 0.5时使用反射公式。
+     *@return Gamma(x)，0和负整数返回NaN
+     */
+    static double gamma(double x)
+    {
+        if (x == Math.rint(x))
+        {
+            if (x <= 0)
+            {
+                return Double.NaN; //极点
+            }
+            return x <= FACTORIALS.length ? FACTORIALS[(int) x - 1] : Double.POSITIVE_INFINITY;
+        }
+        if (x < 0.5)
+        {
+            //Gamma(x) * Gamma(1 - x) = pi / sin(pi * x)
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        if (x > 171.7)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        double shift = LANCZOS_G - 0.5;
+        double t = x + shift;
+        //t的舍入误差会被t^(x-0.5)放大约x倍，用精确的舍入误差对结果做一阶修正
+        double tError = shift - (t - x);
+        double correction = 1 + tError * ((x - 0.5) / t - 1);
+        //分两步乘以t^(x-0.5)，避免x接近171时中间结果溢出
+        double power = Math.pow(t, 0.5 * (x - 0.5));
+        return SQRT_2_PI * lanczosSum(x) * correction * power * (power / Math.exp(t));
+    }
+
+    /**
+     *Gamma函数绝对值的自然对数，用于阶乘溢出后仍需要比较大小或计算组合数的场合。
+     *@return ln|Gamma(x)|，0和负整数返回正无穷
+     */
+    static double lnGamma(double x)
+    {
+        if (x <= 0 && x == Math.rint(x))
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (x < 0.5)
+        {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - lnGamma(1 - x);
+        }
+        if (x < FACTORIALS.length && x == Math.rint(x))
+        {
+            return Math.log(FACTORIALS[(int) x - 1]);
+        }
+        double t = x + LANCZOS_G - 0.5;
+        return HALF_LOG_2_PI + (x - 0.5) * Math.log(t) - t + Math.log(lanczosSum(x));
+    }
+
+    private static double lanczosSum(double x)
+    {
+        //从最小的项开始累加，减少舍入误差
+        double sum = 0;
+        for (int i = LANCZOS.length - 1; i > 0; i--)
+        {
+            sum += LANCZOS[i] / (x - 1 + i);
+        }
+        return sum + LANCZOS[0];
+    }
+
+    /**
+     *组合数C(n, k)。结果不超过long的范围时用long逐项精确计算；
+     *否则先用lnGamma判断是否溢出，不溢出时用BigInteger精确计算。两种情况都只在最后舍入一次。
+     *@return C(n, k)，n、k不是非负整数或k > n时返回NaN
+     */
+    static double binomial(double n, double k)
+    {
+        if (!isNonNegativeInteger(n) || !isNonNegativeInteger(k) || k > n)
+        {
+            return Double.NaN;
+        }
+        k = Math.min(k, n - k);
+        if (n < LONG_LIMIT)
+        {
+            long exact = exactBinomial((long) n, (long) k);
+            if (exact >= 0)
+            {
+                return exact;
+            }
+        }
+        if (lnGamma(n + 1) - lnGamma(k + 1) - lnGamma(n - k + 1) > OVERFLOW_LOG)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        //C(n, k) >= 2^k，不溢出时k不超过1024，下面的乘法次数有限
+        return fallingFactorial(n, (int) k).divide(fallingFactorial(k, (int) k)).doubleValue();
+    }
+
+    /**
+     *排列数P(n, k) = n! / (n - k)!，计算方式与binomial相同。
+     *@return P(n, k)，n、k不是非负整数或k > n时返回NaN
+     */
+    static double permutations(double n, double k)
+    {
+        if (!isNonNegativeInteger(n) || !isNonNegativeInteger(k) || k > n)
+        {
+            return Double.NaN;
+        }
+        if (n < LONG_LIMIT)
+        {
+            long exact = exactPermutations((long) n, (long) k);
+            if (exact >= 0)
+            {
+                return exact;
+            }
+        }
+        if (lnGamma(n + 1) - lnGamma(n - k + 1) > OVERFLOW_LOG)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        return fallingFactorial(n, (int) k).doubleValue();
+    }
+
+    /**
+     *按C(n, i) = C(n, i - 1) * (n - i + 1) / i逐项计算，每一步的结果都是整数。
+     *@return C(n, k)，超出long的范围时返回-1
+     */
+    private static long exactBinomial(long n, long k)
+    {
+        long result = 1;
+        for (long i = 1; i <= k; i++)
+        {
+            long factor = n - k + i;
+            //先约去公因数，减少中间结果溢出的机会
+            long divisor = i;
+            long g = gcd(result, divisor);
+            result /= g;
+            divisor /= g;
+            factor /= divisor; //result * factor能被i整除，约去g之后divisor一定整除factor
+            if (Math.multiplyHigh(result, factor) != 0 || result * factor < 0)
+            {
+                return -1;
+            }
+            result *= factor;
+        }
+        return result;
+    }
+
+    /**
+     *@return P(n, k)，超出long的范围时返回-1
+     */
+    private static long exactPermutations(long n, long k)
+    {
+        long result = 1;
+        for (long i = n - k + 1; i <= n; i++)
+        {
+            if (Math.multiplyHigh(result, i) != 0 || result * i < 0)
+            {
+                return -1;
+            }
+            result *= i;
+        }
+        return result;
+    }
+
+    /**
+     *@return n × (n - 1) × ... × (n - k + 1)的精确值
+     */
+    private static BigInteger fallingFactorial(double n, int k)
+    {
+        BigInteger top = new BigDecimal(n).toBigIntegerExact();
+        BigInteger result = BigInteger.ONE;
+        for (int i = 0; i < k; i++)
+        {
+            result = result.multiply(top.subtract(BigInteger.valueOf(i)));
+        }
+        return result;
+    }
+
+    private static long gcd(long a, long b)
+    {
+        while (b != 0)
+        {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static boolean isNonNegativeInteger(double x)
+    {
+        return x >= 0 && x == Math.rint(x) && !Double.isInfinite(x);
+    }
+}
@@ -0,0 +1,269 @@
+package org.calculator.moderncalculator;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ *UnitConverter保存当前使用的换算表，并在换算表文件被替换时自动重新加载。
+ *加载在后台线程上进行，新表映射并校验完成后才替换table()的返回值，界面线程上的换算从不等待加载；
+ *已经取得旧表的换算继续使用旧表，旧表的映射在不再被引用后释放。新文件格式错误时继续使用旧表。
+ *
+ *换算表由文本文件编译而来，每行是"类别 单位 系数 [偏移]"，#开头的行是注释；
+ *基准单位的值 = (值 + 偏移) × 系数，系数可以写成分数，例如华氏度是"温度 °F 5/9 459.67"。编译时先写临时文件再改名，
+ *正在运行的计算器不会读到写了一半的文件。文件不存在时使用内置的长度、质量、温度等单位表。
+ */
+public final class UnitConverter implements Closeable
+{
+    private final Path file;
+    private final WatchService watcher;
+    private volatile ConversionTable table;
+    private volatile Runnable reloadListener; //重新加载后在监视线程上调用，没有时为 null
+
+    private UnitConverter(Path file, ConversionTable table, WatchService watcher)
+    {
+        this.file = file;
+        this.table = table;
+        this.watcher = watcher;
+    }
+
+    /**
+     *加载换算表并开始监视文件。文件不存在时先写入内置的单位表。
+     *@param file 换算表文件
+     *@return 换算器，不再使用时需要close()
+     *@throws IOException 无法读取或创建文件，或者文件格式错误
+     */
+    public static UnitConverter open(Path file) throws IOException
+    {
+        file = file.toAbsolutePath();
+        if (!Files.exists(file))
+        {
+            try (InputStream in = Objects.requireNonNull(UnitConverter.class.getResourceAsStream("units.txt")))
+            {
+                write(compile(new InputStreamReader(in, StandardCharsets.UTF_8), "units.txt"), file);
+            }
+        }
+        ConversionTable table = ConversionTable.map(file);
+        WatchService watcher = file.getFileSystem().newWatchService();
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        UnitConverter converter = new UnitConverter(file, table, watcher);
+        Thread thread = new Thread(converter::watch, "calculator-units");
+        thread.setDaemon(true);
+        thread.start();
+        return converter;
+    }
+
+    /**
+     *@return 当前的换算表，换算时取一次并在整个换算中使用同一个表
+     */
+    public ConversionTable table()
+    {
+        return table;
+    }
+
+    /**
+     *设置重新加载后调用的监听器。监听器在监视线程上调用，需要自己切换到界面线程。
+     */
+    public void setReloadListener(Runnable listener)
+    {
+        reloadListener = listener;
+    }
+
+    /**
+     *等待文件变化并重新加载，直到close()。
+     */
+    private void watch()
+    {
+        Path name = file.getFileName();
+        try
+        {
+            while (true)
+            {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    changed |= name.equals(event.context());
+                }
+                key.reset();
+                if (changed)
+                {
+                    reload();
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e)
+        {
+            //close()
+        }
+    }
+
+    /**
+     *重新映射文件，成功后替换当前的表。
+     */
+    void reload()
+    {
+        try
+        {
+            table = ConversionTable.map(file);
+        }
+        catch (IOException e)
+        {
+            System.err.println("无法重新加载换算表，继续使用原来的表: " + e.getMessage());
+            return;
+        }
+        Runnable listener = reloadListener;
+        if (listener != null)
+        {
+            listener.run();
+        }
+    }
+
+    /**
+     *解析文本格式的换算表。同一类别的单位在结果中相邻，顺序与第一次出现时相同。
+     *@param source 出错时在异常信息中显示的来源
+     *@return 文件格式的换算表
+     *@throws IOException 无法读取，或者某一行格式错误
+     */
+    static ByteBuffer compile(Reader text, String source) throws IOException
+    {
+        List<String> categories = new ArrayList<>();
+        List<List<String[]>> units = new ArrayList<>(); //每个类别的单位，每项是"单位 系数 偏移"
+        BufferedReader reader = new BufferedReader(text);
+        int lineNumber = 0;
+        int count = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine())
+        {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 3 || fields.length > 4)
+            {
+                throw new IOException(source + " 第" + lineNumber + "行应为\"类别 单位 系数 [偏移]\": " + line);
+            }
+            int category = categories.indexOf(fields[0]);
+            if (category < 0)
+            {
+                category = categories.size();
+                categories.add(fields[0]);
+                units.add(new ArrayList<>());
+            }
+            units.get(category).add(new String[]{fields[1], fields[2], fields.length == 4 ? fields[3] : "0"});
+            count++;
+        }
+        int[] unitCategories = new int[count];
+        String[] names = new String[count];
+        String[] factors = new String[count];
+        String[] offsets = new String[count];
+        int index = 0;
+        for (int category = 0; category < units.size(); category++)
+        {
+            for (String[] unit : units.get(category))
+            {
+                unitCategories[index] = category;
+                names[index] = unit[0];
+                if (!ConversionTable.isExact(unit[1], unit[2]))
+                {
+                    throw new IOException(source + " 中单位" + unit[0] + "的系数或偏移不是数字，或者系数为零");
+                }
+                factors[index] = unit[1];
+                offsets[index] = unit[2];
+                index++;
+            }
+        }
+        ByteBuffer data = ConversionTable.encode(categories.toArray(new String[0]), unitCategories, names, factors,
+                offsets);
+        ConversionTable.wrap(data, source); //检查系数、重复的单位等
+        return data;
+    }
+
+    /**
+     *把文本格式的换算表编译为二进制文件。先写临时文件再改名，正在使用这个文件的计算器会自动加载新的表。
+     *@param source 文本格式的换算表
+     *@param target 二进制换算表文件
+     *@throws IOException 无法读写文件，或者文本格式错误
+     */
+    public static void compile(Path source, Path target) throws IOException
+    {
+        try (Reader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8))
+        {
+            write(compile(reader, source.toString()), target);
+        }
+    }
+
+    private static void write(ByteBuffer data, Path file) throws IOException
+    {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+        {
+            Files.createDirectories(parent);
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (data.hasRemaining())
+            {
+                channel.write(data);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     *停止监视文件。
+     */
+    @Override
+    public void close() throws IOException
+    {
+        watcher.close();
+    }
+
+    /**
+     *命令行入口：--units 文本文件 [换算表文件]，编译换算表。
+     *不指定换算表文件时写入用户目录下的.calculator/units.bin，正在运行的计算器会自动加载。
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("用法: --units 文本文件 [换算表文件]");
+            System.exit(2);
+        }
+        Path target = args.length == 2 ? Path.of(args[1]) : defaultFile();
+        compile(Path.of(args[0]), target);
+        ConversionTable table = ConversionTable.map(target);
+        System.err.println("已写入 " + target + "，共 " + table.size() + " 个单位");
+    }
+
+    /**
+     *换算表默认保存在用户目录下的.calculator/units.bin，可以用系统属性calculator.units指定其他路径。
+     */
+    static Path defaultFile()
+    {
+        return Path.of(System.getProperty("calculator.units",
+                Path.of(System.getProperty("user.home"), ".calculator", "units.bin").toString()));
+    }
+}
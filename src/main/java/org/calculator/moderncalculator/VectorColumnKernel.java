@@ -0,0 +1,62 @@
+package org.calculator.moderncalculator;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *VectorColumnKernel用Vector API执行ColumnCalculator的一块计算。
+ *只有在运行时加载了jdk.incubator.vector模块时才会被ColumnCalculator调用，否则这个类不会被加载。
+ *每个向量依次执行全部步骤，中间结果留在寄存器中；不足一个向量的尾部逐个计算。
+ */
+final class VectorColumnKernel
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorColumnKernel()
+    {
+    }
+
+    /**
+     *计算values中从start到end(不含)的元素，结果写入results。不处理取模、加减百分比和错误检查。
+     */
+    static void evaluate(ColumnCalculator calculator, double[] values, double[] results, int start, int end)
+    {
+        Operator[] operators = calculator.operators;
+        double[] constants = calculator.constants;
+        int i = start;
+        for (int upper = start + SPECIES.loopBound(end - start); i < upper; i += SPECIES.length())
+        {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, values, i);
+            for (int step = 0; step < operators.length; step++)
+            {
+                double c = constants[step];
+                switch (operators[step])
+                {
+                    case ADD:
+                        x = x.add(c);
+                        break;
+                    case SUBTRACT:
+                        x = x.sub(c);
+                        break;
+                    case MULTIPLY:
+                        x = x.mul(c);
+                        break;
+                    default:
+                        x = x.div(c);
+                        break;
+                }
+            }
+            x.intoArray(results, i);
+        }
+        for (; i < end; i++)
+        {
+            double x = values[i];
+            for (int step = 0; step < operators.length; step++)
+            {
+                double c = constants[step];
+                x = operators[step].apply(x, c);
+            }
+            results[i] = x;
+        }
+    }
+}
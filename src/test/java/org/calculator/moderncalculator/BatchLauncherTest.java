@@ -0,0 +1,31 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchLauncherTest
+{
+    private static String evaluate(String line)
+    {
+        return BatchLauncher.evaluateLine(new ExpressionCache(), new NumberFormatter(), line);
+    }
+
+    @Test
+    void variablesAreAssignedByName()
+    {
+        assertEquals("113", evaluate("price × (1 + rate) | price=100, rate=0.13"));
+        assertEquals("113", evaluate("price × (1 + rate) | rate=0.13, price=100"));
+        assertEquals("14", evaluate("2 + 3 × 4"));
+    }
+
+    @Test
+    void missingAndUnknownVariablesAreErrors()
+    {
+        assertEquals("缺少变量的值: rate", evaluate("price * rate | price=100"));
+        assertEquals("缺少变量的值: price", evaluate("price * 2"));
+        assertEquals("表达式中没有变量: cost", evaluate("price * 2 | price=1, cost=3"));
+        assertEquals(CalculatorError.INVALID_INPUT.message() + ": price", evaluate("price * 2 | price"));
+        assertEquals(CalculatorError.INVALID_NUMBER.message(), evaluate("price * 2 | price=abc"));
+    }
+}
@@ -0,0 +1,107 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BigIntegerMathTest
+{
+    //覆盖BigInteger直接计算、FFT乘法、分治转换和牛顿迭代求倒数的各个位数
+    private static final int[] BITS = {1, 63, 64, 1000, (1 << 14) - 1, 1 << 14, (1 << 16) - 1, 1 << 16,
+            (1 << 16) + 1, 100_000, 1 << 17, 300_000};
+
+    private static BigInteger random(Random random, int bits)
+    {
+        BigInteger value = new BigInteger(bits, random).setBit(bits - 1); //最高位为1，位数正好是bits
+        return random.nextBoolean() ? value.negate() : value;
+    }
+
+    @Test
+    void multiplyMatchesBigInteger()
+    {
+        Random random = new Random(21);
+        for (int bitsA : BITS)
+        {
+            for (int bitsB : new int[]{64, 1 << 16, bitsA})
+            {
+                BigInteger a = random(random, bitsA);
+                BigInteger b = random(random, bitsB);
+                assertEquals(a.multiply(b), BigIntegerMath.multiply(a, b), bitsA + "×" + bitsB + "位");
+            }
+            BigInteger a = random(random, bitsA);
+            assertEquals(a.multiply(a), BigIntegerMath.multiply(a, a), bitsA + "位的平方");
+        }
+    }
+
+    @Test
+    void multiplyHandlesExtremeLimbs()
+    {
+        //全部是1的数让卷积的每一项都取最大值，最容易暴露FFT的舍入误差
+        for (int bits : new int[]{1 << 16, 200_000, 1 << 20})
+        {
+            BigInteger ones = BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE);
+            BigInteger power = BigInteger.ONE.shiftLeft(bits);
+            assertEquals(ones.multiply(ones), BigIntegerMath.multiply(ones, ones), bits + "位全1的平方");
+            assertEquals(ones.multiply(power), BigIntegerMath.multiply(ones, power), bits + "位全1乘2的幂");
+            assertEquals(BigInteger.ZERO, BigIntegerMath.multiply(ones, BigInteger.ZERO));
+            assertEquals(ones.negate().multiply(ones), BigIntegerMath.multiply(ones.negate(), ones));
+        }
+    }
+
+    @Test
+    void toStringMatchesBigInteger()
+    {
+        Random random = new Random(22);
+        for (int bits : BITS)
+        {
+            BigInteger value = random(random, bits);
+            assertEquals(value.toString(), BigIntegerMath.toString(value), bits + "位");
+        }
+        assertEquals("0", BigIntegerMath.toString(BigInteger.ZERO));
+        for (int exponent : new int[]{5000, 30_000, 100_000})
+        {
+            //10的幂附近的数在分治的每一层都会出现全0或全9的段
+            BigInteger power = BigInteger.TEN.pow(exponent);
+            for (BigInteger value : new BigInteger[]{power, power.subtract(BigInteger.ONE), power.add(BigInteger.ONE),
+                    power.negate()})
+            {
+                assertEquals(value.toString(), BigIntegerMath.toString(value), "10^" + exponent + "附近");
+            }
+        }
+    }
+
+    @Test
+    void parseMatchesBigInteger()
+    {
+        Random random = new Random(23);
+        for (int length : new int[]{1, 18, 19, 511, 512, 513, 5000, 20_000, 100_000})
+        {
+            char[] digits = new char[length];
+            for (int i = 0; i < length; i++)
+            {
+                digits[i] = (char) ('0' + random.nextInt(10));
+            }
+            String text = new String(digits);
+            for (String candidate : new String[]{text, "-" + text, "+" + text, "000" + text})
+            {
+                assertEquals(new BigInteger(candidate), BigIntegerMath.parse(candidate), length + "位");
+            }
+        }
+        String zeros = "1" + "0".repeat(60_000);
+        assertEquals(new BigInteger(zeros), BigIntegerMath.parse(zeros));
+    }
+
+    @Test
+    void parseRejectsWhatBigIntegerRejects()
+    {
+        for (String text : new String[]{"", "-", "+", "12a", "1 2", "1.5", "--1", "+-1"})
+        {
+            assertThrows(NumberFormatException.class, () -> new BigInteger(text));
+            assertThrows(NumberFormatException.class, () -> BigIntegerMath.parse(text), text);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CalculationTapeTest
+{
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32; //三段文本各一个字符
+
+    /**
+     *写入count条"i + 1 = i+1"形式的记录(各段都是一个字符)。
+     */
+    private static Path tape(int count) throws IOException
+    {
+        Path file = Files.createTempFile("tape", ".bin");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+        try (CalculationTape tape = CalculationTape.open(file))
+        {
+            for (int i = 0; i < count; i++)
+            {
+                tape.calculationCompleted(Integer.toString(i), Operator.ADD, "1", Integer.toString((i + 1) % 10));
+            }
+        }
+        return file;
+    }
+
+    /**
+     *修改文件中的字节。
+     */
+    private static void patch(Path file, long position, ByteBuffer bytes) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.write(bytes.flip(), position);
+        }
+    }
+
+    private static List<CalculationTape.Record> readLast(Path file, int count) throws IOException
+    {
+        try (CalculationTape tape = CalculationTape.open(file))
+        {
+            return tape.readLast(count);
+        }
+    }
+
+    @Test
+    void readsTheMostRecentRecordsInOrder() throws IOException
+    {
+        Path file = tape(8);
+        List<CalculationTape.Record> records = readLast(file, 3);
+        assertEquals(3, records.size());
+        assertEquals("5", records.get(0).first());
+        assertEquals("7", records.get(2).first());
+        assertEquals(Operator.ADD, records.get(2).operator());
+        assertEquals("1", records.get(2).second());
+        assertEquals("8", records.get(2).result());
+        assertEquals(8, readLast(file, 100).size());
+    }
+
+    @Test
+    void stopsAtAnInvalidOperator() throws IOException
+    {
+        Path file = tape(6);
+        patch(file, HEADER_SIZE + 3L * RECORD_SIZE + 12, ByteBuffer.allocate(1).put((byte) 99));
+        List<CalculationTape.Record> records = readLast(file, 10);
+        assertEquals(2, records.size());
+        assertEquals("4", records.get(0).first());
+        patch(file, HEADER_SIZE + 5L * RECORD_SIZE + 12, ByteBuffer.allocate(1).put((byte) -1));
+        assertEquals(0, readLast(file, 10).size());
+    }
+
+    @Test
+    void stopsWhenLeadingAndTrailingLengthsDiffer() throws IOException
+    {
+        Path file = tape(5);
+        patch(file, HEADER_SIZE + 2L * RECORD_SIZE, ByteBuffer.allocate(4).putInt(RECORD_SIZE + 8));
+        assertEquals(2, readLast(file, 10).size());
+    }
+
+    @Test
+    void stopsAtTextLengthsOutsideTheRecord() throws IOException
+    {
+        Path file = tape(5);
+        patch(file, HEADER_SIZE + 3L * RECORD_SIZE + 13, ByteBuffer.allocate(4).putInt(-7));
+        assertEquals(1, readLast(file, 10).size());
+        patch(file, HEADER_SIZE + 4L * RECORD_SIZE + 18, ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE));
+        assertEquals(0, readLast(file, 10).size());
+    }
+
+    @Test
+    void stopsAtACorruptTrailingLength() throws IOException
+    {
+        Path file = tape(5);
+        patch(file, HEADER_SIZE + 5L * RECORD_SIZE - 4, ByteBuffer.allocate(4).putInt(Integer.MIN_VALUE));
+        assertEquals(0, readLast(file, 10).size());
+        patch(file, HEADER_SIZE + 5L * RECORD_SIZE - 4, ByteBuffer.allocate(4).putInt(RECORD_SIZE * 2));
+        assertEquals(0, readLast(file, 10).size());
+    }
+
+    @Test
+    void appendingAfterCorruptionStillWorks() throws IOException
+    {
+        Path file = tape(3);
+        patch(file, HEADER_SIZE + 2L * RECORD_SIZE + 12, ByteBuffer.allocate(1).put((byte) 99));
+        try (CalculationTape tape = CalculationTape.open(file))
+        {
+            tape.calculationCompleted("2", Operator.MULTIPLY, "3", "6");
+            List<CalculationTape.Record> records = tape.readLast(10);
+            assertEquals(1, records.size());
+            assertEquals(Operator.MULTIPLY, records.get(0).operator());
+        }
+    }
+
+    @Test
+    void rejectsFilesThatAreNotTapes() throws IOException
+    {
+        Path file = Files.createTempFile("tape", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> CalculationTape.open(file));
+        Path end = tape(1);
+        patch(end, 8, ByteBuffer.allocate(8).putLong(Long.MAX_VALUE));
+        assertThrows(IOException.class, () -> CalculationTape.open(end));
+    }
+}
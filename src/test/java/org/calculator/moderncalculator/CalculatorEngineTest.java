@@ -0,0 +1,113 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CalculatorEngineTest
+{
+    /**
+     *按"1 2 . 5"这样的输入逐个按键。
+     */
+    private static void press(CalculatorEngine engine, String keys)
+    {
+        for (String label : keys.split(" "))
+        {
+            engine.press(Key.fromLabel(label));
+        }
+    }
+
+    /**
+     *反复按x²直到出错，结果的长度始终有上限，最后显示溢出。
+     */
+    private static void squareUntilOverflow(Precision precision, String start)
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setMathContext(precision.mathContext());
+        engine.type(start);
+        for (int i = 0; i < 64 && engine.error() == null; i++)
+        {
+            engine.press(Key.SQUARE);
+            assertTrue(engine.displayText().length() <= DecimalValue.MAX_PLAIN_LENGTH, precision + " " + start);
+        }
+        assertEquals(CalculatorError.OVERFLOW, engine.error(), precision + " " + start);
+    }
+
+    @Test
+    void repeatedSquareOfLargeNumberOverflowsInEveryPrecision()
+    {
+        for (Precision precision : Precision.values())
+        {
+            squareUntilOverflow(precision, "2");
+        }
+    }
+
+    @Test
+    void repeatedSquareOfSmallNumberOverflowsInPreciseModes()
+    {
+        for (Precision precision : Precision.values())
+        {
+            if (precision != Precision.DOUBLE)
+            {
+                squareUntilOverflow(precision, "0.5");
+            }
+        }
+    }
+
+    @Test
+    void repeatedSquareOfSmallNumberUnderflowsToZeroInDoubleMode()
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.type("0.5");
+        for (int i = 0; i < 16; i++)
+        {
+            engine.press(Key.SQUARE);
+        }
+        assertEquals("0", engine.displayText());
+    }
+
+    @Test
+    void largeResultsBelowTheLimitAreShown()
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setMathContext(Precision.DECIMAL128.mathContext());
+        engine.type("1" + "0".repeat(30));
+        press(engine, "x²");
+        assertEquals("1" + "0".repeat(60), engine.displayText());
+        engine.setMathContext(Precision.UNLIMITED.mathContext());
+        engine.type("9".repeat(1000));
+        press(engine, "x²");
+        assertEquals(null, engine.error());
+        assertEquals(2000, engine.displayText().length());
+    }
+
+    private static String typed(String text)
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.type(text);
+        return engine.displayText();
+    }
+
+    @Test
+    void pastedKeystrokesAreEvaluatedInOrder()
+    {
+        assertEquals("60", typed("12 + 3 × 4 ="));
+        assertEquals("-2", typed("-5 + 3 ="));
+        assertEquals("1234567.5", typed("1,234,567.5"));
+        assertEquals("2000", typed("1,000 * 2 ="));
+    }
+
+    @Test
+    void textThatIsNotKeystrokesIsRejected()
+    {
+        for (String text : new String[]{"12 × (3 + 4) ÷ 7", "1e3", "1,5", "12,34", "1,2345", "0.1,234", "sin(1)", "5 $"})
+        {
+            assertEquals(CalculatorError.INVALID_INPUT.message(), typed(text), text);
+        }
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setProgrammerMode(true);
+        engine.type("FF + G");
+        assertEquals(CalculatorError.INVALID_INPUT.message(), engine.displayText());
+    }
+}
@@ -0,0 +1,124 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CalculatorServerTest
+{
+    /**
+     *一次请求的状态码、会话编号和响应体。
+     */
+    private static final class Response
+    {
+        final int status;
+        final String session;
+        final String body;
+
+        Response(int status, String session, String body)
+        {
+            this.status = status;
+            this.session = session;
+            this.body = body;
+        }
+    }
+
+    private static Response request(CalculatorServer server, String method, String query, String input) throws IOException
+    {
+        URL url = new URL("http://127.0.0.1:" + server.port() + CalculatorServer.PATH + (query == null ? "" : "?" + query));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (input != null)
+        {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream())
+            {
+                out.write(input.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String body = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        return new Response(status, connection.getHeaderField(CalculatorServer.SESSION_HEADER), body);
+    }
+
+    @Test
+    void sessionsKeepTheirState() throws IOException
+    {
+        try (CalculatorServer server = CalculatorServer.start(0, 10, 10, 300))
+        {
+            Response created = request(server, "POST", null, "12 +");
+            assertEquals(200, created.status);
+            assertNotNull(created.session);
+            Response result = request(server, "POST", "session=" + created.session, "3 =");
+            assertEquals("15", result.body.split("\n")[0]);
+            assertEquals(200, request(server, "DELETE", "session=" + created.session, null).status);
+            assertEquals(404, request(server, "DELETE", "session=" + created.session, null).status);
+            assertEquals(404, request(server, "POST", "session=" + created.session, "1").status);
+            assertEquals(0, server.sessionCount());
+        }
+    }
+
+    @Test
+    void concurrentCreationsNeverExceedTheLimit() throws Exception
+    {
+        int limit = 5;
+        try (CalculatorServer server = CalculatorServer.start(0, 10, limit, 300))
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(16);
+            try
+            {
+                List<Future<Response>> futures = new ArrayList<>();
+                for (int i = 0; i < 64; i++)
+                {
+                    futures.add(executor.submit(() -> request(server, "POST", null, "1")));
+                }
+                int created = 0;
+                for (Future<Response> future : futures)
+                {
+                    int status = future.get().status;
+                    assertTrue(status == 200 || status == 503, "状态码 " + status);
+                    created += status == 200 ? 1 : 0;
+                }
+                assertEquals(limit, created);
+                assertEquals(limit, server.sessionCount());
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void idleSessionsAreEvictedAndReleaseCapacity() throws Exception
+    {
+        try (CalculatorServer server = CalculatorServer.start(0, 10, 1, 0))
+        {
+            Response created = request(server, "POST", null, "7");
+            assertEquals(200, created.status);
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (server.sessionCount() > 0 && System.nanoTime() < deadline)
+            {
+                Thread.sleep(50);
+            }
+            assertEquals(0, server.sessionCount());
+            assertEquals(404, request(server, "POST", "session=" + created.session, "1").status);
+            assertEquals(200, request(server, "POST", null, "1").status);
+        }
+    }
+}
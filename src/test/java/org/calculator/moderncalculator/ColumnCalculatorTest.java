@@ -0,0 +1,132 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnCalculatorTest
+{
+    private static String format(double value)
+    {
+        NumberFormatter formatter = new NumberFormatter();
+        formatter.format(value);
+        StringBuilder sb = new StringBuilder();
+        formatter.appendTo(sb);
+        return sb.toString();
+    }
+
+    @Test
+    void singleStepMatchesTheEngineDisplay()
+    {
+        Random random = new Random(15);
+        String[] operators = {"+", "-", "×", "÷", "mod"};
+        Operator[] values = {Operator.ADD, Operator.SUBTRACT, Operator.MULTIPLY, Operator.DIVIDE, Operator.MODULO};
+        for (int i = 0; i < 20_000; i++)
+        {
+            String element = String.format(Locale.ROOT, "%.3f", random.nextDouble() * 2000 - 1000);
+            String operand = String.format(Locale.ROOT, "%.6f", random.nextDouble() * 100 + 0.5);
+            int op = random.nextInt(operators.length);
+            boolean percent = random.nextBoolean(); //"元素 运算符 操作数 % ="
+            CalculatorEngine engine = new CalculatorEngine();
+            engine.type(element);
+            engine.press(Key.fromLabel(operators[op]));
+            engine.type(operand);
+            if (percent)
+            {
+                engine.press(Key.PERCENT);
+            }
+            engine.press(Key.EQUALS);
+            double[] results = new double[1];
+            byte[] errors = new byte[1];
+            double value = Double.parseDouble(operand);
+            (percent ? ColumnCalculator.ofPercent(values[op], value) : ColumnCalculator.of(values[op], value))
+                    .evaluate(new double[]{Double.parseDouble(element)}, results, errors);
+            assertEquals(engine.displayText(), format(results[0]),
+                    element + " " + operators[op] + " " + operand + (percent ? "%" : ""));
+        }
+    }
+
+    @Test
+    void relativePercentMatchesTheEngineDisplay()
+    {
+        double[] results = new double[1];
+        byte[] errors = new byte[1];
+        ColumnCalculator.ofPercent(Operator.ADD, 34.344175).evaluate(new double[]{912.813}, results, errors);
+        assertEquals("1226.3110941428", format(results[0]));
+    }
+
+    @Test
+    void percentFollowsTheCalculatorRules()
+    {
+        double[] results = new double[1];
+        byte[] errors = new byte[1];
+        ColumnCalculator.ofPercent(Operator.ADD, 10).evaluate(new double[]{200}, results, errors);
+        assertEquals(220.0, results[0]);
+        ColumnCalculator.ofPercent(Operator.MULTIPLY, 10).evaluate(new double[]{200}, results, errors);
+        assertEquals(20.0, results[0]);
+    }
+
+    @Test
+    void chainedStepsDoNotRoundIntermediateResults()
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.type("1÷3=×3=");
+        assertEquals("0.9999999999", engine.displayText());
+        double[] results = new double[1];
+        byte[] errors = new byte[1];
+        ColumnCalculator.of(Operator.DIVIDE, 3).then(Operator.MULTIPLY, 3).evaluate(new double[]{1}, results, errors);
+        assertEquals(1.0, results[0]);
+    }
+
+    @Test
+    void errorsAreFlaggedPerElement()
+    {
+        double[] values = {1, Double.NaN, 1e308};
+        double[] results = new double[3];
+        byte[] errors = new byte[3];
+        assertEquals(2, ColumnCalculator.of(Operator.MULTIPLY, 10).evaluate(values, results, errors));
+        assertEquals(10.0, results[0]);
+        assertEquals(CalculatorError.INVALID_NUMBER, ColumnCalculator.error(errors[1]));
+        assertEquals(CalculatorError.OVERFLOW, ColumnCalculator.error(errors[2]));
+        assertEquals(3, ColumnCalculator.of(Operator.DIVIDE, 0).evaluate(new double[]{1, 2, 3}, results, errors));
+        assertEquals(CalculatorError.DIVIDE_BY_ZERO, ColumnCalculator.error(errors[0]));
+    }
+
+    @Test
+    void parallelArrayAndBufferResultsMatchOneElementAtATime()
+    {
+        int length = 300_000;
+        Random random = new Random(1);
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++)
+        {
+            values[i] = random.nextDouble() * 1e6 - 5e5;
+        }
+        values[12345] = Double.POSITIVE_INFINITY;
+        ColumnCalculator calculator = ColumnCalculator.of(Operator.MULTIPLY, 1.13)
+                .thenPercent(Operator.SUBTRACT, 7).then(Operator.MODULO, 977);
+        double[] results = new double[length];
+        byte[] errors = new byte[length];
+        assertEquals(1, calculator.evaluate(values, results, errors));
+        DoubleBuffer bufferResults = ByteBuffer.allocateDirect(length * Double.BYTES).asDoubleBuffer();
+        ByteBuffer bufferErrors = ByteBuffer.allocateDirect(length);
+        DoubleBuffer input = ByteBuffer.allocateDirect(length * Double.BYTES).asDoubleBuffer().put(values).flip();
+        assertEquals(1, calculator.evaluate(input, bufferResults, bufferErrors));
+        double[] single = new double[1];
+        byte[] singleError = new byte[1];
+        for (int i = 0; i < length; i += 997)
+        {
+            calculator.evaluate(new double[]{values[i]}, single, singleError);
+            assertEquals(single[0], results[i]);
+            assertEquals(single[0], bufferResults.get(i));
+        }
+        assertTrue(Double.isNaN(results[12345]));
+        assertEquals(CalculatorError.INVALID_NUMBER, ColumnCalculator.error(bufferErrors.get(12345)));
+    }
+}
@@ -0,0 +1,138 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConversionTableTest
+{
+    private static ConversionTable builtIn() throws IOException
+    {
+        try (Reader reader = new InputStreamReader(
+                Objects.requireNonNull(UnitConverter.class.getResourceAsStream("units.txt")), StandardCharsets.UTF_8))
+        {
+            return ConversionTable.wrap(UnitConverter.compile(reader, "units.txt"), "units.txt");
+        }
+    }
+
+    /**
+     *在指定精度下换算一个数，返回主显示屏的文本。
+     */
+    private static String convert(Precision precision, String value, String from, String to) throws IOException
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setMathContext(precision.mathContext());
+        engine.type(value);
+        engine.applyConversion(builtIn(), ConversionTable.id(from), ConversionTable.id(to));
+        return engine.displayText();
+    }
+
+    @Test
+    void temperatureRoundTripIsExactInPreciseModes() throws IOException
+    {
+        for (Precision precision : new Precision[]{Precision.DECIMAL64, Precision.DECIMAL128, Precision.UNLIMITED})
+        {
+            assertEquals("0", convert(precision, "32", "°F", "°C"), precision.name());
+            assertEquals("100", convert(precision, "212", "°F", "°C"), precision.name());
+            assertEquals("212", convert(precision, "100", "°C", "°F"), precision.name());
+            assertEquals("37", convert(precision, "98.6", "°F", "°C"), precision.name());
+            assertEquals("98.6", convert(precision, "37", "°C", "°F"), precision.name());
+            assertEquals("-40", convert(precision, "-40", "°C", "°F"), precision.name());
+            assertEquals("-40", convert(precision, "-40", "°F", "°C"), precision.name());
+            assertEquals("273.15", convert(precision, "32", "°F", "K"), precision.name());
+            assertEquals("32", convert(precision, "273.15", "K", "°F"), precision.name());
+        }
+    }
+
+    @Test
+    void fractionalFactorsAreExact() throws IOException
+    {
+        assertEquals("10", convert(Precision.UNLIMITED, "36", "km/h", "m/s"));
+        assertEquals("1852", convert(Precision.UNLIMITED, "3600", "kn", "m/s"));
+        assertEquals("1.852", convert(Precision.UNLIMITED, "1", "kn", "km/h"));
+        assertEquals("0.2777777777777778", convert(Precision.DECIMAL64, "1", "km/h", "m/s"));
+    }
+
+    @Test
+    void nonTerminatingResultIsReportedInUnlimitedMode() throws IOException
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.setMathContext(Precision.UNLIMITED.mathContext());
+        engine.type("1");
+        engine.applyConversion(builtIn(), ConversionTable.id("°F"), ConversionTable.id("°C"));
+        assertEquals(CalculatorError.INEXACT, engine.error());
+    }
+
+    @Test
+    void doubleModeUsesTheSameFormula() throws IOException
+    {
+        ConversionTable table = builtIn();
+        int celsius = ConversionTable.id("°C");
+        int fahrenheit = ConversionTable.id("°F");
+        assertEquals(212.0, table.convert(100, celsius, fahrenheit), 1e-9);
+        assertEquals(0.0, table.convert(32, fahrenheit, celsius), 1e-9);
+        assertEquals(1609.344, table.convert(1, ConversionTable.id("mi"), ConversionTable.id("m")), 1e-9);
+        assertEquals(Double.NaN, table.convert(1, celsius, ConversionTable.id("m")));
+    }
+
+    @Test
+    void tableKeepsTheFactorText() throws IOException
+    {
+        ConversionTable table = builtIn();
+        int fahrenheit = ConversionTable.id("°F");
+        assertEquals("5/9", table.factorText(fahrenheit));
+        assertEquals("459.67", table.offsetText(fahrenheit));
+        assertEquals("0", table.offsetText(ConversionTable.id("m")));
+    }
+
+    @Test
+    void invalidFactorsAreRejected()
+    {
+        assertThrows(IOException.class, () -> UnitConverter.compile(new StringReader("温度 X 5/0\n"), "test"));
+        assertThrows(IOException.class, () -> UnitConverter.compile(new StringReader("温度 X 0\n"), "test"));
+        assertThrows(IOException.class, () -> UnitConverter.compile(new StringReader("温度 X 1/2/3\n"), "test"));
+        assertThrows(IOException.class, () -> UnitConverter.compile(new StringReader("温度 X 1 abc\n"), "test"));
+        assertFalse(ConversionTable.isExact("1e999999", "0"));
+    }
+
+    @Test
+    void corruptTablesThrowIOException() throws IOException
+    {
+        ByteBuffer table;
+        try (Reader reader = new InputStreamReader(
+                Objects.requireNonNull(UnitConverter.class.getResourceAsStream("units.txt")), StandardCharsets.UTF_8))
+        {
+            table = UnitConverter.compile(reader, "units.txt");
+        }
+        byte[] bytes = new byte[table.remaining()];
+        table.duplicate().get(bytes);
+        for (int length = 0; length < bytes.length; length += 7) //截断在每个字段的中间
+        {
+            ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, length).slice();
+            assertThrows(IOException.class, () -> ConversionTable.wrap(truncated, "test"), "截断为 " + length);
+        }
+        for (int i = 0; i < 64 && i < bytes.length; i++) //文件头和第一个单位的每个字节都改为非法值
+        {
+            byte[] damaged = bytes.clone();
+            damaged[i] = (byte) 0xFF;
+            try
+            {
+                ConversionTable.wrap(ByteBuffer.wrap(damaged), "test");
+            }
+            catch (IOException e)
+            {
+                //损坏的文件必须报告为IOException，不能抛出其他异常
+            }
+        }
+    }
+}
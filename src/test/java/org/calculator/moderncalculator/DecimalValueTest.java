@@ -0,0 +1,185 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecimalValueTest
+{
+    private static final MathContext[] CONTEXTS = {MathContext.DECIMAL64, MathContext.DECIMAL128, MathContext.UNLIMITED};
+    private static final Operator[] OPERATORS = {Operator.ADD, Operator.SUBTRACT, Operator.MULTIPLY, Operator.DIVIDE,
+            Operator.MODULO};
+
+    /**
+     *@return 随机的十进制文本，位数跨过long快速路径的18位上限
+     */
+    private static String randomText(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        if (random.nextBoolean())
+        {
+            sb.append('-');
+        }
+        int digits = 1 + random.nextInt(random.nextInt(4) == 0 ? 60 : 19);
+        int point = random.nextInt(digits + 1);
+        for (int i = 0; i < digits; i++)
+        {
+            if (i == point && i > 0)
+            {
+                sb.append('.');
+            }
+            sb.append((char) ('0' + random.nextInt(10)));
+        }
+        return sb.toString();
+    }
+
+    private static DecimalValue parse(String text)
+    {
+        DecimalValue value = new DecimalValue();
+        boolean negative = text.startsWith("-");
+        char[] chars = text.substring(negative ? 1 : 0).toCharArray();
+        assertTrue(value.parse(negative, chars, chars.length), text);
+        return value;
+    }
+
+    private static String plain(DecimalValue value)
+    {
+        InputBuffer buffer = new InputBuffer(32);
+        value.writeTo(buffer);
+        return buffer.toString();
+    }
+
+    private static String plain(BigDecimal value)
+    {
+        return value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString();
+    }
+
+    private static BigDecimal reference(Operator operator, BigDecimal a, BigDecimal b, MathContext mc)
+    {
+        switch (operator)
+        {
+            case ADD:
+                return a.add(b, mc);
+            case SUBTRACT:
+                return a.subtract(b, mc);
+            case MULTIPLY:
+                return a.multiply(b, mc);
+            case DIVIDE:
+                return a.divide(b, mc);
+            default:
+                return a.remainder(b).round(mc);
+        }
+    }
+
+    @Test
+    void parseAndWriteMatchBigDecimal()
+    {
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++)
+        {
+            String text = randomText(random);
+            DecimalValue value = parse(text);
+            assertEquals(0, value.toBigDecimal().compareTo(new BigDecimal(text)), text);
+            assertEquals(plain(new BigDecimal(text)), plain(value), text);
+        }
+    }
+
+    @Test
+    void operationsMatchBigDecimal()
+    {
+        Random random = new Random(6);
+        DecimalValue result = new DecimalValue();
+        for (int i = 0; i < 50_000; i++)
+        {
+            String left = randomText(random);
+            String right = randomText(random);
+            BigDecimal a = new BigDecimal(left);
+            BigDecimal b = new BigDecimal(right);
+            Operator operator = OPERATORS[random.nextInt(OPERATORS.length)];
+            if (b.signum() == 0 && (operator == Operator.DIVIDE || operator == Operator.MODULO))
+            {
+                continue; //除数为零由调用方检查
+            }
+            for (MathContext mc : CONTEXTS)
+            {
+                String message = left + " " + operator + " " + right + "，精度" + mc.getPrecision();
+                BigDecimal expected;
+                try
+                {
+                    expected = reference(operator, a, b, mc);
+                }
+                catch (ArithmeticException e) //不限精度时的无限小数
+                {
+                    assertEquals(DecimalValue.INEXACT, DecimalValue.apply(operator, parse(left), parse(right), result, mc),
+                            message);
+                    continue;
+                }
+                assertEquals(DecimalValue.OK, DecimalValue.apply(operator, parse(left), parse(right), result, mc), message);
+                assertEquals(0, result.toBigDecimal().compareTo(expected), message);
+                assertEquals(plain(expected), plain(result), message);
+            }
+        }
+    }
+
+    @Test
+    void unaryOperationsMatchBigDecimal()
+    {
+        Random random = new Random(7);
+        DecimalValue result = new DecimalValue();
+        for (int i = 0; i < 5_000; i++)
+        {
+            String text = randomText(random);
+            BigDecimal value = new BigDecimal(text);
+            for (MathContext mc : CONTEXTS)
+            {
+                if (value.signum() != 0)
+                {
+                    BigDecimal expected = null;
+                    try
+                    {
+                        expected = BigDecimal.ONE.divide(value, mc);
+                    }
+                    catch (ArithmeticException e)
+                    {
+                        //不限精度时的无限小数
+                    }
+                    int status = DecimalValue.reciprocal(parse(text), result, mc);
+                    assertEquals(expected == null ? DecimalValue.INEXACT : DecimalValue.OK, status, "1/" + text);
+                    if (expected != null)
+                    {
+                        assertEquals(0, result.toBigDecimal().compareTo(expected), "1/" + text);
+                    }
+                }
+                if (value.signum() >= 0 && mc.getPrecision() > 0)
+                {
+                    assertEquals(DecimalValue.OK, DecimalValue.sqrt(parse(text), result, mc));
+                    assertEquals(0, result.toBigDecimal().compareTo(value.sqrt(mc)), "sqrt " + text);
+                }
+                DecimalValue percent = parse(text);
+                percent.percent(mc);
+                assertEquals(0, percent.toBigDecimal().compareTo(value.movePointLeft(2).round(mc)), text + "%");
+            }
+            DecimalValue negated = parse(text);
+            negated.negate();
+            assertEquals(plain(value.negate()), plain(negated));
+        }
+    }
+
+    @Test
+    void setKeepsTheValue()
+    {
+        Random random = new Random(8);
+        DecimalValue value = new DecimalValue();
+        for (int i = 0; i < 10_000; i++)
+        {
+            BigDecimal expected = new BigDecimal(randomText(random)).scaleByPowerOfTen(random.nextInt(41) - 20);
+            value.set(expected);
+            assertEquals(0, value.toBigDecimal().compareTo(expected), expected.toString());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExpressionCompilerTest
+{
+    private static final String[] VARIABLES = {"x", "y", "rate"};
+
+    /**
+     *随机表达式：文本和直接按树计算的参考值一起生成。
+     */
+    private static final class Node
+    {
+        final String text;
+        final double value;
+
+        Node(String text, double value)
+        {
+            this.text = text;
+            this.value = value;
+        }
+    }
+
+    private static Node random(Random random, double[] values, int depth)
+    {
+        if (depth == 0 || random.nextInt(4) == 0)
+        {
+            if (random.nextBoolean())
+            {
+                int index = random.nextInt(VARIABLES.length);
+                return new Node(VARIABLES[index], values[index]);
+            }
+            double constant = random.nextInt(1000) / (random.nextBoolean() ? 1.0 : 8.0);
+            return new Node(constant == Math.rint(constant) ? Long.toString((long) constant) : Double.toString(constant),
+                    constant);
+        }
+        if (random.nextInt(8) == 0)
+        {
+            Node operand = random(random, values, depth - 1);
+            return new Node("(-" + operand.text + ")", -operand.value);
+        }
+        if (random.nextInt(8) == 0)
+        {
+            Node operand = random(random, values, depth - 1);
+            return new Node("cbrt(" + operand.text + ")", Math.cbrt(operand.value));
+        }
+        Node left = random(random, values, depth - 1);
+        Node right = random(random, values, depth - 1);
+        String[] symbols = {"+", "-", "×", "*", "÷", "/", "%"};
+        String symbol = symbols[random.nextInt(symbols.length)];
+        double value;
+        switch (symbol)
+        {
+            case "+":
+                value = left.value + right.value;
+                break;
+            case "-":
+                value = left.value - right.value;
+                break;
+            case "×":
+            case "*":
+                value = left.value * right.value;
+                break;
+            case "÷":
+            case "/":
+                value = right.value == 0 ? Double.NaN : left.value / right.value;
+                break;
+            default:
+                value = right.value == 0 ? Double.NaN : left.value % right.value;
+                break;
+        }
+        //加上括号，运算顺序与参考值一致；优先级另有单独的测试
+        return new Node("(" + left.text + " " + symbol + " " + right.text + ")", value);
+    }
+
+    @Test
+    void randomExpressionsMatchDirectEvaluation()
+    {
+        Random random = new Random(2);
+        for (int i = 0; i < 20_000; i++)
+        {
+            double[] values = {random.nextInt(100) - 50, random.nextDouble() * 10, 1 + random.nextInt(9)};
+            Node node = random(random, values, 1 + random.nextInt(6));
+            if (Double.isNaN(node.value))
+            {
+                continue; //除数为零，由下面的测试检查
+            }
+            CompiledExpression expression = ExpressionCompiler.compile(node.text);
+            double[] arguments = new double[expression.variables().length];
+            for (int v = 0; v < arguments.length; v++)
+            {
+                arguments[v] = values[Arrays.asList(VARIABLES).indexOf(expression.variables()[v])];
+            }
+            double actual;
+            try
+            {
+                actual = expression.evaluate(arguments);
+            }
+            catch (ArithmeticException e)
+            {
+                actual = Double.NaN;
+            }
+            assertEquals(node.value, actual, node.text);
+        }
+    }
+
+    @Test
+    void precedenceAndAssociativity()
+    {
+        assertEquals(14, ExpressionCompiler.compile("2 + 3 × 4").evaluate(), 0);
+        assertEquals(20, ExpressionCompiler.compile("(2 + 3) × 4").evaluate(), 0);
+        assertEquals(1, ExpressionCompiler.compile("8 - 4 - 3").evaluate(), 0);
+        assertEquals(1, ExpressionCompiler.compile("8 / 4 / 2").evaluate(), 0);
+        assertEquals(2, ExpressionCompiler.compile("12 % 5 × 1").evaluate(), 0);
+        assertEquals(-6, ExpressionCompiler.compile("-2 × 3").evaluate(), 0);
+        assertEquals(12, ExpressionCompiler.compile("12 × (3 + 4) ÷ 7").evaluate(), 0);
+        assertEquals(7, ExpressionCompiler.compile("x × 2 + y").evaluate(3, 1), 0);
+    }
+
+    @Test
+    void deeplyNestedCallsCompile()
+    {
+        for (int depth : new int[]{15, 16, 17, 100})
+        {
+            String text = "(".repeat(depth) + " sin(1) + pow(2, nCr(4, 2)) " + ")".repeat(depth);
+            assertEquals(Math.sin(1) + 64, ExpressionCompiler.compile(text).evaluate(), text);
+            String calls = "cbrt(".repeat(depth) + "x" + ")".repeat(depth);
+            assertEquals(1, ExpressionCompiler.compile(calls).evaluate(1), calls);
+        }
+    }
+
+    @Test
+    void divisionByZeroThrowsArithmeticException()
+    {
+        CompiledExpression expression = ExpressionCompiler.compile("1 ÷ (x - x)");
+        assertThrows(ArithmeticException.class, () -> expression.evaluate(2));
+        CompiledExpression modulo = ExpressionCompiler.compile("5 % x");
+        assertThrows(ArithmeticException.class, () -> modulo.evaluate(0));
+    }
+
+    @Test
+    void invalidExpressionsAreRejected()
+    {
+        for (String text : new String[]{"", "1 +", "(1", "1)", "× 2", "1 2", "nosuchfunction(1)", "cbrt()", "1 ÷ 0"})
+        {
+            assertThrows(RuntimeException.class, () -> ExpressionCompiler.compile(text).evaluate(), text);
+        }
+    }
+}
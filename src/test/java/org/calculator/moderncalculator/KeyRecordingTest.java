@@ -0,0 +1,161 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyRecordingTest
+{
+    private static final int EVENTS = 9; //魔数、版本和撤销历史容量之后第一个事件的位置
+
+    private static Path file() throws IOException
+    {
+        Path file = Files.createTempFile("recording", ".bin");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+        return file;
+    }
+
+    /**
+     *录制"12 + 3 ="并按录制时引擎的显示结束会话。
+     */
+    private static void recordSession(Path file) throws IOException
+    {
+        CalculatorEngine engine = new CalculatorEngine();
+        KeyRecording recording = KeyRecording.open(file, CalculatorEngine.DEFAULT_HISTORY_CAPACITY);
+        recording.text("12");
+        engine.type("12");
+        for (Key key : new Key[]{Key.ADD, Key.DIGIT_3, Key.EQUALS})
+        {
+            recording.key(key);
+            engine.press(key);
+        }
+        recording.close(engine.displayText(), engine.historyText());
+    }
+
+    private static Path withByte(Path file, int index, int value) throws IOException
+    {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[index] = (byte) value;
+        Files.write(file, bytes);
+        return file;
+    }
+
+    @Test
+    void replayMatchesTheRecordedDisplay() throws IOException
+    {
+        Path file = file();
+        recordSession(file);
+        recordSession(file);
+        List<KeyRecording.Session> sessions = KeyRecording.replay(file);
+        assertEquals(2, sessions.size());
+        assertTrue(sessions.get(0).matches());
+        assertEquals("15", sessions.get(1).display());
+        assertEquals(4, sessions.get(1).events());
+    }
+
+    @Test
+    void conversionsAndProgrammerModeReplay() throws IOException
+    {
+        Path file = file();
+        CalculatorEngine engine = new CalculatorEngine();
+        KeyRecording recording = KeyRecording.open(file, CalculatorEngine.DEFAULT_HISTORY_CAPACITY);
+        ConversionTable table = ConversionTable.wrap(ConversionTable.encode(new String[]{"温度"}, new int[]{0, 0},
+                new String[]{"°C", "°F"}, new String[]{"1", "5/9"}, new String[]{"273.15", "459.67"}), "test");
+        recording.precision(Precision.DECIMAL128);
+        engine.setMathContext(Precision.DECIMAL128.mathContext());
+        recording.text("100");
+        engine.type("100");
+        recording.conversion(table, ConversionTable.id("°C"), ConversionTable.id("°F"));
+        engine.applyConversion(table, ConversionTable.id("°C"), ConversionTable.id("°F"));
+        recording.programmer(true, ProgrammerEngine.HEX, 8);
+        engine.setProgrammerMode(true);
+        engine.setProgrammerBase(ProgrammerEngine.HEX);
+        engine.setProgrammerWordSize(8);
+        recording.text("ff");
+        engine.type("ff");
+        recording.close(engine.displayText(), engine.historyText());
+        KeyRecording.Session session = KeyRecording.replay(file).get(0);
+        assertTrue(session.matches(), session.toString());
+        assertEquals("FF", session.display());
+    }
+
+    @Test
+    void truncatedLastSessionKeepsTheCompleteOnes() throws IOException
+    {
+        Path file = file();
+        recordSession(file);
+        long complete = Files.size(file);
+        recordSession(file);
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length = (int) complete + 1; length < bytes.length; length++)
+        {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertEquals(1, KeyRecording.replay(file).size(), "截断在 " + length);
+        }
+    }
+
+    @Test
+    void invalidKeyCodeThrowsIOException() throws IOException
+    {
+        Path file = file();
+        recordSession(file);
+        byte[] bytes = Files.readAllBytes(file);
+        int key = bytes.length - 1;
+        while (bytes[key] != (byte) Key.EQUALS.ordinal())
+        {
+            key--;
+        }
+        withByte(file, key, Key.values().length);
+        assertThrows(IOException.class, () -> KeyRecording.replay(file));
+    }
+
+    @Test
+    void invalidEventsThrowIOException() throws IOException
+    {
+        Path precision = file();
+        KeyRecording recording = KeyRecording.open(precision, 10);
+        recording.precision(Precision.DECIMAL64);
+        recording.close("0", "");
+        withByte(precision, EVENTS + 1, 100);
+        assertThrows(IOException.class, () -> KeyRecording.replay(precision));
+
+        Path function = file();
+        recording = KeyRecording.open(function, 10);
+        recording.function(FunctionRegistry.standard().size() + 3);
+        recording.close("0", "");
+        assertThrows(IOException.class, () -> KeyRecording.replay(function));
+
+        Path programmer = file();
+        recording = KeyRecording.open(programmer, 10);
+        recording.programmer(true, 7, 8);
+        recording.close("0", "");
+        assertThrows(IOException.class, () -> KeyRecording.replay(programmer));
+
+        Path text = file();
+        Files.write(text, new byte[]{0x4B, 0x45, 0x59, 0x53, 2, 0, 0, 0, 10, (byte) 0xF0,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+        assertThrows(IOException.class, () -> KeyRecording.replay(text));
+    }
+
+    @Test
+    void invalidHeadersThrowIOException() throws IOException
+    {
+        Path capacity = file();
+        recordSession(capacity);
+        withByte(capacity, 5, 0x7F);
+        assertThrows(IOException.class, () -> KeyRecording.replay(capacity));
+        Path version = file();
+        recordSession(version);
+        withByte(version, 4, 1);
+        assertThrows(IOException.class, () -> KeyRecording.replay(version));
+    }
+}
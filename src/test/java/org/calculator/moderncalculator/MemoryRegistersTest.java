@@ -0,0 +1,192 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryRegistersTest
+{
+    private static final int MAGIC = 0x4D454D52;
+
+    private static Path write(ByteBuffer data) throws IOException
+    {
+        Path file = Files.createTempFile("memory", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, Arrays.copyOf(data.array(), data.position())); //只写入已经放入的字节
+        return file;
+    }
+
+    /**
+     *快照头：魔数、版本、表示和槽位数。
+     */
+    private static ByteBuffer header(int capacity, int representation, int count)
+    {
+        return ByteBuffer.allocate(10 + capacity).putInt(MAGIC).put((byte) 1).put((byte) representation).putInt(count);
+    }
+
+    private static void assertCorrupt(ByteBuffer data) throws IOException
+    {
+        Path file = write(data);
+        MemoryRegisters memory = new MemoryRegisters();
+        memory.setValue(memory.insert(1), 5);
+        assertThrows(IOException.class, () -> memory.load(file, null));
+        assertEquals(0, memory.size());
+    }
+
+    @Test
+    void doubleSnapshotRoundTrip() throws IOException
+    {
+        MemoryRegisters memory = new MemoryRegisters();
+        for (int slot = 0; slot < 100; slot++)
+        {
+            memory.setValue(memory.insert(slot * 7), slot * 1.5);
+        }
+        Path file = Files.createTempFile("memory", ".bin");
+        file.toFile().deleteOnExit();
+        memory.save(file);
+        MemoryRegisters loaded = new MemoryRegisters();
+        loaded.load(file, null);
+        assertEquals(100, loaded.size());
+        for (int slot = 0; slot < 100; slot++)
+        {
+            assertEquals(slot * 1.5, loaded.value(loaded.find(slot * 7)));
+        }
+    }
+
+    @Test
+    void decimalSnapshotRoundTrip() throws IOException
+    {
+        MemoryRegisters memory = new MemoryRegisters();
+        memory.convert(MathContext.UNLIMITED);
+        memory.decimalAt(memory.insert(3)).set(new BigDecimal("0.1000000000000000000000000001"));
+        memory.decimalAt(memory.insert(-4)).set(new BigDecimal("-12345678901234567890123"));
+        Path file = Files.createTempFile("memory", ".bin");
+        file.toFile().deleteOnExit();
+        memory.save(file);
+        MemoryRegisters loaded = new MemoryRegisters();
+        loaded.load(file, MathContext.UNLIMITED);
+        assertEquals(new BigDecimal("0.1000000000000000000000000001"), loaded.decimalAt(loaded.find(3)).toBigDecimal());
+        assertEquals(new BigDecimal("-12345678901234567890123"), loaded.decimalAt(loaded.find(-4)).toBigDecimal());
+    }
+
+    @Test
+    void missingFileOnlyClears() throws IOException
+    {
+        MemoryRegisters memory = new MemoryRegisters();
+        memory.insert(1);
+        memory.load(Path.of("does-not-exist", "memory.bin"), null);
+        assertEquals(0, memory.size());
+    }
+
+    @Test
+    void corruptSnapshotsThrowIOException() throws IOException
+    {
+        assertCorrupt(ByteBuffer.allocate(4).putInt(MAGIC));
+        assertCorrupt(header(0, 7, 0));                                   //未知的表示
+        assertCorrupt(header(0, 0, -1));                                  //负的槽位数
+        assertCorrupt(header(12, 0, Integer.MAX_VALUE).putInt(1).putDouble(2)); //槽位数超过剩余字节
+        assertCorrupt(header(8, 0, 1).putInt(1).putInt(0));               //截断的double
+        assertCorrupt(header(8, 1, 1).putInt(1).putInt(-5));              //负的长度
+        assertCorrupt(header(9, 1, 1).putInt(1).putInt(Integer.MAX_VALUE).put((byte) '1')); //长度超过剩余字节
+        assertCorrupt(header(8, 1, 1).putInt(1).putInt(0));               //空的数字
+        byte[] text = "1.2.3".getBytes(StandardCharsets.US_ASCII);
+        assertCorrupt(header(8 + text.length, 1, 1).putInt(1).putInt(text.length).put(text)); //不是数字
+        assertCorrupt(header(13, 0, 1).putInt(1).putDouble(2).put((byte) 0)); //多余的字节
+    }
+
+    @Test
+    void rejectedSnapshotKeepsTheCurrentRepresentation() throws IOException
+    {
+        //双精度模式下读取表示为精确值的损坏文件，之后的值仍然要在切换精度时转换
+        Path file = write(header(0, 1, 1));
+        MemoryRegisters memory = new MemoryRegisters();
+        assertThrows(IOException.class, () -> memory.load(file, null));
+        memory.setValue(memory.insert(1), 5);
+        memory.convert(MathContext.DECIMAL64);
+        assertEquals(0, memory.decimalAt(memory.find(1)).toBigDecimal().compareTo(BigDecimal.valueOf(5)));
+
+        MemoryRegisters precise = new MemoryRegisters();
+        precise.convert(MathContext.DECIMAL64);
+        Path doubles = write(header(0, 0, 1));
+        assertThrows(IOException.class, () -> precise.load(doubles, MathContext.DECIMAL64));
+        precise.decimalAt(precise.insert(2)).set(BigDecimal.valueOf(7));
+        precise.convert(null);
+        assertEquals(7, precise.value(precise.find(2)), 0);
+    }
+
+    @Test
+    void insertAndRemoveMatchHashMap()
+    {
+        //编号范围很小时探测序列经常相连并从表尾绕回表头，删除后前移的每种情况都会出现
+        Random random = new Random(19);
+        for (int range : new int[]{8, 64, 1000})
+        {
+            MemoryRegisters memory = new MemoryRegisters();
+            Map<Integer, Double> reference = new HashMap<>();
+            for (int i = 0; i < 50_000; i++)
+            {
+                int slot = random.nextInt(range) - range / 2;
+                if (random.nextInt(3) == 0)
+                {
+                    memory.remove(slot);
+                    reference.remove(slot);
+                }
+                else
+                {
+                    double value = random.nextDouble();
+                    memory.setValue(memory.insert(slot), value);
+                    reference.put(slot, value);
+                }
+                assertEquals(reference.size(), memory.size());
+                if (i % 97 == 0)
+                {
+                    for (int candidate = -range / 2; candidate < range - range / 2; candidate++)
+                    {
+                        int index = memory.find(candidate);
+                        Double expected = reference.get(candidate);
+                        assertEquals(expected != null, index >= 0, "编号 " + candidate);
+                        if (expected != null)
+                        {
+                            assertEquals(expected, memory.value(index), 0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void extremeSlotNumbersAreKeptApart()
+    {
+        MemoryRegisters memory = new MemoryRegisters();
+        int[] slots = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, 1, 1 << 16, -(1 << 16)};
+        for (int slot : slots)
+        {
+            memory.setValue(memory.insert(slot), slot);
+        }
+        memory.remove(0);
+        assertEquals(slots.length - 1, memory.size());
+        assertTrue(memory.find(0) < 0);
+        for (int slot : slots)
+        {
+            if (slot != 0)
+            {
+                assertEquals(slot, memory.value(memory.find(slot)), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NumberFormatterTest
+{
+    /**
+     *原来CalculatorController.formatResult的做法，只把区域设置固定为小数点"."。
+     */
+    private static String legacy(double result)
+    {
+        double epsilon = 1E-10;
+        if (Math.abs(result - Math.round(result)) < epsilon && result != 0)
+        {
+            return String.format("%d", Math.round(result));
+        }
+        else if (Math.abs(result) < epsilon && result != 0)
+        {
+            return "0";
+        }
+        DecimalFormat df = new DecimalFormat("#.##########", DecimalFormatSymbols.getInstance(Locale.ROOT));
+        String formatted = df.format(result);
+        if (formatted.startsWith("-."))
+        {
+            formatted = "-0." + formatted.substring(2);
+        }
+        else if (formatted.startsWith("."))
+        {
+            formatted = "0." + formatted.substring(1);
+        }
+        return formatted.equals("-0") ? "0" : formatted;
+    }
+
+    private static void check(NumberFormatter formatter, double value)
+    {
+        assertEquals(legacy(value), formatter.toString(value), Double.toString(value));
+    }
+
+    @Test
+    void matchesTheLegacyFormatter()
+    {
+        NumberFormatter formatter = new NumberFormatter();
+        Random random = new Random(3);
+        for (int i = 0; i < 200_000; i++)
+        {
+            double value;
+            switch (i % 5)
+            {
+                case 0: //任意位模式
+                    value = Double.longBitsToDouble(random.nextLong());
+                    break;
+                case 1: //常见的计算器输入和结果
+                    value = random.nextInt(2_000_001) - 1_000_000 + random.nextInt(10_000) / 10_000.0;
+                    break;
+                case 2: //各种数量级
+                    value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 15);
+                    break;
+                case 3: //有限小数的除法结果
+                    value = (double) (random.nextInt(20_001) - 10_000) / (1 + random.nextInt(1000));
+                    break;
+                default: //接近整数和接近0的数
+                    value = random.nextInt(1000) + (random.nextDouble() - 0.5) * 4E-10;
+                    break;
+            }
+            if (Double.isFinite(value) && Math.abs(value) != 0x1p63)
+            {
+                check(formatter, value);
+            }
+        }
+    }
+
+    @Test
+    void matchesTheLegacyFormatterAtRoundingBoundaries()
+    {
+        NumberFormatter formatter = new NumberFormatter();
+        double[] values = {0.1, 0.2, 0.1 + 0.2, 1.0 / 3, 2.0 / 3, -2.0 / 3, 0.5, -0.5, 0.00000000005, 0.00000000015,
+                0.000000000149, 1.00000000005, 2.5E-10, 1E-10, -1E-10, 9.99999999995, 0.99999999995, 123456.789012345678,
+                1E15 + 0.3, 4503599627370495.5, 0x1p52 - 0.5, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE,
+                -Double.MAX_VALUE, 0x1p63 + 0x1p11, -0x1p63 - 0x1p11, 1E20, 1.2345E25, 0.0, -0.0, 4.9999999999, 5.0000000001};
+        for (double value : values)
+        {
+            check(formatter, value);
+        }
+        for (int numerator = 1; numerator < 2000; numerator++)
+        {
+            check(formatter, numerator / 1E11); //第11位小数上的各种舍入
+            check(formatter, numerator / 2048.0);
+        }
+    }
+
+    @Test
+    void twoToThe63IsFormattedLikeLargerIntegers()
+    {
+        //原来的Math.round在±2^63处饱和，正好得到Long的最大值和最小值，这两个数由"%d"输出(正数还少1)；
+        //新的格式化与更大的整数一样输出最短有效数字后补零
+        NumberFormatter formatter = new NumberFormatter();
+        assertEquals("9223372036854775807", legacy(0x1p63));
+        assertEquals("9223372036854776000", formatter.toString(0x1p63));
+        assertEquals("-9223372036854776000", formatter.toString(-0x1p63));
+    }
+
+    @Test
+    void nanAndInfinityAreNotFormatted()
+    {
+        NumberFormatter formatter = new NumberFormatter();
+        assertNull(formatter.toString(Double.NaN));
+        assertNull(formatter.toString(Double.POSITIVE_INFINITY));
+        assertNull(formatter.toString(Double.NEGATIVE_INFINITY));
+        assertEquals(0, formatter.length());
+    }
+}
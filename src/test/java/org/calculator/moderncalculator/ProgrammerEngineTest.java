@@ -0,0 +1,226 @@
+package org.calculator.moderncalculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProgrammerEngineTest
+{
+    private static final int[] WORD_SIZES = {8, 16, 32, 64};
+    private static final int[] BASES = {ProgrammerEngine.HEX, ProgrammerEngine.DECIMAL, ProgrammerEngine.OCTAL,
+            ProgrammerEngine.BINARY};
+    private static final Key[] OPERATORS = {Key.ADD, Key.SUBTRACT, Key.MULTIPLY, Key.DIVIDE, Key.MODULO, Key.AND,
+            Key.OR, Key.XOR, Key.SHIFT_LEFT, Key.SHIFT_RIGHT};
+
+    private static long mask(int wordSize)
+    {
+        return -1L >>> (Long.SIZE - wordSize);
+    }
+
+    private static long normalize(long v, int wordSize)
+    {
+        return v << (Long.SIZE - wordSize) >> (Long.SIZE - wordSize);
+    }
+
+    /**
+     *@return 每个字长的边界值和随机值，已按字长符号扩展
+     */
+    private static long[] samples(Random random, int wordSize)
+    {
+        long max = mask(wordSize) >>> 1;
+        long[] edges = {0, 1, -1, 2, 9, 10, 99, 100, max, -max - 1, max - 1, -max};
+        long[] samples = new long[64];
+        for (int i = 0; i < samples.length; i++)
+        {
+            samples[i] = i < edges.length ? edges[i] : normalize(random.nextLong() >> random.nextInt(Long.SIZE), wordSize);
+        }
+        return samples;
+    }
+
+    /**
+     *@return 已经输入了value的引擎，当前进制为base
+     */
+    private static ProgrammerEngine engine(int wordSize, int base, long value)
+    {
+        ProgrammerEngine engine = new ProgrammerEngine();
+        engine.setWordSize(wordSize);
+        engine.setBase(ProgrammerEngine.HEX);
+        engine.type(Long.toHexString(value & mask(wordSize)));
+        engine.setBase(base);
+        return engine;
+    }
+
+    private static String expected(long value, int wordSize, int radix)
+    {
+        return radix == ProgrammerEngine.DECIMAL ? Long.toString(value)
+                : Long.toUnsignedString(value & mask(wordSize), radix).toUpperCase(Locale.ROOT);
+    }
+
+    @Test
+    void formattingMatchesLong()
+    {
+        Random random = new Random(25);
+        for (int wordSize : WORD_SIZES)
+        {
+            for (long value : samples(random, wordSize))
+            {
+                ProgrammerEngine engine = engine(wordSize, ProgrammerEngine.HEX, value);
+                assertEquals(value, engine.value());
+                for (int radix : BASES)
+                {
+                    StringBuilder sb = new StringBuilder();
+                    engine.appendTo(sb, radix);
+                    assertEquals(expected(value, wordSize, radix), sb.toString(), wordSize + "位" + radix + "进制");
+                }
+                String binary = String.format("%" + wordSize + "s", Long.toBinaryString(value & mask(wordSize)))
+                        .replace(' ', '0');
+                assertEquals(binary.replaceAll("(.{4})(?!$)", "$1 "), engine.binaryText());
+            }
+        }
+    }
+
+    @Test
+    void typingMatchesParseLong()
+    {
+        Random random = new Random(26);
+        for (int wordSize : WORD_SIZES)
+        {
+            for (long value : samples(random, wordSize))
+            {
+                for (int base : BASES)
+                {
+                    ProgrammerEngine engine = new ProgrammerEngine();
+                    engine.setWordSize(wordSize);
+                    engine.setBase(base);
+                    if (base == ProgrammerEngine.DECIMAL)
+                    {
+                        //十进制只能输入非负数，超出字长内最大正数的数字被忽略
+                        long positive = value & (mask(wordSize) >>> 1);
+                        engine.type(Long.toString(positive) + "9");
+                        long max = mask(wordSize) >>> 1;
+                        long expected = positive <= (max - 9) / 10 ? positive * 10 + 9 : positive;
+                        assertEquals(expected, engine.value(), wordSize + "位十进制");
+                    }
+                    else
+                    {
+                        String text = Long.toUnsignedString(value & mask(wordSize), base);
+                        engine.type(text);
+                        assertEquals(normalize(Long.parseUnsignedLong(text, base), wordSize), engine.value(),
+                                wordSize + "位" + base + "进制 " + text);
+                        engine.type("1"); //已经用满字长时再输入的数字被忽略
+                        long pattern = value & mask(wordSize);
+                        long expected = Long.compareUnsigned(pattern, Long.divideUnsigned(mask(wordSize) - 1, base)) > 0
+                                ? value : normalize(pattern * base + 1, wordSize);
+                        assertEquals(expected, engine.value());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void arithmeticMatchesLong()
+    {
+        Random random = new Random(27);
+        for (int wordSize : WORD_SIZES)
+        {
+            long[] samples = samples(random, wordSize);
+            for (int i = 0; i < 2000; i++)
+            {
+                long a = samples[random.nextInt(samples.length)];
+                long b = samples[random.nextInt(samples.length)];
+                Key operator = OPERATORS[random.nextInt(OPERATORS.length)];
+                if (operator == Key.SHIFT_LEFT || operator == Key.SHIFT_RIGHT)
+                {
+                    b = random.nextInt(wordSize);
+                }
+                ProgrammerEngine engine = engine(wordSize, ProgrammerEngine.HEX, a);
+                engine.press(operator);
+                engine.type(Long.toHexString(b & mask(wordSize)));
+                engine.press(Key.EQUALS);
+                String message = wordSize + "位 " + a + " " + operator + " " + b;
+                if (b == 0 && (operator == Key.DIVIDE || operator == Key.MODULO))
+                {
+                    assertEquals(operator == Key.DIVIDE ? CalculatorError.DIVIDE_BY_ZERO : CalculatorError.MODULO_BY_ZERO,
+                            engine.error(), message);
+                    continue;
+                }
+                assertEquals(normalize(apply(a, operator, b), wordSize), engine.value(), message);
+                assertEquals(expected(engine.value(), wordSize, ProgrammerEngine.HEX), engine.displayText());
+            }
+        }
+    }
+
+    @Test
+    void unaryOperationsMatchLong()
+    {
+        Random random = new Random(28);
+        for (int wordSize : WORD_SIZES)
+        {
+            for (long value : samples(random, wordSize))
+            {
+                for (Key key : new Key[]{Key.NOT, Key.NEGATE, Key.SQUARE})
+                {
+                    ProgrammerEngine engine = engine(wordSize, ProgrammerEngine.DECIMAL, value);
+                    engine.press(key);
+                    long expected = key == Key.NOT ? ~value : key == Key.NEGATE ? -value : value * value;
+                    assertEquals(normalize(expected, wordSize), engine.value(), wordSize + "位 " + key + " " + value);
+                }
+            }
+        }
+    }
+
+    @Test
+    void operatorAfterUnaryAppliesThePendingOperation()
+    {
+        //"5 + 3 x² + 1 ="：一元运算的结果是第二个操作数，下一个运算键要先算出5 + 9
+        for (Key key : new Key[]{Key.SQUARE, Key.NOT, Key.NEGATE})
+        {
+            long operand = key == Key.SQUARE ? 9 : key == Key.NOT ? ~3L : -3;
+            ProgrammerEngine engine = new ProgrammerEngine();
+            engine.type("5+3");
+            engine.press(key);
+            engine.type("+1=");
+            assertEquals(5 + operand + 1, engine.value(), key.toString());
+
+            engine = new ProgrammerEngine();
+            engine.type("5+3");
+            engine.press(key);
+            engine.press(Key.EQUALS);
+            assertEquals(5 + operand, engine.value(), key.toString());
+        }
+        ProgrammerEngine engine = new ProgrammerEngine();
+        engine.type("5+-1="); //运算键之后没有输入数字时只替换运算
+        assertEquals(4, engine.value());
+    }
+
+    private static long apply(long a, Key operator, long b)
+    {
+        switch (operator)
+        {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return a / b;
+            case MODULO:
+                return a % b;
+            case AND:
+                return a & b;
+            case OR:
+                return a | b;
+            case XOR:
+                return a ^ b;
+            case SHIFT_LEFT:
+                return a << b;
+            default:
+                return a >> b;
+        }
+    }
+}